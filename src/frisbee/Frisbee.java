@@ -1,12 +1,15 @@
 package frisbee;
 
 import frisbee.communications.Connection;
+import frisbee.communications.ConnectionRoutes;
 import frisbee.communications.Connector;
 import frisbee.configuration.FrisbeeConfig;
 import frisbee.messaging.MessageBuilder;
+import frisbee.messaging.MessageDispatcher;
 import frisbee.messaging.MessageIOConfig;
 import frisbee.messaging.MessageMapping;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -20,6 +23,11 @@ public class Frisbee implements Runnable {
      */
     private static List<Frisbee> frisbees = new LinkedList<>();
 
+    /**
+     * Every connection managed by the frisbee service, by connection ID, rebuilt with the routes
+     */
+    private static volatile Map<String, Connection> connections = Collections.emptyMap();
+
     /**
      * Configuration for a frisbee
      */
@@ -30,6 +38,11 @@ public class Frisbee implements Runnable {
      */
     private MessageBuilder messageBuilder = null;
 
+    /**
+     * Used by frisbee instance to write transformed messages to their outputs
+     */
+    private MessageDispatcher messageDispatcher = null;
+
     /**
      * Used by frisbee instance to identify the running connection listener threads
      */
@@ -39,9 +52,10 @@ public class Frisbee implements Runnable {
      * Constructor for a frisbee
      */
     public Frisbee(FrisbeeConfig config) {
-        this.setFrisbeeConfig(config);
-        this.messageBuilder = new MessageBuilder();
+        this.messageDispatcher = new MessageDispatcher(config.getFrisbeeID(), config.getThreadMode(), config.getDispatchThreads(), Frisbee::getConnection);
+        this.messageBuilder = new MessageBuilder(this.messageDispatcher);
         this.listenerThreads = new HashMap<>();
+        this.setFrisbeeConfig(config);
     }
 
 
@@ -50,8 +64,39 @@ public class Frisbee implements Runnable {
      *
      * @return boolean success or failure
      */
-    public static boolean addFrisbee(Frisbee frisbee) {
-        return Frisbee.frisbees.add(frisbee);
+    public static synchronized boolean addFrisbee(Frisbee frisbee) {
+        boolean isAdded = Frisbee.frisbees.add(frisbee);
+        Frisbee.refreshRoutes();
+        return isAdded;
+    }
+
+    /**
+     * Recompiles the routing snapshot of every connection managed by the frisbee service
+     */
+    public static synchronized void refreshRoutes() {
+
+        Map<String, Connection> directory = new HashMap<>();
+
+        for (Frisbee f : frisbees) {
+            for (Connector connector : f.getFrisbeeConfig().getConnectors()) {
+                for (Connection connection : connector.getConnections().values()) {
+                    connection.setRoutes(new ConnectionRoutes(connection.getConnectionID(), frisbees));
+                    directory.put(connection.getConnectionID(), connection);
+                }
+            }
+        }
+
+        Frisbee.connections = Collections.unmodifiableMap(directory);
+    }
+
+    /**
+     * Returns a connection managed by the frisbee service
+     *
+     * @param connectionID the connection ID
+     * @return the connection, null when no frisbee instance manages it
+     */
+    public static Connection getConnection(String connectionID) {
+        return Frisbee.connections.get(connectionID);
     }
 
     /**
@@ -90,6 +135,11 @@ public class Frisbee implements Runnable {
     public void setFrisbeeConfig(FrisbeeConfig frisbeeConfig) {
         this.frisbeeConfig = frisbeeConfig;
         this.addConnectionObservers();
+
+        synchronized (Frisbee.class) {
+            if (frisbees.contains(this))
+                Frisbee.refreshRoutes();
+        }
     }
 
     /**
@@ -140,7 +190,9 @@ public class Frisbee implements Runnable {
                 Connection connection = connector.getConnections().get(connectionID);
                 if (connection != null) {
                     if (!this.listenerThreads.containsKey(connectionID)) {
-                        Thread listenerThread = new Thread(connection);
+                        connection.startIngress();
+                        connection.setThreadMode(this.frisbeeConfig.getThreadMode());
+                        Thread listenerThread = connection.getThreadMode().newThread(connection, "frisbee-listener-" + connectionID);
                         this.listenerThreads.put(connectionID, listenerThread);
                         listenerThread.start();
                     }
@@ -1,16 +1,24 @@
 package frisbee.communications;
 
-import frisbee.Frisbee;
+import frisbee.configuration.Keywords;
 import frisbee.exceptions.LoggedException;
+import frisbee.messaging.FieldReader;
+import frisbee.messaging.FrameLayout;
+import frisbee.messaging.FramePayload;
 import frisbee.messaging.Message;
-import frisbee.messaging.MessageIOConfig;
+import frisbee.messaging.MessageBuilder;
 import frisbee.messaging.MessageMapping;
+import frisbee.messaging.SlotPayload;
+import frisbee.tools.ThreadMode;
 import frisbee.tools.Tools;
 
-import java.util.LinkedList;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Observable;
+import java.util.Observer;
 
 /**
  * The {@code Connection} abstract class defines the state and capabilities of a connection.
@@ -39,7 +47,7 @@ public abstract class Connection extends Observable implements Runnable {
      * <li>{@link #RESET}</li>
      * <li>{@link #ERROR}</li>
      */
-    private enum ConnectionState {
+    public enum ConnectionState {
         /**
          * The connection is currently being open
          */
@@ -110,9 +118,9 @@ public abstract class Connection extends Observable implements Runnable {
     private Map<String, Object> connectionParameters;
 
     /**
-     * The current connection state of a {@code Connection} instance
+     * The current connection state of a {@code Connection} instance, set by listeners and output backlogs alike
      */
-    private ConnectionState connectionState = ConnectionState.CLOSED;
+    private volatile ConnectionState connectionState = ConnectionState.CLOSED;
 
     /**
      * The operation mode of the {@code Connection} instance
@@ -129,6 +137,61 @@ public abstract class Connection extends Observable implements Runnable {
      */
     private Connector parentConnector;
 
+    /**
+     * The kind of threads the listener of this connection runs on, set by the frisbee instance starting it
+     */
+    private volatile ThreadMode threadMode = ThreadMode.PLATFORM;
+
+    /**
+     * The routing snapshot of the message mappings using this connection, swapped as a whole on configuration changes
+     */
+    private volatile ConnectionRoutes routes = ConnectionRoutes.EMPTY;
+
+    /**
+     * Copy on write snapshot of the observers, read without holding the {@link java.util.Observable} monitor
+     */
+    private volatile Observer[] receivers = new Observer[0];
+
+    /**
+     * The ring buffer decoupling the listener from the processing of its payloads, null when payloads are processed inline
+     */
+    private volatile IngressRing ingress;
+
+    /**
+     * Guards the backpressure state, waited on by the listener while backpressure is applied
+     */
+    private final Object backpressureLock = new Object();
+
+    /**
+     * The number of output backlogs currently applying backpressure to this connection
+     */
+    private int backpressureHolds;
+
+    /**
+     * Whether backpressure is applied, read by the listener without taking the lock
+     */
+    private volatile boolean backpressured;
+
+    /**
+     * The connection state before backpressure paused the connection
+     */
+    private ConnectionState stateBeforeBackpressure;
+
+    /**
+     * The number of times backpressure was applied or released, telling a pause or resume call whether it is still the latest one
+     */
+    private long backpressureTransitions;
+
+    /**
+     * The {@link System#nanoTime()} at which backpressure was last applied
+     */
+    private long backpressureSince;
+
+    /**
+     * The total nanoseconds spent paused by backpressure, current pause excluded
+     */
+    private long backpressureNanos;
+
     /**
      * Method used to open a connection
      *
@@ -150,6 +213,16 @@ public abstract class Connection extends Observable implements Runnable {
      */
     public abstract void pause() throws LoggedException;
 
+    /**
+     * Method used to resume a paused connection
+     * <p>
+     * Does nothing by default, connections stopping their listener in {@link #pause()} should override it
+     *
+     * @throws LoggedException on failure to resume a connection
+     */
+    public void resume() throws LoggedException {
+    }
+
     /**
      * Method used to reset a connection
      *
@@ -203,6 +276,34 @@ public abstract class Connection extends Observable implements Runnable {
      */
     protected abstract void writeMessage(Message message) throws LoggedException;
 
+    /**
+     * Wrapper method used verify the connection mode before attempting to write a batch of messages to a destination
+     *
+     * @param messages the {@link frisbee.messaging.Message} instances that are to be output, in order
+     * @throws LoggedException on failure to write messages to destination
+     */
+    public void writeBatch(List<Message> messages) throws LoggedException {
+        if (this.connectionMode == ConnectionMode.WRITEONLY || this.connectionMode == ConnectionMode.READWRITE) {
+
+            writeMessageBatch(messages);
+        } else {
+            throw new LoggedException(null);
+        }
+    }
+
+    /**
+     * Method used to write a batch of messages to a destination
+     * <p>
+     * Writes the messages one by one, connections able to send several messages at once should override it
+     *
+     * @param messages the messages to write, in order
+     * @throws LoggedException on failure to write messages to destination
+     */
+    protected void writeMessageBatch(List<Message> messages) throws LoggedException {
+        for (Message message : messages)
+            writeMessage(message);
+    }
+
     /**
      * Returns the current state of the connection
      *
@@ -212,6 +313,15 @@ public abstract class Connection extends Observable implements Runnable {
         return connectionState;
     }
 
+    /**
+     * Sets the current state of the connection
+     *
+     * @param connectionState the connection state
+     */
+    protected void setConnectionState(ConnectionState connectionState) {
+        this.connectionState = connectionState;
+    }
+
     /**
      * Returns the connection's operation mode
      *
@@ -265,65 +375,388 @@ public abstract class Connection extends Observable implements Runnable {
      * @return the message mappings using using this connections as an input
      */
     public List<MessageMapping> getInputMappings() {
+        return this.routes.getInputMappings();
+    }
+
+    /**
+     * Returns The all the MessageMappings using this connections as a asynchronous output
+     *
+     * @return the message mappings using using this connections as a asynchronous output
+     */
+    public List<MessageMapping> getAsyncOutputMappings() {
+        return this.routes.getAsyncOutputMappings();
+    }
 
-        LinkedList<MessageMapping> inputMessages = new LinkedList<>();
+    /**
+     * Returns The all the MessageMappings using this connections as a synchronous output
+     *
+     * @return the message mappings using using this connections as a synchronous output
+     */
+    public List<MessageMapping> getSyncOutputMappings() {
+        return this.routes.getSyncOutputMappings();
+    }
 
-        for (Frisbee f : Frisbee.getFrisbees()) {
-            List<MessageMapping> allMessages = f.getFrisbeeConfig().getMessageMappings();
-            for (MessageMapping m : allMessages) {
-                MessageIOConfig io = m.getInput();
-                if (io.getConnectionID().equals(this.connectionID)) {
-                    inputMessages.add(m);
-                }
-            }
+    /**
+     * Adds an observer, notified of every payload received by this connection
+     *
+     * @param o the observer to add
+     */
+    @Override
+    public synchronized void addObserver(Observer o) {
+        super.addObserver(o);
+
+        for (Observer receiver : this.receivers) {
+            if (receiver == o)
+                return;
         }
 
-        return inputMessages;
+        Observer[] updated = Arrays.copyOf(this.receivers, this.receivers.length + 1);
+        updated[updated.length - 1] = o;
+        this.receivers = updated;
     }
 
     /**
-     * Returns The all the MessageMappings using this connections as a asynchronous output
+     * Deletes an observer
      *
-     * @return the message mappings using using this connections as a asynchronous output
+     * @param o the observer to delete
      */
-    public List<MessageMapping> getAsyncOutputMappings() {
-        LinkedList<MessageMapping> outMessages = new LinkedList<>();
-
-        for (Frisbee f : Frisbee.getFrisbees()) {
-            List<MessageMapping> allMessages = f.getFrisbeeConfig().getMessageMappings();
-            for (MessageMapping m : allMessages) {
-                for (MessageIOConfig io : m.getAsyncOutputs()) {
-                    if (io.getConnectionID().equals(this.connectionID)) {
-                        outMessages.add(m);
-                    }
-                }
+    @Override
+    public synchronized void deleteObserver(Observer o) {
+        super.deleteObserver(o);
+
+        List<Observer> updated = new ArrayList<>(Arrays.asList(this.receivers));
+        updated.remove(o);
+        this.receivers = updated.toArray(new Observer[updated.size()]);
+    }
+
+    /**
+     * Deletes all the observers
+     */
+    @Override
+    public synchronized void deleteObservers() {
+        super.deleteObservers();
+        this.receivers = new Observer[0];
+    }
+
+    /**
+     * Method used by the connection listener to hand over a received payload
+     * <p>
+     * The payload is published to the ingress ring when one is started, otherwise it is processed inline on the calling thread.
+     * Unlike {@link #notifyObservers(Object)} neither path holds the {@link java.util.Observable} monitor.
+     * While backpressure is applied the calling thread waits for it to be released.
+     *
+     * @param payload the payload received
+     */
+    protected void receive(Object payload) {
+
+        if (this.backpressured)
+            this.awaitBackpressureRelease();
+
+        this.handOver(payload);
+    }
+
+    /**
+     * Hands a received payload over like {@link #receive(Object)}, without waiting for backpressure to be released
+     * <p>
+     * Meant for listeners serving other connections from the same thread, which must never wait:
+     * they stop reading in {@link #pause()} instead, the payloads already read being handed over anyway.
+     *
+     * @param payload the payload received
+     */
+    protected void handOver(Object payload) {
+
+        long receivedTimestamp = System.currentTimeMillis();
+
+        IngressRing ring = this.ingress;
+        if (ring == null || !ring.publish(payload, receivedTimestamp))
+            this.dispatch(payload, receivedTimestamp);
+    }
+
+    /**
+     * Creates an empty payload bound to the input schema of this connection
+     * <p>
+     * Listeners filling it by field ordinal, or by key, let the payload be identified and transformed without hashing field keys.
+     * The payload is handed over to {@link #receive(Object)}, which releases it once dispatched
+     *
+     * @return the payload
+     */
+    protected SlotPayload newPayload() {
+        return this.routes.getInputSchema().newPayload();
+    }
+
+    /**
+     * Creates a payload bound to the input schema of this connection, decoding the fields of a received record on demand
+     * <p>
+     * Only the discriminators are decoded while the payload is identified, then the fields of the identified message definition.
+     * The record may change once the payload is identified, unidentified payloads are dropped without decoding their other fields
+     *
+     * @param reader the reader of the received record
+     * @return the payload, handed over to {@link #receive(Object)} like {@link #newPayload()}
+     */
+    protected SlotPayload newPayload(FieldReader reader) {
+        SlotPayload payload = this.routes.getInputSchema().newPayload();
+        payload.defer(reader);
+        return payload;
+    }
+
+    /**
+     * Wraps a fixed-width frame received by this connection into a payload reading it in place
+     * <p>
+     * Fields are decoded only when read and discriminators are compared on bytes. The buffer must not change until the messages
+     * created from the payload are written
+     *
+     * @param frame the frame, from its position to its limit
+     * @return the payload
+     * @throws IllegalStateException when no input field of this connection has a length
+     */
+    protected FramePayload wrapFrame(ByteBuffer frame) {
+        FrameLayout layout = this.routes.getFrameLayout();
+        if (layout == null)
+            throw new IllegalStateException("Connection " + this.connectionID + " has no fixed-width input fields");
+        return layout.wrap(frame);
+    }
+
+    /**
+     * Creates a decoder cutting the byte stream read by this connection into frames, as configured on its message inputs
+     * <p>
+     * The first message input configuring {@link frisbee.configuration.Keywords#INPUT_ETX etx}, {@link frisbee.configuration.Keywords#INPUT_DELIM delim}
+     * or a length sets the framing, falling back to the length of the fixed-width layout. Frames are only valid while handled,
+     * a handler passing them on to an {@link #startIngress() ingress ring} must copy them first
+     *
+     * @return the decoder, null when the framing is not configured
+     */
+    protected FrameDecoder newFrameDecoder() {
+        ConnectionRoutes routes = this.routes;
+        for (MessageMapping messageMapping : routes.getInputMappings()) {
+            FrameDecoder decoder = FrameDecoder.fromConfiguration(messageMapping.getInput().getArguments(), null);
+            if (decoder != null)
+                return decoder;
+        }
+        return routes.getFrameLayout() == null ? null : new FrameDecoder(routes.getFrameLayout().getFrameLength());
+    }
+
+    /**
+     * Hands a received payload to every observer of this connection
+     * <p>
+     * Safe to call from several threads at once. A payload leased from {@link #newPayload()} is released once every observer got it,
+     * observers keeping it retain it first
+     *
+     * @param payload           the payload received
+     * @param receivedTimestamp the payload reception timestamp
+     */
+    protected void dispatch(Object payload, long receivedTimestamp) {
+
+        try {
+            for (Observer receiver : this.receivers) {
+                if (receiver instanceof MessageBuilder)
+                    ((MessageBuilder) receiver).process(this, payload, receivedTimestamp);
+                else
+                    receiver.update(this, payload);
             }
+        } finally {
+            if (payload instanceof SlotPayload)
+                ((SlotPayload) payload).release();
         }
+    }
+
+    /**
+     * Pauses this connection on behalf of an output backlog that grew past its high watermark
+     * <p>
+     * Backpressure is counted, the connection resumes once every output backlog applying it released it
+     */
+    public void applyBackpressure() {
 
-        return outMessages;
+        long transition;
+        synchronized (this.backpressureLock) {
+
+            if (this.backpressureHolds++ > 0)
+                return;
+
+            this.backpressured = true;
+            this.backpressureSince = System.nanoTime();
+            this.stateBeforeBackpressure = this.connectionState;
+            this.setConnectionState(ConnectionState.PAUSED);
+            transition = ++this.backpressureTransitions;
+        }
+
+        this.followBackpressure(transition, true);
     }
 
     /**
-     * Returns The all the MessageMappings using this connections as a synchronous output
+     * Releases the backpressure applied by an output backlog that drained down to its low watermark
+     */
+    public void releaseBackpressure() {
+
+        long transition;
+        synchronized (this.backpressureLock) {
+
+            if (this.backpressureHolds == 0 || --this.backpressureHolds > 0)
+                return;
+
+            this.backpressured = false;
+            this.backpressureNanos += System.nanoTime() - this.backpressureSince;
+            this.setConnectionState(this.stateBeforeBackpressure);
+            this.backpressureLock.notifyAll();
+            transition = ++this.backpressureTransitions;
+        }
+
+        this.followBackpressure(transition, false);
+    }
+
+    /**
+     * Pauses or resumes this connection after a backpressure transition, without holding the backpressure lock
+     * <p>
+     * A call racing with a later transition may land after the call of that transition, so the call matching the latest transition
+     * is made again until no transition happened meanwhile
      *
-     * @return the message mappings using using this connections as a synchronous output
+     * @param transition the number of the transition made by the caller
+     * @param pause      true to pause, false to resume
      */
-    public List<MessageMapping> getSyncOutputMappings() {
+    private void followBackpressure(long transition, boolean pause) {
+
+        while (true) {
+            try {
+                if (pause)
+                    this.pause();
+                else
+                    this.resume();
+            } catch (LoggedException e) {
+                e.printStackTrace();
+            }
 
-        LinkedList<MessageMapping> outMessages = new LinkedList<>();
+            synchronized (this.backpressureLock) {
+                if (this.backpressureTransitions == transition)
+                    return;
+                transition = this.backpressureTransitions;
+                pause = this.backpressured;
+            }
+        }
+    }
 
-        for (Frisbee f : Frisbee.getFrisbees()) {
-            List<MessageMapping> allMessages = f.getFrisbeeConfig().getMessageMappings();
-            for (MessageMapping m : allMessages) {
-                for (MessageIOConfig io : m.getSyncOutputs()) {
-                    if (io.getConnectionID().equals(this.connectionID)) {
-                        outMessages.add(m);
-                    }
-                }
+    /**
+     * Waits until no output backlog applies backpressure to this connection
+     * <p>
+     * Called by {@link #receive(Object)}, listeners calling {@link #dispatch(Object, long)} directly call it themselves
+     */
+    protected void awaitBackpressureRelease() {
+
+        synchronized (this.backpressureLock) {
+            try {
+                while (this.backpressureHolds > 0)
+                    this.backpressureLock.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
         }
+    }
+
+    /**
+     * Tells whether an output backlog applies backpressure to this connection
+     *
+     * @return true while paused by backpressure
+     */
+    public boolean isBackpressured() {
+        return backpressured;
+    }
+
+    /**
+     * Returns the total time this connection spent paused by backpressure, current pause included
+     *
+     * @return the paused time in milliseconds
+     */
+    public long getBackpressureMillis() {
+
+        synchronized (this.backpressureLock) {
+            long nanos = this.backpressureNanos;
+            if (this.backpressureHolds > 0)
+                nanos += System.nanoTime() - this.backpressureSince;
+            return nanos / 1000000L;
+        }
+    }
+
+    /**
+     * Starts the ingress ring configured by the {@link frisbee.configuration.Keywords#INGRESS_SIZE} connection parameter
+     * <p>
+     * Does nothing when no ring is configured or a ring is already started
+     */
+    public synchronized void startIngress() {
+
+        if (this.ingress != null)
+            return;
+
+        Object size = Keywords.getArgument(this.connectionParameters, Keywords.INGRESS_SIZE);
+        if (size == null)
+            return;
+
+        Object workers = Keywords.getArgument(this.connectionParameters, Keywords.INGRESS_WORKERS);
+        Object wait = Keywords.getArgument(this.connectionParameters, Keywords.INGRESS_WAIT);
+
+        this.ingress = new IngressRing(this,
+                Integer.parseInt(size.toString().trim()),
+                workers == null ? 1 : Integer.parseInt(workers.toString().trim()),
+                WaitStrategy.fromConfiguration(wait));
+    }
+
+    /**
+     * Stops the ingress ring, payloads received afterwards are processed inline
+     *
+     * @param timeoutMillis the maximum time to wait for every consumer to drain the ring
+     */
+    public void stopIngress(long timeoutMillis) {
+
+        IngressRing ring;
+        synchronized (this) {
+            ring = this.ingress;
+            this.ingress = null;
+        }
+
+        if (ring != null)
+            ring.halt(timeoutMillis);
+    }
+
+    /**
+     * Returns the ingress ring of this connection
+     *
+     * @return the ingress ring, null when payloads are processed inline
+     */
+    public IngressRing getIngress() {
+        return ingress;
+    }
+
+    /**
+     * Returns the kind of threads the listener of this connection runs on, used to restart it
+     *
+     * @return the thread mode
+     */
+    public ThreadMode getThreadMode() {
+        return threadMode;
+    }
 
-        return outMessages;
+    /**
+     * Sets the kind of threads the listener of this connection runs on
+     *
+     * @param threadMode the thread mode
+     */
+    public void setThreadMode(ThreadMode threadMode) {
+        this.threadMode = threadMode;
+    }
+
+    /**
+     * Returns the current routing snapshot of this connection
+     *
+     * @return the connection routes
+     */
+    public ConnectionRoutes getRoutes() {
+        return routes;
+    }
+
+    /**
+     * Atomically replaces the routing snapshot of this connection
+     *
+     * @param routes the connection routes
+     */
+    public void setRoutes(ConnectionRoutes routes) {
+        this.routes = routes;
     }
 
     /**
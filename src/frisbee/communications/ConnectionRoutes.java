@@ -0,0 +1,196 @@
+package frisbee.communications;
+
+import frisbee.Frisbee;
+import frisbee.messaging.CompiledMapping;
+import frisbee.messaging.FrameLayout;
+import frisbee.messaging.MessageIOConfig;
+import frisbee.messaging.MessageIdentifier;
+import frisbee.messaging.MessageMapping;
+import frisbee.messaging.PayloadSchema;
+import frisbee.tools.Tools;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@code ConnectionRoutes} class is an immutable snapshot of the {@link frisbee.messaging.MessageMapping message mappings} routed through a {@link frisbee.communications.Connection connection}
+ * <p>
+ * Routes are compiled whenever the frisbee configuration changes and swapped on the connection as a whole,
+ * so the per message lookups are plain field reads with no allocation.
+ * <p>
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public final class ConnectionRoutes {
+
+    /**
+     * Routes used by connections which are not referenced by any message mapping
+     */
+    public static final ConnectionRoutes EMPTY = new ConnectionRoutes(null, Collections.<Frisbee>emptyList());
+
+    /**
+     * The message mappings using the connection as an input
+     */
+    private final List<MessageMapping> inputMappings;
+
+    /**
+     * The message mappings using the connection as a synchronous output
+     */
+    private final List<MessageMapping> syncOutputMappings;
+
+    /**
+     * The message mappings using the connection as an asynchronous output
+     */
+    private final List<MessageMapping> asyncOutputMappings;
+
+    /**
+     * The input message mappings compiled against the input schema, by message mapping
+     */
+    private final Map<MessageMapping, CompiledMapping> compiledMappings;
+
+    /**
+     * The precompiled discriminator index of the input message mappings
+     */
+    private final MessageIdentifier messageIdentifier;
+
+    /**
+     * The schema of the payloads received by the connection, holding the input keys of all its message definitions
+     */
+    private final PayloadSchema inputSchema;
+
+    /**
+     * The layout of the fixed-width frames received by the connection, null when no input field has a length
+     */
+    private final FrameLayout frameLayout;
+
+    /**
+     * Compiles the routes of a connection from the frisbee configurations
+     *
+     * @param connectionID the connection's ID
+     * @param frisbees     the frisbee instances to extract the message mappings from
+     */
+    public ConnectionRoutes(String connectionID, List<Frisbee> frisbees) {
+
+        List<MessageMapping> inputs = new ArrayList<>();
+        List<MessageMapping> syncOutputs = new ArrayList<>();
+        List<MessageMapping> asyncOutputs = new ArrayList<>();
+
+        if (connectionID != null) {
+            for (Frisbee f : frisbees) {
+                for (MessageMapping m : f.getFrisbeeConfig().getMessageMappings()) {
+
+                    if (connectionID.equals(m.getInput().getConnectionID()))
+                        inputs.add(m);
+
+                    for (MessageIOConfig io : m.getSyncOutputs()) {
+                        if (connectionID.equals(io.getConnectionID()))
+                            syncOutputs.add(m);
+                    }
+
+                    for (MessageIOConfig io : m.getAsyncOutputs()) {
+                        if (connectionID.equals(io.getConnectionID()))
+                            asyncOutputs.add(m);
+                    }
+                }
+            }
+        }
+
+        //compiled into the snapshot, the message mappings are shared with the routes still in use
+        PayloadSchema inputSchema = PayloadSchema.forInput(inputs);
+        Map<MessageMapping, CompiledMapping> compiledMappings = new IdentityHashMap<>();
+        for (MessageMapping m : inputs)
+            compiledMappings.put(m, m.compile(inputSchema));
+
+        this.inputMappings = Collections.unmodifiableList(inputs);
+        this.syncOutputMappings = Collections.unmodifiableList(syncOutputs);
+        this.asyncOutputMappings = Collections.unmodifiableList(asyncOutputs);
+        this.compiledMappings = compiledMappings;
+        this.inputSchema = inputSchema;
+        this.frameLayout = FrameLayout.forInput(inputs, inputSchema);
+        this.messageIdentifier = inputs.isEmpty() ? MessageIdentifier.EMPTY : new MessageIdentifier(inputs, inputSchema, this.frameLayout);
+    }
+
+    /**
+     * Returns the schema of the payloads received by the connection
+     * <p>
+     * Payloads created from it are identified and transformed by field ordinal
+     *
+     * @return the input schema
+     */
+    public PayloadSchema getInputSchema() {
+        return inputSchema;
+    }
+
+    /**
+     * Returns the layout of the fixed-width frames received by the connection
+     * <p>
+     * Frames wrapped with it are identified on bytes and decoded one field at a time, when read
+     *
+     * @return the frame layout, null when no input field has a length
+     */
+    public FrameLayout getFrameLayout() {
+        return frameLayout;
+    }
+
+    /**
+     * Returns the message mappings using the connection as an input
+     *
+     * @return the input message mappings
+     */
+    public List<MessageMapping> getInputMappings() {
+        return inputMappings;
+    }
+
+    /**
+     * Returns an input message mapping compiled against the input schema of these routes
+     *
+     * @param messageMapping the input message mapping
+     * @return the compiled message mapping, compiled to read payloads by key when the mapping is not an input of these routes
+     */
+    public CompiledMapping getCompiledMapping(MessageMapping messageMapping) {
+        CompiledMapping compiled = compiledMappings.get(messageMapping);
+        return compiled == null ? messageMapping.getCompiled() : compiled;
+    }
+
+    /**
+     * Returns the message mappings using the connection as a synchronous output
+     *
+     * @return the synchronous output message mappings
+     */
+    public List<MessageMapping> getSyncOutputMappings() {
+        return syncOutputMappings;
+    }
+
+    /**
+     * Returns the message mappings using the connection as an asynchronous output
+     *
+     * @return the asynchronous output message mappings
+     */
+    public List<MessageMapping> getAsyncOutputMappings() {
+        return asyncOutputMappings;
+    }
+
+    /**
+     * Returns the precompiled discriminator index of the input message mappings
+     *
+     * @return the message identifier
+     */
+    public MessageIdentifier getMessageIdentifier() {
+        return messageIdentifier;
+    }
+
+    /**
+     * Method returning a string representation
+     *
+     * @return string containing class name and member values
+     */
+    @Override
+    public String toString() {
+
+        return Tools.toString(this);
+    }
+}
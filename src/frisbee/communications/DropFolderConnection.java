@@ -0,0 +1,491 @@
+package frisbee.communications;
+
+import frisbee.configuration.Keywords;
+import frisbee.exceptions.LoggedException;
+import frisbee.messaging.Message;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code DropFolderConnection} class routes the records of the files dropped into a directory through the message definitions using it as an input
+ * <p>
+ * The directory at {@value frisbee.configuration.Keywords#FILE_PATH} is watched with a {@link java.nio.file.WatchService}, after a scan picking
+ * up the files already there, so a backlog left by an outage is processed as it is streamed from the directory, never listed at once. Files whose
+ * name matches the {@value frisbee.configuration.Keywords#DROP_GLOB} glob, every file by default, are picked up, except hidden ones. A file must be
+ * complete once it appears in the directory, partners writing it elsewhere, or under a hidden name, then renaming it.
+ * <p>
+ * Every file is claimed by atomically renaming it into the {@value frisbee.configuration.Keywords#DROP_PROCESSING} directory, so a file is
+ * processed once even when found by both the scan and the watch service, or by several instances sharing the directory with processing
+ * directories of their own. A claimed file is given a unique name, its name followed by {@value #CLAIM_SUFFIX} and a sequence number,
+ * so a file dropped again under the same name while the first one is processed does not replace it. Claimed files are processed on the workers of the {@link DropFolderConnector}, at most four per worker being
+ * queued at once, the listener waiting for the workers to catch up. Their records are cut into frames as configured on the message inputs and
+ * dispatched in file order, then the file is moved to the {@value frisbee.configuration.Keywords#DROP_DONE} directory, or to the
+ * {@value frisbee.configuration.Keywords#DROP_ERROR} directory when it cannot be read or a record fails, the records before it having been
+ * dispatched. The three directories are subdirectories of the watched one by default, and must be on the same file system.
+ * A file keeps its name when moved out of the processing directory, unless a file of that name is there already, it then keeps its claimed name.
+ * <p>
+ * Files left in the processing directory by a stopped instance are returned to the watched directory when the connection opens.
+ * <p>
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public class DropFolderConnection extends Connection {
+
+    /**
+     * Default name of the subdirectory the claimed files are moved to
+     */
+    public static final String DEFAULT_PROCESSING_DIRECTORY = ".processing";
+
+    /**
+     * Default name of the subdirectory the processed files are moved to
+     */
+    public static final String DEFAULT_DONE_DIRECTORY = "done";
+
+    /**
+     * Default name of the subdirectory the failed files are moved to
+     */
+    public static final String DEFAULT_ERROR_DIRECTORY = "error";
+
+    /**
+     * Separates the name of a claimed file from its claim sequence number
+     */
+    public static final String CLAIM_SUFFIX = ".claimed-";
+
+    /**
+     * Number of claimed files queued per worker, beyond which the listener waits
+     */
+    private static final int QUEUED_PER_WORKER = 4;
+
+    /**
+     * The watched directory
+     */
+    private Path directory;
+
+    /**
+     * The directory the claimed files are moved to
+     */
+    private Path processing;
+
+    /**
+     * The directory the processed files are moved to
+     */
+    private Path done;
+
+    /**
+     * The directory the failed files are moved to
+     */
+    private Path error;
+
+    /**
+     * Matches the names of the files picked up
+     */
+    private PathMatcher matcher;
+
+    /**
+     * The watch service, null while closed
+     */
+    private volatile WatchService watcher;
+
+    /**
+     * The workers processing the claimed files
+     */
+    private ExecutorService workers;
+
+    /**
+     * Bounds the number of claimed files waiting for or being processed
+     */
+    private Semaphore queued;
+
+    /**
+     * Whether a listener is watching the directory
+     */
+    private volatile boolean listening;
+
+    /**
+     * Guards the pause state, waited on by the listener and the workers while paused
+     */
+    private final Object pauseLock = new Object();
+
+    /**
+     * Whether processing is paused
+     */
+    private volatile boolean paused;
+
+    /**
+     * Numbers the claimed files
+     */
+    private final AtomicLong claims = new AtomicLong();
+
+    /**
+     * Serialises the moves out of the processing directory, so two files of the same name do not both take it
+     */
+    private final Object moveLock = new Object();
+
+    /**
+     * The number of files processed
+     */
+    private final LongAdder processed = new LongAdder();
+
+    /**
+     * The number of files moved to the error directory
+     */
+    private final LongAdder failed = new LongAdder();
+
+    /**
+     * The number of records dispatched
+     */
+    private final LongAdder records = new LongAdder();
+
+    /**
+     * Creates the directories, returns the files left in the processing directory and starts watching the directory
+     *
+     * @throws LoggedException when the path is not configured, the parent connector is not a {@link DropFolderConnector}
+     *                         or the directory cannot be watched
+     */
+    @Override
+    public synchronized void open() throws LoggedException {
+
+        if (this.watcher != null)
+            return;
+
+        Object path = Keywords.getArgument(this.getConnectionParameters(), Keywords.FILE_PATH);
+        if (path == null)
+            throw new LoggedException(new IllegalArgumentException("Connection " + this.getConnectionID() + " has no path"));
+        if (!(this.getParentConnector() instanceof DropFolderConnector))
+            throw new LoggedException(new IllegalStateException("Connection " + this.getConnectionID() + " needs a drop folder connector"));
+
+        this.setConnectionState(ConnectionState.OPENING);
+        try {
+            this.directory = Paths.get(path.toString().trim());
+            this.processing = this.subdirectory(Keywords.DROP_PROCESSING, DEFAULT_PROCESSING_DIRECTORY);
+            this.done = this.subdirectory(Keywords.DROP_DONE, DEFAULT_DONE_DIRECTORY);
+            this.error = this.subdirectory(Keywords.DROP_ERROR, DEFAULT_ERROR_DIRECTORY);
+
+            Object glob = Keywords.getArgument(this.getConnectionParameters(), Keywords.DROP_GLOB);
+            this.matcher = this.directory.getFileSystem().getPathMatcher("glob:" + (glob == null ? "*" : glob.toString().trim()));
+
+            DropFolderConnector connector = (DropFolderConnector) this.getParentConnector();
+            this.workers = connector.getWorkers();
+            this.queued = new Semaphore(QUEUED_PER_WORKER * connector.getWorkerCount());
+
+            try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(this.processing)) {
+                for (Path leftover : leftovers)
+                    this.moveOut(leftover, this.directory);
+            }
+
+            //registered before the backlog is scanned, so files dropped meanwhile are not missed
+            WatchService watcher = this.directory.getFileSystem().newWatchService();
+            this.directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE);
+            this.watcher = watcher;
+        } catch (IOException | RuntimeException e) {
+            this.setConnectionState(ConnectionState.ERROR);
+            throw new LoggedException(e);
+        }
+        this.setConnectionState(ConnectionState.OPEN);
+    }
+
+    /**
+     * Resolves and creates a directory files are moved to
+     *
+     * @param keyword     the parameter holding the directory
+     * @param defaultName the name of the subdirectory of the watched directory used by default
+     * @return the directory
+     * @throws IOException on failure to create the directory
+     */
+    private Path subdirectory(String keyword, String defaultName) throws IOException {
+        Object path = Keywords.getArgument(this.getConnectionParameters(), keyword);
+        return Files.createDirectories(path == null ? this.directory.resolve(defaultName) : Paths.get(path.toString().trim()));
+    }
+
+    /**
+     * Stops watching the directory, the files claimed being processed all the same
+     *
+     * @throws LoggedException on failure to close the watch service
+     */
+    @Override
+    public synchronized void close() throws LoggedException {
+
+        if (this.watcher == null)
+            return;
+
+        this.setConnectionState(ConnectionState.CLOSING);
+        try {
+            this.watcher.close();
+        } catch (IOException e) {
+            throw new LoggedException(e);
+        } finally {
+            this.watcher = null;
+            this.setConnectionState(ConnectionState.CLOSED);
+        }
+    }
+
+    /**
+     * Pauses processing, the listener stops claiming files and the workers stop before their next record
+     */
+    @Override
+    public void pause() throws LoggedException {
+        this.paused = true;
+    }
+
+    /**
+     * Resumes processing
+     */
+    @Override
+    public void resume() throws LoggedException {
+        synchronized (this.pauseLock) {
+            this.paused = false;
+            this.pauseLock.notifyAll();
+        }
+    }
+
+    /**
+     * Stops and restarts watching the directory, starting a new listener when the connection was listening
+     *
+     * @throws LoggedException on failure to watch the directory again
+     */
+    @Override
+    public void reset() throws LoggedException {
+        boolean listening = this.listening;
+        this.setConnectionState(ConnectionState.RESETTING);
+        this.close();
+        this.open();
+        if (listening)
+            this.getThreadMode().newThread(this, "frisbee-listener-" + this.getConnectionID()).start();
+    }
+
+    /**
+     * Records are dispatched by the workers, never polled
+     *
+     * @return null
+     */
+    @Override
+    protected Message readMessage() throws LoggedException {
+        return null;
+    }
+
+    /**
+     * The connection is an input only
+     *
+     * @throws LoggedException always
+     */
+    @Override
+    protected void writeMessage(Message message) throws LoggedException {
+        throw new LoggedException(new UnsupportedOperationException("Connection " + this.getConnectionID() + " is an input"));
+    }
+
+    /**
+     * Opens the connection, picks up the files already in the directory, then the files dropped into it until it is closed
+     *
+     * @see java.lang.Runnable#run()
+     */
+    @Override
+    public void run() {
+
+        WatchService watcher;
+        try {
+            this.open();
+            watcher = this.watcher;
+            if (this.newFrameDecoder() == null || this.getRoutes().getFrameLayout() == null)
+                throw new LoggedException(new IllegalStateException("Connection " + this.getConnectionID() + " has no fixed-width input framing"));
+        } catch (LoggedException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        this.listening = true;
+        try {
+            this.scan(watcher);
+            while (true) {
+                WatchKey key = watcher.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+                        this.scan(watcher);
+                    else
+                        this.submit((Path) event.context());
+                }
+                if (!key.reset())
+                    break;
+            }
+        } catch (ClosedWatchServiceException e) {
+            //closed while listening
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RejectedExecutionException e) {
+            e.printStackTrace();
+            this.setConnectionState(ConnectionState.ERROR);
+        } finally {
+            this.listening = false;
+        }
+    }
+
+    /**
+     * Picks up the files in the directory, streaming its entries, until the connection is closed
+     *
+     * @param watcher the watch service of the listener
+     * @throws IOException          on failure to read the directory
+     * @throws InterruptedException when interrupted while waiting for the workers
+     */
+    private void scan(WatchService watcher) throws IOException, InterruptedException {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(this.directory)) {
+            for (Path entry : entries) {
+                if (this.watcher != watcher)
+                    return;
+                this.submit(entry.getFileName());
+            }
+        }
+    }
+
+    /**
+     * Hands a file over to the workers, waiting while paused or while too many files are queued
+     *
+     * @param name the name of the file in the directory
+     * @throws InterruptedException       when interrupted while waiting
+     * @throws RejectedExecutionException when the workers of the connector are shut down
+     */
+    private void submit(Path name) throws InterruptedException {
+
+        Path file = this.directory.resolve(name);
+        if (name.toString().startsWith(".") || !this.matcher.matches(name) || !Files.isRegularFile(file))
+            return;
+
+        if (this.paused)
+            this.awaitResume();
+        this.queued.acquire();
+        try {
+            this.workers.execute(() -> {
+                try {
+                    this.process(file);
+                } finally {
+                    this.queued.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            this.queued.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Claims a file, dispatches its records and moves it to the done or error directory, on a worker
+     *
+     * @param file the file in the directory
+     */
+    private void process(Path file) {
+
+        Path claimed = this.processing.resolve(file.getFileName() + CLAIM_SUFFIX + this.claims.incrementAndGet());
+        try {
+            Files.move(file, claimed, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            //claimed already
+            return;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        long receivedTimestamp = System.currentTimeMillis();
+        try {
+            FrameDecoder decoder = this.newFrameDecoder();
+            FrameDecoder.FrameHandler handler = frame -> {
+                if (this.paused || this.isBackpressured())
+                    this.awaitResume();
+                this.dispatch(this.newPayload(this.wrapFrame(frame)), receivedTimestamp);
+                this.records.increment();
+            };
+
+            decoder.feed(ByteBuffer.wrap(Files.readAllBytes(claimed)), handler);
+            decoder.finish(handler);
+
+            this.moveOut(claimed, this.done);
+            this.processed.increment();
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            this.failed.increment();
+            try {
+                this.moveOut(claimed, this.error);
+            } catch (IOException moveFailure) {
+                moveFailure.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Moves a claimed file out of the processing directory under its original name, or under its claimed name when a file of that name is there already
+     *
+     * @param claimed   the file in the processing directory
+     * @param directory the directory the file is moved to
+     * @throws IOException on failure to move the file
+     */
+    private void moveOut(Path claimed, Path directory) throws IOException {
+        String name = claimed.getFileName().toString();
+        int suffix = name.lastIndexOf(CLAIM_SUFFIX);
+        Path target = directory.resolve(suffix < 0 ? name : name.substring(0, suffix));
+
+        synchronized (this.moveLock) {
+            if (Files.exists(target))
+                target = directory.resolve(name);
+            Files.move(claimed, target, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /**
+     * Waits until processing is resumed and no output backlog applies backpressure
+     */
+    private void awaitResume() {
+        synchronized (this.pauseLock) {
+            try {
+                while (this.paused)
+                    this.pauseLock.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        this.awaitBackpressureRelease();
+    }
+
+    /**
+     * Returns the number of files processed and moved to the done directory
+     *
+     * @return the file count
+     */
+    public long getProcessedCount() {
+        return this.processed.sum();
+    }
+
+    /**
+     * Returns the number of files moved to the error directory
+     *
+     * @return the file count
+     */
+    public long getFailedCount() {
+        return this.failed.sum();
+    }
+
+    /**
+     * Returns the number of records dispatched
+     *
+     * @return the record count
+     */
+    public long getRecordCount() {
+        return this.records.sum();
+    }
+}
@@ -0,0 +1,107 @@
+package frisbee.communications;
+
+import frisbee.configuration.Keywords;
+import frisbee.exceptions.LoggedException;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The {@code DropFolderConnector} class processes the files dropped into the directories watched by its
+ * {@link frisbee.communications.DropFolderConnection connections} on a shared pool of worker threads
+ * <p>
+ * The number of workers is set by the {@value frisbee.configuration.Keywords#DROP_WORKERS} parameter, one per available processor by default,
+ * and bounds the number of files processed at once whatever the number of directories watched.
+ * <p>
+ * The workers are started by {@link #connect()}, or by the first connection needing them.
+ * <p>
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public class DropFolderConnector extends Connector {
+
+    /**
+     * The worker threads, null while disconnected
+     */
+    private ExecutorService workers;
+
+    /**
+     * The number of worker threads
+     */
+    private int workerCount;
+
+    /**
+     * Starts the workers and opens every connection
+     *
+     * @throws LoggedException on failure to open a connection
+     */
+    @Override
+    public void connect() throws LoggedException {
+        this.getWorkers();
+        for (Connection connection : this.getConnections().values())
+            connection.open();
+    }
+
+    /**
+     * Closes every connection, then stops the workers once the files being processed are done
+     *
+     * @throws LoggedException on failure to close a connection
+     */
+    @Override
+    public void disconnect() throws LoggedException {
+
+        for (Connection connection : this.getConnections().values())
+            connection.close();
+
+        ExecutorService workers;
+        synchronized (this) {
+            workers = this.workers;
+            this.workers = null;
+        }
+        if (workers == null)
+            return;
+
+        workers.shutdown();
+        try {
+            workers.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the worker threads, starting them when needed
+     *
+     * @return the workers
+     */
+    synchronized ExecutorService getWorkers() {
+
+        if (this.workers != null)
+            return this.workers;
+
+        Object count = Keywords.getArgument(this.getConnectorParameters(), Keywords.DROP_WORKERS);
+        this.workerCount = count == null ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(count.toString().trim());
+        if (this.workerCount <= 0)
+            throw new IllegalArgumentException("Worker count must be positive, not " + this.workerCount);
+
+        AtomicInteger index = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(this.workerCount, task -> {
+            Thread thread = new Thread(task, "frisbee-drop-" + this.getConnectorID() + "-" + index.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        return this.workers;
+    }
+
+    /**
+     * Returns the number of worker threads
+     *
+     * @return the worker count, 0 while disconnected
+     */
+    public synchronized int getWorkerCount() {
+        return this.workers == null ? 0 : this.workerCount;
+    }
+}
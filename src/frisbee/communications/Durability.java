@@ -0,0 +1,41 @@
+package frisbee.communications;
+
+/**
+ * Durability levels of the {@link frisbee.communications.MappedFileOutputConnection file output connection}
+ * <li>{@link #NONE}</li>
+ * <li>{@link #PERIODIC}</li>
+ * <li>{@link #GROUP}</li>
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public enum Durability {
+
+    /**
+     * Frames are left to the operating system to write back, a crash of the host may lose them
+     */
+    NONE,
+
+    /**
+     * Frames are forced to the storage device at a fixed interval, a crash of the host loses at most the last interval
+     */
+    PERIODIC,
+
+    /**
+     * Writers return once their frames are forced to the storage device, one force covering every writer waiting for it,
+     * the first writer waiting forcing at once, or once the writers copying frames meanwhile joined it
+     */
+    GROUP;
+
+    /**
+     * Returns the durability matching a configuration value
+     *
+     * @param value the configured value, may be null
+     * @return the durability, {@link #NONE} when not configured
+     */
+    public static Durability fromConfiguration(Object value) {
+        if (value == null || value.toString().trim().isEmpty())
+            return NONE;
+        return Durability.valueOf(value.toString().trim().toUpperCase());
+    }
+}
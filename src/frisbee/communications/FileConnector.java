@@ -0,0 +1,37 @@
+package frisbee.communications;
+
+import frisbee.exceptions.LoggedException;
+
+/**
+ * The {@code FileConnector} class groups the file {@link frisbee.communications.Connection connections} of a frisbee instance
+ * <p>
+ * Files need no shared link, connecting opens every connection and disconnecting closes them.
+ * <p>
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public class FileConnector extends Connector {
+
+    /**
+     * Opens every connection
+     *
+     * @throws LoggedException on failure to open a connection
+     */
+    @Override
+    public void connect() throws LoggedException {
+        for (Connection connection : this.getConnections().values())
+            connection.open();
+    }
+
+    /**
+     * Closes every connection
+     *
+     * @throws LoggedException on failure to close a connection
+     */
+    @Override
+    public void disconnect() throws LoggedException {
+        for (Connection connection : this.getConnections().values())
+            connection.close();
+    }
+}
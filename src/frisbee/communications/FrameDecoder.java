@@ -0,0 +1,619 @@
+package frisbee.communications;
+
+import frisbee.configuration.Keywords;
+import frisbee.messaging.FrameLayout;
+import frisbee.tools.Tools;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * The {@code FrameDecoder} class cuts the byte stream read by an input {@link frisbee.communications.Connection connection} into frames
+ * <p>
+ * Frames are either delimited, ending with the {@link frisbee.configuration.Keywords#INPUT_ETX etx} marker, or the
+ * {@link frisbee.configuration.Keywords#INPUT_DELIM delim} marker when no etx is configured, and optionally starting with the
+ * {@link frisbee.configuration.Keywords#INPUT_STX stx} marker, or have a fixed length when no end marker is configured.
+ * Markers are not part of the frames, bytes outside an stx and etx pair are skipped, and empty frames are dropped.
+ * <p>
+ * Chunks are fed as they are read, a frame may be split across chunks and a chunk may hold several frames. Frames lying within a chunk
+ * are handed over as views of the chunk, without copying, only the start of a split frame is copied until its end arrives.
+ * Markers are searched eight bytes at a time, by comparing whole words against the first marker byte.
+ * <p>
+ * A decoder keeps the state of a single stream and is not thread safe.
+ * <p>
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public final class FrameDecoder {
+
+    /**
+     * Default limit on the length of a frame, longer frames are dropped
+     */
+    public static final int DEFAULT_MAX_FRAME_LENGTH = 1 << 20;
+
+    /**
+     * Low seven bits of every byte of a word
+     */
+    private static final long LOW_BITS = 0x7f7f7f7f7f7f7f7fL;
+
+    /**
+     * Receives the decoded frames
+     */
+    @FunctionalInterface
+    public interface FrameHandler {
+
+        /**
+         * Handles a frame
+         *
+         * @param frame the frame, from its position to its limit, only valid during the call
+         */
+        void onFrame(ByteBuffer frame);
+    }
+
+    /**
+     * The marker starting a frame, null when frames start right after the previous one
+     */
+    private final byte[] start;
+
+    /**
+     * The marker ending a frame, null for fixed length frames
+     */
+    private final byte[] end;
+
+    /**
+     * The length of fixed length frames
+     */
+    private final int frameLength;
+
+    /**
+     * The longest frame accepted
+     */
+    private final int maxFrameLength;
+
+    /**
+     * The start of a frame split across chunks
+     */
+    private ByteBuffer pending;
+
+    /**
+     * Whether the decoder is within a frame, its start marker, if any, having been read
+     */
+    private boolean inFrame;
+
+    /**
+     * Whether the frame in progress is too long and is skipped up to its end marker
+     */
+    private boolean skipping;
+
+    /**
+     * The bytes at the end of the previous chunk which may be the start of a split marker
+     */
+    private final byte[] carry;
+
+    /**
+     * The number of carried bytes
+     */
+    private int carried;
+
+    /**
+     * The number of frames dropped for being too long
+     */
+    private long droppedFrames;
+
+    /**
+     * Creates a decoder of delimited frames
+     *
+     * @param start          the marker starting a frame, null or empty when none
+     * @param end            the marker ending a frame
+     * @param maxFrameLength the longest frame accepted
+     */
+    public FrameDecoder(byte[] start, byte[] end, int maxFrameLength) {
+        if (end == null || end.length == 0)
+            throw new IllegalArgumentException("A delimited frame needs an end marker");
+
+        this.start = start == null || start.length == 0 ? null : start.clone();
+        this.end = end.clone();
+        this.frameLength = 0;
+        this.maxFrameLength = maxFrameLength;
+        this.carry = new byte[Math.max(this.end.length, this.start == null ? 0 : this.start.length)];
+        this.inFrame = this.start == null;
+    }
+
+    /**
+     * Creates a decoder of fixed length frames
+     *
+     * @param frameLength the frame length
+     */
+    public FrameDecoder(int frameLength) {
+        if (frameLength <= 0)
+            throw new IllegalArgumentException("Frame length must be positive, not " + frameLength);
+
+        this.start = null;
+        this.end = null;
+        this.frameLength = frameLength;
+        this.maxFrameLength = frameLength;
+        this.carry = new byte[0];
+        this.inFrame = true;
+    }
+
+    /**
+     * Creates the decoder configured on a message input
+     * <p>
+     * Marker values starting with {@code 0x} are hexadecimal bytes, such as {@code 0x02} or {@code 0x0d0a}, others are ISO-8859-1 text.
+     * Without end marker, frames have the input {@link frisbee.configuration.Keywords#MSG_LENGTH length}, or the length of the frame layout.
+     *
+     * @param inputArgs the message input arguments
+     * @param layout    the layout of the input frames, may be null
+     * @return the decoder, null when neither an end marker nor a frame length is configured
+     */
+    public static FrameDecoder fromConfiguration(Map<String, Object> inputArgs, FrameLayout layout) {
+
+        byte[] start = marker(Keywords.getArgument(inputArgs, Keywords.INPUT_STX));
+        byte[] end = marker(Keywords.getArgument(inputArgs, Keywords.INPUT_ETX));
+        if (end == null)
+            end = marker(Keywords.getArgument(inputArgs, Keywords.INPUT_DELIM));
+
+        Object max = Keywords.getArgument(inputArgs, Keywords.INPUT_MAX_FRAME_LENGTH);
+        int maxFrameLength = max == null ? DEFAULT_MAX_FRAME_LENGTH : Integer.parseInt(max.toString().trim());
+
+        if (end != null)
+            return new FrameDecoder(start, end, maxFrameLength);
+
+        Object length = Keywords.getArgument(inputArgs, Keywords.MSG_LENGTH);
+        if (length != null)
+            return new FrameDecoder(Integer.parseInt(length.toString().trim()));
+        if (layout != null)
+            return new FrameDecoder(layout.getFrameLength());
+        return null;
+    }
+
+    /**
+     * Parses a configured marker
+     *
+     * @param value the configured value, may be null
+     * @return the marker bytes, null when not configured or empty
+     */
+    static byte[] marker(Object value) {
+        if (value == null || value.toString().isEmpty())
+            return null;
+
+        String text = value.toString();
+        if (!text.startsWith("0x") && !text.startsWith("0X"))
+            return text.getBytes(StandardCharsets.ISO_8859_1);
+
+        String hex = text.substring(2).trim();
+        if (hex.isEmpty() || hex.length() % 2 != 0)
+            throw new IllegalArgumentException("Invalid hexadecimal marker " + text);
+
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        return bytes;
+    }
+
+    /**
+     * Decodes a chunk of the stream, handing every completed frame over, and consumes the chunk
+     *
+     * @param chunk   the bytes read, from its position to its limit
+     * @param handler receives the completed frames
+     */
+    public void feed(ByteBuffer chunk, FrameHandler handler) {
+
+        int from = chunk.position();
+        int to = chunk.limit();
+        ByteBuffer view = chunk.duplicate();
+
+        if (this.end == null)
+            this.feedFixed(chunk, view, from, to, handler);
+        else
+            this.feedDelimited(chunk, view, from, to, handler);
+
+        chunk.position(to);
+    }
+
+    /**
+     * Ends the stream, handing over the delimited frame in progress, whose end marker never came
+     * <p>
+     * An incomplete fixed length frame is dropped. The decoder may then decode a new stream
+     *
+     * @param handler receives the last frame
+     */
+    public void finish(FrameHandler handler) {
+
+        if (this.end != null && this.inFrame) {
+            if (!this.skipping && this.carried > 0)
+                this.appendBytes(this.carry, this.carried);
+            if (this.skipping)
+                this.droppedFrames++;
+            else if (this.pending != null && this.pending.position() > 0)
+                this.emitPending(handler);
+        }
+
+        if (this.pending != null)
+            this.pending.clear();
+        this.carried = 0;
+        this.skipping = false;
+        this.inFrame = this.start == null;
+    }
+
+    /**
+     * Decodes fixed length frames
+     *
+     * @param chunk   the chunk, read by absolute position
+     * @param view    the reusable view of the chunk handed over with the frames lying within it
+     * @param from    the first byte to decode
+     * @param to      the byte following the last one to decode
+     * @param handler receives the completed frames
+     */
+    private void feedFixed(ByteBuffer chunk, ByteBuffer view, int from, int to, FrameHandler handler) {
+
+        if (this.pending != null && this.pending.position() > 0) {
+            int missing = Math.min(this.frameLength - this.pending.position(), to - from);
+            this.append(chunk, from, from + missing);
+            from += missing;
+            if (this.pending.position() < this.frameLength)
+                return;
+            this.emitPending(handler);
+        }
+
+        for (; to - from >= this.frameLength; from += this.frameLength)
+            emit(view, from, from + this.frameLength, handler);
+
+        this.append(chunk, from, to);
+    }
+
+    /**
+     * Decodes delimited frames
+     *
+     * @param chunk   the chunk, read by absolute position
+     * @param view    the reusable view of the chunk handed over with the frames lying within it
+     * @param from    the first byte to decode
+     * @param to      the byte following the last one to decode
+     * @param handler receives the completed frames
+     */
+    private void feedDelimited(ByteBuffer chunk, ByteBuffer view, int from, int to, FrameHandler handler) {
+
+        //a marker split between the previous chunk and this one, possibly continued by the whole chunk
+        if (this.carried > 0) {
+            byte[] marker = this.inFrame ? this.end : this.start;
+            int carried = this.carried;
+            int partial = -1;
+            boolean resolved = false;
+            this.carried = 0;
+
+            for (int k = 0; k < carried && !resolved; k++) {
+                int completed = completes(this.carry, k, carried, marker, chunk, from, to);
+                if (completed == 0 && partial < 0)
+                    partial = k;
+                if (completed <= 0)
+                    continue;
+
+                resolved = true;
+                from += completed;
+                if (this.inFrame) {
+                    //the carried bytes before the marker were frame content
+                    if (!this.skipping)
+                        this.appendBytes(this.carry, k);
+                    this.endFrame(handler);
+                } else {
+                    this.inFrame = true;
+                }
+            }
+
+            if (!resolved && partial >= 0) {
+                //the chunk is too short to tell, the carried bytes before the marker candidate were frame content
+                if (this.inFrame && !this.skipping)
+                    this.appendBytes(this.carry, partial);
+                System.arraycopy(this.carry, partial, this.carry, 0, carried - partial);
+                this.carried = carried - partial;
+                for (int i = from; i < to; i++)
+                    this.carry[this.carried++] = chunk.get(i);
+                return;
+            }
+
+            //the carried bytes were frame content after all
+            if (!resolved && this.inFrame && !this.skipping)
+                this.appendBytes(this.carry, carried);
+        }
+
+        while (from < to) {
+
+            if (!this.inFrame) {
+                int s = indexOf(chunk, from, to, this.start);
+                if (s < 0) {
+                    this.carryTail(chunk, Math.max(from, to - this.start.length + 1), to, this.start);
+                    return;
+                }
+                from = s + this.start.length;
+                this.inFrame = true;
+            }
+
+            int e = indexOf(chunk, from, to, this.end);
+            if (e < 0) {
+                int keep = this.carryTail(chunk, Math.max(from, to - this.end.length + 1), to, this.end);
+                if (!this.skipping)
+                    this.append(chunk, from, to - keep);
+                return;
+            }
+
+            if (this.pending != null && this.pending.position() > 0 || this.skipping) {
+                if (!this.skipping)
+                    this.append(chunk, from, e);
+                this.endFrame(handler);
+            } else {
+                if (e - from > this.maxFrameLength)
+                    this.droppedFrames++;
+                else
+                    emit(view, from, e, handler);
+                this.inFrame = this.start == null;
+            }
+            from = e + this.end.length;
+        }
+    }
+
+    /**
+     * Completes the frame in progress, handing it over unless too long
+     *
+     * @param handler receives the frame
+     */
+    private void endFrame(FrameHandler handler) {
+        if (this.skipping) {
+            this.skipping = false;
+            this.droppedFrames++;
+        } else if (this.pending != null && this.pending.position() > 0) {
+            this.emitPending(handler);
+        }
+        this.inFrame = this.start == null;
+    }
+
+    /**
+     * Keeps the end of a chunk which is a prefix of a marker, for the next chunk to complete
+     *
+     * @param chunk  the chunk
+     * @param from   the first byte which may start a split marker
+     * @param to     the end of the chunk
+     * @param marker the marker
+     * @return the number of bytes kept
+     */
+    private int carryTail(ByteBuffer chunk, int from, int to, byte[] marker) {
+        for (int i = from; i < to; i++) {
+            int length = to - i;
+            boolean prefix = true;
+            for (int j = 0; j < length && prefix; j++)
+                prefix = chunk.get(i + j) == marker[j];
+            if (prefix) {
+                for (int j = 0; j < length; j++)
+                    this.carry[j] = chunk.get(i + j);
+                this.carried = length;
+                return length;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Checks if carried bytes, followed by the start of a chunk, form a marker
+     *
+     * @param carry   the carried bytes
+     * @param first   the first carried byte which would start the marker
+     * @param carried the number of carried bytes
+     * @param marker  the marker
+     * @param chunk   the chunk
+     * @param from    the start of the chunk
+     * @param to      the end of the chunk
+     * @return the number of chunk bytes completing the marker, 0 when the whole chunk continues the marker without completing it,
+     * -1 when they do not form the marker
+     */
+    private static int completes(byte[] carry, int first, int carried, byte[] marker, ByteBuffer chunk, int from, int to) {
+        int prefix = carried - first;
+        int missing = marker.length - prefix;
+        if (missing <= 0)
+            return -1;
+        for (int j = 0; j < prefix; j++) {
+            if (carry[first + j] != marker[j])
+                return -1;
+        }
+        int available = Math.min(missing, to - from);
+        for (int j = 0; j < available; j++) {
+            if (chunk.get(from + j) != marker[prefix + j])
+                return -1;
+        }
+        return available < missing ? 0 : missing;
+    }
+
+    /**
+     * Copies bytes of a chunk to the frame in progress, skipping the frame once it grows too long
+     *
+     * @param chunk the chunk
+     * @param from  the first byte to copy
+     * @param to    the byte following the last one to copy
+     */
+    private void append(ByteBuffer chunk, int from, int to) {
+        if (from >= to)
+            return;
+
+        ByteBuffer buffer = this.reserve(to - from);
+        if (buffer == null)
+            return;
+        for (int i = from; i < to; i++)
+            buffer.put(chunk.get(i));
+    }
+
+    /**
+     * Copies bytes to the frame in progress, skipping the frame once it grows too long
+     *
+     * @param bytes  the bytes
+     * @param length the number of bytes to copy
+     */
+    private void appendBytes(byte[] bytes, int length) {
+        ByteBuffer buffer = this.reserve(length);
+        if (buffer != null)
+            buffer.put(bytes, 0, length);
+    }
+
+    /**
+     * Makes room in the frame in progress
+     *
+     * @param length the number of bytes to add
+     * @return the pending buffer, null when the frame is too long and is skipped from now on
+     */
+    private ByteBuffer reserve(int length) {
+
+        int size = this.pending == null ? 0 : this.pending.position();
+        if (size + length > this.maxFrameLength) {
+            if (this.pending != null)
+                this.pending.clear();
+            this.skipping = true;
+            return null;
+        }
+
+        if (this.pending == null || this.pending.remaining() < length) {
+            int capacity = Math.min(this.maxFrameLength, Math.max(size + length, Math.max(64, size * 2)));
+            ByteBuffer grown = ByteBuffer.allocate(capacity);
+            if (this.pending != null) {
+                this.pending.flip();
+                grown.put(this.pending);
+            }
+            this.pending = grown;
+        }
+        return this.pending;
+    }
+
+    /**
+     * Hands the frame in progress over and clears it
+     *
+     * @param handler receives the frame
+     */
+    private void emitPending(FrameHandler handler) {
+        this.pending.flip();
+        try {
+            handler.onFrame(this.pending);
+        } finally {
+            this.pending.clear();
+        }
+    }
+
+    /**
+     * Hands a frame lying within a chunk over, as a view of the chunk
+     *
+     * @param view    the reusable view of the chunk
+     * @param from    the first byte of the frame
+     * @param to      the byte following the last one of the frame
+     * @param handler receives the frame
+     */
+    private static void emit(ByteBuffer view, int from, int to, FrameHandler handler) {
+        if (from == to)
+            return;
+        view.limit(to);
+        view.position(from);
+        handler.onFrame(view);
+        view.limit(view.capacity());
+    }
+
+    /**
+     * Finds the first occurrence of a marker
+     *
+     * @param buffer the bytes to search
+     * @param from   the first byte to search
+     * @param to     the byte following the last one to search
+     * @param marker the marker
+     * @return the position of the marker, -1 when not found
+     */
+    static int indexOf(ByteBuffer buffer, int from, int to, byte[] marker) {
+
+        int last = to - marker.length;
+        while (from <= last) {
+            int candidate = indexOf(buffer, from, last + 1, marker[0]);
+            if (candidate < 0)
+                return -1;
+
+            boolean found = true;
+            for (int j = 1; j < marker.length && found; j++)
+                found = buffer.get(candidate + j) == marker[j];
+            if (found)
+                return candidate;
+            from = candidate + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the first occurrence of a byte, eight bytes at a time
+     * <p>
+     * Every word is xored with the byte repeated eight times, turning matching bytes into zeros, which are then flagged without false positives
+     *
+     * @param buffer the bytes to search
+     * @param from   the first byte to search
+     * @param to     the byte following the last one to search
+     * @param b      the byte
+     * @return the position of the byte, -1 when not found
+     */
+    static int indexOf(ByteBuffer buffer, int from, int to, byte b) {
+
+        long pattern = (b & 0xffL) * 0x0101010101010101L;
+        boolean bigEndian = buffer.order() == ByteOrder.BIG_ENDIAN;
+
+        for (; from + Long.BYTES <= to; from += Long.BYTES) {
+            long word = buffer.getLong(from) ^ pattern;
+            long zeros = ~(((word & LOW_BITS) + LOW_BITS) | word | LOW_BITS);
+            if (zeros != 0)
+                return from + ((bigEndian ? Long.numberOfLeadingZeros(zeros) : Long.numberOfTrailingZeros(zeros)) >>> 3);
+        }
+
+        for (; from < to; from++) {
+            if (buffer.get(from) == b)
+                return from;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the marker ending a frame
+     *
+     * @return the marker, null for fixed length frames
+     */
+    byte[] getEndMarker() {
+        return end;
+    }
+
+    /**
+     * Returns the length of fixed length frames
+     *
+     * @return the frame length, 0 for delimited frames
+     */
+    int getFrameLength() {
+        return frameLength;
+    }
+
+    /**
+     * Returns the longest frame accepted
+     *
+     * @return the maximum frame length
+     */
+    int getMaxFrameLength() {
+        return maxFrameLength;
+    }
+
+    /**
+     * Returns the number of frames dropped for being longer than the limit
+     *
+     * @return the dropped frame count
+     */
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    /**
+     * Method returning a string representation
+     *
+     * @return string containing class name and member values
+     */
+    @Override
+    public String toString() {
+
+        return Tools.toString(this);
+    }
+}
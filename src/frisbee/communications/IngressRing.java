@@ -0,0 +1,298 @@
+package frisbee.communications;
+
+import frisbee.tools.Tools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The {@code IngressRing} class is a bounded, preallocated ring buffer between a {@link frisbee.communications.Connection connection} listener and the processing of its payloads
+ * <p>
+ * The listener thread is the single producer and publishes without any atomic read-modify-write.
+ * One or more consumer threads claim slots with a compare-and-set and hand the payloads to {@link frisbee.communications.Connection#dispatch(Object, long)}.
+ * Every slot carries a sequence number telling whether it holds a published payload or has been consumed, so neither side takes a lock.
+ * <p>
+ * With more than one consumer, payloads are processed concurrently and may complete out of order
+ * <p>
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public final class IngressRing {
+
+    /**
+     * Number of milliseconds a blocked thread waits before checking the ring again
+     */
+    private static final long BLOCKING_TIMEOUT_MILLIS = 1;
+
+    /**
+     * The connection whose payloads are processed
+     */
+    private final Connection connection;
+
+    /**
+     * The number of slots minus one, the ring size is a power of two
+     */
+    private final int mask;
+
+    /**
+     * The payload held by every slot
+     */
+    private final Object[] payloads;
+
+    /**
+     * The reception timestamp held by every slot
+     */
+    private final long[] timestamps;
+
+    /**
+     * For every slot, the sequence it can be published at, or that sequence plus one once published
+     */
+    private final AtomicLongArray sequences;
+
+    /**
+     * The next sequence to claim by the consumers
+     */
+    private final AtomicLong consumerSequence = new AtomicLong();
+
+    /**
+     * The next sequence to publish, only accessed by the producer
+     */
+    private long producerSequence;
+
+    /**
+     * How threads wait when the ring is empty or full
+     */
+    private final WaitStrategy waitStrategy;
+
+    /**
+     * Lock used by the {@link WaitStrategy#BLOCKING} strategy
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Signalled when a payload is published, used by the {@link WaitStrategy#BLOCKING} strategy
+     */
+    private final Condition published = lock.newCondition();
+
+    /**
+     * Signalled when a slot is consumed, used by the {@link WaitStrategy#BLOCKING} strategy
+     */
+    private final Condition consumed = lock.newCondition();
+
+    /**
+     * The number of threads blocked on the lock
+     */
+    private volatile int blockedThreads;
+
+    /**
+     * The consumer threads
+     */
+    private final List<Thread> consumers = new ArrayList<>();
+
+    /**
+     * Whether the ring accepts and processes payloads
+     */
+    private volatile boolean running = true;
+
+    /**
+     * Creates a ring and starts its consumers
+     *
+     * @param connection   the connection whose payloads are processed
+     * @param size         the minimum number of slots, rounded up to a power of two
+     * @param consumers    the number of consumer threads
+     * @param waitStrategy how threads wait when the ring is empty or full
+     */
+    public IngressRing(Connection connection, int size, int consumers, WaitStrategy waitStrategy) {
+
+        int capacity = size <= 2 ? 2 : Integer.highestOneBit(size - 1) << 1;
+
+        this.connection = connection;
+        this.mask = capacity - 1;
+        this.payloads = new Object[capacity];
+        this.timestamps = new long[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        this.waitStrategy = waitStrategy;
+
+        for (int i = 0; i < capacity; i++)
+            this.sequences.set(i, i);
+
+        for (int i = 0; i < Math.max(1, consumers); i++) {
+            Thread consumer = new Thread(this::consume, "frisbee-ingress-" + connection.getConnectionID() + "-" + i);
+            consumer.setDaemon(true);
+            this.consumers.add(consumer);
+            consumer.start();
+        }
+    }
+
+    /**
+     * Publishes a payload, waiting for a free slot when the ring is full
+     * <p>
+     * Must only be called by a single producer thread at a time
+     *
+     * @param payload           the payload received
+     * @param receivedTimestamp the payload reception timestamp
+     * @return false when the ring was halted before the payload could be published
+     */
+    public boolean publish(Object payload, long receivedTimestamp) {
+
+        long sequence = this.producerSequence;
+        int index = (int) sequence & this.mask;
+
+        int attempt = 0;
+        while (this.sequences.get(index) != sequence) {
+            if (!this.running)
+                return false;
+            this.await(this.consumed, attempt++);
+        }
+
+        this.payloads[index] = payload;
+        this.timestamps[index] = receivedTimestamp;
+        this.sequences.lazySet(index, sequence + 1);
+        this.producerSequence = sequence + 1;
+
+        this.signal(this.published);
+        return true;
+    }
+
+    /**
+     * Consumer loop, claims published slots and processes their payloads until the ring is halted and drained
+     */
+    private void consume() {
+
+        int attempt = 0;
+
+        while (true) {
+
+            long sequence = this.consumerSequence.get();
+            int index = (int) sequence & this.mask;
+            long available = this.sequences.get(index);
+
+            if (available == sequence + 1) {
+
+                if (!this.consumerSequence.compareAndSet(sequence, sequence + 1))
+                    continue;
+
+                Object payload = this.payloads[index];
+                long receivedTimestamp = this.timestamps[index];
+                this.payloads[index] = null;
+
+                //hand the slot back to the producer for its next lap
+                this.sequences.lazySet(index, sequence + this.mask + 1);
+                this.signal(this.consumed);
+
+                attempt = 0;
+                try {
+                    this.connection.dispatch(payload, receivedTimestamp);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+
+            } else if (available < sequence + 1) {
+
+                //the ring is empty
+                if (!this.running)
+                    return;
+                this.await(this.published, attempt++);
+            }
+        }
+    }
+
+    /**
+     * Waits once using the configured wait strategy
+     *
+     * @param condition the condition signalled when progress can be made, used when blocking
+     * @param attempt   the number of unsuccessful attempts so far
+     */
+    private void await(Condition condition, int attempt) {
+
+        if (this.waitStrategy != WaitStrategy.BLOCKING || attempt < 100) {
+            this.waitStrategy.idle(attempt);
+            return;
+        }
+
+        this.lock.lock();
+        try {
+            this.blockedThreads++;
+            condition.await(BLOCKING_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            this.blockedThreads--;
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Wakes up the threads blocked on a condition, only takes the lock when a thread is actually blocked
+     *
+     * @param condition the condition to signal
+     */
+    private void signal(Condition condition) {
+
+        if (this.blockedThreads == 0)
+            return;
+
+        this.lock.lock();
+        try {
+            condition.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Stops accepting payloads and waits for the consumers to drain the ring
+     *
+     * @param timeoutMillis the maximum time to wait for every consumer
+     */
+    public void halt(long timeoutMillis) {
+
+        this.running = false;
+
+        for (Thread consumer : this.consumers) {
+            try {
+                consumer.join(timeoutMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of payloads published and not yet claimed by a consumer
+     * <p>
+     * The value is approximate when read from another thread than the producer
+     *
+     * @return the ring depth
+     */
+    public long getDepth() {
+        return Math.max(0, this.producerSequence - this.consumerSequence.get());
+    }
+
+    /**
+     * Returns the number of slots of the ring
+     *
+     * @return the ring capacity
+     */
+    public int getCapacity() {
+        return this.mask + 1;
+    }
+
+    /**
+     * Method returning a string representation
+     *
+     * @return string containing class name and member values
+     */
+    @Override
+    public String toString() {
+
+        return Tools.toString(this);
+    }
+}
@@ -0,0 +1,549 @@
+package frisbee.communications;
+
+import frisbee.configuration.Keywords;
+import frisbee.exceptions.LoggedException;
+import frisbee.messaging.Message;
+import frisbee.messaging.SlotPayload;
+import frisbee.tools.Tools;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code MappedFileConnection} class routes the records of a bulk file through the message definitions using it as an input
+ * <p>
+ * The file at {@value frisbee.configuration.Keywords#FILE_PATH} is split into segments of about {@value frisbee.configuration.Keywords#FILE_SEGMENT_SIZE}
+ * bytes, {@value #DEFAULT_SEGMENT_SIZE} by default, every segment ending on a record boundary: a multiple of the frame length for fixed length
+ * frames, right after an end marker for delimited frames, as configured on the message inputs of the connection.
+ * <p>
+ * Segments are memory-mapped and decoded in parallel on a fork-join pool of {@value frisbee.configuration.Keywords#FILE_PARALLELISM} threads,
+ * one per processor by default. Every worker reads the records of its segment in place and dispatches them itself, in file order, bypassing the
+ * ingress ring. Records of different segments are processed concurrently, every payload carries the segment index and the record sequence in the
+ * segment as its {@link frisbee.messaging.SlotPayload#getReceivedOrder() received order}, passed on to its messages, so the file order can be
+ * restored downstream.
+ * <p>
+ * The listener thread of the connection scans the file once, then closes the connection. The record and byte counts and the throughput of the scan
+ * are kept afterwards.
+ * <p>
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public class MappedFileConnection extends Connection {
+
+    /**
+     * Default number of bytes per segment
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 32 << 20;
+
+    /**
+     * Largest number of bytes per segment, leaving room for the record crossing the segment end
+     */
+    private static final int MAX_SEGMENT_SIZE = 1 << 30;
+
+    /**
+     * Size of the window read while looking for a record boundary
+     */
+    private static final int BOUNDARY_WINDOW = 64 * 1024;
+
+    /**
+     * The file, null while closed
+     */
+    private FileChannel channel;
+
+    /**
+     * Guards the pause state, waited on by the workers while paused
+     */
+    private final Object pauseLock = new Object();
+
+    /**
+     * Whether the scan is paused
+     */
+    private volatile boolean paused;
+
+    /**
+     * The segments of the last scan
+     */
+    private volatile List<Segment> segments = Collections.emptyList();
+
+    /**
+     * The number of records dispatched by the last scan
+     */
+    private final LongAdder records = new LongAdder();
+
+    /**
+     * The number of bytes scanned by the last scan
+     */
+    private volatile long bytes;
+
+    /**
+     * The duration of the last scan in nanoseconds
+     */
+    private volatile long elapsedNanos;
+
+    /**
+     * Opens the file
+     *
+     * @throws LoggedException when the path is not configured or the file cannot be opened
+     */
+    @Override
+    public synchronized void open() throws LoggedException {
+
+        if (this.channel != null)
+            return;
+
+        Object path = Keywords.getArgument(this.getConnectionParameters(), Keywords.FILE_PATH);
+        if (path == null)
+            throw new LoggedException(new IllegalArgumentException("Connection " + this.getConnectionID() + " has no path"));
+
+        this.setConnectionState(ConnectionState.OPENING);
+        try {
+            this.channel = FileChannel.open(Paths.get(path.toString().trim()), StandardOpenOption.READ);
+        } catch (IOException | RuntimeException e) {
+            this.setConnectionState(ConnectionState.ERROR);
+            throw new LoggedException(e);
+        }
+        this.setConnectionState(ConnectionState.OPEN);
+    }
+
+    /**
+     * Closes the file
+     *
+     * @throws LoggedException on failure to close the file
+     */
+    @Override
+    public synchronized void close() throws LoggedException {
+
+        if (this.channel == null)
+            return;
+
+        this.setConnectionState(ConnectionState.CLOSING);
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            throw new LoggedException(e);
+        } finally {
+            this.channel = null;
+            this.setConnectionState(ConnectionState.CLOSED);
+        }
+    }
+
+    /**
+     * Pauses the scan, workers stop before their next record
+     */
+    @Override
+    public void pause() throws LoggedException {
+        this.paused = true;
+    }
+
+    /**
+     * Resumes the scan
+     */
+    @Override
+    public void resume() throws LoggedException {
+        synchronized (this.pauseLock) {
+            this.paused = false;
+            this.pauseLock.notifyAll();
+        }
+    }
+
+    /**
+     * Closes and reopens the file
+     *
+     * @throws LoggedException on failure to reopen the file
+     */
+    @Override
+    public void reset() throws LoggedException {
+        this.setConnectionState(ConnectionState.RESETTING);
+        this.close();
+        this.open();
+    }
+
+    /**
+     * Records are dispatched by the scan, never polled
+     *
+     * @return null
+     */
+    @Override
+    protected Message readMessage() throws LoggedException {
+        return null;
+    }
+
+    /**
+     * The connection is an input only
+     *
+     * @throws LoggedException always
+     */
+    @Override
+    protected void writeMessage(Message message) throws LoggedException {
+        throw new LoggedException(new UnsupportedOperationException("Connection " + this.getConnectionID() + " is an input"));
+    }
+
+    /**
+     * Opens the file, scans it and closes it
+     *
+     * @see java.lang.Runnable#run()
+     */
+    @Override
+    public void run() {
+        try {
+            this.open();
+            try {
+                this.scan();
+            } finally {
+                this.close();
+            }
+        } catch (LoggedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Splits the open file into segments and decodes them in parallel, returning once every record is dispatched
+     *
+     * @throws LoggedException when the connection is not open, its inputs have no fixed-width layout or framing, or the file cannot be read
+     */
+    public void scan() throws LoggedException {
+
+        FileChannel channel = this.channel;
+        FrameDecoder decoder = this.newFrameDecoder();
+        if (channel == null)
+            throw new LoggedException(new IllegalStateException("Connection " + this.getConnectionID() + " is not open"));
+        if (decoder == null || this.getRoutes().getFrameLayout() == null)
+            throw new LoggedException(new IllegalStateException("Connection " + this.getConnectionID() + " has no fixed-width input framing"));
+
+        Object segmentSize = Keywords.getArgument(this.getConnectionParameters(), Keywords.FILE_SEGMENT_SIZE);
+        Object parallelism = Keywords.getArgument(this.getConnectionParameters(), Keywords.FILE_PARALLELISM);
+
+        this.records.reset();
+        long start = System.nanoTime();
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism == null ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(parallelism.toString().trim()));
+        try {
+            long size = channel.size();
+            List<Segment> segments = this.split(channel, decoder, size,
+                    segmentSize == null ? DEFAULT_SEGMENT_SIZE : Math.min(MAX_SEGMENT_SIZE, Integer.parseInt(segmentSize.toString().trim())));
+
+            List<ForkJoinTask<?>> tasks = new ArrayList<>(segments.size());
+            for (Segment segment : segments)
+                tasks.add(pool.submit(() -> this.scan(channel, segment)));
+            for (ForkJoinTask<?> task : tasks)
+                task.join();
+
+            this.segments = Collections.unmodifiableList(segments);
+            this.bytes = size;
+        } catch (IOException | RuntimeException e) {
+            throw new LoggedException(e);
+        } finally {
+            pool.shutdown();
+            this.elapsedNanos = System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Splits a file into segments ending on record boundaries
+     *
+     * @param channel     the file
+     * @param decoder     the decoder configured for the file
+     * @param size        the file size
+     * @param segmentSize the target number of bytes per segment
+     * @return the segments, in file order
+     * @throws IOException on failure to read the file
+     */
+    private List<Segment> split(FileChannel channel, FrameDecoder decoder, long size, int segmentSize) throws IOException {
+
+        List<Segment> segments = new ArrayList<>();
+        byte[] marker = decoder.getEndMarker();
+        int frameLength = decoder.getFrameLength();
+        int step = marker == null ? Math.max(frameLength, segmentSize - segmentSize % frameLength) : Math.max(1, segmentSize);
+
+        ByteBuffer window = marker == null ? null : ByteBuffer.allocate(Math.max(BOUNDARY_WINDOW, marker.length));
+        long offset = 0;
+        while (offset < size) {
+            long end = offset + step;
+            if (end >= size)
+                end = size;
+            else if (marker != null)
+                end = nextBoundary(channel, window, end, Math.min(size, end + decoder.getMaxFrameLength() + marker.length), marker);
+
+            segments.add(new Segment(segments.size(), offset, (int) (end - offset)));
+            offset = end;
+        }
+        return segments;
+    }
+
+    /**
+     * Finds the first record boundary, right after an end marker
+     *
+     * @param channel the file
+     * @param window  the buffer the file is read into
+     * @param from    the first position searched
+     * @param to      the position where the search stops
+     * @param marker  the end marker
+     * @return the position following the first marker found, the stop position when none is found
+     * @throws IOException on failure to read the file
+     */
+    private static long nextBoundary(FileChannel channel, ByteBuffer window, long from, long to, byte[] marker) throws IOException {
+
+        while (from < to) {
+            window.clear();
+            window.limit((int) Math.min(window.capacity(), to - from));
+            int read = channel.read(window, from);
+            if (read <= 0)
+                return to;
+
+            int found = FrameDecoder.indexOf(window, 0, window.position(), marker);
+            if (found >= 0)
+                return from + found + marker.length;
+            if (from + read >= to)
+                return to;
+            from += Math.max(1, read - marker.length + 1);
+        }
+        return to;
+    }
+
+    /**
+     * Decodes the records of a segment and dispatches them, on a worker of the fork-join pool
+     *
+     * @param channel the file
+     * @param segment the segment
+     */
+    private void scan(FileChannel channel, Segment segment) {
+
+        MappedByteBuffer buffer;
+        try {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, segment.offset, segment.length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        long start = System.nanoTime();
+        long receivedTimestamp = System.currentTimeMillis();
+        FrameDecoder decoder = this.newFrameDecoder();
+        FrameDecoder.FrameHandler handler = frame -> {
+            if (this.paused || this.isBackpressured())
+                this.awaitResume();
+            SlotPayload payload = this.newPayload(this.wrapFrame(frame));
+            payload.setReceivedOrder(receivedOrder(segment.index, segment.records));
+            this.dispatch(payload, receivedTimestamp);
+            segment.records++;
+        };
+
+        decoder.feed(buffer, handler);
+        decoder.finish(handler);
+
+        this.records.add(segment.records);
+        segment.nanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Builds the received order key of a record, increasing in file order
+     *
+     * @param segmentIndex the index of the segment holding the record
+     * @param sequence     the sequence of the record in its segment, from 0
+     * @return the key, the segment index in the high 32 bits and the sequence in the low ones
+     */
+    public static long receivedOrder(int segmentIndex, long sequence) {
+        return (long) segmentIndex << 32 | sequence;
+    }
+
+    /**
+     * Returns the segment index of a received order key
+     *
+     * @param receivedOrder the key
+     * @return the index of the segment holding the record
+     */
+    public static int segmentIndex(long receivedOrder) {
+        return (int) (receivedOrder >>> 32);
+    }
+
+    /**
+     * Returns the record sequence of a received order key
+     *
+     * @param receivedOrder the key
+     * @return the sequence of the record in its segment
+     */
+    public static long recordSequence(long receivedOrder) {
+        return receivedOrder & 0xffffffffL;
+    }
+
+    /**
+     * Waits until the scan is resumed and no output backlog applies backpressure
+     */
+    private void awaitResume() {
+        synchronized (this.pauseLock) {
+            try {
+                while (this.paused)
+                    this.pauseLock.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        this.awaitBackpressureRelease();
+    }
+
+    /**
+     * Returns the segments of the last scan
+     *
+     * @return the segments, in file order
+     */
+    public List<Segment> getSegments() {
+        return segments;
+    }
+
+    /**
+     * Returns the number of records dispatched by the last scan
+     *
+     * @return the record count
+     */
+    public long getRecordCount() {
+        return this.records.sum();
+    }
+
+    /**
+     * Returns the number of bytes scanned by the last scan
+     *
+     * @return the byte count
+     */
+    public long getByteCount() {
+        return bytes;
+    }
+
+    /**
+     * Returns the duration of the last scan
+     *
+     * @return the duration in milliseconds
+     */
+    public long getElapsedMillis() {
+        return this.elapsedNanos / 1000000L;
+    }
+
+    /**
+     * Returns the throughput of the last scan in records
+     *
+     * @return the records dispatched per second
+     */
+    public double getRecordsPerSecond() {
+        return this.elapsedNanos == 0 ? 0 : this.getRecordCount() * 1e9 / this.elapsedNanos;
+    }
+
+    /**
+     * Returns the throughput of the last scan in bytes
+     *
+     * @return the megabytes, of 2^20 bytes, scanned per second
+     */
+    public double getMegabytesPerSecond() {
+        return this.elapsedNanos == 0 ? 0 : this.bytes * 1e9 / this.elapsedNanos / (1 << 20);
+    }
+
+    /**
+     * A part of the file decoded by a single worker, its records being dispatched in file order
+     */
+    public static final class Segment {
+
+        /**
+         * The index of the segment in the file
+         */
+        private final int index;
+
+        /**
+         * The file offset of the first byte
+         */
+        private final long offset;
+
+        /**
+         * The number of bytes
+         */
+        private final int length;
+
+        /**
+         * The number of records dispatched
+         */
+        private long records;
+
+        /**
+         * The decoding time in nanoseconds
+         */
+        private long nanos;
+
+        /**
+         * Creates a segment
+         *
+         * @param index  the index of the segment in the file
+         * @param offset the file offset of the first byte
+         * @param length the number of bytes
+         */
+        private Segment(int index, long offset, int length) {
+            this.index = index;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        /**
+         * Returns the index of the segment in the file
+         *
+         * @return the index, from 0
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Returns the file offset of the first byte
+         *
+         * @return the offset
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * Returns the number of bytes
+         *
+         * @return the length
+         */
+        public int getLength() {
+            return length;
+        }
+
+        /**
+         * Returns the number of records dispatched
+         *
+         * @return the record count
+         */
+        public long getRecords() {
+            return records;
+        }
+
+        /**
+         * Returns the decoding time
+         *
+         * @return the time in nanoseconds
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * Method returning a string representation
+         *
+         * @return string containing class name and member values
+         */
+        @Override
+        public String toString() {
+
+            return Tools.toString(this);
+        }
+    }
+}
@@ -0,0 +1,714 @@
+package frisbee.communications;
+
+import frisbee.configuration.Keywords;
+import frisbee.exceptions.LoggedException;
+import frisbee.messaging.Message;
+import frisbee.tools.Tools;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@code MappedFileOutputConnection} class appends the fixed-width frames of the messages written to it to memory-mapped file segments
+ * <p>
+ * Segments are named after the {@value frisbee.configuration.Keywords#FILE_PATH} followed by a six digit sequence number, the first one not
+ * already used. Every segment is mapped with {@value frisbee.configuration.Keywords#FILE_ROLL_SIZE} bytes, {@value #DEFAULT_ROLL_SIZE} by default,
+ * and the next one is started once a frame no longer fits. A full segment is truncated to the frames it holds.
+ * <p>
+ * Writers encode their frames into a buffer of their own, claim room in the segment by a compare-and-set of its reserved position and copy
+ * their frames in, so concurrent writers never lock. A batch is encoded and claimed at once.
+ * <p>
+ * The {@value frisbee.configuration.Keywords#FILE_DURABILITY} is a {@link frisbee.communications.Durability}. Periodic forces take place every
+ * {@value frisbee.configuration.Keywords#FILE_FORCE_INTERVAL} milliseconds, {@value #DEFAULT_FORCE_INTERVAL} by default. Group commits are led by
+ * the first writer waiting, which forces at once when no other writer is copying frames, the writers arriving during a force joining the next one.
+ * While other writers are copying frames the leader waits for them, until {@value frisbee.configuration.Keywords#FILE_GROUP_SIZE} messages wait,
+ * {@value #DEFAULT_GROUP_SIZE} by default, or for the force interval at most.
+ * <p>
+ * The connection is opened by the first message written when not opened before, messages written once it is closed are rejected until it is opened again.
+ * <p>
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public class MappedFileOutputConnection extends Connection {
+
+    /**
+     * Default number of bytes per segment
+     */
+    public static final int DEFAULT_ROLL_SIZE = 64 << 20;
+
+    /**
+     * Default milliseconds between periodic forces, and longest wait of a group commit for other writers
+     */
+    public static final int DEFAULT_FORCE_INTERVAL = 1000;
+
+    /**
+     * Default number of waiting messages a group commit stops waiting for other writers at
+     */
+    public static final int DEFAULT_GROUP_SIZE = 64;
+
+    /**
+     * Size of the buffer every writer encodes its frames into
+     */
+    private static final int SCRATCH_SIZE = 64 * 1024;
+
+    /**
+     * The buffer every writer encodes its frames into
+     */
+    private static final ThreadLocal<ByteBuffer> SCRATCH = ThreadLocal.withInitial(() -> ByteBuffer.allocate(SCRATCH_SIZE));
+
+    /**
+     * The segment appended to, null while closed
+     */
+    private volatile Segment current;
+
+    /**
+     * The segments being sealed, added before they stop being the current segment
+     */
+    private final Set<Segment> sealing = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Whether the connection was closed, messages written then not opening it again
+     */
+    private volatile boolean closedByUser;
+
+    /**
+     * The path the segment numbers are appended to
+     */
+    private String path;
+
+    /**
+     * The number of bytes per segment
+     */
+    private int rollSize;
+
+    /**
+     * The durability of the frames written
+     */
+    private Durability durability = Durability.NONE;
+
+    /**
+     * Nanoseconds between periodic forces, or longest wait of a group commit for other writers
+     */
+    private long forceIntervalNanos;
+
+    /**
+     * Number of waiting messages a group commit stops waiting for other writers at
+     */
+    private int groupSize;
+
+    /**
+     * Guards the replacement of the current segment
+     */
+    private final Object rollLock = new Object();
+
+    /**
+     * The sequence number of the next segment
+     */
+    private int nextIndex;
+
+    /**
+     * The number of messages copied to the segments
+     */
+    private final AtomicLong appended = new AtomicLong();
+
+    /**
+     * The number of writers copying frames before waiting for a group commit
+     */
+    private final AtomicInteger copying = new AtomicInteger();
+
+    /**
+     * Guards the group commits, waited on by the writers until their messages are forced
+     */
+    private final Object commitLock = new Object();
+
+    /**
+     * The number of messages forced to the storage device
+     */
+    private long committed;
+
+    /**
+     * Whether a writer leads a group commit
+     */
+    private boolean leading;
+
+    /**
+     * Runs the periodic forces, null unless the durability is periodic
+     */
+    private ScheduledExecutorService forcer;
+
+    /**
+     * Opens the first free segment
+     *
+     * @throws LoggedException when the path is not configured or the segment cannot be mapped
+     */
+    @Override
+    public synchronized void open() throws LoggedException {
+
+        if (this.current != null)
+            return;
+
+        Object path = Keywords.getArgument(this.getConnectionParameters(), Keywords.FILE_PATH);
+        if (path == null)
+            throw new LoggedException(new IllegalArgumentException("Connection " + this.getConnectionID() + " has no path"));
+
+        Object rollSize = Keywords.getArgument(this.getConnectionParameters(), Keywords.FILE_ROLL_SIZE);
+        Object interval = Keywords.getArgument(this.getConnectionParameters(), Keywords.FILE_FORCE_INTERVAL);
+        Object groupSize = Keywords.getArgument(this.getConnectionParameters(), Keywords.FILE_GROUP_SIZE);
+
+        this.setConnectionState(ConnectionState.OPENING);
+        try {
+            this.path = path.toString().trim();
+            this.rollSize = rollSize == null ? DEFAULT_ROLL_SIZE : Integer.parseInt(rollSize.toString().trim());
+            this.durability = Durability.fromConfiguration(Keywords.getArgument(this.getConnectionParameters(), Keywords.FILE_DURABILITY));
+            this.forceIntervalNanos = TimeUnit.MILLISECONDS.toNanos(interval == null ? DEFAULT_FORCE_INTERVAL : Long.parseLong(interval.toString().trim()));
+            this.groupSize = groupSize == null ? DEFAULT_GROUP_SIZE : Integer.parseInt(groupSize.toString().trim());
+
+            this.nextIndex = 0;
+            while (Files.exists(this.segmentPath(this.nextIndex)))
+                this.nextIndex++;
+            this.current = this.newSegment();
+            this.closedByUser = false;
+        } catch (IOException | RuntimeException e) {
+            this.setConnectionState(ConnectionState.ERROR);
+            throw new LoggedException(e);
+        }
+
+        if (this.durability == Durability.PERIODIC) {
+            long period = this.forceIntervalNanos;
+            this.forcer = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "frisbee-force-" + this.getConnectionID());
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.forcer.scheduleWithFixedDelay(this::forceCurrent, period, period, TimeUnit.NANOSECONDS);
+        }
+        this.setConnectionState(ConnectionState.OPEN);
+    }
+
+    /**
+     * Returns the path of a segment
+     *
+     * @param index the sequence number of the segment
+     * @return the path
+     */
+    private Path segmentPath(int index) {
+        return Paths.get(this.path + "." + String.format("%06d", index));
+    }
+
+    /**
+     * Maps the next segment
+     *
+     * @return the segment
+     * @throws IOException on failure to create or map the segment
+     */
+    private Segment newSegment() throws IOException {
+        Path path = this.segmentPath(this.nextIndex);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            return new Segment(this.nextIndex++, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, this.rollSize));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Seals the current segment, truncated to its frames
+     *
+     * @throws LoggedException on failure to truncate the segment
+     */
+    @Override
+    public synchronized void close() throws LoggedException {
+
+        this.closedByUser = true;
+        Segment segment;
+        synchronized (this.rollLock) {
+            segment = this.current;
+            if (segment != null)
+                this.sealing.add(segment);
+            this.current = null;
+        }
+        if (segment == null)
+            return;
+
+        this.setConnectionState(ConnectionState.CLOSING);
+        if (this.forcer != null) {
+            this.forcer.shutdown();
+            this.forcer = null;
+        }
+        try {
+            segment.seal(this.durability != Durability.NONE);
+        } catch (UncheckedIOException e) {
+            throw new LoggedException(e.getCause());
+        } finally {
+            this.sealing.remove(segment);
+            this.setConnectionState(ConnectionState.CLOSED);
+        }
+    }
+
+    /**
+     * Output connections have nothing to pause
+     */
+    @Override
+    public void pause() throws LoggedException {
+    }
+
+    /**
+     * Seals the current segment and starts a new one
+     *
+     * @throws LoggedException on failure to seal or map a segment
+     */
+    @Override
+    public void reset() throws LoggedException {
+        this.setConnectionState(ConnectionState.RESETTING);
+        this.close();
+        this.open();
+    }
+
+    /**
+     * The connection is an output only
+     *
+     * @return null
+     */
+    @Override
+    protected Message readMessage() throws LoggedException {
+        return null;
+    }
+
+    /**
+     * Appends the frame of a message
+     *
+     * @param message the message
+     * @throws LoggedException when the connection is closed, the output has no fixed-width fields, the frame does not fit in a segment
+     *                         or a segment cannot be mapped
+     */
+    @Override
+    protected void writeMessage(Message message) throws LoggedException {
+        this.writeMessageBatch(Collections.singletonList(message));
+    }
+
+    /**
+     * Appends the frames of several messages, claiming room for as many as fit in the encoding buffer at once
+     *
+     * @param messages the messages to write, in order
+     * @throws LoggedException when the connection is closed, the output has no fixed-width fields, a frame does not fit in a segment
+     *                         or a segment cannot be mapped
+     */
+    @Override
+    protected void writeMessageBatch(List<Message> messages) throws LoggedException {
+
+        if (this.current == null) {
+            if (this.closedByUser)
+                throw new LoggedException(new IllegalStateException("Connection " + this.getConnectionID() + " is closed"));
+            this.open();
+        }
+
+        boolean group = this.durability == Durability.GROUP;
+        long sequence = 0;
+        if (group)
+            this.copying.incrementAndGet();
+        try {
+            sequence = this.copy(messages);
+        } finally {
+            if (group)
+                this.copying.decrementAndGet();
+        }
+
+        if (group && sequence > 0)
+            this.awaitCommit(sequence);
+    }
+
+    /**
+     * Encodes the frames of several messages and copies them to the segments, as many at once as fit in the encoding buffer
+     *
+     * @param messages the messages to write, in order
+     * @return the number of messages copied to the segments so far, this call included, 0 when there were no messages
+     * @throws LoggedException when the output has no fixed-width fields, a frame does not fit in a segment or a segment cannot be mapped
+     */
+    private long copy(List<Message> messages) throws LoggedException {
+
+        ByteBuffer scratch = SCRATCH.get();
+        scratch.clear();
+        int count = 0;
+        long sequence = 0;
+
+        for (Message message : messages) {
+            scratch.mark();
+            if (this.encode(message, scratch)) {
+                count++;
+                continue;
+            }
+            if (scratch.reset().position() == 0)
+                throw new LoggedException(new BufferOverflowException());
+
+            scratch.flip();
+            sequence = this.append(scratch, count);
+            scratch.clear();
+            if (!this.encode(message, scratch))
+                throw new LoggedException(new BufferOverflowException());
+            count = 1;
+        }
+
+        if (count > 0) {
+            scratch.flip();
+            sequence = this.append(scratch, count);
+        }
+        return sequence;
+    }
+
+    /**
+     * Encodes the frame of a message at the position of a buffer
+     *
+     * @param message the message
+     * @param buffer  the buffer
+     * @return false when the frame does not fit in the buffer
+     * @throws LoggedException when the output has no fixed-width fields
+     */
+    private boolean encode(Message message, ByteBuffer buffer) throws LoggedException {
+        try {
+            if (message.encode(this.getConnectionID(), buffer) < 0)
+                throw new LoggedException(new IllegalStateException("Connection " + this.getConnectionID() + " has no fixed-width output fields"));
+            return true;
+        } catch (BufferOverflowException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Copies frames to the current segment, rolling it when they do not fit
+     *
+     * @param frames   the frames, from the position to the limit of the buffer
+     * @param messages the number of messages the frames belong to
+     * @return the number of messages copied to the segments so far, this call included
+     * @throws LoggedException when the frames do not fit in a segment, the connection is closed or a segment cannot be mapped
+     */
+    private long append(ByteBuffer frames, int messages) throws LoggedException {
+
+        int length = frames.remaining();
+        if (length > this.rollSize)
+            throw new LoggedException(new IllegalStateException("Frames of " + length + " bytes do not fit in segments of " + this.rollSize + " bytes"));
+
+        while (true) {
+            Segment segment = this.current;
+            if (segment == null)
+                throw new LoggedException(new IllegalStateException("Connection " + this.getConnectionID() + " is closed"));
+
+            int position = segment.reserve(length);
+            if (position < 0) {
+                this.roll(segment);
+                continue;
+            }
+
+            ByteBuffer target = segment.buffer.duplicate();
+            target.position(position);
+            target.put(frames);
+            segment.written.addAndGet(length);
+            return this.appended.addAndGet(messages);
+        }
+    }
+
+    /**
+     * Replaces a full segment with a new one, then seals it once the frames claimed in it are copied
+     * <p>
+     * The full segment is listed as sealing before it stops being the current segment, so a group commit finds it in either place
+     *
+     * @param full the full segment
+     * @throws LoggedException on failure to map the new segment or seal the full one
+     */
+    private void roll(Segment full) throws LoggedException {
+
+        synchronized (this.rollLock) {
+            if (this.current != full)
+                return;
+            this.sealing.add(full);
+            try {
+                this.current = this.newSegment();
+            } catch (IOException e) {
+                this.sealing.remove(full);
+                throw new LoggedException(e);
+            }
+        }
+
+        try {
+            full.seal(this.durability != Durability.NONE);
+        } catch (UncheckedIOException e) {
+            throw new LoggedException(e.getCause());
+        } finally {
+            this.sealing.remove(full);
+        }
+    }
+
+    /**
+     * Waits until the messages copied so far are forced, leading the next group commit when no other writer leads one
+     * <p>
+     * The leader forces at once unless other writers are copying frames, it then waits for them to join,
+     * until enough messages wait or the force interval is over. Writers arriving during a force wait for it, then join the next one.
+     *
+     * @param sequence the number of messages to wait for
+     * @throws LoggedException on failure to force the segment
+     */
+    private void awaitCommit(long sequence) throws LoggedException {
+
+        try {
+            while (true) {
+                long upTo;
+                Segment segment;
+
+                synchronized (this.commitLock) {
+                    //wakes up a leader waiting for this writer
+                    this.commitLock.notifyAll();
+                    while (this.leading && this.committed < sequence)
+                        this.commitLock.wait();
+                    if (this.committed >= sequence)
+                        return;
+
+                    this.leading = true;
+                    long deadline = System.nanoTime() + this.forceIntervalNanos;
+                    long remaining = this.forceIntervalNanos;
+                    try {
+                        while (this.copying.get() > 0 && this.appended.get() - this.committed < this.groupSize && remaining > 0) {
+                            TimeUnit.NANOSECONDS.timedWait(this.commitLock, remaining);
+                            remaining = deadline - System.nanoTime();
+                        }
+                    } catch (InterruptedException e) {
+                        //forces without waiting any longer, the writers waiting for the force depend on it
+                        Thread.currentThread().interrupt();
+                    }
+
+                    //the messages counted were copied to the current segment read next, or to a segment already listed as sealing,
+                    //whose seal forces them
+                    upTo = this.appended.get();
+                    segment = this.current;
+                }
+
+                boolean forced = false;
+                try {
+                    for (Segment full : this.sealing)
+                        full.seal(true);
+                    if (segment != null)
+                        segment.force();
+                    forced = true;
+                } finally {
+                    synchronized (this.commitLock) {
+                        this.leading = false;
+                        if (forced)
+                            this.committed = Math.max(this.committed, upTo);
+                        this.commitLock.notifyAll();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (UncheckedIOException e) {
+            throw new LoggedException(e.getCause());
+        }
+    }
+
+    /**
+     * Forces the current segment when frames were copied since its last force, run periodically
+     */
+    private void forceCurrent() {
+        try {
+            Segment segment = this.current;
+            if (segment != null)
+                segment.force();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Called once the frames of a segment are forced to the storage device, on the forcing thread
+     * <p>
+     * Does nothing, subclasses monitoring the durability of the output override it
+     *
+     * @param segmentIndex the sequence number of the segment
+     * @param length       the number of frame bytes copied into the segment when it was forced
+     */
+    protected void forced(int segmentIndex, int length) {
+    }
+
+    /**
+     * Output connections have no listener
+     *
+     * @see java.lang.Runnable#run()
+     */
+    @Override
+    public void run() {
+    }
+
+    /**
+     * Returns the sequence number of the segment appended to
+     *
+     * @return the sequence number, -1 while closed
+     */
+    public int getSegmentIndex() {
+        Segment segment = this.current;
+        return segment == null ? -1 : segment.index;
+    }
+
+    /**
+     * Returns the number of messages copied to the segments since the connection was created
+     *
+     * @return the message count
+     */
+    public long getAppendedCount() {
+        return this.appended.get();
+    }
+
+    /**
+     * Returns the number of messages forced by group commits since the connection was created
+     *
+     * @return the message count
+     */
+    public long getCommittedCount() {
+        synchronized (this.commitLock) {
+            return this.committed;
+        }
+    }
+
+    /**
+     * A mapped file segment, claimed by writers through its reserved position
+     */
+    private final class Segment {
+
+        /**
+         * The reserved position of a sealed segment, past any capacity
+         */
+        private static final int SEALED = Integer.MAX_VALUE;
+
+        /**
+         * The sequence number of the segment
+         */
+        private final int index;
+
+        /**
+         * The file
+         */
+        private final FileChannel channel;
+
+        /**
+         * The mapped file
+         */
+        private final MappedByteBuffer buffer;
+
+        /**
+         * The end of the frames claimed, {@link #SEALED} once sealed
+         */
+        private final AtomicInteger reserved = new AtomicInteger();
+
+        /**
+         * The number of bytes copied
+         */
+        private final AtomicInteger written = new AtomicInteger();
+
+        /**
+         * The number of bytes copied at the last force, guarded by the segment monitor
+         */
+        private int forced;
+
+        /**
+         * Whether the segment is sealed and its file closed, guarded by the segment monitor
+         */
+        private boolean closed;
+
+        /**
+         * Creates a segment
+         *
+         * @param index   the sequence number of the segment
+         * @param channel the file
+         * @param buffer  the mapped file
+         */
+        private Segment(int index, FileChannel channel, MappedByteBuffer buffer) {
+            this.index = index;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        /**
+         * Claims room for frames
+         *
+         * @param length the number of bytes
+         * @return the position of the room, -1 when the segment is full or sealed
+         */
+        private int reserve(int length) {
+            while (true) {
+                int position = this.reserved.get();
+                if (position > this.buffer.capacity() - length)
+                    return -1;
+                if (this.reserved.compareAndSet(position, position + length))
+                    return position;
+            }
+        }
+
+        /**
+         * Forces the copied frames to the storage device, unless already forced or sealed
+         */
+        private synchronized void force() {
+            int written = this.written.get();
+            if (this.closed || written == this.forced)
+                return;
+            this.buffer.force();
+            this.forced = written;
+            MappedFileOutputConnection.this.forced(this.index, written);
+        }
+
+        /**
+         * Stops claims, waits for the claimed frames to be copied and truncates the file to them
+         * <p>
+         * Calls made while the segment is being sealed return once it is sealed
+         *
+         * @param force whether the frames are forced to the storage device first
+         * @throws UncheckedIOException on failure to truncate or close the file
+         */
+        private synchronized void seal(boolean force) {
+            int end = this.reserved.getAndSet(SEALED);
+            if (end == SEALED)
+                return;
+            while (this.written.get() != end)
+                Thread.yield();
+
+            try {
+                if (force) {
+                    this.buffer.force();
+                    MappedFileOutputConnection.this.forced(this.index, end);
+                }
+                this.forced = end;
+                this.closed = true;
+                this.channel.truncate(end);
+                this.channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Method returning a string representation
+         *
+         * @return string containing class name and member values
+         */
+        @Override
+        public String toString() {
+
+            return Tools.toString(this);
+        }
+    }
+}
@@ -49,8 +49,7 @@ public class MyConnection extends Connection {
     public void run() {
 
         //TODO Auto-generated method stub
-        this.setChanged();
-        this.notifyObservers(null);
+        this.receive(null);
     }
 
 }
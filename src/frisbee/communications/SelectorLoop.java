@@ -0,0 +1,250 @@
+package frisbee.communications;
+
+import frisbee.tools.Tools;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * The {@code SelectorLoop} class runs a {@link java.nio.channels.Selector} on its own thread, serving the readiness events of many non-blocking channels
+ * <p>
+ * Channels are registered, and their interest changed, by tasks run on the loop thread, so the selector is only ever used by that thread.
+ * The loop owns a single read buffer, shared by every channel it serves since their reads never overlap.
+ * <p>
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+final class SelectorLoop implements Runnable {
+
+    /**
+     * Handles the readiness of a registered channel, attached to its selection key
+     */
+    @FunctionalInterface
+    interface Handler {
+
+        /**
+         * Handles the readiness of a channel, called on the loop thread
+         *
+         * @param key the selection key of the channel
+         * @throws IOException on failure to use the channel, which is then closed
+         */
+        void ready(SelectionKey key) throws IOException;
+    }
+
+    /**
+     * The selector
+     */
+    private final Selector selector;
+
+    /**
+     * The tasks to run on the loop thread
+     */
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The read buffer of every channel served by this loop
+     */
+    private final ByteBuffer readBuffer;
+
+    /**
+     * The loop thread
+     */
+    private final Thread thread;
+
+    /**
+     * Whether the loop keeps running
+     */
+    private volatile boolean running = true;
+
+    /**
+     * Creates and starts a loop
+     *
+     * @param name           the name of the loop thread
+     * @param readBufferSize the size of the read buffer
+     * @throws IOException on failure to open the selector
+     */
+    SelectorLoop(String name, int readBufferSize) throws IOException {
+        this.selector = Selector.open();
+        this.readBuffer = ByteBuffer.allocateDirect(readBufferSize);
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Runs a task on the loop thread, right away when called from it
+     *
+     * @param task the task
+     */
+    void execute(Runnable task) {
+        if (Thread.currentThread() == this.thread) {
+            task.run();
+        } else {
+            this.tasks.add(task);
+            this.selector.wakeup();
+        }
+    }
+
+    /**
+     * Registers a channel, on the loop thread
+     *
+     * @param channel  the non-blocking channel
+     * @param ops      the interest set
+     * @param handler  handles the readiness of the channel
+     * @param callback receives the selection key, may be null
+     */
+    void register(SelectableChannel channel, int ops, Handler handler, Consumer<SelectionKey> callback) {
+        this.execute(() -> {
+            try {
+                SelectionKey key = channel.register(this.selector, ops, handler);
+                if (callback != null)
+                    callback.accept(key);
+            } catch (IOException e) {
+                e.printStackTrace();
+                closeQuietly(channel);
+            }
+        });
+    }
+
+    /**
+     * Sets or clears interest operations of a channel, on the loop thread
+     *
+     * @param key the selection key of the channel
+     * @param ops the operations
+     * @param on  true to set them, false to clear them
+     */
+    void interest(SelectionKey key, int ops, boolean on) {
+        this.execute(() -> {
+            if (key.isValid())
+                key.interestOps(on ? key.interestOps() | ops : key.interestOps() & ~ops);
+        });
+    }
+
+    /**
+     * Returns the read buffer of the loop, only to be used on the loop thread
+     *
+     * @return the cleared read buffer
+     */
+    ByteBuffer readBuffer() {
+        this.readBuffer.clear();
+        return this.readBuffer;
+    }
+
+    /**
+     * Tells whether the calling thread is the loop thread
+     *
+     * @return true on the loop thread
+     */
+    boolean inLoop() {
+        return Thread.currentThread() == this.thread;
+    }
+
+    /**
+     * Selects ready channels and handles them until the loop is shut down
+     */
+    @Override
+    public void run() {
+
+        while (this.running) {
+            try {
+                this.selector.select();
+                this.runTasks();
+
+                Iterator<SelectionKey> selected = this.selector.selectedKeys().iterator();
+                while (selected.hasNext()) {
+                    SelectionKey key = selected.next();
+                    selected.remove();
+                    this.handle(key);
+                }
+            } catch (ClosedSelectorException e) {
+                return;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Runs the pending tasks
+     */
+    private void runTasks() {
+        Runnable task;
+        while ((task = this.tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Handles a ready channel, closing it when the handler fails
+     *
+     * @param key the selection key of the channel
+     */
+    private void handle(SelectionKey key) {
+        try {
+            if (key.isValid())
+                ((Handler) key.attachment()).ready(key);
+        } catch (CancelledKeyException e) {
+            closeQuietly(key.channel());
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            key.cancel();
+            closeQuietly(key.channel());
+        }
+    }
+
+    /**
+     * Stops the loop and closes its selector, the registered channels are left to their owners
+     *
+     * @param timeoutMillis the maximum time to wait for the loop thread
+     */
+    void shutdown(long timeoutMillis) {
+        this.running = false;
+        this.selector.wakeup();
+        try {
+            if (!this.inLoop())
+                this.thread.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closeQuietly(this.selector);
+    }
+
+    /**
+     * Closes a channel or selector, ignoring failures
+     *
+     * @param closeable the channel or selector
+     */
+    static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            //nothing left to release
+        }
+    }
+
+    /**
+     * Method returning a string representation
+     *
+     * @return string containing class name and member values
+     */
+    @Override
+    public String toString() {
+
+        return Tools.toString(this);
+    }
+}
@@ -0,0 +1,700 @@
+package frisbee.communications;
+
+import frisbee.configuration.Keywords;
+import frisbee.exceptions.LoggedException;
+import frisbee.messaging.Message;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code TcpConnection} class exchanges fixed-width frames over TCP sockets served by the selector loops of its {@link frisbee.communications.TcpConnector connector}
+ * <p>
+ * With the {@value frisbee.configuration.Keywords#TCP_ROLE_SERVER} {@value frisbee.configuration.Keywords#TCP_ROLE}, the default, the connection
+ * listens on its {@value frisbee.configuration.Keywords#TCP_HOST} and {@value frisbee.configuration.Keywords#TCP_PORT} and serves every peer connecting to it.
+ * With the {@value frisbee.configuration.Keywords#TCP_ROLE_CLIENT} role it connects to a single peer.
+ * <p>
+ * The byte stream of every peer is cut into frames by a {@link frisbee.communications.FrameDecoder}, as configured on the message inputs of the connection.
+ * Frames are read in place from the read buffer of the loop, only the fields needed to identify and transform them being decoded,
+ * unless an {@link #startIngress() ingress ring} is started, frames then being copied before they are published.
+ * Without an ingress ring frames are processed on the loop thread.
+ * The loop never waits for backpressure to be released, as it may also serve the outputs draining the backlog applying it:
+ * backpressure pauses the connection, its peers are not read anymore, and the receive window of their sockets pushes back on the senders.
+ * The frames already read when backpressure is applied are still handed over.
+ * A connection is served by a single loop, its listening socket and all its peers alike, so its frames are received by one thread,
+ * in order, as the single producer of its ingress ring.
+ * <p>
+ * Messages written are encoded into pooled buffers and queued to every connected peer, the loop writing several queued buffers at once.
+ * A peer queues at most {@value frisbee.configuration.Keywords#TCP_SEND_QUEUE} buffers, {@value #DEFAULT_SEND_QUEUE} by default,
+ * writers then waiting for the loop to drain the queue, which pushes a slow peer back onto the output backlog.
+ * <p>
+ * The listener thread of the connection only opens it, the loops do the rest.
+ * <p>
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public class TcpConnection extends Connection {
+
+    /**
+     * Maximum number of buffers written at once
+     */
+    private static final int GATHER_SIZE = 16;
+
+    /**
+     * Default number of buffers queued to a peer before writers wait
+     */
+    public static final int DEFAULT_SEND_QUEUE = 1024;
+
+    /**
+     * Milliseconds a writer waits for room in a full peer queue before checking the peer is still connected
+     */
+    private static final long SEND_WAIT_MILLIS = 100;
+
+    /**
+     * The connector serving this connection
+     */
+    private TcpConnector connector;
+
+    /**
+     * The loop serving the listening socket and every peer
+     */
+    private SelectorLoop loop;
+
+    /**
+     * The number of buffers queued to a peer before writers wait
+     */
+    private int sendQueue;
+
+    /**
+     * The listening socket, null for a client connection
+     */
+    private ServerSocketChannel server;
+
+    /**
+     * The connected peers
+     */
+    private final Set<Peer> peers = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Whether reading is paused
+     */
+    private volatile boolean paused;
+
+    /**
+     * Whether the connection is being closed on purpose
+     */
+    private volatile boolean closing;
+
+    /**
+     * The number of frames dropped for lack of a fixed-width input layout
+     */
+    private final LongAdder droppedFrames = new LongAdder();
+
+    /**
+     * The number of buffers which waited for room in a full peer queue
+     */
+    private final LongAdder sendWaits = new LongAdder();
+
+    /**
+     * Hands the decoded frames over to the observers
+     */
+    private final FrameDecoder.FrameHandler frameHandler = this::onFrame;
+
+    /**
+     * Opens the connection, listening for peers or connecting to the peer
+     *
+     * @throws LoggedException on failure to open the socket
+     */
+    @Override
+    public synchronized void open() throws LoggedException {
+
+        if (this.getConnectionState() == ConnectionState.OPEN)
+            return;
+
+        if (!(this.getParentConnector() instanceof TcpConnector))
+            throw new LoggedException(new IllegalStateException("Connection " + this.getConnectionID() + " does not belong to a TCP connector"));
+
+        this.setConnectionState(ConnectionState.OPENING);
+        this.connector = (TcpConnector) this.getParentConnector();
+        this.closing = false;
+
+        Object host = Keywords.getArgument(this.getConnectionParameters(), Keywords.TCP_HOST);
+        Object port = Keywords.getArgument(this.getConnectionParameters(), Keywords.TCP_PORT);
+        Object role = Keywords.getArgument(this.getConnectionParameters(), Keywords.TCP_ROLE);
+        Object sendQueue = Keywords.getArgument(this.getConnectionParameters(), Keywords.TCP_SEND_QUEUE);
+        if (port == null)
+            throw new LoggedException(new IllegalArgumentException("Connection " + this.getConnectionID() + " has no port"));
+
+        try {
+            int portNumber = Integer.parseInt(port.toString().trim());
+            this.sendQueue = sendQueue == null ? DEFAULT_SEND_QUEUE : Integer.parseInt(sendQueue.toString().trim());
+            if (this.sendQueue <= 0)
+                throw new IllegalArgumentException("Send queue of connection " + this.getConnectionID() + " must be positive, not " + this.sendQueue);
+            this.loop = this.connector.nextLoop();
+            if (role == null || role.toString().trim().equalsIgnoreCase(Keywords.TCP_ROLE_SERVER)) {
+                this.listen(host == null ? new InetSocketAddress(portNumber) : new InetSocketAddress(host.toString().trim(), portNumber));
+            } else if (role.toString().trim().equalsIgnoreCase(Keywords.TCP_ROLE_CLIENT)) {
+                if (host == null)
+                    throw new IllegalArgumentException("Connection " + this.getConnectionID() + " has no host");
+                this.connect(new InetSocketAddress(host.toString().trim(), portNumber));
+            } else {
+                throw new IllegalArgumentException("Unknown TCP role: " + role);
+            }
+        } catch (IOException | RuntimeException e) {
+            this.setConnectionState(ConnectionState.ERROR);
+            throw new LoggedException(e);
+        }
+
+        this.setConnectionState(ConnectionState.OPEN);
+    }
+
+    /**
+     * Listens for peers
+     *
+     * @param address the local address
+     * @throws IOException on failure to bind the socket
+     */
+    private void listen(InetSocketAddress address) throws IOException {
+        ServerSocketChannel server = ServerSocketChannel.open();
+        try {
+            server.configureBlocking(false);
+            server.bind(address);
+            this.loop.register(server, SelectionKey.OP_ACCEPT, key -> this.accept((ServerSocketChannel) key.channel()), null);
+        } catch (IOException | RuntimeException e) {
+            SelectorLoop.closeQuietly(server);
+            throw e;
+        }
+        this.server = server;
+    }
+
+    /**
+     * Connects to the peer, the connection completing on the loop
+     *
+     * @param address the peer address
+     * @throws IOException on failure to open the socket
+     */
+    private void connect(InetSocketAddress address) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        try {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            boolean connected = channel.connect(address);
+            this.register(channel, connected ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT);
+        } catch (IOException | RuntimeException e) {
+            SelectorLoop.closeQuietly(channel);
+            throw e;
+        }
+    }
+
+    /**
+     * Accepts the pending peers, on the loop of the listening socket
+     *
+     * @param server the listening socket
+     * @throws IOException on failure of the listening socket
+     */
+    private void accept(ServerSocketChannel server) throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            try {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                this.register(channel, SelectionKey.OP_READ);
+            } catch (IOException e) {
+                e.printStackTrace();
+                SelectorLoop.closeQuietly(channel);
+            }
+        }
+    }
+
+    /**
+     * Registers a peer with the loop of the connection
+     *
+     * @param channel the non-blocking socket
+     * @param ops     the initial interest set
+     */
+    private void register(SocketChannel channel, int ops) {
+        Peer peer = new Peer(channel, this.loop);
+        this.peers.add(peer);
+        peer.loop.register(channel, ops, peer, key -> {
+            peer.key = key;
+            if (this.paused)
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        });
+    }
+
+    /**
+     * Closes the listening socket and every peer
+     */
+    @Override
+    public synchronized void close() throws LoggedException {
+
+        this.setConnectionState(ConnectionState.CLOSING);
+        this.closing = true;
+
+        if (this.server != null) {
+            SelectorLoop.closeQuietly(this.server);
+            this.server = null;
+        }
+        for (Peer peer : this.peers)
+            peer.close();
+
+        this.setConnectionState(ConnectionState.CLOSED);
+    }
+
+    /**
+     * Stops reading from the peers, queued writes are still sent
+     */
+    @Override
+    public void pause() throws LoggedException {
+        this.paused = true;
+        for (Peer peer : this.peers)
+            peer.setReading(false);
+    }
+
+    /**
+     * Resumes reading from the peers
+     */
+    @Override
+    public void resume() throws LoggedException {
+        this.paused = false;
+        for (Peer peer : this.peers)
+            peer.setReading(true);
+    }
+
+    /**
+     * Closes and reopens the connection
+     *
+     * @throws LoggedException on failure to reopen the connection
+     */
+    @Override
+    public void reset() throws LoggedException {
+        this.setConnectionState(ConnectionState.RESETTING);
+        this.close();
+        this.open();
+    }
+
+    /**
+     * Frames are handed over by the selector loops as they arrive, never polled
+     *
+     * @return null
+     */
+    @Override
+    protected Message readMessage() throws LoggedException {
+        return null;
+    }
+
+    /**
+     * Queues the frame of a message to every connected peer
+     *
+     * @param message the message
+     * @throws LoggedException when the output has no fixed-width fields or the frame does not fit in a buffer
+     */
+    @Override
+    protected void writeMessage(Message message) throws LoggedException {
+        ByteBuffer buffer = this.acquireBuffer();
+        try {
+            this.encode(message, buffer);
+        } catch (LoggedException e) {
+            this.connector.releaseBuffer(buffer);
+            throw e;
+        }
+        buffer.flip();
+        this.send(buffer);
+    }
+
+    /**
+     * Queues the frames of several messages to every connected peer, packed into as few buffers as they fit in
+     *
+     * @param messages the messages to write, in order
+     * @throws LoggedException when the output has no fixed-width fields or a frame does not fit in a buffer
+     */
+    @Override
+    protected void writeMessageBatch(List<Message> messages) throws LoggedException {
+        ByteBuffer buffer = this.acquireBuffer();
+        try {
+            for (Message message : messages) {
+                buffer.mark();
+                try {
+                    this.encode(message, buffer);
+                } catch (LoggedException e) {
+                    if (!(e.getCause() instanceof BufferOverflowException) || buffer.reset().position() == 0)
+                        throw e;
+                    buffer.flip();
+                    this.send(buffer);
+                    buffer = this.connector.acquireBuffer();
+                    this.encode(message, buffer);
+                }
+            }
+        } catch (LoggedException e) {
+            this.connector.releaseBuffer(buffer);
+            throw e;
+        }
+
+        if (buffer.position() == 0) {
+            this.connector.releaseBuffer(buffer);
+        } else {
+            buffer.flip();
+            this.send(buffer);
+        }
+    }
+
+    /**
+     * Takes a write buffer from the connector
+     *
+     * @return the cleared buffer
+     * @throws LoggedException when the connection was never opened
+     */
+    private ByteBuffer acquireBuffer() throws LoggedException {
+        if (this.connector == null)
+            throw new LoggedException(new IllegalStateException("Connection " + this.getConnectionID() + " is not open"));
+        return this.connector.acquireBuffer();
+    }
+
+    /**
+     * Encodes the frame of a message at the position of a buffer
+     *
+     * @param message the message
+     * @param buffer  the buffer
+     * @throws LoggedException when the output has no fixed-width fields or the frame does not fit in the buffer
+     */
+    private void encode(Message message, ByteBuffer buffer) throws LoggedException {
+        int length;
+        try {
+            length = message.encode(this.getConnectionID(), buffer);
+        } catch (BufferOverflowException e) {
+            throw new LoggedException(e);
+        }
+        if (length < 0)
+            throw new LoggedException(new IllegalStateException("Connection " + this.getConnectionID() + " has no fixed-width output fields"));
+    }
+
+    /**
+     * Queues a buffer to every connected peer, copying it for all but one, the buffer is dropped when no peer is connected
+     *
+     * @param buffer the flipped buffer, owned by the peers afterwards
+     */
+    private void send(ByteBuffer buffer) {
+        Peer[] peers = this.peers.toArray(new Peer[0]);
+        if (peers.length == 0) {
+            this.connector.releaseBuffer(buffer);
+            return;
+        }
+        for (int i = 1; i < peers.length; i++) {
+            ByteBuffer copy = this.connector.acquireBuffer();
+            copy.put(buffer.duplicate()).flip();
+            peers[i].send(copy);
+        }
+        peers[0].send(buffer);
+    }
+
+    /**
+     * Hands a decoded frame over to the observers, on the loop thread, without waiting for backpressure to be released
+     *
+     * @param frame the frame, only valid during the call
+     */
+    private void onFrame(ByteBuffer frame) {
+        if (this.getRoutes().getFrameLayout() == null) {
+            this.droppedFrames.increment();
+            return;
+        }
+
+        if (this.getIngress() != null) {
+            ByteBuffer copy = ByteBuffer.allocate(frame.remaining());
+            copy.put(frame.duplicate()).flip();
+            frame = copy;
+        }
+        this.handOver(this.newPayload(this.wrapFrame(frame)));
+    }
+
+    /**
+     * Opens the connection, the selector loops of the connector serving it afterwards
+     *
+     * @see java.lang.Runnable#run()
+     */
+    @Override
+    public void run() {
+        try {
+            this.open();
+        } catch (LoggedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Returns the number of connected peers
+     *
+     * @return the number of peers
+     */
+    public int getPeerCount() {
+        return this.peers.size();
+    }
+
+    /**
+     * Returns the local port of a server connection
+     *
+     * @return the port, -1 when not listening
+     */
+    public int getLocalPort() {
+        ServerSocketChannel server = this.server;
+        return server == null ? -1 : server.socket().getLocalPort();
+    }
+
+    /**
+     * Returns the number of buffers which waited for room in the queue of a slow peer
+     *
+     * @return the waiting buffer count
+     */
+    public long getSendWaits() {
+        return this.sendWaits.sum();
+    }
+
+    /**
+     * Returns the number of frames dropped for lack of a fixed-width input layout
+     *
+     * @return the dropped frame count
+     */
+    public long getDroppedFrames() {
+        return this.droppedFrames.sum();
+    }
+
+    /**
+     * A connected socket, with its own frame decoder and write queue
+     */
+    private final class Peer implements SelectorLoop.Handler {
+
+        /**
+         * The socket
+         */
+        private final SocketChannel channel;
+
+        /**
+         * The loop serving the socket
+         */
+        private final SelectorLoop loop;
+
+        /**
+         * The selection key of the socket, set on the loop thread once registered
+         */
+        private volatile SelectionKey key;
+
+        /**
+         * Cuts the byte stream of the socket into frames, null when the connection has no inputs
+         */
+        private final FrameDecoder decoder;
+
+        /**
+         * The buffers waiting to be written
+         */
+        private final BlockingQueue<ByteBuffer> outbound;
+
+        /**
+         * Whether the socket is closed, the queued buffers being released
+         */
+        private volatile boolean closed;
+
+        /**
+         * Whether a flush of the queued buffers is scheduled on the loop
+         */
+        private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+        /**
+         * The buffers written at once, used on the loop thread only
+         */
+        private final ByteBuffer[] gather = new ByteBuffer[GATHER_SIZE];
+
+        /**
+         * Creates a peer
+         *
+         * @param channel the socket
+         * @param loop    the loop serving the socket
+         */
+        private Peer(SocketChannel channel, SelectorLoop loop) {
+            this.channel = channel;
+            this.loop = loop;
+            this.outbound = new ArrayBlockingQueue<>(TcpConnection.this.sendQueue);
+            this.decoder = TcpConnection.this.newFrameDecoder();
+        }
+
+        /**
+         * Handles the readiness of the socket
+         *
+         * @param key the selection key of the socket
+         */
+        @Override
+        public void ready(SelectionKey key) {
+            try {
+                if (key.isConnectable() && this.channel.finishConnect()) {
+                    int ops = TcpConnection.this.paused ? 0 : SelectionKey.OP_READ;
+                    key.interestOps(this.outbound.isEmpty() ? ops : ops | SelectionKey.OP_WRITE);
+                }
+                if (key.isValid() && key.isReadable())
+                    this.read(key);
+                if (key.isValid() && key.isWritable())
+                    this.flush();
+            } catch (IOException e) {
+                if (!TcpConnection.this.closing)
+                    e.printStackTrace();
+                this.close();
+            }
+        }
+
+        /**
+         * Reads the available bytes and decodes them, or stops reading when the connection was paused meanwhile
+         *
+         * @param key the selection key of the socket
+         * @throws IOException on failure to read the socket
+         */
+        private void read(SelectionKey key) throws IOException {
+            if (TcpConnection.this.paused) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                return;
+            }
+
+            ByteBuffer buffer = this.loop.readBuffer();
+            int read = this.channel.read(buffer);
+            if (read < 0) {
+                this.close();
+                return;
+            }
+            if (read == 0 || this.decoder == null)
+                return;
+
+            buffer.flip();
+            this.decoder.feed(buffer, TcpConnection.this.frameHandler);
+        }
+
+        /**
+         * Queues a buffer and schedules a flush on the loop, waiting while the queue is full
+         * <p>
+         * The buffer is released instead when the peer is closed or the writer is interrupted
+         *
+         * @param buffer the flipped buffer, owned by the peer afterwards
+         */
+        private void send(ByteBuffer buffer) {
+            boolean queued = this.outbound.offer(buffer);
+            if (!queued) {
+                TcpConnection.this.sendWaits.increment();
+                try {
+                    while (!queued && !this.closed)
+                        queued = this.outbound.offer(buffer, SEND_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            if (!queued) {
+                TcpConnection.this.connector.releaseBuffer(buffer);
+                return;
+            }
+
+            //queued after the peer closed, the loop releases it with the rest of the queue
+            if (this.closed) {
+                this.loop.execute(this::releaseQueued);
+                return;
+            }
+
+            if (this.flushScheduled.compareAndSet(false, true)) {
+                this.loop.execute(() -> {
+                    this.flushScheduled.set(false);
+                    try {
+                        this.flush();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                        this.close();
+                    }
+                });
+            }
+        }
+
+        /**
+         * Writes the queued buffers until the socket is full, then waits for it to be writable
+         *
+         * @throws IOException on failure to write the socket
+         */
+        private void flush() throws IOException {
+            SelectionKey key = this.key;
+            if (key == null || !key.isValid() || !this.channel.isConnected())
+                return;
+
+            while (true) {
+                int count = 0;
+                for (ByteBuffer buffer : this.outbound) {
+                    this.gather[count++] = buffer;
+                    if (count == GATHER_SIZE)
+                        break;
+                }
+                if (count == 0) {
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                    return;
+                }
+
+                this.channel.write(this.gather, 0, count);
+                boolean full = this.gather[count - 1].hasRemaining();
+                for (int i = 0; i < count; i++)
+                    this.gather[i] = null;
+
+                ByteBuffer head;
+                while ((head = this.outbound.peek()) != null && !head.hasRemaining())
+                    TcpConnection.this.connector.releaseBuffer(this.outbound.poll());
+
+                if (full) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Starts or stops reading from the socket
+         *
+         * @param reading true to read
+         */
+        private void setReading(boolean reading) {
+            this.loop.execute(() -> {
+                SelectionKey key = this.key;
+                if (key != null && key.isValid() && this.channel.isConnected())
+                    key.interestOps(reading ? key.interestOps() | SelectionKey.OP_READ : key.interestOps() & ~SelectionKey.OP_READ);
+            });
+        }
+
+        /**
+         * Closes the socket, releasing the queued buffers on the loop once no flush uses them anymore
+         */
+        private void close() {
+            this.closed = true;
+            TcpConnection.this.peers.remove(this);
+            SelectionKey key = this.key;
+            if (key != null)
+                key.cancel();
+            SelectorLoop.closeQuietly(this.channel);
+            this.loop.execute(this::releaseQueued);
+
+            if (TcpConnection.this.server == null && !TcpConnection.this.closing)
+                TcpConnection.this.setConnectionState(ConnectionState.ERROR);
+        }
+
+        /**
+         * Returns the queued buffers to the pool, on the loop thread
+         */
+        private void releaseQueued() {
+            ByteBuffer buffer;
+            while ((buffer = this.outbound.poll()) != null)
+                TcpConnection.this.connector.releaseBuffer(buffer);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package frisbee.communications;
+
+import frisbee.configuration.Keywords;
+import frisbee.exceptions.LoggedException;
+import frisbee.tools.ObjectPool;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The {@code TcpConnector} class serves the TCP {@link frisbee.communications.TcpConnection connections} attributed to it from a few selector loops
+ * <p>
+ * Every loop runs a {@link java.nio.channels.Selector} on its own thread and serves many sockets with non-blocking reads and writes,
+ * connections being spread over the loops in turn, every connection keeping all its sockets on its loop. The number of loops is set by the
+ * {@value frisbee.configuration.Keywords#TCP_SELECTORS} parameter, a number or {@value frisbee.configuration.Keywords#TCP_SELECTORS_CORES}
+ * for one loop per available processor, 1 by default.
+ * <p>
+ * Every loop reads into a single buffer and frames are written from buffers pooled by the connector, both of
+ * {@value frisbee.configuration.Keywords#TCP_BUFFER_SIZE} bytes, {@value #DEFAULT_BUFFER_SIZE} by default. A frame must fit in a buffer.
+ * <p>
+ * The loops are started by {@link #connect()}, or by the first connection opened.
+ * <p>
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public class TcpConnector extends Connector {
+
+    /**
+     * Default size of the read and write buffers
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The selector loops, null while disconnected
+     */
+    private SelectorLoop[] loops;
+
+    /**
+     * The next loop a socket is assigned to
+     */
+    private final AtomicInteger nextLoop = new AtomicInteger();
+
+    /**
+     * The pooled write buffers
+     */
+    private ObjectPool<ByteBuffer> writeBuffers;
+
+    /**
+     * The size of the read and write buffers
+     */
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+
+    /**
+     * Starts the selector loops, does nothing when they are started
+     *
+     * @throws LoggedException on failure to open a selector
+     */
+    @Override
+    public synchronized void connect() throws LoggedException {
+
+        if (this.loops != null)
+            return;
+
+        Object size = Keywords.getArgument(this.getConnectorParameters(), Keywords.TCP_BUFFER_SIZE);
+        this.bufferSize = size == null ? DEFAULT_BUFFER_SIZE : Integer.parseInt(size.toString().trim());
+        int bufferSize = this.bufferSize;
+        this.writeBuffers = new ObjectPool<>(() -> ByteBuffer.allocateDirect(bufferSize));
+
+        SelectorLoop[] loops = new SelectorLoop[selectorCount(Keywords.getArgument(this.getConnectorParameters(), Keywords.TCP_SELECTORS))];
+        try {
+            for (int i = 0; i < loops.length; i++)
+                loops[i] = new SelectorLoop("frisbee-selector-" + this.getConnectorID() + "-" + i, bufferSize);
+        } catch (IOException e) {
+            for (SelectorLoop loop : loops) {
+                if (loop != null)
+                    loop.shutdown(0);
+            }
+            throw new LoggedException(e);
+        }
+        this.loops = loops;
+    }
+
+    /**
+     * Returns the number of selector loops configured
+     *
+     * @param value the configured value, may be null
+     * @return the number of loops
+     */
+    static int selectorCount(Object value) {
+        if (value == null || value.toString().trim().isEmpty())
+            return 1;
+        if (value.toString().trim().equalsIgnoreCase(Keywords.TCP_SELECTORS_CORES))
+            return Runtime.getRuntime().availableProcessors();
+
+        int count = Integer.parseInt(value.toString().trim());
+        if (count <= 0)
+            throw new IllegalArgumentException("Selector count must be positive, not " + count);
+        return count;
+    }
+
+    /**
+     * Closes every connection and stops the selector loops
+     *
+     * @throws LoggedException on failure to close a connection
+     */
+    @Override
+    public synchronized void disconnect() throws LoggedException {
+
+        if (this.loops == null)
+            return;
+
+        for (Connection connection : this.getConnections().values())
+            connection.close();
+
+        for (SelectorLoop loop : this.loops)
+            loop.shutdown(1000);
+        this.loops = null;
+    }
+
+    /**
+     * Returns the loop serving the next connection, starting the loops when needed
+     *
+     * @return the loop
+     * @throws LoggedException on failure to start the loops
+     */
+    synchronized SelectorLoop nextLoop() throws LoggedException {
+        this.connect();
+        return this.loops[Math.floorMod(this.nextLoop.getAndIncrement(), this.loops.length)];
+    }
+
+    /**
+     * Takes a cleared write buffer from the pool
+     *
+     * @return the buffer
+     */
+    ByteBuffer acquireBuffer() {
+        ByteBuffer buffer = this.writeBuffers.acquire();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Returns a write buffer to the pool
+     *
+     * @param buffer the buffer, not used by the caller anymore
+     */
+    void releaseBuffer(ByteBuffer buffer) {
+        this.writeBuffers.release(buffer);
+    }
+
+    /**
+     * Returns the number of selector loops running
+     *
+     * @return the number of loops, 0 while disconnected
+     */
+    public synchronized int getSelectorCount() {
+        return this.loops == null ? 0 : this.loops.length;
+    }
+
+    /**
+     * Returns the size of the read and write buffers
+     *
+     * @return the size in bytes
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+}
@@ -0,0 +1,615 @@
+package frisbee.communications;
+
+import frisbee.configuration.Keywords;
+import frisbee.exceptions.LoggedException;
+import frisbee.messaging.FrameLayout;
+import frisbee.messaging.FramePayload;
+import frisbee.messaging.Message;
+import frisbee.messaging.SlotPayload;
+import frisbee.tools.ObjectPool;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code UdpConnection} class receives and sends fixed-width frames as UDP datagrams
+ * <p>
+ * A connection configured with a {@value frisbee.configuration.Keywords#UDP_PORT} receives the datagrams sent to it, a connection configured
+ * with a {@value frisbee.configuration.Keywords#UDP_REMOTE_HOST} and a {@value frisbee.configuration.Keywords#UDP_REMOTE_PORT} sends
+ * the messages written to it, a connection may do both.
+ * <p>
+ * On every wakeup the listener drains up to {@value #DRAIN_LIMIT} datagrams from the socket into direct buffers taken from the pool of the
+ * connection, then cuts them into frames as configured on the message inputs, every datagram holding whole frames, or a single one
+ * when no framing is configured. Frames are read in place through a single reused payload, so with message pooling on no datagram allocates.
+ * Frames published to an {@link #startIngress() ingress ring} are copied first, into pooled buffers recycled once the payload is released,
+ * or into new buffers with message pooling off, nothing then telling when the messages created from the payload are written.
+ * <p>
+ * Waiting while backpressure is applied would only move the loss to the socket, so datagrams received while paused are dropped and counted.
+ * Datagrams longer than the {@value frisbee.configuration.Keywords#UDP_DATAGRAM_SIZE}, {@value #DEFAULT_DATAGRAM_SIZE} bytes by default,
+ * are truncated by the socket and dropped, and sends refused by a full socket buffer are dropped, both counted. The datagrams dropped by the
+ * kernel because the socket receive buffer was full are read from {@code /proc/net/udp} where available, the buffer size is set by the
+ * {@value frisbee.configuration.Keywords#UDP_RECEIVE_BUFFER} parameter.
+ * <p>
+ * Messages written in a batch are packed into as few datagrams as they fit in.
+ * <p>
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public class UdpConnection extends Connection {
+
+    /**
+     * Default size of the largest datagram, the payload of an Ethernet frame
+     */
+    public static final int DEFAULT_DATAGRAM_SIZE = 1472;
+
+    /**
+     * Maximum number of datagrams drained on a wakeup
+     */
+    public static final int DRAIN_LIMIT = 64;
+
+    /**
+     * The socket, null while closed
+     */
+    private volatile DatagramChannel channel;
+
+    /**
+     * The selector waking the listener up, null while not listening
+     */
+    private volatile Selector selector;
+
+    /**
+     * The address sent to, null when the connection only receives
+     */
+    private InetSocketAddress remote;
+
+    /**
+     * The size of the largest datagram
+     */
+    private int datagramSize = DEFAULT_DATAGRAM_SIZE;
+
+    /**
+     * The pooled datagram buffers, one byte longer than the largest datagram to detect truncation
+     */
+    private ObjectPool<ByteBuffer> buffers;
+
+    /**
+     * The pooled copies of the frames published to the ingress ring
+     */
+    private ObjectPool<FrameCopy> copies;
+
+    /**
+     * Whether received datagrams are dropped
+     */
+    private volatile boolean paused;
+
+    /**
+     * The payload reading the frames in place, reused by the listener from frame to frame
+     */
+    private FramePayload reader;
+
+    /**
+     * The number of datagrams received
+     */
+    private final LongAdder received = new LongAdder();
+
+    /**
+     * The number of datagrams dropped while paused
+     */
+    private final LongAdder overrunDrops = new LongAdder();
+
+    /**
+     * The number of datagrams dropped for being truncated
+     */
+    private final LongAdder truncatedDrops = new LongAdder();
+
+    /**
+     * The number of datagrams not sent for lack of room in the socket send buffer
+     */
+    private final LongAdder sendDrops = new LongAdder();
+
+    /**
+     * The number of frames dropped for lack of a fixed-width input layout
+     */
+    private final LongAdder droppedFrames = new LongAdder();
+
+    /**
+     * The number of pooled frame copies created
+     */
+    private final LongAdder copiesCreated = new LongAdder();
+
+    /**
+     * Hands the decoded frames over to the observers
+     */
+    private final FrameDecoder.FrameHandler frameHandler = this::onFrame;
+
+    /**
+     * Opens the socket, bound to the local port when configured
+     *
+     * @throws LoggedException on failure to open or bind the socket
+     */
+    @Override
+    public synchronized void open() throws LoggedException {
+
+        if (this.channel != null)
+            return;
+
+        Object host = Keywords.getArgument(this.getConnectionParameters(), Keywords.UDP_HOST);
+        Object port = Keywords.getArgument(this.getConnectionParameters(), Keywords.UDP_PORT);
+        Object remoteHost = Keywords.getArgument(this.getConnectionParameters(), Keywords.UDP_REMOTE_HOST);
+        Object remotePort = Keywords.getArgument(this.getConnectionParameters(), Keywords.UDP_REMOTE_PORT);
+        Object datagramSize = Keywords.getArgument(this.getConnectionParameters(), Keywords.UDP_DATAGRAM_SIZE);
+        Object receiveBuffer = Keywords.getArgument(this.getConnectionParameters(), Keywords.UDP_RECEIVE_BUFFER);
+
+        this.setConnectionState(ConnectionState.OPENING);
+        DatagramChannel channel = null;
+        try {
+            this.datagramSize = datagramSize == null ? DEFAULT_DATAGRAM_SIZE : Integer.parseInt(datagramSize.toString().trim());
+            int bufferSize = this.datagramSize + 1;
+            this.buffers = new ObjectPool<>(() -> ByteBuffer.allocateDirect(bufferSize));
+            this.copies = new ObjectPool<>(this::newFrameCopy);
+            this.remote = remotePort == null ? null
+                    : new InetSocketAddress(remoteHost == null ? "localhost" : remoteHost.toString().trim(), Integer.parseInt(remotePort.toString().trim()));
+
+            channel = DatagramChannel.open();
+            if (receiveBuffer != null)
+                channel.setOption(StandardSocketOptions.SO_RCVBUF, Integer.parseInt(receiveBuffer.toString().trim()));
+            if (port != null) {
+                int portNumber = Integer.parseInt(port.toString().trim());
+                channel.bind(host == null ? new InetSocketAddress(portNumber) : new InetSocketAddress(host.toString().trim(), portNumber));
+            }
+            channel.configureBlocking(false);
+        } catch (IOException | RuntimeException e) {
+            if (channel != null)
+                SelectorLoop.closeQuietly(channel);
+            this.setConnectionState(ConnectionState.ERROR);
+            throw new LoggedException(e);
+        }
+
+        this.channel = channel;
+        this.setConnectionState(ConnectionState.OPEN);
+    }
+
+    /**
+     * Closes the socket, stopping the listener
+     *
+     * @throws LoggedException never, failures to close are ignored
+     */
+    @Override
+    public synchronized void close() throws LoggedException {
+
+        if (this.channel == null)
+            return;
+
+        this.setConnectionState(ConnectionState.CLOSING);
+        SelectorLoop.closeQuietly(this.channel);
+        this.channel = null;
+
+        Selector selector = this.selector;
+        if (selector != null)
+            selector.wakeup();
+        this.setConnectionState(ConnectionState.CLOSED);
+    }
+
+    /**
+     * Drops the datagrams received until resumed, the socket being drained all the same
+     */
+    @Override
+    public void pause() throws LoggedException {
+        this.paused = true;
+    }
+
+    /**
+     * Resumes handing the datagrams received over
+     */
+    @Override
+    public void resume() throws LoggedException {
+        this.paused = false;
+    }
+
+    /**
+     * Closes and reopens the socket, starting a new listener when the connection was listening
+     *
+     * @throws LoggedException on failure to reopen the socket
+     */
+    @Override
+    public void reset() throws LoggedException {
+        boolean listening = this.selector != null;
+        this.setConnectionState(ConnectionState.RESETTING);
+        this.close();
+        this.open();
+        if (listening)
+            this.getThreadMode().newThread(this, "frisbee-listener-" + this.getConnectionID()).start();
+    }
+
+    /**
+     * Datagrams are handed over by the listener as they arrive, never polled
+     *
+     * @return null
+     */
+    @Override
+    protected Message readMessage() throws LoggedException {
+        return null;
+    }
+
+    /**
+     * Sends the frame of a message as a datagram
+     *
+     * @param message the message
+     * @throws LoggedException when the connection sends nowhere, the output has no fixed-width fields or the frame does not fit in a datagram
+     */
+    @Override
+    protected void writeMessage(Message message) throws LoggedException {
+        this.writeMessageBatch(Collections.singletonList(message));
+    }
+
+    /**
+     * Sends the frames of several messages, packed into as few datagrams as they fit in
+     *
+     * @param messages the messages to write, in order
+     * @throws LoggedException when the connection sends nowhere, the output has no fixed-width fields or a frame does not fit in a datagram
+     */
+    @Override
+    protected void writeMessageBatch(List<Message> messages) throws LoggedException {
+
+        if (this.channel == null)
+            this.open();
+        if (this.remote == null)
+            throw new LoggedException(new IllegalStateException("Connection " + this.getConnectionID() + " has no remote port"));
+
+        ByteBuffer buffer = this.buffers.acquire();
+        try {
+            buffer.clear().limit(this.datagramSize);
+            for (Message message : messages) {
+                buffer.mark();
+                if (this.encode(message, buffer))
+                    continue;
+                if (buffer.reset().position() == 0)
+                    throw new LoggedException(new BufferOverflowException());
+
+                this.send(buffer);
+                buffer.clear().limit(this.datagramSize);
+                if (!this.encode(message, buffer))
+                    throw new LoggedException(new BufferOverflowException());
+            }
+            if (buffer.position() > 0)
+                this.send(buffer);
+        } finally {
+            this.buffers.release(buffer);
+        }
+    }
+
+    /**
+     * Encodes the frame of a message at the position of a buffer
+     *
+     * @param message the message
+     * @param buffer  the buffer
+     * @return false when the frame does not fit in the buffer
+     * @throws LoggedException when the output has no fixed-width fields
+     */
+    private boolean encode(Message message, ByteBuffer buffer) throws LoggedException {
+        try {
+            if (message.encode(this.getConnectionID(), buffer) < 0)
+                throw new LoggedException(new IllegalStateException("Connection " + this.getConnectionID() + " has no fixed-width output fields"));
+            return true;
+        } catch (BufferOverflowException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Sends the frames of a buffer as a datagram, dropping it when the socket send buffer is full
+     *
+     * @param buffer the buffer, from its start to its position
+     * @throws LoggedException on failure to send
+     */
+    private void send(ByteBuffer buffer) throws LoggedException {
+        DatagramChannel channel = this.channel;
+        if (channel == null)
+            throw new LoggedException(new ClosedChannelException());
+
+        buffer.flip();
+        try {
+            if (channel.send(buffer, this.remote) == 0)
+                this.sendDrops.increment();
+        } catch (IOException e) {
+            throw new LoggedException(e);
+        }
+    }
+
+    /**
+     * Opens the connection and, when it receives, hands the datagrams received over until it is closed
+     *
+     * @see java.lang.Runnable#run()
+     */
+    @Override
+    public void run() {
+
+        DatagramChannel channel;
+        try {
+            this.open();
+            channel = this.channel;
+            if (channel == null || channel.getLocalAddress() == null)
+                return;
+        } catch (LoggedException | IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        ByteBuffer[] batch = new ByteBuffer[DRAIN_LIMIT];
+        for (int i = 0; i < batch.length; i++)
+            batch[i] = this.buffers.acquire();
+
+        FrameDecoder decoder = this.newFrameDecoder();
+        try (Selector selector = Selector.open()) {
+            this.selector = selector;
+            channel.register(selector, SelectionKey.OP_READ);
+            while (channel.isOpen()) {
+                selector.select();
+                selector.selectedKeys().clear();
+                while (this.drain(channel, batch, decoder) == DRAIN_LIMIT) {
+                    //the socket may hold more datagrams
+                }
+            }
+        } catch (ClosedChannelException | ClosedSelectorException e) {
+            //closed while listening
+        } catch (IOException e) {
+            e.printStackTrace();
+            this.setConnectionState(ConnectionState.ERROR);
+        } finally {
+            this.selector = null;
+            for (ByteBuffer buffer : batch)
+                this.buffers.release(buffer);
+        }
+    }
+
+    /**
+     * Receives the pending datagrams, up to the batch size, then hands them over
+     *
+     * @param channel the socket
+     * @param batch   the buffers received into
+     * @param decoder cuts the datagrams into frames, null when every datagram is a frame
+     * @return the number of datagrams received
+     * @throws IOException on failure to receive
+     */
+    private int drain(DatagramChannel channel, ByteBuffer[] batch, FrameDecoder decoder) throws IOException {
+
+        int count = 0;
+        while (count < batch.length) {
+            ByteBuffer buffer = batch[count];
+            buffer.clear();
+            if (channel.receive(buffer) == null)
+                break;
+            count++;
+        }
+        this.received.add(count);
+
+        for (int i = 0; i < count; i++) {
+            ByteBuffer datagram = batch[i];
+            datagram.flip();
+            if (datagram.limit() > this.datagramSize) {
+                this.truncatedDrops.increment();
+            } else if (this.paused || this.isBackpressured()) {
+                this.overrunDrops.increment();
+            } else if (decoder == null) {
+                this.onFrame(datagram);
+            } else {
+                decoder.feed(datagram, this.frameHandler);
+                decoder.finish(this.frameHandler);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Hands a frame over to the observers, on the listener thread
+     *
+     * @param frame the frame, only valid during the call
+     */
+    private void onFrame(ByteBuffer frame) {
+        FrameLayout layout = this.getRoutes().getFrameLayout();
+        if (layout == null) {
+            this.droppedFrames.increment();
+            return;
+        }
+
+        if (this.getIngress() != null) {
+            SlotPayload payload = this.newPayload();
+            if (payload.isLeased()) {
+                FrameCopy copy = this.copies.acquire();
+                payload.defer(copy.copy(layout, frame));
+                payload.onRelease(copy);
+            } else {
+                ByteBuffer copy = ByteBuffer.allocate(frame.remaining());
+                copy.put(frame.duplicate()).flip();
+                payload.defer(layout.wrap(copy));
+            }
+            this.receive(payload);
+            return;
+        }
+
+        if (this.reader == null || this.reader.getLayout() != layout)
+            this.reader = layout.wrap(frame);
+        else
+            this.reader.rewrap(frame);
+        this.receive(this.newPayload(this.reader));
+    }
+
+    /**
+     * Creates a frame copy for the pool, as long as the largest datagram
+     *
+     * @return the frame copy
+     */
+    private FrameCopy newFrameCopy() {
+        this.copiesCreated.increment();
+        return new FrameCopy(this.copies, this.datagramSize);
+    }
+
+    /**
+     * Returns the local port of the socket
+     *
+     * @return the port, -1 when not bound
+     */
+    public int getLocalPort() {
+        DatagramChannel channel = this.channel;
+        return channel == null || channel.socket().getLocalPort() <= 0 ? -1 : channel.socket().getLocalPort();
+    }
+
+    /**
+     * Returns the number of datagrams received
+     *
+     * @return the datagram count
+     */
+    public long getReceivedCount() {
+        return this.received.sum();
+    }
+
+    /**
+     * Returns the number of datagrams dropped while paused or backpressured
+     *
+     * @return the dropped datagram count
+     */
+    public long getOverrunDrops() {
+        return this.overrunDrops.sum();
+    }
+
+    /**
+     * Returns the number of datagrams dropped for being longer than the largest datagram
+     *
+     * @return the dropped datagram count
+     */
+    public long getTruncatedDrops() {
+        return this.truncatedDrops.sum();
+    }
+
+    /**
+     * Returns the number of datagrams not sent for lack of room in the socket send buffer
+     *
+     * @return the dropped datagram count
+     */
+    public long getSendDrops() {
+        return this.sendDrops.sum();
+    }
+
+    /**
+     * Returns the number of frames dropped for lack of a fixed-width input layout
+     *
+     * @return the dropped frame count
+     */
+    public long getDroppedFrames() {
+        return this.droppedFrames.sum();
+    }
+
+    /**
+     * Returns the number of pooled frame copies created for the ingress ring, bounded by the frames in flight
+     *
+     * @return the frame copy count
+     */
+    public long getFrameCopiesCreated() {
+        return this.copiesCreated.sum();
+    }
+
+    /**
+     * Returns the number of datagrams dropped by the kernel for the local port since the socket was bound, read from {@code /proc/net/udp}
+     * and {@code /proc/net/udp6}
+     *
+     * @return the dropped datagram count, -1 when not bound or not available on this platform
+     */
+    public long getKernelDrops() {
+        int port = this.getLocalPort();
+        if (port < 0)
+            return -1;
+
+        long drops = 0;
+        boolean found = false;
+        for (Path table : new Path[]{Paths.get("/proc/net/udp"), Paths.get("/proc/net/udp6")}) {
+            try {
+                for (String line : Files.readAllLines(table)) {
+                    //sl local_address rem_address st tx_queue:rx_queue tr:tm->when retrnsmt uid timeout inode ref pointer drops
+                    String[] columns = line.trim().split("\\s+");
+                    if (columns.length < 13 || !columns[1].contains(":"))
+                        continue;
+                    String localPort = columns[1].substring(columns[1].lastIndexOf(':') + 1);
+                    if (localPort.equalsIgnoreCase(String.format("%04X", port))) {
+                        drops += Long.parseLong(columns[columns.length - 1]);
+                        found = true;
+                    }
+                }
+            } catch (IOException | NumberFormatException e) {
+                //table not available
+            }
+        }
+        return found ? drops : -1;
+    }
+
+    /**
+     * A pooled copy of a frame published to the ingress ring, returned to its pool once the payload reading it is released
+     */
+    private static final class FrameCopy implements Runnable {
+
+        /**
+         * The pool the copy returns to
+         */
+        private final ObjectPool<FrameCopy> pool;
+
+        /**
+         * The copied frame
+         */
+        private final ByteBuffer buffer;
+
+        /**
+         * The payload reading the copied frame, reused from copy to copy
+         */
+        private FramePayload reader;
+
+        /**
+         * Creates a frame copy
+         *
+         * @param pool     the pool the copy returns to
+         * @param capacity the length of the largest frame
+         */
+        private FrameCopy(ObjectPool<FrameCopy> pool, int capacity) {
+            this.pool = pool;
+            this.buffer = ByteBuffer.allocate(capacity);
+        }
+
+        /**
+         * Copies a frame, returning the payload reading the copy
+         *
+         * @param layout the fixed-width input layout
+         * @param frame  the frame, only valid during the call
+         * @return the payload reading the copy
+         */
+        private FramePayload copy(FrameLayout layout, ByteBuffer frame) {
+            this.buffer.clear();
+            this.buffer.put(frame.duplicate()).flip();
+            if (this.reader == null || this.reader.getLayout() != layout)
+                this.reader = layout.wrap(this.buffer);
+            else
+                this.reader.rewrap(this.buffer);
+            return this.reader;
+        }
+
+        /**
+         * Returns the copy to its pool, run once the payload reading it is released
+         */
+        @Override
+        public void run() {
+            this.pool.release(this);
+        }
+    }
+}
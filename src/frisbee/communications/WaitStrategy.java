@@ -0,0 +1,87 @@
+package frisbee.communications;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Wait strategies used by the {@link frisbee.communications.IngressRing ingress ring} when it is empty or full
+ * <li>{@link #BUSY_SPIN}</li>
+ * <li>{@link #YIELDING}</li>
+ * <li>{@link #SLEEPING}</li>
+ * <li>{@link #BLOCKING}</li>
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public enum WaitStrategy {
+
+    /**
+     * Spins on the ring, lowest latency at the cost of a fully busy core per waiting thread
+     */
+    BUSY_SPIN,
+
+    /**
+     * Spins for a while and then yields the core to other threads
+     */
+    YIELDING,
+
+    /**
+     * Spins, yields and then parks for short periods, trading latency for idle CPU
+     */
+    SLEEPING,
+
+    /**
+     * Parks on a lock until the ring is signalled, lowest CPU usage and highest latency
+     */
+    BLOCKING;
+
+    /**
+     * Number of attempts spent spinning before yielding
+     */
+    private static final int SPIN_ATTEMPTS = 100;
+
+    /**
+     * Number of attempts spent yielding before parking
+     */
+    private static final int YIELD_ATTEMPTS = 200;
+
+    /**
+     * Nanoseconds parked by the sleeping strategy
+     */
+    private static final long SLEEP_NANOS = 100000L;
+
+    /**
+     * Returns the wait strategy matching a configuration value
+     *
+     * @param value the configured value, may be null
+     * @return the wait strategy, {@link #SLEEPING} when not configured
+     */
+    public static WaitStrategy fromConfiguration(Object value) {
+        if (value == null)
+            return SLEEPING;
+        return WaitStrategy.valueOf(value.toString().trim().toUpperCase().replace('-', '_'));
+    }
+
+    /**
+     * Waits once while the ring cannot make progress, strategies other than {@link #BLOCKING}
+     *
+     * @param attempt the number of unsuccessful attempts so far
+     */
+    void idle(int attempt) {
+        switch (this) {
+            case BUSY_SPIN:
+                break;
+            case YIELDING:
+                if (attempt > SPIN_ATTEMPTS)
+                    Thread.yield();
+                break;
+            case SLEEPING:
+            case BLOCKING:
+            default:
+                if (attempt > YIELD_ATTEMPTS)
+                    LockSupport.parkNanos(SLEEP_NANOS);
+                else if (attempt > SPIN_ATTEMPTS)
+                    Thread.yield();
+                break;
+        }
+    }
+}
@@ -8,6 +8,7 @@ import frisbee.messaging.MessageFieldConfig;
 import frisbee.messaging.MessageIOConfig;
 import frisbee.messaging.MessageIOConfig.Mode;
 import frisbee.messaging.MessageMapping;
+import frisbee.tools.ThreadMode;
 import frisbee.tools.Tools;
 import org.w3c.dom.Document;
 import org.w3c.dom.NamedNodeMap;
@@ -420,6 +421,11 @@ public class ConfigurationFactory {
             for (Node frisbeeNode : frisbeeNodes) {
 
                 FrisbeeConfig frisbeeConfig = new FrisbeeConfig(this.getTagAttributes(frisbeeNode, "id"));
+                frisbeeConfig.setThreadMode(ThreadMode.fromConfiguration(this.getTagAttributes(frisbeeNode, Keywords.THREADS)));
+
+                String dispatchThreads = this.getTagAttributes(frisbeeNode, Keywords.DISPATCH_THREADS);
+                if (dispatchThreads != null)
+                    frisbeeConfig.setDispatchThreads(Integer.parseInt(dispatchThreads));
 
                 //Grab all the logger configurations
                 frisbeeConfig.setLoggers(this.getMessageMapping(frisbeeNode, "logger"));
@@ -2,6 +2,7 @@ package frisbee.configuration;
 
 import frisbee.communications.Connector;
 import frisbee.messaging.MessageMapping;
+import frisbee.tools.ThreadMode;
 import frisbee.tools.Tools;
 
 import java.util.LinkedList;
@@ -36,6 +37,16 @@ public class FrisbeeConfig {
      */
     private List<MessageMapping> loggers = new LinkedList<>();
 
+    /**
+     * The kind of threads running the connection listeners and output writers of the frisbee instance
+     */
+    private ThreadMode threadMode = ThreadMode.PLATFORM;
+
+    /**
+     * The number of threads writing to the outputs of the frisbee instance, chosen from the number of processors when not strictly positive
+     */
+    private int dispatchThreads;
+
     public FrisbeeConfig(String id) {
 
         this.frisbeeID = id;
@@ -95,6 +106,42 @@ public class FrisbeeConfig {
         this.connectors.add(connector);
     }
 
+    /**
+     * Get the kind of threads running the connection listeners and output writers of a frisbee instance
+     *
+     * @return the thread mode
+     */
+    public ThreadMode getThreadMode() {
+        return threadMode;
+    }
+
+    /**
+     * Sets the kind of threads running the connection listeners and output writers of a frisbee instance
+     *
+     * @param threadMode the thread mode
+     */
+    public void setThreadMode(ThreadMode threadMode) {
+        this.threadMode = threadMode;
+    }
+
+    /**
+     * Get the number of threads writing to the outputs of a frisbee instance
+     *
+     * @return the number of output threads, not strictly positive when chosen from the number of processors
+     */
+    public int getDispatchThreads() {
+        return dispatchThreads;
+    }
+
+    /**
+     * Sets the number of threads writing to the outputs of a frisbee instance
+     *
+     * @param dispatchThreads the number of output threads
+     */
+    public void setDispatchThreads(int dispatchThreads) {
+        this.dispatchThreads = dispatchThreads;
+    }
+
     /**
      * Get ID of frisbee instance
      *
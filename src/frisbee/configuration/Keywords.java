@@ -1,5 +1,7 @@
 package frisbee.configuration;
 
+import java.util.Map;
+
 /**
  * The {@code Keywords} class contains constants reflecting keywords found in the frisbee configuration file
  *
@@ -24,6 +26,11 @@ public final class Keywords {
     //a combination of both under and over
     public static final String MATCHSTYLE_ANY = "any";
 
+    //tag of a message input selecting the engine transforming its messages: the interpreted plan, or a plan composed per message
+    public static final String TRANSFORM_ENGINE = "transformEngine";
+    public static final String TRANSFORM_ENGINE_PLAN = "plan";
+    public static final String TRANSFORM_ENGINE_COMPOSED = "composed";
+
     //tag containing the value to match on
     public static final String MATCHONVALUE = "matchOnValue";
 
@@ -33,6 +40,91 @@ public final class Keywords {
     //tag containing the field identifier
     public static final String FIELD_KEY = "key";
 
+    //connection parameters of the ingress ring buffer: minimum number of slots, consumer threads and wait strategy
+    public static final String INGRESS_SIZE = "ingressSize";
+    public static final String INGRESS_WORKERS = "ingressWorkers";
+    public static final String INGRESS_WAIT = "ingressWait";
+
+    //frisbee attribute selecting the threads running connection listeners and output writers
+    public static final String THREADS = "threads";
+    public static final String THREADS_PLATFORM = "platform";
+    public static final String THREADS_VIRTUAL = "virtual";
+
+    //frisbee attribute setting the number of threads writing to the outputs
+    public static final String DISPATCH_THREADS = "dispatchThreads";
+
+    //tags of an async message output grouping messages into batches: maximum messages per batch and milliseconds to wait for a batch to fill
+    public static final String OUTPUT_BATCH_SIZE = "batchSize";
+    public static final String OUTPUT_LINGER = "linger";
+
+    //tags of a message output applying backpressure to the input: backlog pausing the input and backlog resuming it
+    public static final String OUTPUT_HIGH_WATERMARK = "highWatermark";
+    public static final String OUTPUT_LOW_WATERMARK = "lowWatermark";
+
+    //connector parameters of a TCP connector: number of selector loops, a number or one per core, and size of the read and write buffers
+    public static final String TCP_SELECTORS = "selectors";
+    public static final String TCP_SELECTORS_CORES = "cores";
+    public static final String TCP_BUFFER_SIZE = "bufferSize";
+
+    //connection parameters of a TCP connection: host and port, role, listening for peers or connecting to one, and number of buffers
+    //queued to a peer before writers wait
+    public static final String TCP_HOST = "host";
+    public static final String TCP_PORT = "port";
+    public static final String TCP_ROLE = "role";
+    public static final String TCP_ROLE_SERVER = "server";
+    public static final String TCP_ROLE_CLIENT = "client";
+    public static final String TCP_SEND_QUEUE = "sendQueue";
+
+    //connection parameters of a UDP connection: local host and port received on, remote host and port sent to, largest datagram
+    //received or sent, and size of the socket receive buffer
+    public static final String UDP_HOST = "host";
+    public static final String UDP_PORT = "port";
+    public static final String UDP_REMOTE_HOST = "remoteHost";
+    public static final String UDP_REMOTE_PORT = "remotePort";
+    public static final String UDP_DATAGRAM_SIZE = "datagramSize";
+    public static final String UDP_RECEIVE_BUFFER = "receiveBuffer";
+
+    //connection parameters of a file connection: path of the file, bytes per segment scanned in parallel and number of scanning threads
+    public static final String FILE_PATH = "path";
+    public static final String FILE_SEGMENT_SIZE = "segmentSize";
+    public static final String FILE_PARALLELISM = "parallelism";
+
+    //connection parameters of a file output connection: bytes per file segment, durability, none, periodic or group, milliseconds between
+    //forces, or the longest a group commit waits, and number of messages forced by a group commit
+    public static final String FILE_ROLL_SIZE = "rollSize";
+    public static final String FILE_DURABILITY = "durability";
+    public static final String FILE_FORCE_INTERVAL = "forceInterval";
+    public static final String FILE_GROUP_SIZE = "groupSize";
+
+    //connector parameters of a drop folder connector: number of worker threads processing the claimed files, one per core by default
+    public static final String DROP_WORKERS = "workers";
+
+    //connection parameters of a drop folder connection, watching the directory at its path: directories the claimed, processed and failed
+    //files are moved to, subdirectories of the watched one by default, and glob matching the names of the files picked up
+    public static final String DROP_PROCESSING = "processingDirectory";
+    public static final String DROP_DONE = "doneDirectory";
+    public static final String DROP_ERROR = "errorDirectory";
+    public static final String DROP_GLOB = "glob";
+
+    //fixed-width input fields are laid out by their length one after the other, unless given the offset of their first byte in the frame
+    public static final String FLD_OFFSET = "offset";
+
+    //tag of an input field sharing the decoded instances of its repeated values, true or the number of values kept
+    public static final String FLD_CACHE = "cache";
+
+    //tag of a fixed-width message input holding the character set of its frames
+    public static final String INPUT_CHARSET = "charset";
+
+    //tags of a message input cutting its byte stream into frames: markers starting and ending a frame, marker separating frames,
+    //used when no end marker is configured, and longest frame accepted. Frames have a fixed length when no end marker is configured
+    public static final String INPUT_STX = "stx";
+    public static final String INPUT_ETX = "etx";
+    public static final String INPUT_DELIM = "delim";
+    public static final String INPUT_MAX_FRAME_LENGTH = "maxFrameLength";
+
+    //tag of a fixed-width message output holding the character set of its frames
+    public static final String OUTPUT_CHARSET = "charset";
+
     //Total message length
     public static final String MSG_LENGTH = "length";
     public static final String MSG_TRUNK = "trunk";
@@ -43,6 +135,9 @@ public final class Keywords {
     public static final String MSG_HEADER = "header";
     public static final String MSG_FOOTER = "footer";
 
+    //tag of a fixed-width message output embedding the transaction ID of the message after its header, true or false
+    public static final String MSG_TRANSACTION_ID = "transactionID";
+
 
     //field transformation parameters for output
     public static final String FLD_LENGTH = "length";
@@ -56,4 +151,26 @@ public final class Keywords {
     public static final String FLD_TYPE = "type";
     public static final String FLD_DATEFORMAT = "dateformat";
 
+
+    /**
+     * Returns the configuration value of a keyword
+     * <p>
+     * The {@link frisbee.configuration.ConfigurationFactory} lower cases tag names, so keywords are looked up as declared and then lower cased
+     *
+     * @param arguments the configuration arguments, may be null
+     * @param keyword   the keyword to look up
+     * @return the configured value, null when not configured
+     */
+    public static Object getArgument(Map<String, Object> arguments, String keyword) {
+
+        if (arguments == null)
+            return null;
+
+        Object value = arguments.get(keyword);
+        if (value == null)
+            value = arguments.get(keyword.toLowerCase());
+
+        return value;
+    }
+
 }
@@ -0,0 +1,129 @@
+package frisbee.messaging;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@code BlockTransactionIdGenerator} class generates transaction IDs from a counter handed out to threads in blocks
+ * <p>
+ * Every thread draws its IDs from a block of {@value #BLOCK_SIZE} consecutive counter values, and only touches the shared counter to take
+ * its next block. IDs are therefore increasing within a thread, unique across threads, and cost no contended update on the hot path.
+ * <p>
+ * A rendered ID is {@value #WIDTH} hexadecimal digits: the node, 4 digits, the start time of the generator in milliseconds, 11 digits,
+ * and the counter, 12 digits. The node and start time keep IDs unique across the nodes of a cluster and across restarts. The node is read from
+ * the {@value #NODE_PROPERTY} system property, 0 when not set
+ * <p>
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public final class BlockTransactionIdGenerator extends TransactionIdGenerator {
+
+    /**
+     * System property holding the node number, 0 to 65535
+     */
+    public static final String NODE_PROPERTY = "frisbee.nodeId";
+
+    /**
+     * Number of IDs taken at once by a thread
+     */
+    public static final int BLOCK_SIZE = 1024;
+
+    /**
+     * Width of rendered IDs
+     */
+    public static final int WIDTH = 27;
+
+    /**
+     * Number of counter digits
+     */
+    private static final int COUNTER_DIGITS = 12;
+
+    /**
+     * Hexadecimal digits
+     */
+    private static final byte[] DIGITS = "0123456789abcdef".getBytes();
+
+    /**
+     * The rendered node and start time
+     */
+    private final byte[] prefix = new byte[WIDTH - COUNTER_DIGITS];
+
+    /**
+     * The first counter value of the next block
+     */
+    private final AtomicLong nextBlock = new AtomicLong();
+
+    /**
+     * For every thread, the next counter value and the end of its block
+     */
+    private final ThreadLocal<long[]> blocks = ThreadLocal.withInitial(() -> new long[2]);
+
+    /**
+     * Creates a generator for the node configured by the {@value #NODE_PROPERTY} system property, starting now
+     */
+    public BlockTransactionIdGenerator() {
+        this(Integer.getInteger(NODE_PROPERTY, 0), System.currentTimeMillis());
+    }
+
+    /**
+     * Creates a generator
+     *
+     * @param node      the node number, 0 to 65535
+     * @param startTime the start time in milliseconds since the epoch
+     * @throws IllegalArgumentException when the node number is out of range
+     */
+    public BlockTransactionIdGenerator(int node, long startTime) {
+
+        if (node < 0 || node > 0xffff)
+            throw new IllegalArgumentException("Node number out of range: " + node);
+
+        hex(node, this.prefix, 0, 4);
+        hex(startTime, this.prefix, 4, 11);
+    }
+
+    /**
+     * Writes the lowest hexadecimal digits of a number
+     *
+     * @param value  the number
+     * @param out    the array written
+     * @param start  the first index written
+     * @param digits the number of digits
+     */
+    private static void hex(long value, byte[] out, int start, int digits) {
+        for (int i = start + digits - 1; i >= start; i--, value >>>= 4)
+            out[i] = DIGITS[(int) value & 0xf];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long next() {
+        long[] block = this.blocks.get();
+        if (block[0] == block[1]) {
+            block[0] = this.nextBlock.getAndAdd(BLOCK_SIZE);
+            block[1] = block[0] + BLOCK_SIZE;
+        }
+        return block[0]++;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getWidth() {
+        return WIDTH;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void render(long id, ByteBuffer out, int index) {
+        for (int i = 0; i < this.prefix.length; i++)
+            out.put(index + i, this.prefix[i]);
+        for (int i = index + WIDTH - 1; i >= index + this.prefix.length; i--, id >>>= 4)
+            out.put(i, DIGITS[(int) id & 0xf]);
+    }
+}
@@ -0,0 +1,155 @@
+package frisbee.messaging;
+
+import frisbee.configuration.Keywords;
+import frisbee.tools.Tools;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The {@code CompiledMapping} class holds the transformation and the fixed-width encoders of a {@link frisbee.messaging.MessageMapping message}
+ * compiled against the schema of the payloads received by its input
+ * <p>
+ * Compiled mappings are immutable and never written back into the message definition, so routes compiled for a new configuration
+ * do not change the behavior of connections still using the previous routes.
+ * <p>
+ * The messages are transformed by the interpreted plan, or by the {@link frisbee.messaging.ComposedTransformPlan composed plan} when the message
+ * input sets {@link frisbee.configuration.Keywords#TRANSFORM_ENGINE} to {@value frisbee.configuration.Keywords#TRANSFORM_ENGINE_COMPOSED}
+ * and the message can be composed.
+ * <p>
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public final class CompiledMapping {
+
+    /**
+     * The message definition
+     */
+    private final MessageMapping messageMapping;
+
+    /**
+     * The precompiled transformation of the message fields
+     */
+    private final TransformPlan transformPlan;
+
+    /**
+     * The engine transforming the messages, the transformation plan unless composed
+     */
+    private final MessageTransformer transformer;
+
+    /**
+     * The fixed-width encoders of the outputs whose fields all have a length, by output connection ID
+     */
+    private final Map<String, FixedWidthEncoder> encoders;
+
+    /**
+     * Whether a fixed-width output embeds the transaction ID of the messages
+     */
+    private final boolean embedsTransactionID;
+
+    /**
+     * Compiles the message field configurations of a message definition into a transformation plan and the output encoders
+     *
+     * @param messageMapping the message definition
+     * @param inputSchema    the schema of the input payloads to read by ordinal, null to read them by key
+     * @throws IllegalArgumentException when the transformation engine of the input is unknown
+     */
+    public CompiledMapping(MessageMapping messageMapping, PayloadSchema inputSchema) {
+
+        TransformPlan plan = new TransformPlan(messageMapping, inputSchema);
+
+        this.messageMapping = messageMapping;
+        this.transformPlan = plan;
+
+        MessageTransformer composed = composes(messageMapping.getInput()) ? ComposedTransformPlan.compose(plan) : null;
+        this.transformer = composed == null ? plan : composed;
+
+        Map<String, FixedWidthEncoder> encoders = new HashMap<>();
+        boolean embedsTransactionID = false;
+        for (String outputID : plan.getOutputIDs()) {
+            FixedWidthEncoder encoder = FixedWidthEncoder.forOutput(messageMapping, plan, outputID);
+            if (encoder != null) {
+                encoders.put(outputID, encoder);
+                embedsTransactionID |= encoder.embedsTransactionID();
+            }
+        }
+        this.embedsTransactionID = embedsTransactionID;
+        this.encoders = Collections.unmodifiableMap(encoders);
+    }
+
+    /**
+     * Returns the message definition
+     *
+     * @return the message mapping
+     */
+    public MessageMapping getMessageMapping() {
+        return messageMapping;
+    }
+
+    /**
+     * Returns the precompiled transformation of the message fields
+     *
+     * @return the transformation plan
+     */
+    public TransformPlan getTransformPlan() {
+        return transformPlan;
+    }
+
+    /**
+     * Tells whether a message input selects the composed transformation engine
+     *
+     * @param input the message input, may be null
+     * @return true when {@value frisbee.configuration.Keywords#TRANSFORM_ENGINE_COMPOSED} is selected
+     * @throws IllegalArgumentException when the engine is unknown
+     */
+    private static boolean composes(MessageIOConfig input) {
+
+        Object engine = input == null ? null : Keywords.getArgument(input.getArguments(), Keywords.TRANSFORM_ENGINE);
+        if (engine == null || engine.toString().trim().equalsIgnoreCase(Keywords.TRANSFORM_ENGINE_PLAN))
+            return false;
+        if (engine.toString().trim().equalsIgnoreCase(Keywords.TRANSFORM_ENGINE_COMPOSED))
+            return true;
+        throw new IllegalArgumentException("Unknown transformation engine: " + engine);
+    }
+
+    /**
+     * Returns the engine transforming the messages
+     *
+     * @return the composed plan when selected and supported, the transformation plan otherwise
+     */
+    public MessageTransformer getTransformer() {
+        return transformer;
+    }
+
+    /**
+     * Returns the fixed-width encoder of an output
+     *
+     * @param outputID the output connection ID
+     * @return the encoder, null when a field of the output has no length
+     */
+    public FixedWidthEncoder getEncoder(String outputID) {
+        return encoders.get(outputID);
+    }
+
+    /**
+     * Tells whether a fixed-width output embeds the transaction ID of the messages
+     *
+     * @return true when the messages need a transaction ID
+     */
+    public boolean embedsTransactionID() {
+        return embedsTransactionID;
+    }
+
+    /**
+     * Method returning a string representation
+     *
+     * @return string containing class name and member values
+     */
+    @Override
+    public String toString() {
+
+        return Tools.toString(this);
+    }
+}
@@ -0,0 +1,582 @@
+package frisbee.messaging;
+
+import frisbee.tools.Tools;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The {@code ComposedTransformPlan} class is a {@link frisbee.messaging.TransformPlan transformation plan} composed into straight-line runs
+ * of specialized steps per output
+ * <p>
+ * Every field output gets the step doing only what its configuration needs, decided once when the message is composed:
+ * forced values are transformed once and written as constants, untransformed values are copied, numeric values are written to primitive
+ * slots, headers and footers are concatenated at once, and fitted text values are composed in characters reused by the thread, pads
+ * repeated beforehand, so a text field only allocates its resulting string.
+ * Fields with another configuration, such as a date format followed by a length, run the steps of their field plan
+ * <p>
+ * Every field of an output writes its own slot, so the steps of an output are grouped by kind and every run calls a single step class,
+ * which the JIT inlines, where the interpreted plan dispatches every field through the same call site
+ * <p>
+ * Messages whose fields share an output key, their values then being concatenated, are not composed and keep the interpreted plan
+ * <p>
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public final class ComposedTransformPlan implements MessageTransformer {
+
+    /**
+     * The characters composing fitted text values, one array per thread grown to the longest text
+     */
+    private static final ThreadLocal<char[]> SCRATCH = ThreadLocal.withInitial(() -> new char[0]);
+
+    /**
+     * The schema of the payload holding the field values of every output, keyed by output connection ID
+     */
+    private final PayloadSchema outputsSchema;
+
+    /**
+     * The schema of the input payloads read by ordinal, null when input payloads are always read by key
+     */
+    private final PayloadSchema inputSchema;
+
+    /**
+     * For every output connection, the steps writing its fields grouped by kind
+     */
+    private final Output[] outputs;
+
+    /**
+     * The length of the longest fitted text
+     */
+    private final int scratchLength;
+
+    /**
+     * Composes the steps of a transformation plan
+     *
+     * @param plan the transformation plan
+     */
+    private ComposedTransformPlan(TransformPlan plan) {
+
+        FieldOutputPlan[][] outputFields = plan.getOutputFields();
+        int[][] sources = plan.getSourceOrdinals();
+        int[][] targets = plan.getTargetOrdinals();
+
+        this.outputsSchema = plan.getOutputsSchema();
+        this.inputSchema = plan.getInputSchema();
+        this.outputs = new Output[outputFields.length];
+
+        int scratchLength = 0;
+        for (int i = 0; i < outputFields.length; i++) {
+            List<Step> steps = new ArrayList<>();
+            for (int f = 0; f < outputFields[i].length; f++) {
+                Step step = step(outputFields[i][f], sources[i][f], targets[i][f]);
+                if (step instanceof Fitted)
+                    scratchLength = Math.max(scratchLength, ((Fitted) step).textLength());
+                steps.add(step);
+            }
+            this.outputs[i] = new Output(plan.getOutputSchemas()[i], steps);
+        }
+        this.scratchLength = scratchLength;
+    }
+
+    /**
+     * Composes the steps of a transformation plan
+     *
+     * @param plan the transformation plan
+     * @return the composed plan, null when fields of an output share an output key
+     */
+    public static ComposedTransformPlan compose(TransformPlan plan) {
+
+        for (FieldOutputPlan[] fields : plan.getOutputFields()) {
+            Set<String> outputKeys = new HashSet<>();
+            for (FieldOutputPlan field : fields) {
+                if (!outputKeys.add(field.getOutputKey()))
+                    return null;
+            }
+        }
+        return new ComposedTransformPlan(plan);
+    }
+
+    /**
+     * Picks the step writing a field output
+     *
+     * @param field  the field plan
+     * @param source the ordinal of the input key in the input schema, -1 when read by key
+     * @param target the ordinal of the output key in the output schema
+     * @return the step
+     */
+    private static Step step(FieldOutputPlan field, int source, int target) {
+
+        ValueConverter converter = field.getConverter();
+        boolean affixed = !field.getHeader().isEmpty() || !field.getFooter().isEmpty();
+
+        if (field.isPrimitive())
+            return new Primitive(field, source, target);
+        if (field.getForceValue() != null)
+            return new Constant(field, target, field.transform(null));
+        if (converter == null && field.getFit() == null && !affixed)
+            return new Copy(field, source, target);
+        if ((converter == null || converter == ValueConverter.STRING) && field.getFit() != null)
+            return new Fitted(field, source, target);
+        if ((converter == null || converter == ValueConverter.STRING) && affixed)
+            return new Affix(field, source, target);
+        return new Generic(field, source, target);
+    }
+
+    /**
+     * Produces the output payloads of a message
+     *
+     * @param inputPayload the payload received
+     * @return the field values of every output, by output connection ID
+     */
+    @Override
+    public Map<String, Object> apply(Map<String, Object> inputPayload) {
+
+        SlotPayload inputSlots = TransformPlan.bound(inputPayload, this.inputSchema);
+        SlotPayload outputPayload = this.outputsSchema.newPayload();
+        char[] scratch = SCRATCH.get();
+        if (scratch.length < this.scratchLength) {
+            scratch = new char[this.scratchLength];
+            SCRATCH.set(scratch);
+        }
+
+        for (int i = 0; i < this.outputs.length; i++)
+            outputPayload.set(i, this.outputs[i].write(inputPayload, inputSlots, scratch));
+
+        return outputPayload;
+    }
+
+    /**
+     * Method returning a string representation
+     *
+     * @return string containing class name and member values
+     */
+    @Override
+    public String toString() {
+
+        return Tools.toString(this);
+    }
+
+    /**
+     * The steps writing the fields of an output, grouped by kind
+     */
+    private static final class Output {
+
+        /**
+         * The schema of the field values
+         */
+        private final PayloadSchema schema;
+
+        /**
+         * The steps writing forced values
+         */
+        private final Constant[] constants;
+
+        /**
+         * The steps copying input values
+         */
+        private final Copy[] copies;
+
+        /**
+         * The steps writing primitive slots
+         */
+        private final Primitive[] primitives;
+
+        /**
+         * The steps surrounding text with a header and footer
+         */
+        private final Affix[] affixes;
+
+        /**
+         * The steps fitting text to a length
+         */
+        private final Fitted[] fitted;
+
+        /**
+         * The steps running their field plan
+         */
+        private final Generic[] generics;
+
+        /**
+         * Groups the steps of an output by kind
+         *
+         * @param schema the schema of the field values
+         * @param steps  the steps in field order
+         */
+        private Output(PayloadSchema schema, List<Step> steps) {
+            this.schema = schema;
+            this.constants = ofKind(steps, Constant.class);
+            this.copies = ofKind(steps, Copy.class);
+            this.primitives = ofKind(steps, Primitive.class);
+            this.affixes = ofKind(steps, Affix.class);
+            this.fitted = ofKind(steps, Fitted.class);
+            this.generics = ofKind(steps, Generic.class);
+        }
+
+        /**
+         * Selects the steps of a kind
+         *
+         * @param steps the steps in field order
+         * @param kind  the step class
+         * @param <S>   the step type
+         * @return the steps of the kind, in field order
+         */
+        @SuppressWarnings("unchecked")
+        private static <S extends Step> S[] ofKind(List<Step> steps, Class<S> kind) {
+            List<S> selected = new ArrayList<>();
+            for (Step step : steps) {
+                if (kind.isInstance(step))
+                    selected.add(kind.cast(step));
+            }
+            return selected.toArray((S[]) Array.newInstance(kind, selected.size()));
+        }
+
+        /**
+         * Writes the field values of the output
+         *
+         * @param inputPayload the payload received
+         * @param inputSlots   the payload received when bound to the input schema, null otherwise
+         * @param scratch      the characters of the running thread, long enough for the text of any step
+         * @return the field values
+         */
+        private SlotPayload write(Map<String, Object> inputPayload, SlotPayload inputSlots, char[] scratch) {
+            SlotPayload out = this.schema.newPayload();
+            for (Constant step : this.constants)
+                step.write(inputPayload, inputSlots, out, scratch);
+            for (Copy step : this.copies)
+                step.write(inputPayload, inputSlots, out, scratch);
+            for (Primitive step : this.primitives)
+                step.write(inputPayload, inputSlots, out, scratch);
+            for (Affix step : this.affixes)
+                step.write(inputPayload, inputSlots, out, scratch);
+            for (Fitted step : this.fitted)
+                step.write(inputPayload, inputSlots, out, scratch);
+            for (Generic step : this.generics)
+                step.write(inputPayload, inputSlots, out, scratch);
+            return out;
+        }
+    }
+
+    /**
+     * Writes a single field output
+     */
+    abstract static class Step {
+
+        /**
+         * The input payload key to read the value from, null when none
+         */
+        final String inputKey;
+
+        /**
+         * The ordinal of the input key in the input schema, -1 when read by key
+         */
+        final int source;
+
+        /**
+         * The ordinal of the output key in the output schema
+         */
+        final int target;
+
+        /**
+         * Step constructor
+         *
+         * @param field  the field plan
+         * @param source the ordinal of the input key in the input schema, -1 when read by key
+         * @param target the ordinal of the output key in the output schema
+         */
+        Step(FieldOutputPlan field, int source, int target) {
+            this.inputKey = field.getInputKey();
+            this.source = source;
+            this.target = target;
+        }
+
+        /**
+         * Reads the input value of the field
+         *
+         * @param inputPayload the payload received
+         * @param inputSlots   the payload received when bound to the input schema, null otherwise
+         * @return the input value, null when absent
+         */
+        final Object read(Map<String, Object> inputPayload, SlotPayload inputSlots) {
+            if (inputSlots != null && this.source >= 0)
+                return inputSlots.get(this.source);
+            return this.inputKey == null ? null : inputPayload.get(this.inputKey);
+        }
+
+        /**
+         * Writes the output value of the field, leaving it absent when the input value is
+         *
+         * @param inputPayload the payload received
+         * @param inputSlots   the payload received when bound to the input schema, null otherwise
+         * @param out          the field values of the output
+         * @param scratch      the characters of the running thread, long enough for the text of any step
+         */
+        abstract void write(Map<String, Object> inputPayload, SlotPayload inputSlots, SlotPayload out, char[] scratch);
+
+        /**
+         * Method returning a string representation
+         *
+         * @return string containing class name and member values
+         */
+        @Override
+        public String toString() {
+
+            return Tools.toString(this);
+        }
+    }
+
+    /**
+     * Writes a forced value, transformed once when composed
+     */
+    static final class Constant extends Step {
+
+        /**
+         * The transformed forced value, null when it cannot be converted
+         */
+        private final Object value;
+
+        /**
+         * Constant step constructor
+         *
+         * @param field  the field plan
+         * @param target the ordinal of the output key in the output schema
+         * @param value  the transformed forced value
+         */
+        Constant(FieldOutputPlan field, int target, Object value) {
+            super(field, -1, target);
+            this.value = value;
+        }
+
+        @Override
+        void write(Map<String, Object> inputPayload, SlotPayload inputSlots, SlotPayload out, char[] scratch) {
+            if (this.value != null)
+                out.set(this.target, this.value);
+        }
+    }
+
+    /**
+     * Copies an input value without transforming it
+     */
+    static final class Copy extends Step {
+
+        /**
+         * Copy step constructor
+         *
+         * @param field  the field plan
+         * @param source the ordinal of the input key in the input schema, -1 when read by key
+         * @param target the ordinal of the output key in the output schema
+         */
+        Copy(FieldOutputPlan field, int source, int target) {
+            super(field, source, target);
+        }
+
+        @Override
+        void write(Map<String, Object> inputPayload, SlotPayload inputSlots, SlotPayload out, char[] scratch) {
+            Object value = this.read(inputPayload, inputSlots);
+            if (value != null)
+                out.set(this.target, value);
+        }
+    }
+
+    /**
+     * Converts an input value into a primitive slot
+     */
+    static final class Primitive extends Step {
+
+        /**
+         * The field plan, writing the primitive slot
+         */
+        private final FieldOutputPlan field;
+
+        /**
+         * Primitive step constructor
+         *
+         * @param field  the field plan
+         * @param source the ordinal of the input key in the input schema, -1 when read by key
+         * @param target the ordinal of the output key in the output schema
+         */
+        Primitive(FieldOutputPlan field, int source, int target) {
+            super(field, source, target);
+            this.field = field;
+        }
+
+        @Override
+        void write(Map<String, Object> inputPayload, SlotPayload inputSlots, SlotPayload out, char[] scratch) {
+            this.field.write(inputPayload, inputSlots, this.source, out, this.target);
+        }
+    }
+
+    /**
+     * Writes the text of an input value surrounded by its header and footer, in a single concatenation
+     */
+    static final class Affix extends Step {
+
+        /**
+         * The text prepended to the value, empty when not configured
+         */
+        private final String header;
+
+        /**
+         * The text appended to the value, empty when not configured
+         */
+        private final String footer;
+
+        /**
+         * Affix step constructor
+         *
+         * @param field  the field plan
+         * @param source the ordinal of the input key in the input schema, -1 when read by key
+         * @param target the ordinal of the output key in the output schema
+         */
+        Affix(FieldOutputPlan field, int source, int target) {
+            super(field, source, target);
+            this.header = field.getHeader();
+            this.footer = field.getFooter();
+        }
+
+        @Override
+        void write(Map<String, Object> inputPayload, SlotPayload inputSlots, SlotPayload out, char[] scratch) {
+            Object value = this.read(inputPayload, inputSlots);
+            if (value == null)
+                return;
+
+            String text = value.toString();
+            out.set(this.target, new StringBuilder(this.header.length() + text.length() + this.footer.length())
+                    .append(this.header)
+                    .append(text)
+                    .append(this.footer)
+                    .toString());
+        }
+    }
+
+    /**
+     * Writes the text of an input value fitted to its length and surrounded by its header and footer, composed in the characters of the thread
+     */
+    static final class Fitted extends Step {
+
+        /**
+         * The configured length, padding and truncation
+         */
+        private final FieldTransform.Fit fit;
+
+        /**
+         * The text prepended to the value, empty when not configured
+         */
+        private final String header;
+
+        /**
+         * The text appended to the value, empty when not configured
+         */
+        private final String footer;
+
+        /**
+         * The left padding of the longest run, the pad repeated over the length
+         */
+        private final char[] leftFill;
+
+        /**
+         * The right padding of the longest run, the pad repeated over the length
+         */
+        private final char[] rightFill;
+
+        /**
+         * Fitted step constructor
+         *
+         * @param field  the field plan
+         * @param source the ordinal of the input key in the input schema, -1 when read by key
+         * @param target the ordinal of the output key in the output schema
+         */
+        Fitted(FieldOutputPlan field, int source, int target) {
+            super(field, source, target);
+            this.fit = field.getFit();
+            this.header = field.getHeader();
+            this.footer = field.getFooter();
+            this.leftFill = fill(this.fit.getLeftPad(), this.fit.getLength());
+            this.rightFill = fill(this.fit.getRightPad(), this.fit.getLength());
+        }
+
+        /**
+         * Repeats a pad over a length
+         *
+         * @param pad    the pad, null when the side is never padded
+         * @param length the length
+         * @return the repeated pad, empty when the side is never padded
+         */
+        private static char[] fill(String pad, int length) {
+            char[] fill = new char[pad == null ? 0 : length];
+            for (int i = 0; i < fill.length; i++)
+                fill[i] = pad.charAt(i % pad.length());
+            return fill;
+        }
+
+        /**
+         * Returns the length of the written text
+         *
+         * @return the header, fitted value and footer length
+         */
+        int textLength() {
+            return this.header.length() + this.fit.getLength() + this.footer.length();
+        }
+
+        @Override
+        void write(Map<String, Object> inputPayload, SlotPayload inputSlots, SlotPayload out, char[] scratch) {
+            Object value = this.read(inputPayload, inputSlots);
+            if (value == null)
+                return;
+
+            String text = value.toString();
+            int kept = Math.min(text.length(), this.fit.getLength());
+            int left = this.fit.leftPadding(text.length());
+            int skip = this.fit.skipped(text.length());
+            int right = this.fit.getLength() - left - kept;
+
+            int position = this.header.length();
+            this.header.getChars(0, position, scratch, 0);
+            System.arraycopy(this.leftFill, 0, scratch, position, left);
+            position += left;
+            text.getChars(skip, skip + kept, scratch, position);
+            position += kept;
+            System.arraycopy(this.rightFill, 0, scratch, position, right);
+            position += right;
+            this.footer.getChars(0, this.footer.length(), scratch, position);
+            position += this.footer.length();
+
+            out.set(this.target, new String(scratch, 0, position));
+        }
+    }
+
+    /**
+     * Runs the steps of the field plan
+     */
+    static final class Generic extends Step {
+
+        /**
+         * The field plan
+         */
+        private final FieldOutputPlan field;
+
+        /**
+         * Generic step constructor
+         *
+         * @param field  the field plan
+         * @param source the ordinal of the input key in the input schema, -1 when read by key
+         * @param target the ordinal of the output key in the output schema
+         */
+        Generic(FieldOutputPlan field, int source, int target) {
+            super(field, source, target);
+            this.field = field;
+        }
+
+        @Override
+        void write(Map<String, Object> inputPayload, SlotPayload inputSlots, SlotPayload out, char[] scratch) {
+            Object value = this.field.transform(this.read(inputPayload, inputSlots));
+            if (value != null)
+                out.set(this.target, value);
+        }
+    }
+}
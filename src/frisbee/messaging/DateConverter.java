@@ -0,0 +1,453 @@
+package frisbee.messaging;
+
+import frisbee.tools.Tools;
+
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * The {@code DateConverter} class reformats dates from the {@link frisbee.configuration.Keywords#FLD_DATEFORMAT date format} of an input field
+ * to the date format of a field output
+ * <p>
+ * Both formats are compiled once and the converter is immutable, so it is shared by every thread applying the field plan.
+ * Formats made only of the fixed width numeric letters {@code yyyy MM dd HH mm ss SSS} and literals, such as {@code yyyyMMddHHmmss},
+ * are parsed and written digit by digit, the date travelling between both formats packed in a single {@code long}.
+ * Other formats go through a {@link java.time.format.DateTimeFormatter}.
+ * <p>
+ * Text values are parsed with the input format and left unchanged when the input has none. Dates, temporal objects and numbers,
+ * read as milliseconds since the epoch, are formatted in the default time zone. Parts of the date missing from the input default
+ * to 1970-01-01 00:00:00.000 and values which are not valid dates leave the field absent
+ * <p>
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public final class DateConverter extends ValueConverter {
+
+    /**
+     * Bit positions of the packed date parts
+     */
+    private static final int MILLIS = 0, SECOND = 10, MINUTE = 16, HOUR = 22, DAY = 27, MONTH = 32, YEAR = 36;
+
+    /**
+     * The packed default date, 1970-01-01 00:00:00.000
+     */
+    private static final long EPOCH = pack(1970, 1, 1, 0, 0, 0, 0);
+
+    /**
+     * The format of text input values, null when text is left unchanged
+     */
+    private final DatePattern input;
+
+    /**
+     * The format of output values
+     */
+    private final DatePattern output;
+
+    /**
+     * The time zone of dates, temporal objects and numbers
+     */
+    private final ZoneId zone;
+
+    /**
+     * Compiles a date conversion
+     *
+     * @param inputFormat  the date format of the input field, may be null
+     * @param outputFormat the date format of the field output
+     * @throws IllegalArgumentException when a format is not a valid date pattern
+     */
+    public DateConverter(Object inputFormat, Object outputFormat) {
+
+        this.input = inputFormat == null ? null : new DatePattern(inputFormat.toString());
+        this.output = new DatePattern(outputFormat.toString());
+        this.zone = ZoneId.systemDefault();
+    }
+
+    /**
+     * Converts a date to the output format
+     *
+     * @param value the value, may be null
+     * @return the formatted date, null when the value is null or not a valid date
+     */
+    @Override
+    public Object convert(Object value) {
+
+        if (value == null)
+            return null;
+
+        long date;
+        if (value instanceof CharSequence) {
+            if (this.input == null)
+                return value.toString();
+            date = this.input.parse((CharSequence) value);
+        } else if (value instanceof Date) {
+            date = this.fromInstant(Instant.ofEpochMilli(((Date) value).getTime()));
+        } else if (value instanceof Number) {
+            date = this.fromInstant(Instant.ofEpochMilli(((Number) value).longValue()));
+        } else if (value instanceof Instant) {
+            date = this.fromInstant((Instant) value);
+        } else if (value instanceof TemporalAccessor) {
+            date = fromTemporal((TemporalAccessor) value);
+        } else {
+            return null;
+        }
+
+        return date < 0 ? null : this.output.format(date, this.zone);
+    }
+
+    /**
+     * Packs an instant in the time zone of the converter
+     *
+     * @param instant the instant
+     * @return the packed date, -1 when out of range
+     */
+    private long fromInstant(Instant instant) {
+        try {
+            return fromTemporal(LocalDateTime.ofInstant(instant, this.zone));
+        } catch (DateTimeException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Packs the parts of a temporal object
+     *
+     * @param temporal the temporal object
+     * @return the packed date, -1 when out of range
+     */
+    private static long fromTemporal(TemporalAccessor temporal) {
+        return pack(
+                part(temporal, ChronoField.YEAR, 1970),
+                part(temporal, ChronoField.MONTH_OF_YEAR, 1),
+                part(temporal, ChronoField.DAY_OF_MONTH, 1),
+                part(temporal, ChronoField.HOUR_OF_DAY, 0),
+                part(temporal, ChronoField.MINUTE_OF_HOUR, 0),
+                part(temporal, ChronoField.SECOND_OF_MINUTE, 0),
+                part(temporal, ChronoField.MILLI_OF_SECOND, 0));
+    }
+
+    /**
+     * Reads a part of a temporal object
+     *
+     * @param temporal     the temporal object
+     * @param field        the part
+     * @param defaultValue the value of a missing part
+     * @return the part value
+     */
+    private static int part(TemporalAccessor temporal, ChronoField field, int defaultValue) {
+        return temporal.isSupported(field) ? temporal.get(field) : defaultValue;
+    }
+
+    /**
+     * Packs the parts of a date in a single number
+     *
+     * @param year   the year, 0 to 9999
+     * @param month  the month, 1 to 12
+     * @param day    the day of the month
+     * @param hour   the hour of the day
+     * @param minute the minute of the hour
+     * @param second the second of the minute
+     * @param millis the millisecond of the second
+     * @return the packed date, -1 when a part is out of range or the day does not exist in the month
+     */
+    private static long pack(int year, int month, int day, int hour, int minute, int second, int millis) {
+
+        if (year < 0 || year > 9999 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)
+                || hour > 23 || minute > 59 || second > 59 || millis > 999 || (hour | minute | second | millis) < 0)
+            return -1;
+
+        return (long) year << YEAR | (long) month << MONTH | (long) day << DAY
+                | hour << HOUR | minute << MINUTE | second << SECOND | millis << MILLIS;
+    }
+
+    /**
+     * Unpacks a part of a date
+     *
+     * @param date  the packed date
+     * @param shift the bit position of the part
+     * @param bits  the width of the part
+     * @return the part value
+     */
+    private static int unpack(long date, int shift, int bits) {
+        return (int) (date >>> shift) & ((1 << bits) - 1);
+    }
+
+    /**
+     * Returns the width of a packed date part
+     *
+     * @param shift the bit position of the part
+     * @return the number of bits
+     */
+    private static int bitsOf(int shift) {
+        switch (shift) {
+            case YEAR:
+                return 14;
+            case MONTH:
+                return 4;
+            case DAY:
+            case HOUR:
+                return 5;
+            case MILLIS:
+                return 10;
+            default:
+                return 6;
+        }
+    }
+
+    /**
+     * Returns the number of days of a month
+     *
+     * @param year  the year
+     * @param month the month, 1 to 12
+     * @return the number of days
+     */
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    /**
+     * Method returning a string representation
+     *
+     * @return string containing class name and member values
+     */
+    @Override
+    public String toString() {
+
+        return Tools.toString(this);
+    }
+
+    /**
+     * A compiled date format, read and written digit by digit when made of fixed width numeric parts and literals
+     */
+    static final class DatePattern {
+
+        /**
+         * The date format
+         */
+        private final String pattern;
+
+        /**
+         * The formatter used when the format has no fixed width form
+         */
+        private final DateTimeFormatter formatter;
+
+        /**
+         * The text of a formatted date with literals in place and digits to fill, null when the format has no fixed width form
+         */
+        private final char[] template;
+
+        /**
+         * For every numeric part, its bit position in the packed date
+         */
+        private final int[] shifts;
+
+        /**
+         * For every numeric part, its first character in the formatted date
+         */
+        private final int[] offsets;
+
+        /**
+         * For every numeric part, its number of digits
+         */
+        private final int[] widths;
+
+        /**
+         * Compiles a date format
+         *
+         * @param pattern the date format
+         * @throws IllegalArgumentException when the format is not a valid date pattern
+         */
+        DatePattern(String pattern) {
+
+            this.pattern = pattern;
+            this.formatter = DateTimeFormatter.ofPattern(pattern);
+
+            StringBuilder template = new StringBuilder();
+            List<int[]> parts = new ArrayList<>();
+            boolean fixed = true;
+
+            for (int i = 0; i < pattern.length() && fixed; ) {
+
+                char c = pattern.charAt(i);
+                int run = 1;
+                while (i + run < pattern.length() && pattern.charAt(i + run) == c)
+                    run++;
+
+                if (c == '\'') {
+                    //quoted literal, two quotes stand for one
+                    int end = i + 1;
+                    if (end < pattern.length() && pattern.charAt(end) == '\'') {
+                        template.append('\'');
+                        i = end + 1;
+                        continue;
+                    }
+                    while (end < pattern.length()) {
+                        if (pattern.charAt(end) != '\'') {
+                            template.append(pattern.charAt(end++));
+                        } else if (end + 1 < pattern.length() && pattern.charAt(end + 1) == '\'') {
+                            template.append('\'');
+                            end += 2;
+                        } else {
+                            break;
+                        }
+                    }
+                    i = end + 1;
+                    continue;
+                }
+
+                if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+                    int shift = shiftOf(c, run);
+                    if (shift < 0) {
+                        fixed = false;
+                    } else {
+                        parts.add(new int[] { shift, template.length(), run });
+                        for (int d = 0; d < run; d++)
+                            template.append('0');
+                    }
+                } else {
+                    for (int d = 0; d < run; d++)
+                        template.append(c);
+                }
+                i += run;
+            }
+
+            this.template = fixed ? template.toString().toCharArray() : null;
+            this.shifts = new int[parts.size()];
+            this.offsets = new int[parts.size()];
+            this.widths = new int[parts.size()];
+            for (int p = 0; p < parts.size(); p++) {
+                this.shifts[p] = parts.get(p)[0];
+                this.offsets[p] = parts.get(p)[1];
+                this.widths[p] = parts.get(p)[2];
+            }
+        }
+
+        /**
+         * Returns the bit position of a fixed width numeric part
+         *
+         * @param letter the pattern letter
+         * @param run    the number of repetitions of the letter
+         * @return the bit position, -1 when the part has no fixed width form
+         */
+        private static int shiftOf(char letter, int run) {
+            switch (letter) {
+                case 'y':
+                case 'u':
+                    return run == 4 ? YEAR : -1;
+                case 'M':
+                    return run == 2 ? MONTH : -1;
+                case 'd':
+                    return run == 2 ? DAY : -1;
+                case 'H':
+                    return run == 2 ? HOUR : -1;
+                case 'm':
+                    return run == 2 ? MINUTE : -1;
+                case 's':
+                    return run == 2 ? SECOND : -1;
+                case 'S':
+                    return run == 3 ? MILLIS : -1;
+                default:
+                    return -1;
+            }
+        }
+
+        /**
+         * Parses a date
+         *
+         * @param text the formatted date
+         * @return the packed date, -1 when the text does not match the format or is not a valid date
+         */
+        long parse(CharSequence text) {
+
+            if (this.template == null) {
+                try {
+                    return fromTemporal(this.formatter.parse(text));
+                } catch (DateTimeException e) {
+                    return -1;
+                }
+            }
+
+            if (text.length() != this.template.length)
+                return -1;
+
+            long date = EPOCH;
+            int next = 0;
+            for (int p = 0, i = 0; i < this.template.length; i++) {
+                char c = text.charAt(i);
+                if (p < this.offsets.length && i >= this.offsets[p]) {
+                    int digit = c - '0';
+                    if (digit < 0 || digit > 9)
+                        return -1;
+                    next = (i == this.offsets[p] ? 0 : next * 10) + digit;
+                    if (i == this.offsets[p] + this.widths[p] - 1) {
+                        int shift = this.shifts[p++];
+                        if (next >= 1 << bitsOf(shift))
+                            return -1;
+                        date = date & ~((long) ((1 << bitsOf(shift)) - 1) << shift) | (long) next << shift;
+                    }
+                } else if (c != this.template[i]) {
+                    return -1;
+                }
+            }
+
+            return pack(unpack(date, YEAR, 14), unpack(date, MONTH, 4), unpack(date, DAY, 5),
+                    unpack(date, HOUR, 5), unpack(date, MINUTE, 6), unpack(date, SECOND, 6), unpack(date, MILLIS, 10));
+        }
+
+        /**
+         * Formats a date
+         *
+         * @param date the packed date
+         * @param zone the time zone of formats showing one
+         * @return the formatted date, null when the format needs parts which are not known
+         */
+        String format(long date, ZoneId zone) {
+
+            if (this.template == null) {
+                try {
+                    return this.formatter.format(LocalDateTime.of(unpack(date, YEAR, 14), unpack(date, MONTH, 4), unpack(date, DAY, 5),
+                            unpack(date, HOUR, 5), unpack(date, MINUTE, 6), unpack(date, SECOND, 6), unpack(date, MILLIS, 10) * 1000000).atZone(zone));
+                } catch (DateTimeException e) {
+                    return null;
+                }
+            }
+
+            char[] text = this.template.clone();
+            for (int p = 0; p < this.shifts.length; p++) {
+                int value = unpack(date, this.shifts[p], bitsOf(this.shifts[p]));
+                for (int i = this.offsets[p] + this.widths[p] - 1; i >= this.offsets[p]; i--, value /= 10)
+                    text[i] = (char) ('0' + value % 10);
+            }
+            return new String(text);
+        }
+
+        /**
+         * Method returning a string representation
+         *
+         * @return string containing class name and member values
+         */
+        @Override
+        public String toString() {
+
+            return Tools.toString(this);
+        }
+    }
+}
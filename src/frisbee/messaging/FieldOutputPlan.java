@@ -0,0 +1,253 @@
+package frisbee.messaging;
+
+import frisbee.configuration.Keywords;
+import frisbee.tools.Tools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@code FieldOutputPlan} class is the precompiled transformation of a single {@link frisbee.messaging.MessageFieldConfig field} towards a single output
+ * <p>
+ * All the configuration lookups happen when the plan is compiled, applying it only reads the input value and runs the configured steps
+ * <p>
+ * A configured {@link frisbee.configuration.Keywords#FLD_TYPE type} or {@link frisbee.configuration.Keywords#FLD_DATEFORMAT date format}
+ * converts the value before any other step. Numeric fields without other steps
+ * are written to primitive slots of the output payload
+ * <p>
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public final class FieldOutputPlan {
+
+    /**
+     * The field identifier
+     */
+    private final String fieldID;
+
+    /**
+     * The input payload key to read the value from
+     */
+    private final String inputKey;
+
+    /**
+     * The output payload key to write the value to
+     */
+    private final String outputKey;
+
+    /**
+     * The value forced on output in place of the input value
+     */
+    private final Object forceValue;
+
+    /**
+     * The converter of the configured type, null when no type is configured
+     */
+    private final ValueConverter converter;
+
+    /**
+     * The configured transformation steps in application order
+     */
+    private final FieldTransform[] transforms;
+
+    /**
+     * The configured length, padding and truncation, null when no length is configured
+     */
+    private final FieldTransform.Fit fit;
+
+    /**
+     * The text prepended to the value, empty when not configured
+     */
+    private final String header;
+
+    /**
+     * The text appended to the value, empty when not configured
+     */
+    private final String footer;
+
+    /**
+     * Compiles the transformation of a field towards an output
+     *
+     * @param field             the field configuration
+     * @param outputFieldConfig the output configuration of the field
+     */
+    public FieldOutputPlan(MessageFieldConfig field, Map<String, Object> outputFieldConfig) {
+
+        Object matchKey = Keywords.getArgument(field.getInputArguments(), Keywords.FIELD_KEY);
+        Object outputKey = Keywords.getArgument(outputFieldConfig, Keywords.FIELD_KEY);
+
+        this.fieldID = field.getFieldID();
+        this.inputKey = matchKey == null ? null : matchKey.toString();
+        this.outputKey = outputKey != null ? outputKey.toString() : this.fieldID != null ? this.fieldID : this.inputKey;
+        this.forceValue = Keywords.getArgument(outputFieldConfig, Keywords.FORCEVALUE);
+
+        //a date format takes precedence over the type, dates are written as text
+        Object dateFormat = Keywords.getArgument(outputFieldConfig, Keywords.FLD_DATEFORMAT);
+        this.converter = dateFormat != null
+                ? new DateConverter(Keywords.getArgument(field.getInputArguments(), Keywords.FLD_DATEFORMAT), dateFormat)
+                : ValueConverter.forType(Keywords.getArgument(outputFieldConfig, Keywords.FLD_TYPE));
+
+        List<FieldTransform> steps = new ArrayList<>();
+
+        //the length excludes the header and footer
+        this.fit = FieldTransform.Fit.compile(outputFieldConfig);
+        if (this.fit != null)
+            steps.add(this.fit);
+
+        Object header = Keywords.getArgument(outputFieldConfig, Keywords.FLD_HEADER);
+        Object footer = Keywords.getArgument(outputFieldConfig, Keywords.FLD_FOOTER);
+        this.header = header == null ? "" : header.toString();
+        this.footer = footer == null ? "" : footer.toString();
+        if (header != null || footer != null)
+            steps.add(new FieldTransform.Affix(this.header, this.footer));
+
+        this.transforms = steps.toArray(new FieldTransform[steps.size()]);
+    }
+
+    /**
+     * Produces the output value of the field
+     *
+     * @param inputPayload the payload received
+     * @return the transformed value, null when the field is absent from the payload
+     */
+    public Object apply(Map<String, Object> inputPayload) {
+
+        return this.transform(this.inputKey == null || this.forceValue != null ? null : inputPayload.get(this.inputKey));
+    }
+
+    /**
+     * Produces the output value of the field from its input value
+     *
+     * @param inputValue the input value, already read from the payload
+     * @return the transformed value, null when the field is absent from the payload
+     */
+    public Object transform(Object inputValue) {
+
+        Object value = this.forceValue != null ? this.forceValue : inputValue;
+
+        if (value != null && this.converter != null)
+            value = this.converter.convert(value);
+
+        if (value == null || this.transforms.length == 0)
+            return value;
+
+        String text = value.toString();
+        for (FieldTransform transform : this.transforms)
+            text = transform.apply(text);
+
+        return text;
+    }
+
+    /**
+     * Writes the output value of a primitive field straight into its slot, without boxing
+     *
+     * @param inputPayload the payload received
+     * @param inputSlots   the payload received when bound to the input schema, null otherwise
+     * @param source       the ordinal of the input key in the input schema, -1 when read by key
+     * @param out          the field values of the output
+     * @param target       the ordinal of the output key
+     * @return false when the field is absent or cannot be converted
+     */
+    boolean write(Map<String, Object> inputPayload, SlotPayload inputSlots, int source, SlotPayload out, int target) {
+
+        if (this.forceValue != null)
+            return this.converter.write(out, target, this.forceValue);
+        if (inputSlots != null && source >= 0)
+            return this.converter.copy(inputSlots, source, out, target);
+        return this.inputKey != null && this.converter.write(out, target, inputPayload.get(this.inputKey));
+    }
+
+    /**
+     * Checks if the output value is written to a primitive slot
+     *
+     * @return true when a numeric type is configured without other steps
+     */
+    boolean isPrimitive() {
+        return this.converter != null && this.converter.isPrimitive() && this.transforms.length == 0;
+    }
+
+    /**
+     * Returns the converter of the configured type
+     *
+     * @return the converter, null when no type is configured
+     */
+    ValueConverter getConverter() {
+        return converter;
+    }
+
+    /**
+     * Returns the field identifier
+     *
+     * @return the field identifier
+     */
+    public String getFieldID() {
+        return fieldID;
+    }
+
+    /**
+     * Returns the input payload key the value is read from
+     *
+     * @return the input key
+     */
+    public String getInputKey() {
+        return inputKey;
+    }
+
+    /**
+     * Returns the output payload key the value is written to
+     *
+     * @return the output key
+     */
+    public String getOutputKey() {
+        return outputKey;
+    }
+
+    /**
+     * Returns the value forced on output
+     *
+     * @return the forced value, null when the input value is used
+     */
+    Object getForceValue() {
+        return forceValue;
+    }
+
+    /**
+     * Returns the configured length, padding and truncation
+     *
+     * @return the fit, null when no length is configured
+     */
+    FieldTransform.Fit getFit() {
+        return fit;
+    }
+
+    /**
+     * Returns the text prepended to the value
+     *
+     * @return the header, empty when not configured
+     */
+    String getHeader() {
+        return header;
+    }
+
+    /**
+     * Returns the text appended to the value
+     *
+     * @return the footer, empty when not configured
+     */
+    String getFooter() {
+        return footer;
+    }
+
+    /**
+     * Method returning a string representation
+     *
+     * @return string containing class name and member values
+     */
+    @Override
+    public String toString() {
+
+        return Tools.toString(this);
+    }
+}
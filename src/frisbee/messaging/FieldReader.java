@@ -0,0 +1,30 @@
+package frisbee.messaging;
+
+/**
+ * The {@code FieldReader} interface reads the fields of a received record by ordinal of the input {@link frisbee.messaging.PayloadSchema schema}, decoding them one at a time
+ * <p>
+ * A {@link frisbee.messaging.SlotPayload} deferring to a reader decodes its fields in two phases: the discriminators while the payload
+ * is identified, then the fields referenced by the identified {@link frisbee.messaging.MessageMapping message} definition. Fields no
+ * definition needs are never decoded
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public interface FieldReader {
+
+    /**
+     * Checks if a field is present in the record, without decoding it
+     *
+     * @param ordinal the field ordinal in the input schema
+     * @return true when the record holds the field
+     */
+    boolean has(int ordinal);
+
+    /**
+     * Decodes a field of the record
+     *
+     * @param ordinal the field ordinal in the input schema
+     * @return the value, null when the field is absent
+     */
+    Object get(int ordinal);
+}
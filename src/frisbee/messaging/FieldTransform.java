@@ -0,0 +1,212 @@
+package frisbee.messaging;
+
+import frisbee.configuration.Keywords;
+import frisbee.tools.Tools;
+
+import java.util.Map;
+
+/**
+ * The {@code FieldTransform} class is a single precompiled step of a {@link frisbee.messaging.MessageFieldConfig field} output transformation
+ * <p>
+ * Steps are immutable and only created for the transformations actually configured on a field output
+ * <p>
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public abstract class FieldTransform {
+
+    /**
+     * Applies the transformation step to a field value
+     *
+     * @param value the field value
+     * @return the transformed field value
+     */
+    public abstract String apply(String value);
+
+    /**
+     * Method returning a string representation
+     *
+     * @return string containing class name and member values
+     */
+    @Override
+    public String toString() {
+
+        return Tools.toString(this);
+    }
+
+    /**
+     * Surrounds a field value with its configured header and footer in a single concatenation
+     */
+    static final class Affix extends FieldTransform {
+
+        /**
+         * The text prepended to the value
+         */
+        private final String header;
+
+        /**
+         * The text appended to the value
+         */
+        private final String footer;
+
+        /**
+         * Affix step constructor
+         *
+         * @param header the text prepended to the value, may be empty
+         * @param footer the text appended to the value, may be empty
+         */
+        Affix(String header, String footer) {
+            this.header = header;
+            this.footer = footer;
+        }
+
+        @Override
+        public String apply(String value) {
+            return new StringBuilder(this.header.length() + value.length() + this.footer.length())
+                    .append(this.header)
+                    .append(value)
+                    .append(this.footer)
+                    .toString();
+        }
+    }
+
+    /**
+     * Brings a field value to its configured length, padding or truncating it
+     * <p>
+     * A value shorter than the length is padded on the left with {@code lpad}, on the right with {@code rpad}, or on both sides
+     * with the left side taking the larger half when both are configured, and on the left with spaces when none is.
+     * A longer value is truncated on the {@code trunk} side, the right unless configured otherwise. Pads longer than one character repeat.
+     */
+    static final class Fit extends FieldTransform {
+
+        /**
+         * The length of the fitted value
+         */
+        private final int length;
+
+        /**
+         * The text padding on the left, null when only padding on the right
+         */
+        private final String leftPad;
+
+        /**
+         * The text padding on the right, null when only padding on the left
+         */
+        private final String rightPad;
+
+        /**
+         * Whether longer values lose their first characters rather than their last ones
+         */
+        private final boolean trunkLeft;
+
+        /**
+         * Fit step constructor
+         *
+         * @param length    the length of the fitted value
+         * @param leftPad   the text padding on the left, null or empty when not configured
+         * @param rightPad  the text padding on the right, null or empty when not configured
+         * @param trunkLeft whether longer values lose their first characters
+         */
+        Fit(int length, String leftPad, String rightPad, boolean trunkLeft) {
+            boolean hasLeft = leftPad != null && !leftPad.isEmpty();
+            boolean hasRight = rightPad != null && !rightPad.isEmpty();
+
+            this.length = length;
+            this.leftPad = hasLeft ? leftPad : hasRight ? null : " ";
+            this.rightPad = hasRight ? rightPad : null;
+            this.trunkLeft = trunkLeft;
+        }
+
+        /**
+         * Compiles the fit configured with the field, or message, output keywords
+         *
+         * @param config the output configuration
+         * @return the fit, null when no length is configured
+         * @throws IllegalArgumentException when the length is not a positive number
+         */
+        static Fit compile(Map<String, Object> config) {
+
+            Object length = Keywords.getArgument(config, Keywords.FLD_LENGTH);
+            if (length == null)
+                return null;
+
+            int fitLength;
+            try {
+                fitLength = length instanceof Number ? ((Number) length).intValue() : Integer.parseInt(length.toString().trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Non numeric output length " + length);
+            }
+            if (fitLength <= 0)
+                throw new IllegalArgumentException("Output length must be positive, not " + fitLength);
+
+            Object leftPad = Keywords.getArgument(config, Keywords.FLD_L_PAD);
+            Object rightPad = Keywords.getArgument(config, Keywords.FLD_R_PAD);
+            Object trunk = Keywords.getArgument(config, Keywords.FLD_TRUNK);
+
+            return new Fit(fitLength,
+                    leftPad == null ? null : leftPad.toString(),
+                    rightPad == null ? null : rightPad.toString(),
+                    trunk != null && Keywords.FLD_TRUNK_LEFT.equalsIgnoreCase(trunk.toString().trim()));
+        }
+
+        /**
+         * @return the length of the fitted value
+         */
+        int getLength() {
+            return length;
+        }
+
+        /**
+         * @return the text padding on the left, null when only padding on the right
+         */
+        String getLeftPad() {
+            return leftPad;
+        }
+
+        /**
+         * @return the text padding on the right, null when only padding on the left
+         */
+        String getRightPad() {
+            return rightPad;
+        }
+
+        /**
+         * Returns the number of characters truncated from the start of a value
+         *
+         * @param valueLength the value length
+         * @return the number of leading characters dropped
+         */
+        int skipped(int valueLength) {
+            return this.trunkLeft && valueLength > this.length ? valueLength - this.length : 0;
+        }
+
+        /**
+         * Returns the number of padding characters on the left of a value
+         *
+         * @param valueLength the value length
+         * @return the left padding, the rest of the padding goes on the right
+         */
+        int leftPadding(int valueLength) {
+            int padding = this.length - valueLength;
+            if (padding <= 0 || this.leftPad == null)
+                return 0;
+            return this.rightPad == null ? padding : (padding + 1) / 2;
+        }
+
+        @Override
+        public String apply(String value) {
+            int kept = Math.min(value.length(), this.length);
+            int left = this.leftPadding(value.length());
+            int skip = this.skipped(value.length());
+
+            StringBuilder fitted = new StringBuilder(this.length);
+            for (int i = 0; i < left; i++)
+                fitted.append(this.leftPad.charAt(i % this.leftPad.length()));
+            fitted.append(value, skip, skip + kept);
+            for (int i = 0; fitted.length() < this.length; i++)
+                fitted.append(this.rightPad.charAt(i % this.rightPad.length()));
+            return fitted.toString();
+        }
+    }
+}
@@ -0,0 +1,547 @@
+package frisbee.messaging;
+
+import frisbee.configuration.Keywords;
+import frisbee.tools.Tools;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@code FixedWidthEncoder} class writes the fields of a message output straight into a {@link java.nio.ByteBuffer} as a fixed-width frame
+ * <p>
+ * Every field of the output must be configured with a {@link frisbee.configuration.Keywords#FLD_LENGTH length}, so the position of every
+ * field in the frame is computed once, when the encoder is compiled. Encoding reads the input values and writes their bytes at these
+ * positions, padding, truncating and surrounding them with their header and footer on the way, without building any intermediate text.
+ * The message {@link frisbee.configuration.Keywords#MSG_LENGTH length}, padding, truncation, header and footer configured on the output
+ * are applied in the same pass.
+ * <p>
+ * Text values, and integral numbers, are written without allocation in the single byte character sets ISO-8859-1 and US-ASCII,
+ * the default being ISO-8859-1. Other values and character sets go through {@link java.lang.String#getBytes(Charset)}.
+ * An absent field is written as padding only.
+ * <p>
+ * Fields sharing an output key are laid out one after the other where the first of them is, the way the transformation plan concatenates them.
+ * <p>
+ * An output configured with {@link frisbee.configuration.Keywords#MSG_TRANSACTION_ID transactionID} set to true embeds the
+ * {@link frisbee.messaging.TransactionIdGenerator rendered} transaction ID of the message right after the message header.
+ * <p>
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public final class FixedWidthEncoder {
+
+    /**
+     * The output connection ID
+     */
+    private final String outputID;
+
+    /**
+     * The character set of the frame
+     */
+    private final Charset charset;
+
+    /**
+     * Whether characters map one to one to bytes, ISO-8859-1 and US-ASCII
+     */
+    private final boolean singleByte;
+
+    /**
+     * The highest character written as is by the single byte path, others are replaced with a question mark
+     */
+    private final char maxChar;
+
+    /**
+     * The schema of the input payloads read by ordinal, may be null
+     */
+    private final PayloadSchema inputSchema;
+
+    /**
+     * For every field, the input key to read the value from
+     */
+    private final String[] inputKeys;
+
+    /**
+     * For every field, the ordinal of the input key in the input schema, -1 when read by key
+     */
+    private final int[] sourceOrdinals;
+
+    /**
+     * For every field, the value forced in place of the input value, may be null
+     */
+    private final Object[] forceValues;
+
+    /**
+     * For every field, the converter of its configured type, may be null
+     */
+    private final ValueConverter[] converters;
+
+    /**
+     * For every field, its length, padding and truncation
+     */
+    private final FieldTransform.Fit[] fits;
+
+    /**
+     * For every field, its encoded header
+     */
+    private final byte[][] headers;
+
+    /**
+     * For every field, its encoded footer
+     */
+    private final byte[][] footers;
+
+    /**
+     * For every field, the position of its header in the fields area
+     */
+    private final int[] offsets;
+
+    /**
+     * The length of the fields area, all fields with their headers and footers
+     */
+    private final int fieldsLength;
+
+    /**
+     * The length, padding and truncation of the message body, null when the body is the fields area
+     */
+    private final FieldTransform.Fit messageFit;
+
+    /**
+     * The encoded message header
+     */
+    private final byte[] messageHeader;
+
+    /**
+     * The encoded message footer
+     */
+    private final byte[] messageFooter;
+
+    /**
+     * The width of the embedded transaction ID, 0 when not embedded
+     */
+    private final int transactionWidth;
+
+    /**
+     * The length of the message body
+     */
+    private final int bodyLength;
+
+    /**
+     * The position of the fields area in the body, negative when truncated on the left
+     */
+    private final int fieldsStart;
+
+    /**
+     * The encoded pads of the message body and of every field, by field index, the message being last
+     */
+    private final byte[][] leftPads, rightPads;
+
+    /**
+     * Compiles the encoder of an output
+     *
+     * @param plan         the transformation plan of the message
+     * @param outputIndex  the index of the output in the plan
+     * @param outputConfig the output configuration, may be null
+     */
+    private FixedWidthEncoder(TransformPlan plan, int outputIndex, MessageIOConfig outputConfig) {
+
+        Map<String, Object> outputArgs = outputConfig == null ? null : outputConfig.getArguments();
+        Object charsetName = Keywords.getArgument(outputArgs, Keywords.OUTPUT_CHARSET);
+
+        this.outputID = plan.getOutputIDs()[outputIndex];
+        this.charset = charsetName == null ? StandardCharsets.ISO_8859_1 : Charset.forName(charsetName.toString().trim());
+        this.singleByte = this.charset.equals(StandardCharsets.ISO_8859_1) || this.charset.equals(StandardCharsets.US_ASCII);
+        this.maxChar = this.charset.equals(StandardCharsets.US_ASCII) ? (char) 0x7f : (char) 0xff;
+        this.inputSchema = plan.getInputSchema();
+        this.sourceOrdinals = plan.getSourceOrdinals()[outputIndex];
+
+        FieldOutputPlan[] fields = plan.getOutputFields()[outputIndex];
+        int[] targets = plan.getTargetOrdinals()[outputIndex];
+        this.inputKeys = new String[fields.length];
+        this.forceValues = new Object[fields.length];
+        this.converters = new ValueConverter[fields.length];
+        this.fits = new FieldTransform.Fit[fields.length];
+        this.headers = new byte[fields.length][];
+        this.footers = new byte[fields.length][];
+        this.offsets = new int[fields.length];
+        this.leftPads = new byte[fields.length + 1][];
+        this.rightPads = new byte[fields.length + 1][];
+
+        for (int f = 0; f < fields.length; f++) {
+            this.inputKeys[f] = fields[f].getInputKey();
+            this.forceValues[f] = fields[f].getForceValue();
+            this.converters[f] = fields[f].getConverter();
+            this.fits[f] = fields[f].getFit();
+            this.headers[f] = fields[f].getHeader().getBytes(this.charset);
+            this.footers[f] = fields[f].getFooter().getBytes(this.charset);
+            this.leftPads[f] = this.encode(this.fits[f].getLeftPad());
+            this.rightPads[f] = this.encode(this.fits[f].getRightPad());
+        }
+
+        //fields are laid out by output key, the key of a field being at most the number of fields
+        int offset = 0;
+        for (int target = 0; target < fields.length; target++) {
+            for (int f = 0; f < fields.length; f++) {
+                if (targets[f] != target)
+                    continue;
+                this.offsets[f] = offset;
+                offset += this.headers[f].length + this.fits[f].getLength() + this.footers[f].length;
+            }
+        }
+        this.fieldsLength = offset;
+
+        Object header = Keywords.getArgument(outputArgs, Keywords.MSG_HEADER);
+        Object footer = Keywords.getArgument(outputArgs, Keywords.MSG_FOOTER);
+        this.messageHeader = header == null ? new byte[0] : header.toString().getBytes(this.charset);
+        this.messageFooter = footer == null ? new byte[0] : footer.toString().getBytes(this.charset);
+
+        Object transactionID = Keywords.getArgument(outputArgs, Keywords.MSG_TRANSACTION_ID);
+        this.transactionWidth = transactionID != null && Boolean.parseBoolean(transactionID.toString().trim())
+                ? TransactionIdGenerator.getGenerator().getWidth() : 0;
+
+        this.messageFit = FieldTransform.Fit.compile(outputArgs);
+        if (this.messageFit == null) {
+            this.bodyLength = this.fieldsLength;
+            this.fieldsStart = 0;
+        } else {
+            this.bodyLength = this.messageFit.getLength();
+            this.fieldsStart = this.messageFit.leftPadding(this.fieldsLength) - this.messageFit.skipped(this.fieldsLength);
+            this.leftPads[fields.length] = this.encode(this.messageFit.getLeftPad());
+            this.rightPads[fields.length] = this.encode(this.messageFit.getRightPad());
+        }
+    }
+
+    /**
+     * Compiles the encoder of an output of a message definition
+     *
+     * @param messageMap the message definition
+     * @param outputID   the output connection ID
+     * @return the encoder, null when the message has no fields for this output or one of them has no length
+     */
+    public static FixedWidthEncoder forOutput(MessageMapping messageMap, String outputID) {
+        return forOutput(messageMap, messageMap.getTransformPlan(), outputID);
+    }
+
+    /**
+     * Compiles the encoder of an output of a message definition from one of its transformation plans
+     *
+     * @param messageMap the message definition
+     * @param plan       the transformation plan of the message, compiled against the input schema the encoder reads
+     * @param outputID   the output connection ID
+     * @return the encoder, null when the message has no fields for this output or one of them has no length
+     */
+    static FixedWidthEncoder forOutput(MessageMapping messageMap, TransformPlan plan, String outputID) {
+
+        String[] outputIDs = plan.getOutputIDs();
+
+        for (int i = 0; i < outputIDs.length; i++) {
+            if (!outputIDs[i].equals(outputID))
+                continue;
+
+            for (FieldOutputPlan field : plan.getOutputFields()[i]) {
+                if (field.getFit() == null)
+                    return null;
+            }
+            return new FixedWidthEncoder(plan, i, findOutput(messageMap, outputID));
+        }
+        return null;
+    }
+
+    /**
+     * Finds the configuration of an output
+     *
+     * @param messageMap the message definition
+     * @param outputID   the output connection ID
+     * @return the output configuration, null when not declared
+     */
+    private static MessageIOConfig findOutput(MessageMapping messageMap, String outputID) {
+        for (List<MessageIOConfig> outputs : Arrays.asList(messageMap.getSyncOutputs(), messageMap.getAsyncOutputs())) {
+            if (outputs == null)
+                continue;
+            for (MessageIOConfig output : outputs) {
+                if (outputID.equals(output.getConnectionID()))
+                    return output;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Encodes a pad
+     *
+     * @param pad the pad, may be null
+     * @return the encoded pad, null when the pad is null
+     */
+    private byte[] encode(String pad) {
+        return pad == null ? null : pad.getBytes(this.charset);
+    }
+
+    /**
+     * Returns the length of the frames written by this encoder
+     *
+     * @return the frame length in bytes
+     */
+    public int getFrameLength() {
+        return this.messageHeader.length + this.transactionWidth + this.bodyLength + this.messageFooter.length;
+    }
+
+    /**
+     * Tells whether the frames embed the transaction ID of the message
+     *
+     * @return true when configured with transactionID
+     */
+    public boolean embedsTransactionID() {
+        return this.transactionWidth > 0;
+    }
+
+    /**
+     * Returns the output connection ID
+     *
+     * @return the output connection ID
+     */
+    public String getOutputID() {
+        return outputID;
+    }
+
+    /**
+     * Writes the frame of a payload at the position of a buffer, and moves the position past the frame
+     *
+     * @param inputPayload the payload received
+     * @param out          the buffer, typically reused from frame to frame
+     * @return the number of bytes written
+     * @throws BufferOverflowException when the buffer cannot hold the frame
+     */
+    public int encode(Map<String, Object> inputPayload, ByteBuffer out) {
+        return this.encode(inputPayload, null, -1, out);
+    }
+
+    /**
+     * Writes the frame of a payload with the transaction ID of its message at the position of a buffer, and moves the position past the frame
+     *
+     * @param inputPayload      the payload received
+     * @param transactionIds    the generator of the transaction ID, null when the message has none
+     * @param transactionNumber the transaction ID, -1 when the message has none, the ID is written as spaces
+     * @param out               the buffer, typically reused from frame to frame
+     * @return the number of bytes written
+     * @throws BufferOverflowException when the buffer cannot hold the frame
+     */
+    public int encode(Map<String, Object> inputPayload, TransactionIdGenerator transactionIds, long transactionNumber, ByteBuffer out) {
+
+        int frameLength = this.getFrameLength();
+        if (out.remaining() < frameLength)
+            throw new BufferOverflowException();
+
+        int start = out.position();
+        int body = start + this.messageHeader.length + this.transactionWidth;
+
+        for (int i = 0; i < this.messageHeader.length; i++)
+            out.put(start + i, this.messageHeader[i]);
+
+        if (this.transactionWidth > 0) {
+            int at = start + this.messageHeader.length;
+            if (transactionIds != null && transactionNumber >= 0 && transactionIds.getWidth() == this.transactionWidth) {
+                transactionIds.render(transactionNumber, out, at);
+            } else {
+                for (int i = 0; i < this.transactionWidth; i++)
+                    out.put(at + i, (byte) ' ');
+            }
+        }
+
+        //message padding around the fields area
+        int pads = this.fits.length;
+        for (int i = 0; i < this.fieldsStart; i++)
+            out.put(body + i, pad(this.leftPads[pads], i));
+        for (int i = this.fieldsStart + this.fieldsLength, p = 0; i < this.bodyLength; i++, p++)
+            out.put(body + i, pad(this.rightPads[pads], p));
+
+        SlotPayload slots = TransformPlan.bound(inputPayload, this.inputSchema);
+        FramePayload frame = this.inputSchema != null && inputPayload instanceof FramePayload && ((FramePayload) inputPayload).getLayout().getSchema() == this.inputSchema
+                ? (FramePayload) inputPayload : null;
+
+        for (int f = 0; f < this.fits.length; f++) {
+
+            Object value = this.forceValues[f];
+            if (value == null && this.inputKeys[f] != null) {
+                int ordinal = this.sourceOrdinals[f];
+                if (slots != null && ordinal >= 0)
+                    value = slots.get(ordinal);
+                else if (frame != null && ordinal >= 0)
+                    value = frame.get(ordinal);
+                else
+                    value = inputPayload.get(this.inputKeys[f]);
+            }
+            if (value != null && this.converters[f] != null)
+                value = this.converters[f].convert(value);
+
+            int at = this.fieldsStart + this.offsets[f];
+            at = this.put(out, body, at, this.headers[f]);
+            at = this.putValue(out, body, at, f, value);
+            this.put(out, body, at, this.footers[f]);
+        }
+
+        for (int i = 0; i < this.messageFooter.length; i++)
+            out.put(body + this.bodyLength + i, this.messageFooter[i]);
+
+        out.position(start + frameLength);
+        return frameLength;
+    }
+
+    /**
+     * Returns a byte of a repeated pad
+     *
+     * @param pad   the pad
+     * @param index the position from the start of the padding
+     * @return the pad byte
+     */
+    private static byte pad(byte[] pad, int index) {
+        return pad[index % pad.length];
+    }
+
+    /**
+     * Writes a byte of the body, dropping it when truncated by the message length
+     *
+     * @param out  the buffer
+     * @param body the position of the body in the buffer
+     * @param at   the position of the byte in the body
+     * @param b    the byte
+     */
+    private void put(ByteBuffer out, int body, int at, byte b) {
+        if (at >= 0 && at < this.bodyLength)
+            out.put(body + at, b);
+    }
+
+    /**
+     * Writes bytes to the body
+     *
+     * @param out   the buffer
+     * @param body  the position of the body in the buffer
+     * @param at    the position of the first byte in the body
+     * @param bytes the bytes
+     * @return the position following the last byte
+     */
+    private int put(ByteBuffer out, int body, int at, byte[] bytes) {
+        for (byte b : bytes)
+            this.put(out, body, at++, b);
+        return at;
+    }
+
+    /**
+     * Writes a field value fitted to its length
+     *
+     * @param out   the buffer
+     * @param body  the position of the body in the buffer
+     * @param at    the position of the field value in the body
+     * @param field the field index
+     * @param value the value, null when absent
+     * @return the position following the field value
+     */
+    private int putValue(ByteBuffer out, int body, int at, int field, Object value) {
+
+        FieldTransform.Fit fit = this.fits[field];
+        int end = at + fit.getLength();
+
+        if (value == null)
+            value = "";
+
+        byte[] bytes = null;
+        long number = 0;
+        int length;
+        if (this.singleByte && value instanceof CharSequence) {
+            length = ((CharSequence) value).length();
+        } else if (this.singleByte && isIntegral(value) && ((Number) value).longValue() != Long.MIN_VALUE) {
+            number = ((Number) value).longValue();
+            length = digits(number);
+        } else {
+            bytes = value.toString().getBytes(this.charset);
+            length = bytes.length;
+        }
+
+        int left = fit.leftPadding(length);
+        int skip = fit.skipped(length);
+        int kept = Math.min(length, fit.getLength());
+
+        for (int i = 0; i < left; i++)
+            this.put(out, body, at++, pad(this.leftPads[field], i));
+
+        for (int i = skip; i < skip + kept; i++) {
+            byte b;
+            if (bytes != null)
+                b = bytes[i];
+            else if (value instanceof CharSequence)
+                b = this.toByte(((CharSequence) value).charAt(i));
+            else
+                b = digitAt(number, length, i);
+            this.put(out, body, at++, b);
+        }
+
+        for (int p = 0; at < end; p++)
+            this.put(out, body, at++, pad(this.rightPads[field], p));
+
+        return end;
+    }
+
+    /**
+     * Converts a character with the single byte path
+     *
+     * @param c the character
+     * @return the byte, a question mark when the character is not part of the character set
+     */
+    private byte toByte(char c) {
+        return c <= this.maxChar ? (byte) c : (byte) '?';
+    }
+
+    /**
+     * Checks if a value is an integral number written digit by digit
+     *
+     * @param value the value
+     * @return true for longs, integers, shorts and bytes
+     */
+    private static boolean isIntegral(Object value) {
+        return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
+    }
+
+    /**
+     * Returns the length of the decimal form of a number
+     *
+     * @param number the number, not {@link Long#MIN_VALUE}
+     * @return the number of characters, including the minus sign
+     */
+    private static int digits(long number) {
+        int length = number < 0 ? 2 : 1;
+        for (long rest = Math.abs(number); rest >= 10; rest /= 10)
+            length++;
+        return length;
+    }
+
+    /**
+     * Returns a character of the decimal form of a number
+     *
+     * @param number the number, not {@link Long#MIN_VALUE}
+     * @param length the length of the decimal form
+     * @param index  the character index
+     * @return the character as a byte
+     */
+    private static byte digitAt(long number, int length, int index) {
+        if (number < 0 && index == 0)
+            return '-';
+        long rest = Math.abs(number);
+        for (int i = length - 1; i > index; i--)
+            rest /= 10;
+        return (byte) ('0' + rest % 10);
+    }
+
+    /**
+     * Method returning a string representation
+     *
+     * @return string containing class name and member values
+     */
+    @Override
+    public String toString() {
+
+        return Tools.toString(this);
+    }
+}
@@ -0,0 +1,297 @@
+package frisbee.messaging;
+
+import frisbee.configuration.Keywords;
+import frisbee.tools.StringCache;
+import frisbee.tools.Tools;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The {@code FrameLayout} class locates the fields of fixed-width frames, by ordinal of the input {@link frisbee.messaging.PayloadSchema schema}
+ * <p>
+ * Input fields configured with a {@link frisbee.configuration.Keywords#FLD_LENGTH length} follow each other in declaration order, starting at the
+ * first byte of the frame, unless configured with an {@link frisbee.configuration.Keywords#FLD_OFFSET offset}. Every message definition starts
+ * over at the first byte, and definitions sharing a key must agree on its position.
+ * <p>
+ * Field values are text in the {@link frisbee.configuration.Keywords#INPUT_CHARSET character set} of the input, ISO-8859-1 unless configured,
+ * padded on the right with spaces which are not part of the value, so the character set must encode a space as a single byte. Fields configured
+ * with a {@link frisbee.configuration.Keywords#FLD_CACHE cache} share the decoded instances of their repeated values.
+ * <p>
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public final class FrameLayout {
+
+    /**
+     * The schema whose ordinals index the fields
+     */
+    private final PayloadSchema schema;
+
+    /**
+     * The first byte of every field, by ordinal, -1 for keys which are not fixed-width fields
+     */
+    private final int[] offsets;
+
+    /**
+     * The length of every field, by ordinal
+     */
+    private final int[] lengths;
+
+    /**
+     * The value cache of every field, by ordinal, null for fields without cache
+     */
+    private final StringCache[] caches;
+
+    /**
+     * The character set of the field values
+     */
+    private final Charset charset;
+
+    /**
+     * The padding byte, a space in the character set
+     */
+    private final byte pad;
+
+    /**
+     * Creates a layout
+     *
+     * @param schema  the schema whose ordinals index the fields
+     * @param offsets the first byte of every field, by ordinal, -1 for keys which are not fixed-width fields
+     * @param lengths the length of every field, by ordinal
+     * @param charset the character set of the field values
+     * @throws IllegalArgumentException when the character set does not encode a space as a single byte
+     */
+    public FrameLayout(PayloadSchema schema, int[] offsets, int[] lengths, Charset charset) {
+
+        this(schema, offsets, lengths, new StringCache[offsets.length], charset);
+    }
+
+    /**
+     * Creates a layout with value caches
+     *
+     * @param schema  the schema whose ordinals index the fields
+     * @param offsets the first byte of every field, by ordinal, -1 for keys which are not fixed-width fields
+     * @param lengths the length of every field, by ordinal
+     * @param caches  the value cache of every field, by ordinal, null for fields without cache
+     * @param charset the character set of the field values
+     * @throws IllegalArgumentException when the character set does not encode a space as a single byte
+     */
+    public FrameLayout(PayloadSchema schema, int[] offsets, int[] lengths, StringCache[] caches, Charset charset) {
+
+        this.schema = schema;
+        this.offsets = offsets.clone();
+        this.lengths = lengths.clone();
+        this.caches = caches.clone();
+        this.charset = charset;
+        this.pad = padOf(charset);
+    }
+
+    /**
+     * Encodes the padding of a character set
+     * <p>
+     * Fields are trimmed byte by byte, which is only sound when a space is a single byte. Character sets encoding it in several bytes,
+     * or with a byte order mark, such as UTF-16, are rejected.
+     *
+     * @param charset the character set of the field values
+     * @return the padding byte
+     * @throws IllegalArgumentException when the character set does not encode a space as a single byte
+     */
+    private static byte padOf(Charset charset) {
+
+        byte[] space = " ".getBytes(charset);
+        if (space.length != 1)
+            throw new IllegalArgumentException("Fixed-width fields need a character set encoding a space as a single byte, " + charset.name() + " takes " + space.length);
+        return space[0];
+    }
+
+    /**
+     * Creates the layout of the frames received by an input
+     *
+     * @param messageMappings the message definitions attached to the input
+     * @param schema          the input schema
+     * @return the layout, null when no input field has a length
+     * @throws IllegalArgumentException when definitions disagree on the position of a key, a length is not a positive number
+     *                                  or the character set of the input does not encode a space as a single byte
+     */
+    public static FrameLayout forInput(List<MessageMapping> messageMappings, PayloadSchema schema) {
+
+        int[] offsets = new int[schema.size()];
+        int[] lengths = new int[schema.size()];
+        Object[] cacheSettings = new Object[schema.size()];
+        Arrays.fill(offsets, -1);
+
+        Charset charset = StandardCharsets.ISO_8859_1;
+        boolean fixedWidth = false;
+
+        for (MessageMapping messageMap : messageMappings) {
+
+            if (messageMap.getInput() != null) {
+                Object name = Keywords.getArgument(messageMap.getInput().getArguments(), Keywords.INPUT_CHARSET);
+                if (name != null)
+                    charset = Charset.forName(name.toString().trim());
+            }
+
+            if (messageMap.getFields() == null)
+                continue;
+
+            int next = 0;
+            for (MessageFieldConfig field : messageMap.getFields()) {
+
+                Object key = Keywords.getArgument(field.getInputArguments(), Keywords.FIELD_KEY);
+                Object length = Keywords.getArgument(field.getInputArguments(), Keywords.FLD_LENGTH);
+                if (key == null || length == null)
+                    continue;
+
+                Object offset = Keywords.getArgument(field.getInputArguments(), Keywords.FLD_OFFSET);
+                int fieldOffset = offset == null ? next : toInt(offset, key);
+                int fieldLength = toInt(length, key);
+                if (fieldLength <= 0 || fieldOffset < 0)
+                    throw new IllegalArgumentException("Invalid fixed-width field " + key + ": offset " + fieldOffset + ", length " + fieldLength);
+
+                int ordinal = schema.ordinal(key.toString());
+                if (offsets[ordinal] >= 0 && (offsets[ordinal] != fieldOffset || lengths[ordinal] != fieldLength))
+                    throw new IllegalArgumentException("Fixed-width field " + key + " is laid out differently by message " + messageMap.getMessageID());
+
+                offsets[ordinal] = fieldOffset;
+                lengths[ordinal] = fieldLength;
+                Object cache = Keywords.getArgument(field.getInputArguments(), Keywords.FLD_CACHE);
+                if (cache != null)
+                    cacheSettings[ordinal] = cache;
+                next = fieldOffset + fieldLength;
+                fixedWidth = true;
+            }
+        }
+
+        if (!fixedWidth)
+            return null;
+
+        //caches decode in the character set of the input, known once every definition is read
+        StringCache[] caches = new StringCache[schema.size()];
+        for (int ordinal = 0; ordinal < caches.length; ordinal++)
+            caches[ordinal] = StringCache.fromConfiguration(cacheSettings[ordinal], charset);
+
+        return new FrameLayout(schema, offsets, lengths, caches, charset);
+    }
+
+    /**
+     * Parses a configured number
+     *
+     * @param value the configured value
+     * @param key   the field key, for the error message
+     * @return the number
+     */
+    private static int toInt(Object value, Object key) {
+        try {
+            return value instanceof Number ? ((Number) value).intValue() : Integer.parseInt(value.toString().trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Fixed-width field " + key + " has a non numeric position " + value);
+        }
+    }
+
+    /**
+     * Wraps a frame, the buffer is read in place from its position to its limit and must not change while the payload is used
+     *
+     * @param frame the frame
+     * @return the payload
+     */
+    public FramePayload wrap(ByteBuffer frame) {
+        return new FramePayload(this, frame);
+    }
+
+    /**
+     * Encodes an expected field value for byte comparisons
+     *
+     * @param value the expected value
+     * @return the encoded value, null when the value is not text and therefore never equals a field value
+     */
+    byte[] encode(Object value) {
+        return value instanceof String ? ((String) value).getBytes(this.charset) : null;
+    }
+
+    /**
+     * Returns the schema whose ordinals index the fields
+     *
+     * @return the schema
+     */
+    public PayloadSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Returns the first byte of a field
+     *
+     * @param ordinal the field ordinal
+     * @return the offset, -1 when the key is not a fixed-width field
+     */
+    public int getOffset(int ordinal) {
+        return this.offsets[ordinal];
+    }
+
+    /**
+     * Returns the length of a field
+     *
+     * @param ordinal the field ordinal
+     * @return the length
+     */
+    public int getLength(int ordinal) {
+        return this.lengths[ordinal];
+    }
+
+    /**
+     * Returns the value cache of a field, its hit rate helps tuning its size
+     *
+     * @param ordinal the field ordinal
+     * @return the cache, null when the field has no cache
+     */
+    public StringCache getCache(int ordinal) {
+        return this.caches[ordinal];
+    }
+
+    /**
+     * Returns the length of a complete frame
+     *
+     * @return the position following the last byte of the last field
+     */
+    public int getFrameLength() {
+        int length = 0;
+        for (int ordinal = 0; ordinal < this.offsets.length; ordinal++) {
+            if (this.offsets[ordinal] >= 0)
+                length = Math.max(length, this.offsets[ordinal] + this.lengths[ordinal]);
+        }
+        return length;
+    }
+
+    /**
+     * Returns the character set of the field values
+     *
+     * @return the character set
+     */
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Returns the padding byte
+     *
+     * @return a space in the character set
+     */
+    byte getPad() {
+        return pad;
+    }
+
+    /**
+     * Method returning a string representation
+     *
+     * @return string containing class name and member values
+     */
+    @Override
+    public String toString() {
+
+        return Tools.toString(this);
+    }
+}
@@ -0,0 +1,270 @@
+package frisbee.messaging;
+
+import frisbee.tools.StringCache;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The {@code FramePayload} class is a read-only payload over a fixed-width frame kept as received, in a heap or direct {@link java.nio.ByteBuffer}
+ * <p>
+ * Fields are slices of the frame located by the {@link frisbee.messaging.FrameLayout layout} of the input. A slice is decoded to a
+ * {@link java.lang.String} the first time it is read, possibly shared through the cache of the field, and comparisons with expected values are made on bytes, without decoding.
+ * <p>
+ * A field is present when the frame holds at least its first byte, a frame shorter than the layout cuts its last fields short.
+ * The frame is read in place and must not change until the payload is no longer used. A frame whose buffer is reused as soon as it is
+ * identified is rather handed over as a {@link frisbee.messaging.SlotPayload} {@link frisbee.messaging.SlotPayload#defer(FieldReader) deferring} to it.
+ * <p>
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public final class FramePayload extends AbstractMap<String, Object> implements FieldReader {
+
+    /**
+     * The layout of the frame
+     */
+    private final FrameLayout layout;
+
+    /**
+     * The frame
+     */
+    private ByteBuffer frame;
+
+    /**
+     * Position of the first byte of the frame in the buffer
+     */
+    private int base;
+
+    /**
+     * Position following the last byte of the frame in the buffer
+     */
+    private int end;
+
+    /**
+     * The decoded field values, by ordinal, null until the first field is decoded
+     */
+    private Object[] decoded;
+
+    /**
+     * Wraps a frame
+     *
+     * @param layout the layout of the frame
+     * @param frame  the frame, from its position to its limit
+     */
+    FramePayload(FrameLayout layout, ByteBuffer frame) {
+        this.layout = layout;
+        this.frame = frame;
+        this.base = frame.position();
+        this.end = frame.limit();
+    }
+
+    /**
+     * Wraps another frame of the same layout, for a listener reusing a single payload from frame to frame
+     * <p>
+     * The payload must no longer be used for the previous frame, which is only possible once a
+     * {@link frisbee.messaging.SlotPayload} deferring to it is complete
+     *
+     * @param frame the frame, from its position to its limit
+     * @return this payload
+     */
+    public FramePayload rewrap(ByteBuffer frame) {
+        this.frame = frame;
+        this.base = frame.position();
+        this.end = frame.limit();
+        if (this.decoded != null)
+            Arrays.fill(this.decoded, null);
+        return this;
+    }
+
+    /**
+     * Returns the layout of the frame
+     *
+     * @return the layout
+     */
+    public FrameLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * Returns the frame, which must not be modified
+     *
+     * @return the buffer holding the frame
+     */
+    public ByteBuffer getFrame() {
+        return frame;
+    }
+
+    /**
+     * Checks if a field is present
+     *
+     * @param ordinal the field ordinal in the layout schema
+     * @return true when the frame holds the field
+     */
+    @Override
+    public boolean has(int ordinal) {
+        int offset = this.layout.getOffset(ordinal);
+        return offset >= 0 && this.base + offset < this.end;
+    }
+
+    /**
+     * Returns the value of a field, decoding it on first read
+     *
+     * @param ordinal the field ordinal in the layout schema
+     * @return the value without its padding, null when the field is absent
+     */
+    @Override
+    public Object get(int ordinal) {
+        if (!this.has(ordinal))
+            return null;
+
+        if (this.decoded == null)
+            this.decoded = new Object[this.layout.getSchema().size()];
+
+        Object value = this.decoded[ordinal];
+        if (value == null) {
+            value = this.decode(ordinal);
+            this.decoded[ordinal] = value;
+        }
+        return value;
+    }
+
+    /**
+     * Compares a field with an expected value without decoding it
+     * <p>
+     * The padding is trimmed as when decoding, so the field matches exactly when its decoded value equals the expected value
+     *
+     * @param ordinal  the field ordinal in the layout schema
+     * @param expected the expected value, encoded in the layout character set
+     * @return true when the field is present and holds the expected value followed by padding only
+     */
+    public boolean matches(int ordinal, byte[] expected) {
+        if (!this.has(ordinal))
+            return false;
+
+        int start = this.base + this.layout.getOffset(ordinal);
+        if (this.valueLength(ordinal, start) != expected.length)
+            return false;
+
+        for (int i = 0; i < expected.length; i++) {
+            if (this.frame.get(start + i) != expected[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Decodes a present field
+     *
+     * @param ordinal the field ordinal in the layout schema
+     * @return the value without its padding
+     */
+    private String decode(int ordinal) {
+
+        int start = this.base + this.layout.getOffset(ordinal);
+        int length = this.valueLength(ordinal, start);
+
+        StringCache cache = this.layout.getCache(ordinal);
+        if (cache != null)
+            return cache.get(this.frame, start, length);
+        return StringCache.decode(this.frame, start, length, this.layout.getCharset());
+    }
+
+    /**
+     * Measures the value of a present field, cut short by the end of the frame and without its trailing padding
+     *
+     * @param ordinal the field ordinal in the layout schema
+     * @param start   the first byte of the field in the buffer
+     * @return the number of value bytes
+     */
+    private int valueLength(int ordinal, int start) {
+
+        int length = Math.min(this.layout.getLength(ordinal), this.end - start);
+
+        byte pad = this.layout.getPad();
+        while (length > 0 && this.frame.get(start + length - 1) == pad)
+            length--;
+        return length;
+    }
+
+    @Override
+    public Object get(Object key) {
+        int ordinal = this.layout.getSchema().ordinal(key);
+        return ordinal >= 0 ? this.get(ordinal) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        int ordinal = this.layout.getSchema().ordinal(key);
+        return ordinal >= 0 && this.has(ordinal);
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (int ordinal = 0; ordinal < this.layout.getSchema().size(); ordinal++) {
+            if (this.has(ordinal))
+                size++;
+        }
+        return size;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<Entry<String, Object>>() {
+
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new FieldIterator();
+            }
+
+            @Override
+            public int size() {
+                return FramePayload.this.size();
+            }
+        };
+    }
+
+    /**
+     * Iterates over the present fields in ordinal order, decoding them
+     */
+    private final class FieldIterator implements Iterator<Entry<String, Object>> {
+
+        /**
+         * The ordinal of the next present field, the schema size once exhausted
+         */
+        private int next = this.advance(0);
+
+        /**
+         * Returns the ordinal of the first present field from a given ordinal
+         *
+         * @param from the first ordinal to examine
+         * @return the ordinal, the schema size when none is present
+         */
+        private int advance(int from) {
+            while (from < layout.getSchema().size() && !has(from))
+                from++;
+            return from;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.next < layout.getSchema().size();
+        }
+
+        @Override
+        public Entry<String, Object> next() {
+            if (!this.hasNext())
+                throw new NoSuchElementException();
+
+            int ordinal = this.next;
+            this.next = this.advance(ordinal + 1);
+            return new SimpleImmutableEntry<>(layout.getSchema().key(ordinal), get(ordinal));
+        }
+    }
+}
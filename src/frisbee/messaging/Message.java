@@ -3,13 +3,17 @@ package frisbee.messaging;
 import frisbee.communications.Connection;
 import frisbee.tools.Tools;
 
+import java.nio.ByteBuffer;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 /**
  * The {@code Message} class is a the live instance of a message as it is used by a {@link frisbee.communications.Connection connection}
  * <p>
  * A message contains a single input which can be mapped to multiple outputs
  * <p>
+ * Messages leased from the {@link frisbee.messaging.MessagePool pool} are reference counted, see {@link #retain()} and {@link #release()}
+ * <p>
  *
  * @author adamopan
  * @version 0.1
@@ -33,21 +37,41 @@ public class Message {
      */
     private MessageMapping messageMapping;
 
+    /**
+     * The message definition as compiled by the routes of the input, null to use the definition compiled on its own
+     */
+    private CompiledMapping compiledMapping;
+
     /**
      * An optional transaction identified
      */
     private String transactionID;
 
+    /**
+     * The generated transaction ID, -1 when none was generated
+     */
+    private long transactionNumber = -1;
+
+    /**
+     * The generator of the transaction ID, rendering it on demand, null when none was generated
+     */
+    private TransactionIdGenerator transactionIds;
+
 
     /**
      * message reception timestamp
      */
-    private Long receivedTimestamp;
+    private long receivedTimestamp;
 
     /**
-     * message sent timestamp
+     * message sent timestamp, 0 when not sent
      */
-    private Long sentTimestamp;
+    private long sentTimestamp;
+
+    /**
+     * The position of the input payload in the order its connection received it, -1 when not ordered
+     */
+    private long receivedOrder = -1;
 
     /**
      * the payload received
@@ -56,15 +80,63 @@ public class Message {
 
 
     /**
-     * the payload sent
+     * the payloads sent, by output connection ID
      */
     private Map<String, Object> outputPayload;
 
+    /**
+     * Updates the reference count
+     */
+    private static final AtomicIntegerFieldUpdater<Message> REFERENCES = AtomicIntegerFieldUpdater.newUpdater(Message.class, "references");
+
+    /**
+     * The number of holders of a leased message
+     */
+    private volatile int references;
+
+    /**
+     * Whether the message was leased from the pool, messages created otherwise are not reference counted
+     */
+    private boolean pooled;
+
+    /**
+     * Whether the message checks for use after release
+     */
+    private boolean debug;
+
+    /**
+     * Where the last reference was released, recorded in debug mode only
+     */
+    private volatile Throwable releasedAt;
 
     /**
      * Message Constructor
      */
-    public Message(String transactionID, Connection source, Connection destination, MessageMapping messageMapping, Long receivedTimestamp, Long sentTimestamp, Map<String, Object> inputPayload, Map<String, Object> outputPayload) {
+    public Message(String transactionID, Connection source, Connection destination, MessageMapping messageMapping, long receivedTimestamp, long sentTimestamp, Map<String, Object> inputPayload, Map<String, Object> outputPayload) {
+
+        this.transactionID = transactionID;
+        this.source = source;
+        this.destination = destination;
+        this.messageMapping = messageMapping;
+        this.receivedTimestamp = receivedTimestamp;
+        this.sentTimestamp = sentTimestamp;
+        this.inputPayload = inputPayload;
+        this.outputPayload = outputPayload;
+
+    }
+
+    /**
+     * Creates an empty message for the pool
+     */
+    Message() {
+    }
+
+    /**
+     * Fills a message leased from the pool, holding one reference for the caller
+     *
+     * @param debug whether the message checks for use after release
+     */
+    void lease(boolean debug, String transactionID, Connection source, Connection destination, MessageMapping messageMapping, long receivedTimestamp, long sentTimestamp, Map<String, Object> inputPayload, Map<String, Object> outputPayload) {
 
         this.transactionID = transactionID;
         this.source = source;
@@ -72,41 +144,231 @@ public class Message {
         this.messageMapping = messageMapping;
         this.receivedTimestamp = receivedTimestamp;
         this.sentTimestamp = sentTimestamp;
+        this.inputPayload = inputPayload;
+        this.outputPayload = outputPayload;
+        this.compiledMapping = null;
+        this.receivedOrder = -1;
+        this.transactionNumber = -1;
+        this.transactionIds = null;
+        this.pooled = true;
+        this.debug = debug;
+        this.releasedAt = null;
+        this.references = 1;
+    }
+
+    /**
+     * Adds a reference to a leased message, to be released once the holder is done with it
+     *
+     * @return this message
+     * @throws IllegalStateException when the message was already released
+     */
+    public Message retain() {
+        if (!this.pooled)
+            return this;
+
+        int previous;
+        do {
+            previous = this.references;
+            if (previous <= 0)
+                throw this.released();
+        } while (!REFERENCES.compareAndSet(this, previous, previous + 1));
+
+        return this;
+    }
+
+    /**
+     * Drops a reference to a leased message, the last one resets the message, releases its payloads and returns it to the pool
+     *
+     * @throws IllegalStateException when the message was already released
+     */
+    public void release() {
+        if (!this.pooled)
+            return;
 
+        int remaining = REFERENCES.decrementAndGet(this);
+        if (remaining > 0)
+            return;
+        if (remaining < 0)
+            throw this.released();
+
+        Map<String, Object> input = this.inputPayload;
+        Map<String, Object> output = this.outputPayload;
+
+        this.transactionID = null;
+        this.transactionNumber = -1;
+        this.transactionIds = null;
+        this.source = null;
+        this.destination = null;
+        this.messageMapping = null;
+        this.compiledMapping = null;
+        this.receivedOrder = -1;
+        this.receivedTimestamp = 0;
+        this.sentTimestamp = 0;
+        this.inputPayload = null;
+        this.outputPayload = null;
+
+        if (input instanceof SlotPayload)
+            ((SlotPayload) input).release();
+        if (output instanceof SlotPayload)
+            ((SlotPayload) output).release();
+
+        if (this.debug)
+            this.releasedAt = new Throwable("Message released here");
+        else
+            MessagePool.recycle(this);
+    }
+
+    /**
+     * Returns the number of references held on a leased message
+     *
+     * @return the reference count, 0 for a released or not leased message
+     */
+    public int getReferenceCount() {
+        return this.pooled ? this.references : 0;
+    }
+
+    /**
+     * Throws when a message leased in debug mode was already released
+     */
+    private void checkLive() {
+        if (this.debug && this.references <= 0)
+            throw this.released();
+    }
+
+    /**
+     * Creates the exception thrown on use after release
+     *
+     * @return the exception, caused by the release when it was recorded
+     */
+    private IllegalStateException released() {
+        return new IllegalStateException("Message used after release", this.releasedAt);
     }
 
     public Connection getSource() {
+        this.checkLive();
         return source;
     }
 
     public Connection getDestination() {
+        this.checkLive();
         return destination;
     }
 
     public MessageMapping getMessageMapping() {
+        this.checkLive();
         return messageMapping;
     }
 
+    /**
+     * Sets the compiled message definition the message was transformed with, whose encoders write its frames
+     *
+     * @param compiledMapping the compiled message definition
+     */
+    void compiledWith(CompiledMapping compiledMapping) {
+        this.compiledMapping = compiledMapping;
+    }
+
+    /**
+     * Sets the position of the input payload in the order its connection received it
+     *
+     * @param receivedOrder the received order key
+     */
+    void assignReceivedOrder(long receivedOrder) {
+        this.receivedOrder = receivedOrder;
+    }
+
+    /**
+     * Returns the position of the input payload in the order its connection received it
+     *
+     * @return the received order key, -1 when the input connection does not set it
+     * @see frisbee.messaging.SlotPayload#getReceivedOrder()
+     */
+    public long getReceivedOrder() {
+        this.checkLive();
+        return receivedOrder;
+    }
+
+    /**
+     * Returns the transaction ID, rendering a generated one on first call
+     *
+     * @return the transaction ID, null when the message has none
+     */
     public String getTransactionID() {
+        this.checkLive();
+        if (transactionID == null && transactionIds != null)
+            transactionID = transactionIds.format(transactionNumber);
         return transactionID;
     }
 
-    public Long getReceivedTimestamp() {
+    /**
+     * Gives the message a generated transaction ID, rendered only when asked for
+     *
+     * @param transactionIds    the generator
+     * @param transactionNumber the generated ID
+     */
+    void assignTransaction(TransactionIdGenerator transactionIds, long transactionNumber) {
+        this.transactionIds = transactionIds;
+        this.transactionNumber = transactionNumber;
+    }
+
+    /**
+     * Returns the generated transaction ID
+     *
+     * @return the ID as generated, -1 when none was generated
+     */
+    public long getTransactionNumber() {
+        this.checkLive();
+        return transactionNumber;
+    }
+
+    public long getReceivedTimestamp() {
+        this.checkLive();
         return receivedTimestamp;
     }
 
-    public Long getSentTimestamp() {
+    public long getSentTimestamp() {
+        this.checkLive();
         return sentTimestamp;
     }
 
     public Map<String, Object> getInputPayload() {
+        this.checkLive();
         return inputPayload;
     }
 
     public Map<String, Object> getOutputPayload() {
+        this.checkLive();
         return outputPayload;
     }
 
+    /**
+     * Returns the field values sent to a given output
+     *
+     * @param connectionID the output connection ID
+     * @return the output field values, null when the message has no fields for this output
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> getOutputPayload(String connectionID) {
+        this.checkLive();
+        if (outputPayload == null)
+            return null;
+        return (Map<String, Object>) outputPayload.get(connectionID);
+    }
+
+
+    /**
+     * Writes the fixed-width frame of this message for a given output
+     *
+     * @param connectionID the output connection ID
+     * @param out          the buffer to write the frame to, at its position
+     * @return the number of bytes written, -1 when a field of the output has no length
+     * @see frisbee.messaging.FixedWidthEncoder
+     */
+    public int encode(String connectionID, ByteBuffer out) {
+        this.checkLive();
+        FixedWidthEncoder encoder = compiledMapping == null ? messageMapping.getEncoder(connectionID) : compiledMapping.getEncoder(connectionID);
+        return encoder == null ? -1 : encoder.encode(inputPayload, transactionIds, transactionNumber, out);
+    }
 
     /**
      * Method returning a string representation
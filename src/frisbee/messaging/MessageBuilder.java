@@ -1,10 +1,14 @@
 package frisbee.messaging;
 
 import frisbee.communications.Connection;
+import frisbee.communications.ConnectionRoutes;
 import frisbee.configuration.Keywords;
 
-import java.util.*;
-import java.util.Map.Entry;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Observable;
+import java.util.Observer;
 
 /**
  * The {@code MessageBuilder} class is used to identify incoming payload and apply all necessary data transformations
@@ -15,9 +19,29 @@ import java.util.Map.Entry;
  */
 public final class MessageBuilder implements Observer {
 
+    /**
+     * Writes the transformed messages to their outputs
+     */
+    private final MessageDispatcher messageDispatcher;
+
+    /**
+     * Creates a message builder
+     *
+     * @param messageDispatcher writes the transformed messages to their outputs
+     */
+    public MessageBuilder(MessageDispatcher messageDispatcher) {
+        this.messageDispatcher = messageDispatcher;
+    }
 
     /**
      * Examines a payload and identifies the best matching {@link frisbee.messaging.MessageMapping message} definition
+     * <p>
+     * A message definition is rejected as soon as one of its matchOnValue fields is present in the payload with another value.
+     * The remaining definitions must have the payload shape required by their {@link frisbee.configuration.Keywords#MATCHSTYLE match style}
+     * and the one matching the most matchOnValue fields wins, ties going to the first declared definition. A definition matching none of its
+     * matchOnValue fields never wins, so payloads lacking every discriminator are left unidentified.
+     * <p>
+     * This is the reference scan, {@link frisbee.messaging.MessageIdentifier} is the precompiled equivalent used on received payloads
      *
      * @param messageMappings the message definitions to match on
      * @param inputPayload  the payload to examine
@@ -34,45 +58,31 @@ public final class MessageBuilder implements Observer {
         for (MessageMapping messageMap : messageMappings) {
 
             MessageIOConfig messageInputConfig = messageMap.getInput();
-            Map<String, Object> messageInputArgs = messageInputConfig.getArguments();
+            Map<String, Object> messageInputArgs = messageInputConfig == null ? null : messageInputConfig.getArguments();
 
-            String matchStyle = messageInputArgs.get(Keywords.MATCHSTYLE).toString();
+            Object matchStyle = Keywords.getArgument(messageInputArgs, Keywords.MATCHSTYLE);
 
             List<MessageFieldConfig> fields = messageMap.getFields();
+            List<String> fieldKeys = new LinkedList<>();
 
             int msgMatchCount = 0;
             boolean skipToNextMessage = false;
 
 
-            //TODO: partial match styles
-            /*
-			switch(matchStyle) {
-			
-			case Keyword.MATCHSTYLE_UNDER:
-				break;
-				
-			case Keywords.MATCHSTYLE_OVER:
-				break;
-				 
-			case Keywords.MATCHSTYLE_ANY:
-				break;	
-				
-			case Keywords.MATCHSTYLE_EXACT:
-			default:
-				break;
-			
-			}
-			*/
-
-
             //Go through all the  fields of this message definition.
             for (MessageFieldConfig field : fields) {
 
-                Object matchOnValue = field.getInputArguments().get(Keywords.MATCHONVALUE);
+                Object matchKey = Keywords.getArgument(field.getInputArguments(), Keywords.FIELD_KEY);
+                if (matchKey == null)
+                    continue;
+
+                if (!fieldKeys.contains(matchKey.toString()))
+                    fieldKeys.add(matchKey.toString());
+
+                Object matchOnValue = Keywords.getArgument(field.getInputArguments(), Keywords.MATCHONVALUE);
                 //matchOnValue is defined in this field
                 if (matchOnValue != null) {
 
-                    Object matchKey = field.getInputArguments().get(Keywords.FIELD_KEY);
                     Object payloadKey = inputPayload.get(matchKey.toString());
 
                     //field exists in payload
@@ -96,129 +106,130 @@ public final class MessageBuilder implements Observer {
 
                 }
 
-                //did we find a valid message?
-                if (!skipToNextMessage) {
-
-                    //is it the best match so far?
-                    if (msgMatchCount > highestMatchCount) {
-
-                        highestMatchCount = msgMatchCount;
-                        result = messageMap;
-                    }
-
-                }
-
             }
 
+            if (skipToNextMessage)
+                continue;
 
-        }
-
-        return result;
-    }
-
-
-    public static Message transform(MessageMapping messageMap, Map<String, Object> inputPayload, Long receivedTimestamp) {
-
-        Message result = null;
-
-        List<MessageFieldConfig> fields = messageMap.getFields();
-
-        for (MessageFieldConfig field : fields) {
-
-            LinkedHashMap<String, Map<String, Object>> outputArgs = field.getOutputArguments();
-
-
-            // lookup every keyword and apply field  transformation to output payload.
-
-            for (Entry<String, Map<String, Object>> output : outputArgs.entrySet()) {
-
-                String connectionID = output.getKey();
-
-                Map<String, Object> outputFieldConfig = output.getValue();
-
-                Object forceVal = outputFieldConfig.get(Keywords.FORCEVALUE);
-                Integer fldLen = (Integer) outputFieldConfig.get(Keywords.FLD_LENGTH);
-                Object trunk = outputFieldConfig.get(Keywords.FLD_TRUNK);
-                Object lpad = outputFieldConfig.get(Keywords.FLD_L_PAD);
-                Object rpad = outputFieldConfig.get(Keywords.FLD_R_PAD);
-                Object header = outputFieldConfig.get(Keywords.FLD_HEADER);
-                Object footer = outputFieldConfig.get(Keywords.FLD_FOOTER);
-                Object fldType = outputFieldConfig.get(Keywords.FLD_TYPE);
-
-                Map<String, Object> outputPayload = null;
+            //count the fields present from the start of the message definition
+            int leadingFields = 0;
+            while (leadingFields < fieldKeys.size() && inputPayload.containsKey(fieldKeys.get(leadingFields)))
+                leadingFields++;
 
-                Object matchKey = field.getInputArguments().get(Keywords.FIELD_KEY);
-                Object value = inputPayload.get(matchKey.toString());
+            int presentFields = leadingFields;
+            for (int i = leadingFields; i < fieldKeys.size(); i++) {
+                if (inputPayload.containsKey(fieldKeys.get(i)))
+                    presentFields++;
+            }
 
-                if (forceVal != null)
-                    value = forceVal;
+            boolean trailingFieldsMissing = presentFields == leadingFields;
+            boolean extraFields = inputPayload.size() > presentFields;
+            boolean validShape;
 
+            switch (matchStyle == null ? Keywords.MATCHSTYLE_EXACT : matchStyle.toString().trim().toLowerCase()) {
 
-                if (fldLen != null) {
+                case Keywords.MATCHSTYLE_UNDER:
+                    validShape = trailingFieldsMissing && !extraFields;
+                    break;
 
-                    if (value.toString().length() < fldLen) {
+                case Keywords.MATCHSTYLE_OVER:
+                    validShape = leadingFields == fieldKeys.size();
+                    break;
 
-                        if (trunk != null) {
+                case Keywords.MATCHSTYLE_ANY:
+                    validShape = trailingFieldsMissing;
+                    break;
 
-                            if (trunk.equals(Keywords.FLD_TRUNK_LEFT)) {
-                                //TODO: truncate left to fit
-                            } else if (trunk.equals(Keywords.FLD_TRUNK_RIGHT)) {
-                                //TODO: truncate right to fit
-                            }
-                        }
+                case Keywords.MATCHSTYLE_EXACT:
+                default:
+                    validShape = leadingFields == fieldKeys.size() && !extraFields;
+                    break;
 
-                    } else if (value.toString().length() > fldLen) {
+            }
 
-                        if (rpad != null && lpad != null) {
-                            //TODO: pad half half, with preference for lpad to be larger
-                        } else if (rpad != null) {
-                            //TODO: pad only right  and trunk padding rightmost if needed
-                        } else if (lpad != null) {
-                            //TODO: pad only left, and trunk padding leftmost if needed
-                        } else {
-                            //TODO: left pad with spaces
-                        }
+            //did we find a valid message? is it the best match so far?
+            if (validShape && msgMatchCount > highestMatchCount) {
 
-                    }
-
-                }
+                highestMatchCount = msgMatchCount;
+                result = messageMap;
+            }
 
+        }
 
-                if (header != null) {
-                    value = header.toString() + value.toString();
-                }
+        return result;
+    }
 
-                if (footer != null) {
-                    value = value.toString() + footer.toString();
-                }
 
+    /**
+     * Applies the precompiled field transformations of a {@link frisbee.messaging.MessageMapping message} definition to a payload
+     *
+     * @param messageMap        the identified message definition
+     * @param inputPayload      the payload to transform
+     * @param receivedTimestamp the payload reception timestamp
+     * @return the message carrying the payload of every output, leased from the {@link frisbee.messaging.MessagePool pool} when pooling is on
+     */
+    public static Message transform(MessageMapping messageMap, Map<String, Object> inputPayload, long receivedTimestamp) {
+        return transform(messageMap.getCompiled(), inputPayload, receivedTimestamp);
+    }
 
-                if (fldType != null) {
+    /**
+     * Applies the field transformations of a {@link frisbee.messaging.MessageMapping message} definition compiled by the routes of its input
+     * <p>
+     * The transformations run on the engine selected by the message input, the interpreted {@link frisbee.messaging.TransformPlan} unless configured otherwise
+     *
+     * @param compiledMap       the identified message definition, compiled against the input schema
+     * @param inputPayload      the payload to transform
+     * @param receivedTimestamp the payload reception timestamp
+     * @return the message carrying the payload of every output, written by the encoders of the compiled definition
+     */
+    public static Message transform(CompiledMapping compiledMap, Map<String, Object> inputPayload, long receivedTimestamp) {
 
-                    if (!value.getClass().getSimpleName().equals(fldType)) {
-                        //TODO: datatype conversions
-                    }
+        Map<String, Object> outputPayload = compiledMap.getTransformer().apply(inputPayload);
 
-                }
+        Message result = MessagePool.acquire(null, null, null, compiledMap.getMessageMapping(), receivedTimestamp, 0, inputPayload, outputPayload);
+        result.compiledWith(compiledMap);
 
+        //transaction IDs are generated as numbers and rendered when written or asked for
+        if (TransactionIdGenerator.isEnabled() || compiledMap.embedsTransactionID()) {
+            TransactionIdGenerator transactionIds = TransactionIdGenerator.getGenerator();
+            result.assignTransaction(transactionIds, transactionIds.next());
+        }
 
-            }
+        //message length, padding, header and footer are applied by the fixed-width encoders of the outputs
+        return result;
+    }
 
 
+    /**
+     * Identifies, transforms and outputs a payload received by a connection
+     *
+     * @param connection        the connection the payload was received on
+     * @param arg               the payload received
+     * @param receivedTimestamp the payload reception timestamp
+     */
+    public void process(Connection connection, Object arg, long receivedTimestamp) {
+
+        //noinspection unchecked
+        Map<String, Object> payload = (Map<String, Object>) arg;
+
+        //Identify
+        ConnectionRoutes routes = connection.getRoutes();
+        MessageMapping messageMapping = routes.getMessageIdentifier().identify(payload);
+        if (messageMapping == null)
+            return;
+
+        //Transform, as compiled by the routes the payload was received with
+        Message message = transform(routes.getCompiledMapping(messageMapping), payload, receivedTimestamp);
+        if (payload instanceof SlotPayload)
+            message.assignReceivedOrder(((SlotPayload) payload).getReceivedOrder());
+
+        //Write to the sync outputs in order and to the async outputs concurrently, the dispatcher retains the message until written
+        try {
+            this.messageDispatcher.dispatch(message);
+        } finally {
+            message.release();
         }
 
-
-        //message transformation
-		/*
-				Keywords.MSG_LENGTH
-				Keywords.MSG_TRUNK
-				Keywords.MSG_L_PAD
-				Keywords.MSG_R_PAD
-				Keywords.MSG_HEADER
-				Keywords.MSG_FOOTER
-		 */
-
-        return result;
     }
 
 
@@ -227,18 +238,7 @@ public final class MessageBuilder implements Observer {
 
         if (o instanceof Connection) {
 
-            Long receivedTimestamp = System.currentTimeMillis();
-            Connection connection = (Connection) o;
-            //noinspection unchecked
-            Map<String, Object> payload = (Map<String, Object>) arg;
-            List<MessageMapping> messageMappings = connection.getInputMappings();
-
-            //TODO:
-            //Identify
-            //Transform
-            //write to sync ouputs thread
-            //write to async outputs threads
-
+            this.process((Connection) o, arg, System.currentTimeMillis());
 
         }
 
@@ -0,0 +1,546 @@
+package frisbee.messaging;
+
+import frisbee.communications.Connection;
+import frisbee.configuration.Keywords;
+import frisbee.exceptions.LoggedException;
+import frisbee.tools.ThreadMode;
+import frisbee.tools.Tools;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * The {@code MessageDispatcher} class writes transformed {@link frisbee.messaging.Message messages} to their output connections
+ * <p>
+ * {@link frisbee.messaging.MessageIOConfig.Mode#SYNC SYNC} outputs of a message definition are written one after the other, in the order they are declared,
+ * on a serial lane of that definition, so the messages of a definition reach them in the order they were received.
+ * {@link frisbee.messaging.MessageIOConfig.Mode#ASYNC ASYNC} outputs are written concurrently, one task per output, so their latencies do not add up.
+ * <p>
+ * Lanes and asynchronous writes share a bounded pool of workers. When its queue is full the dispatching thread runs the write itself,
+ * slowing the input down instead of buffering without limit.
+ * <p>
+ * An asynchronous output configured with a {@link frisbee.configuration.Keywords#OUTPUT_BATCH_SIZE batch size} groups its messages
+ * and writes them with {@link frisbee.communications.Connection#writeBatch(List)}. A batch is written once full, once its
+ * {@link frisbee.configuration.Keywords#OUTPUT_LINGER linger time} elapsed, or, without linger time, as soon as a worker is free.
+ * <p>
+ * An output configured with a {@link frisbee.configuration.Keywords#OUTPUT_HIGH_WATERMARK high watermark} applies backpressure to the input
+ * connection of its message definition once that many messages wait to be written, and releases it once the backlog drained down to its
+ * {@link frisbee.configuration.Keywords#OUTPUT_LOW_WATERMARK low watermark}, half the high watermark unless configured.
+ * <p>
+ * Every scheduled write {@link Message#retain() retains} the message and releases it once written, so a pooled message fanned out
+ * to several outputs is recycled only after the last of them.
+ * <p>
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public final class MessageDispatcher {
+
+    /**
+     * Number of queued tasks allowed per worker before the dispatching thread runs them itself
+     */
+    private static final int QUEUED_TASKS_PER_WORKER = 256;
+
+    /**
+     * Resolves output connections from their ID
+     */
+    private final Function<String, Connection> connections;
+
+    /**
+     * The workers writing to the outputs
+     */
+    private final ThreadPoolExecutor workers;
+
+    /**
+     * The serial lane of every message definition with synchronous outputs
+     */
+    private final Map<MessageMapping, SerialLane> syncLanes = new ConcurrentHashMap<>();
+
+    /**
+     * The backlog of every output
+     */
+    private final Map<MessageIOConfig, OutputQueue> outputQueues = new ConcurrentHashMap<>();
+
+    /**
+     * Flushes the batches whose linger time elapsed
+     */
+    private final ScheduledThreadPoolExecutor lingerTimer;
+
+    /**
+     * Creates a dispatcher and its workers
+     *
+     * @param name        the dispatcher name, used as worker thread name prefix
+     * @param threadMode  the kind of threads the workers run on
+     * @param threads     the number of workers, the number of processors times four when not strictly positive
+     * @param connections resolves output connections from their ID
+     */
+    public MessageDispatcher(String name, ThreadMode threadMode, int threads, Function<String, Connection> connections) {
+
+        int workerCount = threads > 0 ? threads : Runtime.getRuntime().availableProcessors() * 4;
+
+        this.connections = connections;
+        this.workers = new ThreadPoolExecutor(workerCount, workerCount, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(workerCount * QUEUED_TASKS_PER_WORKER),
+                threadMode.newThreadFactory("frisbee-output-" + name + "-"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        this.workers.allowCoreThreadTimeOut(true);
+
+        this.lingerTimer = new ScheduledThreadPoolExecutor(1, task -> {
+            Thread thread = new Thread(task, "frisbee-linger-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.lingerTimer.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Writes a message to all the outputs of its message definition
+     *
+     * @param message the transformed message
+     */
+    public void dispatch(Message message) {
+
+        MessageMapping messageMapping = message.getMessageMapping();
+
+        List<MessageIOConfig> syncOutputs = messageMapping.getSyncOutputs();
+        if (syncOutputs != null && !syncOutputs.isEmpty()) {
+
+            OutputQueue[] queues = new OutputQueue[syncOutputs.size()];
+            for (int i = 0; i < queues.length; i++) {
+                queues[i] = this.outputQueue(messageMapping, syncOutputs.get(i));
+                queues[i].enqueued(1);
+                message.retain();
+            }
+
+            this.syncLanes.computeIfAbsent(messageMapping, m -> new SerialLane(this.workers)).execute(() -> {
+                for (OutputQueue queue : queues) {
+                    this.write(queue.output, message);
+                    queue.written(1);
+                }
+            });
+        }
+
+        List<MessageIOConfig> asyncOutputs = messageMapping.getAsyncOutputs();
+        if (asyncOutputs != null) {
+            for (MessageIOConfig output : asyncOutputs) {
+                OutputQueue queue = this.outputQueue(messageMapping, output);
+                message.retain();
+                if (queue.batchSize > 1) {
+                    queue.add(message);
+                } else {
+                    queue.enqueued(1);
+                    this.workers.execute(() -> {
+                        this.write(output, message);
+                        queue.written(1);
+                    });
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the backlog of an output, creating it on first use
+     *
+     * @param messageMapping the message definition of the output
+     * @param output         the output configuration
+     * @return the output backlog
+     */
+    private OutputQueue outputQueue(MessageMapping messageMapping, MessageIOConfig output) {
+
+        OutputQueue queue = this.outputQueues.get(output);
+        if (queue == null)
+            queue = this.outputQueues.computeIfAbsent(output, o -> new OutputQueue(messageMapping.getInput(), o));
+        return queue;
+    }
+
+    /**
+     * Returns the number of messages waiting to be written to every output connection, including the ones being written
+     *
+     * @return the queue depths, by output connection ID
+     */
+    public Map<String, Integer> getQueueDepths() {
+
+        Map<String, Integer> depths = new HashMap<>();
+        for (OutputQueue queue : this.outputQueues.values())
+            depths.merge(queue.output.getConnectionID(), queue.pending.get(), Integer::sum);
+        return depths;
+    }
+
+    /**
+     * Writes a message to a single output, then releases the reference retained for this write
+     *
+     * @param output  the output configuration
+     * @param message the message to write
+     */
+    private void write(MessageIOConfig output, Message message) {
+
+        try {
+            Connection connection = this.connections.apply(output.getConnectionID());
+            if (connection != null)
+                connection.write(message);
+        } catch (LoggedException | RuntimeException e) {
+            e.printStackTrace();
+        } finally {
+            message.release();
+        }
+    }
+
+    /**
+     * Writes a batch of messages to a single output, then releases the references retained for this write
+     *
+     * @param output   the output configuration
+     * @param messages the messages to write, in order
+     */
+    private void writeBatch(MessageIOConfig output, List<Message> messages) {
+
+        try {
+            Connection connection = this.connections.apply(output.getConnectionID());
+            if (connection != null)
+                connection.writeBatch(messages);
+        } catch (LoggedException | RuntimeException e) {
+            e.printStackTrace();
+        } finally {
+            for (Message message : messages)
+                message.release();
+        }
+    }
+
+    /**
+     * Stops accepting messages and waits for the pending writes to complete
+     *
+     * @param timeoutMillis the maximum time to wait
+     * @return true when every pending write completed
+     */
+    public boolean shutdown(long timeoutMillis) {
+
+        //write out the batches still lingering
+        for (OutputQueue queue : this.outputQueues.values())
+            queue.flush();
+        this.lingerTimer.shutdownNow();
+
+        this.workers.shutdown();
+        try {
+            return this.workers.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Method returning a string representation
+     *
+     * @return string containing class name and member values
+     */
+    @Override
+    public String toString() {
+
+        return Tools.toString(this);
+    }
+
+    /**
+     * The backlog of an output, groups its messages into batches when configured and applies backpressure to the input when it grows too long
+     * <p>
+     * At most one batch of an output is written at a time, so batches are written in the order their messages were dispatched
+     */
+    private final class OutputQueue implements Runnable {
+
+        /**
+         * The output configuration
+         */
+        private final MessageIOConfig output;
+
+        /**
+         * The input connection ID of the message definition, null when not defined
+         */
+        private final String inputConnectionID;
+
+        /**
+         * The maximum number of messages per batch, batching is disabled below two
+         */
+        private final int batchSize;
+
+        /**
+         * The milliseconds to wait for a batch to fill before writing it
+         */
+        private final long lingerMillis;
+
+        /**
+         * The backlog at which backpressure is applied, disabled when not strictly positive
+         */
+        private final int highWatermark;
+
+        /**
+         * The backlog at which backpressure is released
+         */
+        private final int lowWatermark;
+
+        /**
+         * The messages waiting to be written in a batch
+         */
+        private final Queue<Message> messages = new ConcurrentLinkedQueue<>();
+
+        /**
+         * The number of messages waiting to be written in a batch
+         */
+        private final AtomicInteger batched = new AtomicInteger();
+
+        /**
+         * The number of messages dispatched to the output and not written yet
+         */
+        private final AtomicInteger pending = new AtomicInteger();
+
+        /**
+         * Whether a worker is writing or about to write the batch
+         */
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        /**
+         * The lock guarding the backpressure transitions and the calls to the input connection
+         */
+        private final Object watermarkLock = new Object();
+
+        /**
+         * Whether backpressure is applied, written under the watermark lock
+         */
+        private volatile boolean throttling;
+
+        /**
+         * The input connection backpressure was applied to, guarded by the watermark lock
+         */
+        private Connection throttledInput;
+
+        /**
+         * Reads the batching and watermark configuration of an output
+         *
+         * @param input  the input configuration of the message definition, may be null
+         * @param output the output configuration
+         */
+        OutputQueue(MessageIOConfig input, MessageIOConfig output) {
+
+            Object batchSize = Keywords.getArgument(output.getArguments(), Keywords.OUTPUT_BATCH_SIZE);
+            Object linger = Keywords.getArgument(output.getArguments(), Keywords.OUTPUT_LINGER);
+            Object highWatermark = Keywords.getArgument(output.getArguments(), Keywords.OUTPUT_HIGH_WATERMARK);
+            Object lowWatermark = Keywords.getArgument(output.getArguments(), Keywords.OUTPUT_LOW_WATERMARK);
+
+            this.output = output;
+            this.inputConnectionID = input == null ? null : input.getConnectionID();
+            this.batchSize = batchSize == null ? 1 : Integer.parseInt(batchSize.toString().trim());
+            this.lingerMillis = linger == null ? 0 : Long.parseLong(linger.toString().trim());
+            this.highWatermark = highWatermark == null ? 0 : Integer.parseInt(highWatermark.toString().trim());
+            this.lowWatermark = lowWatermark == null ? this.highWatermark / 2 : Integer.parseInt(lowWatermark.toString().trim());
+        }
+
+        /**
+         * Counts messages dispatched to the output
+         *
+         * @param count the number of messages
+         */
+        void enqueued(int count) {
+            this.pending.addAndGet(count);
+            this.checkWatermarks();
+        }
+
+        /**
+         * Counts messages written to the output
+         *
+         * @param count the number of messages
+         */
+        void written(int count) {
+            this.pending.addAndGet(-count);
+            this.checkWatermarks();
+        }
+
+        /**
+         * Applies or releases backpressure when the backlog crossed a watermark
+         * <p>
+         * Transitions and the calls to the input connection happen under one lock, and the backlog is read again after every transition:
+         * a counter update racing with a transition either sees the new state and takes the lock, or is seen by the transition's re-read.
+         */
+        private void checkWatermarks() {
+
+            if (this.highWatermark <= 0)
+                return;
+
+            int backlog = this.pending.get();
+            if (this.throttling ? backlog > this.lowWatermark : backlog < this.highWatermark)
+                return;
+
+            synchronized (this.watermarkLock) {
+                while (true) {
+                    backlog = this.pending.get();
+
+                    if (!this.throttling && backlog >= this.highWatermark) {
+                        Connection input = this.inputConnectionID == null ? null : connections.apply(this.inputConnectionID);
+                        this.throttledInput = input;
+                        this.throttling = true;
+                        if (input != null)
+                            input.applyBackpressure();
+
+                    } else if (this.throttling && backlog <= this.lowWatermark) {
+                        Connection input = this.throttledInput;
+                        this.throttledInput = null;
+                        this.throttling = false;
+                        if (input != null)
+                            input.releaseBackpressure();
+
+                    } else {
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Adds a message to the batch, writing the batch when full
+         *
+         * @param message the message to write
+         */
+        void add(Message message) {
+
+            this.messages.add(message);
+            this.enqueued(1);
+            int count = this.batched.incrementAndGet();
+
+            if (count >= this.batchSize || this.lingerMillis <= 0)
+                this.flush();
+            else if (count == 1)
+                this.linger();
+        }
+
+        /**
+         * Flushes the batch once the linger time elapsed, or right away once the dispatcher is shut down and its timer with it
+         */
+        private void linger() {
+            if (!lingerTimer.isShutdown()) {
+                try {
+                    lingerTimer.schedule(this::flush, this.lingerMillis, TimeUnit.MILLISECONDS);
+                    return;
+                } catch (RejectedExecutionException e) {
+                    //shut down meanwhile
+                }
+            }
+            this.flush();
+        }
+
+        /**
+         * Submits the batch to the workers unless it is already submitted
+         */
+        void flush() {
+            if (this.batched.get() > 0 && this.scheduled.compareAndSet(false, true))
+                workers.execute(this);
+        }
+
+        /**
+         * Writes batches until no message is waiting
+         */
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    List<Message> batch = new ArrayList<>(Math.min(this.batchSize, Math.max(1, this.batched.get())));
+                    Message message;
+                    while (batch.size() < this.batchSize && (message = this.messages.poll()) != null)
+                        batch.add(message);
+
+                    if (batch.isEmpty())
+                        break;
+
+                    this.batched.addAndGet(-batch.size());
+                    writeBatch(this.output, batch);
+                    this.written(batch.size());
+                }
+            } finally {
+                this.scheduled.set(false);
+
+                //messages added while this batch was written did not submit it again
+                int count = this.batched.get();
+                if (count >= this.batchSize || (count > 0 && this.lingerMillis <= 0))
+                    this.flush();
+                else if (count > 0)
+                    this.linger();
+            }
+        }
+    }
+
+    /**
+     * Runs tasks one at a time, in submission order, on a shared executor
+     * <p>
+     * A lane only occupies a worker while it has tasks to run
+     */
+    private static final class SerialLane implements Executor, Runnable {
+
+        /**
+         * The executor running the lane
+         */
+        private final Executor executor;
+
+        /**
+         * The tasks waiting to run
+         */
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        /**
+         * Whether the lane is submitted to the executor
+         */
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        /**
+         * Creates a lane
+         *
+         * @param executor the executor running the lane
+         */
+        SerialLane(Executor executor) {
+            this.executor = executor;
+        }
+
+        /**
+         * Queues a task behind the ones already submitted to the lane
+         *
+         * @param task the task
+         */
+        @Override
+        public void execute(Runnable task) {
+            this.tasks.add(task);
+            this.schedule();
+        }
+
+        /**
+         * Submits the lane to the executor unless it is already submitted
+         */
+        private void schedule() {
+            if (!this.tasks.isEmpty() && this.scheduled.compareAndSet(false, true))
+                this.executor.execute(this);
+        }
+
+        /**
+         * Runs the queued tasks until the lane is empty
+         */
+        @Override
+        public void run() {
+            try {
+                Runnable task;
+                while ((task = this.tasks.poll()) != null)
+                    task.run();
+            } finally {
+                this.scheduled.set(false);
+                //a task queued after the last poll and before the reset would otherwise be stranded
+                this.schedule();
+            }
+        }
+    }
+}
@@ -0,0 +1,622 @@
+package frisbee.messaging;
+
+import frisbee.configuration.Keywords;
+import frisbee.tools.Tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The {@code MessageIdentifier} class is a precompiled decision tree used to identify incoming payloads
+ * <p>
+ * The tree is built once from all the {@link frisbee.messaging.MessageMapping message} definitions attached to an input.
+ * Every node probes one discriminator key of the payload and branches on its value, discarding the definitions whose
+ * matchOnValue differs. Identifying a payload therefore costs one probe per discriminator key on the path, whatever the
+ * number of definitions, followed by the scoring of the few definitions that survived.
+ * <p>
+ * The result is the same best match as {@link frisbee.messaging.MessageBuilder#identify(List, Map)}, for all the
+ * {@link frisbee.configuration.Keywords#MATCHSTYLE match styles}.
+ * Payloads bound to the input {@link frisbee.messaging.PayloadSchema schema} the tree is compiled against are probed by field ordinal,
+ * and {@link frisbee.messaging.FramePayload fixed-width frames} of the input {@link frisbee.messaging.FrameLayout layout} have their
+ * discriminators compared on bytes, without decoding them. Payloads {@link frisbee.messaging.SlotPayload#defer(FieldReader) deferring} to a
+ * {@link frisbee.messaging.FieldReader reader} only decode their discriminators until identified, then the fields of the identified definition
+ * <p>
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public final class MessageIdentifier {
+
+    /**
+     * Identifier used by inputs that have no message definitions
+     */
+    public static final MessageIdentifier EMPTY = new MessageIdentifier(new LinkedList<MessageMapping>());
+
+    /**
+     * Match styles, in compiled form
+     */
+    private static final int EXACT = 0, UNDER = 1, OVER = 2, ANY = 3;
+
+    /**
+     * Upper bound on the number of tree nodes, beyond which the survivors are left for the leaves to score
+     */
+    private static final int MAX_NODES = 1 << 14;
+
+    /**
+     * Marks a discriminator value that was not probed yet
+     */
+    private static final Object NOT_PROBED = new Object();
+
+    /**
+     * Marks a frame discriminator holding none of the expected values
+     */
+    private static final Object UNEXPECTED = new Object();
+
+    /**
+     * The message definitions in declaration order, which is also the tie breaking order
+     */
+    private final MessageMapping[] messageMappings;
+
+    /**
+     * The distinct payload keys carrying a matchOnValue, most used first
+     */
+    private final String[] discriminatorKeys;
+
+    /**
+     * For every message definition, its compiled match style
+     */
+    private final int[] matchStyles;
+
+    /**
+     * For every message definition, its distinct field keys in field order
+     */
+    private final String[][] fieldKeys;
+
+    /**
+     * For every message definition, the discriminator key ordinals in field order
+     */
+    private final int[][] mappingKeys;
+
+    /**
+     * For every message definition, the matchOnValue of each discriminator in field order
+     */
+    private final Object[][] mappingValues;
+
+    /**
+     * The schema of the payloads probed by ordinal, null when payloads are always probed by key
+     */
+    private final PayloadSchema schema;
+
+    /**
+     * For every discriminator key, its ordinal in the schema, -1 when probed by key
+     */
+    private final int[] discriminatorOrdinals;
+
+    /**
+     * For every message definition, the ordinals of its distinct field keys in the schema, -1 when probed by key
+     */
+    private final int[][] fieldOrdinals;
+
+    /**
+     * The layout of the fixed-width frames probed on bytes, null when frames are probed by key
+     */
+    private final FrameLayout layout;
+
+    /**
+     * For every discriminator key, its distinct expected text values
+     */
+    private final Object[][] expectedValues;
+
+    /**
+     * For every discriminator key, its distinct expected text values encoded in the layout character set
+     */
+    private final byte[][][] expectedBytes;
+
+    /**
+     * The root of the decision tree
+     */
+    private final Node root;
+
+    /**
+     * The payload values by discriminator key ordinal, reused by every thread from payload to payload
+     */
+    private final ThreadLocal<Object[]> payloadValues;
+
+    /**
+     * Number of nodes built so far, only used while compiling
+     */
+    private int nodeCount;
+
+    /**
+     * Compiles the decision tree for a set of message definitions, probing payloads by key
+     *
+     * @param messageMappings the message definitions attached to a single input
+     */
+    public MessageIdentifier(List<MessageMapping> messageMappings) {
+        this(messageMappings, null);
+    }
+
+    /**
+     * Compiles the decision tree for a set of message definitions
+     *
+     * @param messageMappings the message definitions attached to a single input
+     * @param schema          the schema of the payloads to probe by ordinal, may be null
+     */
+    public MessageIdentifier(List<MessageMapping> messageMappings, PayloadSchema schema) {
+        this(messageMappings, schema, null);
+    }
+
+    /**
+     * Compiles the decision tree for a set of message definitions
+     *
+     * @param messageMappings the message definitions attached to a single input
+     * @param schema          the schema of the payloads to probe by ordinal, may be null
+     * @param layout          the layout of the frames to probe on bytes, may be null
+     */
+    public MessageIdentifier(List<MessageMapping> messageMappings, PayloadSchema schema, FrameLayout layout) {
+
+        this.messageMappings = messageMappings.toArray(new MessageMapping[messageMappings.size()]);
+        this.matchStyles = new int[this.messageMappings.length];
+        this.fieldKeys = new String[this.messageMappings.length][];
+        this.mappingKeys = new int[this.messageMappings.length][];
+        this.mappingValues = new Object[this.messageMappings.length][];
+
+        Map<String, Integer> keyUsage = new LinkedHashMap<>();
+        List<List<String>> discriminatorKeysByMapping = new ArrayList<>();
+        List<List<Object>> discriminatorValuesByMapping = new ArrayList<>();
+
+        for (int i = 0; i < this.messageMappings.length; i++) {
+
+            MessageMapping messageMap = this.messageMappings[i];
+            this.matchStyles[i] = compileMatchStyle(messageMap.getInput() == null ? null : messageMap.getInput().getArguments());
+
+            Set<String> keys = new LinkedHashSet<>();
+            List<String> discriminators = new ArrayList<>();
+            List<Object> values = new ArrayList<>();
+
+            List<MessageFieldConfig> fields = messageMap.getFields();
+            if (fields != null) {
+                for (MessageFieldConfig field : fields) {
+
+                    Object matchKey = Keywords.getArgument(field.getInputArguments(), Keywords.FIELD_KEY);
+                    if (matchKey == null)
+                        continue;
+
+                    keys.add(matchKey.toString());
+
+                    Object matchOnValue = Keywords.getArgument(field.getInputArguments(), Keywords.MATCHONVALUE);
+                    if (matchOnValue == null)
+                        continue;
+
+                    if (!discriminators.contains(matchKey.toString())) {
+                        Integer usage = keyUsage.get(matchKey.toString());
+                        keyUsage.put(matchKey.toString(), usage == null ? 1 : usage + 1);
+                    }
+
+                    discriminators.add(matchKey.toString());
+                    values.add(matchOnValue);
+                }
+            }
+
+            this.fieldKeys[i] = keys.toArray(new String[keys.size()]);
+            discriminatorKeysByMapping.add(discriminators);
+            discriminatorValuesByMapping.add(values);
+        }
+
+        //probe the keys shared by most definitions first, they discard the most candidates
+        List<String> orderedKeys = new ArrayList<>(keyUsage.keySet());
+        final Map<String, Integer> usage = keyUsage;
+        orderedKeys.sort((a, b) -> usage.get(b) - usage.get(a));
+        this.discriminatorKeys = orderedKeys.toArray(new String[orderedKeys.size()]);
+
+        Map<String, Integer> keyOrdinals = new HashMap<>();
+        for (int k = 0; k < this.discriminatorKeys.length; k++)
+            keyOrdinals.put(this.discriminatorKeys[k], k);
+
+        for (int i = 0; i < this.messageMappings.length; i++) {
+            List<String> discriminators = discriminatorKeysByMapping.get(i);
+            this.mappingKeys[i] = new int[discriminators.size()];
+            for (int j = 0; j < discriminators.size(); j++)
+                this.mappingKeys[i][j] = keyOrdinals.get(discriminators.get(j));
+            this.mappingValues[i] = discriminatorValuesByMapping.get(i).toArray();
+        }
+
+        this.schema = schema;
+        this.discriminatorOrdinals = new int[this.discriminatorKeys.length];
+        for (int k = 0; k < this.discriminatorKeys.length; k++)
+            this.discriminatorOrdinals[k] = schema == null ? -1 : schema.ordinal(this.discriminatorKeys[k]);
+
+        this.fieldOrdinals = new int[this.messageMappings.length][];
+        for (int i = 0; i < this.messageMappings.length; i++) {
+            this.fieldOrdinals[i] = new int[this.fieldKeys[i].length];
+            for (int f = 0; f < this.fieldKeys[i].length; f++)
+                this.fieldOrdinals[i][f] = schema == null ? -1 : schema.ordinal(this.fieldKeys[i][f]);
+        }
+
+        this.layout = layout != null && layout.getSchema() == schema ? layout : null;
+        this.expectedValues = new Object[this.discriminatorKeys.length][];
+        this.expectedBytes = new byte[this.discriminatorKeys.length][][];
+        for (int k = 0; k < this.discriminatorKeys.length; k++) {
+            Set<Object> expected = new LinkedHashSet<>();
+            for (int i = 0; i < this.messageMappings.length; i++) {
+                for (int j = 0; j < this.mappingKeys[i].length; j++) {
+                    if (this.mappingKeys[i][j] == k && this.mappingValues[i][j] instanceof String)
+                        expected.add(this.mappingValues[i][j]);
+                }
+            }
+            this.expectedValues[k] = expected.toArray();
+            this.expectedBytes[k] = new byte[this.expectedValues[k].length][];
+            for (int v = 0; v < this.expectedValues[k].length && this.layout != null; v++)
+                this.expectedBytes[k][v] = this.layout.encode(this.expectedValues[k][v]);
+        }
+
+        BitSet all = new BitSet();
+        all.set(0, this.messageMappings.length);
+        this.root = this.build(0, all, new HashMap<String, Node>());
+
+        int keyCount = this.discriminatorKeys.length;
+        this.payloadValues = ThreadLocal.withInitial(() -> new Object[keyCount]);
+    }
+
+    /**
+     * Compiles the match style of a message input
+     *
+     * @param inputArgs the message input arguments
+     * @return the compiled match style, exact when not configured
+     */
+    private static int compileMatchStyle(Map<String, Object> inputArgs) {
+
+        Object matchStyle = Keywords.getArgument(inputArgs, Keywords.MATCHSTYLE);
+
+        switch (matchStyle == null ? Keywords.MATCHSTYLE_EXACT : matchStyle.toString().trim().toLowerCase()) {
+            case Keywords.MATCHSTYLE_UNDER:
+                return UNDER;
+            case Keywords.MATCHSTYLE_OVER:
+                return OVER;
+            case Keywords.MATCHSTYLE_ANY:
+                return ANY;
+            case Keywords.MATCHSTYLE_EXACT:
+            default:
+                return EXACT;
+        }
+    }
+
+    /**
+     * Builds the decision tree node testing a discriminator key for a set of surviving message definitions
+     *
+     * @param depth     the ordinal of the discriminator key to test
+     * @param survivors the message definitions not discarded so far
+     * @param built     the nodes already built, shared between identical branches
+     * @return the node
+     */
+    private Node build(int depth, BitSet survivors, Map<String, Node> built) {
+
+        //skip the keys none of the survivors discriminates on
+        while (depth < this.discriminatorKeys.length && !this.discriminates(survivors, depth))
+            depth++;
+
+        String signature = depth + survivors.toString();
+        Node node = built.get(signature);
+        if (node != null)
+            return node;
+
+        node = new Node();
+        built.put(signature, node);
+        this.nodeCount++;
+
+        if (depth == this.discriminatorKeys.length || this.nodeCount > MAX_NODES) {
+            node.candidates = survivors.stream().toArray();
+            return node;
+        }
+
+        node.key = depth;
+
+        //a present value discards the definitions expecting another one
+        Map<Object, BitSet> valueSurvivors = new LinkedHashMap<>();
+        BitSet otherSurvivors = (BitSet) survivors.clone();
+
+        for (int i = survivors.nextSetBit(0); i >= 0; i = survivors.nextSetBit(i + 1)) {
+            for (int j = 0; j < this.mappingKeys[i].length; j++) {
+                if (this.mappingKeys[i][j] == depth) {
+                    otherSurvivors.clear(i);
+                    if (!valueSurvivors.containsKey(this.mappingValues[i][j]))
+                        valueSurvivors.put(this.mappingValues[i][j], null);
+                }
+            }
+        }
+
+        for (Map.Entry<Object, BitSet> value : valueSurvivors.entrySet()) {
+            BitSet matching = (BitSet) survivors.clone();
+            for (int i = survivors.nextSetBit(0); i >= 0; i = survivors.nextSetBit(i + 1)) {
+                for (int j = 0; j < this.mappingKeys[i].length; j++) {
+                    if (this.mappingKeys[i][j] == depth && !this.mappingValues[i][j].equals(value.getKey()))
+                        matching.clear(i);
+                }
+            }
+            value.setValue(matching);
+        }
+
+        node.children = new HashMap<>();
+        for (Map.Entry<Object, BitSet> value : valueSurvivors.entrySet())
+            node.children.put(value.getKey(), this.build(depth + 1, value.getValue(), built));
+
+        node.other = this.build(depth + 1, otherSurvivors, built);
+
+        //absent discriminators neither match nor discard
+        node.absent = this.build(depth + 1, survivors, built);
+
+        return node;
+    }
+
+    /**
+     * Checks if any of the surviving message definitions discriminates on a key
+     *
+     * @param survivors the message definitions not discarded so far
+     * @param keyOrdinal the discriminator key ordinal
+     * @return true when at least one survivor has a matchOnValue on the key
+     */
+    private boolean discriminates(BitSet survivors, int keyOrdinal) {
+        for (int i = survivors.nextSetBit(0); i >= 0; i = survivors.nextSetBit(i + 1)) {
+            for (int key : this.mappingKeys[i]) {
+                if (key == keyOrdinal)
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Examines a payload and identifies the best matching {@link frisbee.messaging.MessageMapping message} definition
+     *
+     * @param inputPayload the payload to examine
+     * @return the best matching message definition, null when none matched
+     */
+    public MessageMapping identify(Map<String, Object> inputPayload) {
+
+        if (inputPayload == null || this.messageMappings.length == 0)
+            return null;
+
+        SlotPayload slots = TransformPlan.bound(inputPayload, this.schema);
+        FramePayload frame = this.layout != null && inputPayload instanceof FramePayload && ((FramePayload) inputPayload).getLayout() == this.layout ? (FramePayload) inputPayload : null;
+        Object[] payloadValues = this.payloadValues.get();
+        Arrays.fill(payloadValues, NOT_PROBED);
+
+        //walk down the tree, one probe per discriminator key on the path
+        Node node = this.root;
+        while (node.candidates == null) {
+
+            Object payloadValue = this.discriminatorValue(inputPayload, slots, frame, node.key);
+            payloadValues[node.key] = payloadValue;
+
+            if (payloadValue == null) {
+                node = node.absent;
+            } else {
+                Node child = node.children.get(payloadValue);
+                node = child != null ? child : node.other;
+            }
+        }
+
+        //score the survivors, the best match with a valid shape and at least one matched discriminator wins, ties go to the first declared definition
+        int bestIndex = -1;
+        int highestMatchCount = 0;
+
+        for (int i : node.candidates) {
+
+            int msgMatchCount = this.score(i, inputPayload, slots, frame, payloadValues);
+            if (msgMatchCount > highestMatchCount && this.hasShape(i, inputPayload, slots, frame)) {
+                highestMatchCount = msgMatchCount;
+                bestIndex = i;
+            }
+        }
+
+        if (bestIndex < 0)
+            return null;
+
+        //second decoding phase, only the fields of the identified definition
+        if (slots != null && slots.isDeferred())
+            slots.complete(this.fieldOrdinals[bestIndex]);
+
+        return this.messageMappings[bestIndex];
+    }
+
+    /**
+     * Counts the matching discriminators of a message definition
+     *
+     * @param mappingIndex  the message definition to score
+     * @param inputPayload  the payload to examine
+     * @param slots         the payload when bound to the schema, null otherwise
+     * @param frame         the payload when a frame of the layout, null otherwise
+     * @param payloadValues the payload values by discriminator key ordinal, probed on demand
+     * @return the number of matching discriminators, -1 when a discriminator value differs
+     */
+    private int score(int mappingIndex, Map<String, Object> inputPayload, SlotPayload slots, FramePayload frame, Object[] payloadValues) {
+
+        int[] keys = this.mappingKeys[mappingIndex];
+        Object[] values = this.mappingValues[mappingIndex];
+        int msgMatchCount = 0;
+
+        for (int j = 0; j < keys.length; j++) {
+
+            Object payloadValue = payloadValues[keys[j]];
+            if (payloadValue == NOT_PROBED) {
+                payloadValue = this.discriminatorValue(inputPayload, slots, frame, keys[j]);
+                payloadValues[keys[j]] = payloadValue;
+            }
+
+            if (payloadValue != null) {
+                if (payloadValue.equals(values[j]))
+                    msgMatchCount++;
+                else
+                    return -1;
+            }
+        }
+
+        return msgMatchCount;
+    }
+
+    /**
+     * Checks the payload against the shape required by the match style of a message definition
+     *
+     * @param mappingIndex the message definition
+     * @param inputPayload the payload to examine
+     * @param slots        the payload when bound to the schema, null otherwise
+     * @param frame        the payload when a frame of the layout, null otherwise
+     * @return true when the payload has a valid shape
+     */
+    private boolean hasShape(int mappingIndex, Map<String, Object> inputPayload, SlotPayload slots, FramePayload frame) {
+
+        String[] keys = this.fieldKeys[mappingIndex];
+        int payloadSize = inputPayload.size();
+
+        switch (this.matchStyles[mappingIndex]) {
+            case EXACT:
+                if (payloadSize != keys.length)
+                    return false;
+                break;
+            case OVER:
+                if (payloadSize < keys.length)
+                    return false;
+                break;
+            case UNDER:
+                if (payloadSize > keys.length)
+                    return false;
+                break;
+            default:
+                break;
+        }
+
+        int leadingFields = 0;
+        while (leadingFields < keys.length && this.hasField(inputPayload, slots, frame, mappingIndex, leadingFields))
+            leadingFields++;
+
+        switch (this.matchStyles[mappingIndex]) {
+            case EXACT:
+            case OVER:
+                return leadingFields == keys.length;
+            case UNDER:
+                //trailing fields are missing and no other field is present
+                return leadingFields == payloadSize && this.trailingFieldsMissing(mappingIndex, leadingFields, inputPayload, slots, frame);
+            case ANY:
+            default:
+                return this.trailingFieldsMissing(mappingIndex, leadingFields, inputPayload, slots, frame);
+        }
+    }
+
+    /**
+     * Checks that none of the fields following the leading ones are present
+     *
+     * @param mappingIndex  the message definition
+     * @param leadingFields the number of leading fields present
+     * @param inputPayload  the payload to examine
+     * @param slots         the payload when bound to the schema, null otherwise
+     * @param frame         the payload when a frame of the layout, null otherwise
+     * @return true when all the trailing fields are missing
+     */
+    private boolean trailingFieldsMissing(int mappingIndex, int leadingFields, Map<String, Object> inputPayload, SlotPayload slots, FramePayload frame) {
+        for (int i = leadingFields + 1; i < this.fieldKeys[mappingIndex].length; i++) {
+            if (this.hasField(inputPayload, slots, frame, mappingIndex, i))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reads the value of a discriminator key
+     *
+     * @param inputPayload the payload to examine
+     * @param slots        the payload when bound to the schema, null otherwise
+     * @param frame        the payload when a frame of the layout, null otherwise
+     * @param keyOrdinal   the discriminator key ordinal
+     * @return the payload value, for frames the expected value it holds, null when absent
+     */
+    private Object discriminatorValue(Map<String, Object> inputPayload, SlotPayload slots, FramePayload frame, int keyOrdinal) {
+        int ordinal = this.discriminatorOrdinals[keyOrdinal];
+        if (frame != null && ordinal >= 0) {
+            if (!frame.has(ordinal))
+                return null;
+            byte[][] expected = this.expectedBytes[keyOrdinal];
+            for (int v = 0; v < expected.length; v++) {
+                if (frame.matches(ordinal, expected[v]))
+                    return this.expectedValues[keyOrdinal][v];
+            }
+            return UNEXPECTED;
+        }
+        return slots != null && ordinal >= 0 ? slots.get(ordinal) : inputPayload.get(this.discriminatorKeys[keyOrdinal]);
+    }
+
+    /**
+     * Checks if a field of a message definition is present in the payload
+     *
+     * @param inputPayload the payload to examine
+     * @param slots        the payload when bound to the schema, null otherwise
+     * @param frame        the payload when a frame of the layout, null otherwise
+     * @param mappingIndex the message definition
+     * @param field        the index of the field among the distinct field keys of the definition
+     * @return true when the field is present
+     */
+    private boolean hasField(Map<String, Object> inputPayload, SlotPayload slots, FramePayload frame, int mappingIndex, int field) {
+        int ordinal = this.fieldOrdinals[mappingIndex][field];
+        if (frame != null && ordinal >= 0)
+            return frame.has(ordinal);
+        return slots != null && ordinal >= 0 ? slots.has(ordinal) : inputPayload.containsKey(this.fieldKeys[mappingIndex][field]);
+    }
+
+    /**
+     * Returns the distinct payload keys used as discriminators
+     *
+     * @return the discriminator keys
+     */
+    public String[] getDiscriminatorKeys() {
+        return discriminatorKeys.clone();
+    }
+
+    /**
+     * Method returning a string representation
+     *
+     * @return string containing class name and member values
+     */
+    @Override
+    public String toString() {
+
+        return Tools.toString(this);
+    }
+
+    /**
+     * A decision tree node, either testing a discriminator key or holding the surviving candidates
+     */
+    private static final class Node {
+
+        /**
+         * The ordinal of the discriminator key tested by this node
+         */
+        private int key;
+
+        /**
+         * The branches taken when the key holds one of the expected values
+         */
+        private Map<Object, Node> children;
+
+        /**
+         * The branch taken when the key holds an unexpected value
+         */
+        private Node other;
+
+        /**
+         * The branch taken when the key is absent from the payload
+         */
+        private Node absent;
+
+        /**
+         * On leaves, the surviving message definition indexes in declaration order
+         */
+        private int[] candidates;
+    }
+}
@@ -41,6 +41,10 @@ public class MessageMapping {
      * The message ID which is not necessarily unique
      */
     private String messageID;
+    /**
+     * The message compiled to read its input payloads by key, compiled on first use
+     */
+    private volatile CompiledMapping compiled;
 
 
     /**
@@ -66,6 +70,70 @@ public class MessageMapping {
      */
     public void setFields(List<MessageFieldConfig> fields) {
         this.fields = fields;
+        this.compiled = null;
+    }
+
+    /**
+     * Compiles the message field configurations into a transformation plan and the output encoders, reading input payloads by key
+     * <p>
+     * The compiled message is kept and used by the getters below
+     */
+    public void compile() {
+        this.compiled = new CompiledMapping(this, null);
+    }
+
+    /**
+     * Compiles the message field configurations against the schema of the payloads received by the input
+     * <p>
+     * The compiled message is returned to its holder, typically the routes of a connection, and leaves this definition unchanged
+     *
+     * @param inputSchema the input schema, null to read input payloads by key
+     * @return the compiled message
+     */
+    public CompiledMapping compile(PayloadSchema inputSchema) {
+        return new CompiledMapping(this, inputSchema);
+    }
+
+    /**
+     * Get the message compiled to read its input payloads by key, compiling it on first use
+     *
+     * @return the compiled message
+     */
+    public CompiledMapping getCompiled() {
+        CompiledMapping result = this.compiled;
+        if (result == null) {
+            result = new CompiledMapping(this, null);
+            this.compiled = result;
+        }
+        return result;
+    }
+
+    /**
+     * Tells whether a fixed-width output embeds the transaction ID of the messages, compiling the message on first use
+     *
+     * @return true when the messages need a transaction ID
+     */
+    public boolean embedsTransactionID() {
+        return this.getCompiled().embedsTransactionID();
+    }
+
+    /**
+     * Get the fixed-width encoder of an output, compiling the message on first use
+     *
+     * @param outputID the output connection ID
+     * @return the encoder, null when a field of the output has no length
+     */
+    public FixedWidthEncoder getEncoder(String outputID) {
+        return this.getCompiled().getEncoder(outputID);
+    }
+
+    /**
+     * Get the precompiled transformation of the message fields, compiling it on first use
+     *
+     * @return the transformation plan
+     */
+    public TransformPlan getTransformPlan() {
+        return this.getCompiled().getTransformPlan();
     }
 
     /**
@@ -120,6 +188,7 @@ public class MessageMapping {
      */
     public void setInput(MessageIOConfig input) {
         this.input = input;
+        this.compiled = null;
     }
 
     /**
@@ -0,0 +1,158 @@
+package frisbee.messaging;
+
+import frisbee.communications.Connection;
+import frisbee.tools.ObjectPool;
+import frisbee.tools.Tools;
+
+import java.util.Map;
+
+/**
+ * The {@code MessagePool} class leases recycled {@link frisbee.messaging.Message messages} so the hot path does not allocate one per received payload
+ * <p>
+ * Pooling is opt-in, through the {@value #PROPERTY} system property:
+ * <ul>
+ * <li>{@code off}, the default, messages and payloads are allocated and left to the garbage collector</li>
+ * <li>{@code on}, messages and {@link frisbee.messaging.SlotPayload slot payloads} are reference counted and recycled once released by their last holder</li>
+ * <li>{@code debug}, released instances are never reused and any later use throws an {@link java.lang.IllegalStateException} pointing at the release</li>
+ * </ul>
+ * A leased message holds one reference for its creator, every holder calls {@link Message#retain()} before keeping it and {@link Message#release()} once done.
+ * Releasing the last reference releases the message payloads too.
+ * <p>
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public final class MessagePool {
+
+    /**
+     * System property selecting the pooling mode
+     */
+    public static final String PROPERTY = "frisbee.messagePool";
+
+    /**
+     * The pooling modes
+     */
+    public enum Mode {
+
+        /**
+         * No pooling
+         */
+        OFF,
+
+        /**
+         * Messages and payloads are recycled
+         */
+        ON,
+
+        /**
+         * Messages and payloads are checked for use after release and never recycled
+         */
+        DEBUG;
+
+        /**
+         * Returns the mode of a property value
+         *
+         * @param value the property value, case insensitive, null for {@link #OFF}
+         * @return the mode
+         */
+        public static Mode fromProperty(String value) {
+            if (value == null || value.trim().isEmpty())
+                return OFF;
+            try {
+                return Mode.valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown " + PROPERTY + " value " + value);
+            }
+        }
+    }
+
+    /**
+     * The pooling mode
+     */
+    private static volatile Mode mode = Mode.fromProperty(System.getProperty(PROPERTY));
+
+    /**
+     * The idle messages
+     */
+    private static final ObjectPool<Message> messages = new ObjectPool<>(Message::new);
+
+    /**
+     * No instances
+     */
+    private MessagePool() {
+    }
+
+    /**
+     * Returns the pooling mode
+     *
+     * @return the mode
+     */
+    public static Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Sets the pooling mode, instances leased under the previous mode keep its behaviour
+     *
+     * @param mode the mode
+     */
+    public static void setMode(Mode mode) {
+        MessagePool.mode = mode;
+    }
+
+    /**
+     * Tells whether messages and payloads are leased from pools
+     *
+     * @return true unless the mode is {@link Mode#OFF}
+     */
+    public static boolean isPooling() {
+        return mode != Mode.OFF;
+    }
+
+    /**
+     * Creates or leases a message depending on the pooling mode, a leased message also retains its input payload
+     *
+     * @param transactionID     an optional transaction identifier
+     * @param source            the source connection
+     * @param destination       the destination connection
+     * @param messageMapping    the message definition
+     * @param receivedTimestamp the reception timestamp
+     * @param sentTimestamp     the sent timestamp, 0 when not sent
+     * @param inputPayload      the payload received
+     * @param outputPayload     the payloads sent by output connection ID, owned by the message
+     * @return the message, holding one reference for the caller
+     */
+    public static Message acquire(String transactionID, Connection source, Connection destination, MessageMapping messageMapping, long receivedTimestamp, long sentTimestamp, Map<String, Object> inputPayload, Map<String, Object> outputPayload) {
+
+        Mode current = mode;
+        if (current == Mode.OFF)
+            return new Message(transactionID, source, destination, messageMapping, receivedTimestamp, sentTimestamp, inputPayload, outputPayload);
+
+        if (inputPayload instanceof SlotPayload)
+            ((SlotPayload) inputPayload).retain();
+
+        Message message = current == Mode.DEBUG ? new Message() : messages.acquire();
+        message.lease(current == Mode.DEBUG, transactionID, source, destination, messageMapping, receivedTimestamp, sentTimestamp, inputPayload, outputPayload);
+        return message;
+    }
+
+    /**
+     * Returns a message whose last reference was released to the pool
+     *
+     * @param message the message, already reset
+     */
+    static void recycle(Message message) {
+        messages.release(message);
+    }
+
+    /**
+     * Method returning a string representation
+     *
+     * @return string containing class name and member values
+     */
+    @Override
+    public String toString() {
+
+        return Tools.toString(this);
+    }
+}
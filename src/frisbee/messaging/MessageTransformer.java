@@ -0,0 +1,24 @@
+package frisbee.messaging;
+
+import java.util.Map;
+
+/**
+ * The {@code MessageTransformer} interface is an engine producing the output payloads of a {@link frisbee.messaging.MessageMapping message}
+ * from a received payload
+ * <p>
+ * The interpreted {@link frisbee.messaging.TransformPlan} runs every mapping, the {@link frisbee.messaging.ComposedTransformPlan} runs the mappings
+ * whose input selects it with {@link frisbee.configuration.Keywords#TRANSFORM_ENGINE}
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public interface MessageTransformer {
+
+    /**
+     * Produces the output payloads of a message
+     *
+     * @param inputPayload the payload received
+     * @return the field values of every output, by output connection ID
+     */
+    Map<String, Object> apply(Map<String, Object> inputPayload);
+}
@@ -0,0 +1,142 @@
+package frisbee.messaging;
+
+import frisbee.configuration.Keywords;
+import frisbee.tools.ObjectPool;
+import frisbee.tools.Tools;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The {@code PayloadSchema} class assigns an ordinal to every field key a payload may carry
+ * <p>
+ * Payloads bound to a schema are {@link frisbee.messaging.SlotPayload slot payloads} keeping their values in a flat array,
+ * so code compiled against the same schema reads and writes fields by array index instead of hashing their keys
+ * <p>
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public final class PayloadSchema {
+
+    /**
+     * The field keys, by ordinal
+     */
+    private final String[] keys;
+
+    /**
+     * The ordinal of every field key
+     */
+    private final Map<String, Integer> ordinals;
+
+    /**
+     * The idle payloads bound to this schema, used while pooling is on
+     */
+    private final ObjectPool<SlotPayload> payloads = new ObjectPool<>(() -> new SlotPayload(this));
+
+    /**
+     * Creates a schema
+     *
+     * @param keys the field keys, ordinals are assigned in iteration order and duplicates are ignored
+     */
+    public PayloadSchema(Collection<String> keys) {
+
+        Set<String> distinct = new LinkedHashSet<>(keys);
+
+        this.keys = distinct.toArray(new String[distinct.size()]);
+        this.ordinals = new HashMap<>((int) (this.keys.length / 0.75f) + 1);
+        for (int i = 0; i < this.keys.length; i++)
+            this.ordinals.put(this.keys[i], i);
+    }
+
+    /**
+     * Creates the schema of the payloads received by an input, holding the input keys of all its message definitions
+     *
+     * @param messageMappings the message definitions attached to the input
+     * @return the input schema
+     */
+    public static PayloadSchema forInput(List<MessageMapping> messageMappings) {
+
+        Set<String> keys = new LinkedHashSet<>();
+        for (MessageMapping messageMap : messageMappings) {
+            if (messageMap.getFields() == null)
+                continue;
+            for (MessageFieldConfig field : messageMap.getFields()) {
+                Object key = Keywords.getArgument(field.getInputArguments(), Keywords.FIELD_KEY);
+                if (key != null)
+                    keys.add(key.toString());
+            }
+        }
+
+        return new PayloadSchema(keys);
+    }
+
+    /**
+     * Returns the ordinal of a field key
+     *
+     * @param key the field key
+     * @return the ordinal, -1 when the key is not part of the schema
+     */
+    public int ordinal(Object key) {
+        Integer ordinal = this.ordinals.get(key);
+        return ordinal == null ? -1 : ordinal;
+    }
+
+    /**
+     * Returns the field key of an ordinal
+     *
+     * @param ordinal the ordinal
+     * @return the field key
+     */
+    public String key(int ordinal) {
+        return this.keys[ordinal];
+    }
+
+    /**
+     * Returns the number of field keys
+     *
+     * @return the schema size
+     */
+    public int size() {
+        return this.keys.length;
+    }
+
+    /**
+     * Creates an empty payload bound to this schema, leased from the schema pool while {@link frisbee.messaging.MessagePool pooling} is on
+     *
+     * @return the payload, holding one reference for the caller when leased
+     */
+    public SlotPayload newPayload() {
+        MessagePool.Mode mode = MessagePool.getMode();
+        if (mode == MessagePool.Mode.OFF)
+            return new SlotPayload(this);
+
+        SlotPayload payload = mode == MessagePool.Mode.DEBUG ? new SlotPayload(this) : this.payloads.acquire();
+        payload.lease(mode == MessagePool.Mode.DEBUG);
+        return payload;
+    }
+
+    /**
+     * Returns a released payload to the pool
+     *
+     * @param payload the payload, already cleared
+     */
+    void recycle(SlotPayload payload) {
+        this.payloads.release(payload);
+    }
+
+    /**
+     * Method returning a string representation
+     *
+     * @return string containing class name and member values
+     */
+    @Override
+    public String toString() {
+
+        return Tools.toString(this);
+    }
+}
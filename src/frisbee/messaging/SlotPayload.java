@@ -0,0 +1,622 @@
+package frisbee.messaging;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * The {@code SlotPayload} class is a payload bound to a {@link frisbee.messaging.PayloadSchema schema}, keeping its values in a flat array indexed by field ordinal
+ * <p>
+ * Code compiled against the schema uses {@link #get(int)} and {@link #set(int, Object)} and never hashes a field key.
+ * The payload still is a regular {@link java.util.Map}, keys outside the schema are kept in an overflow map created on first use.
+ * <p>
+ * A field is present when its value is not null, putting a null value removes the field
+ * <p>
+ * Numeric fields may be kept as primitives with {@link #setLong(int, long)} and {@link #setDouble(int, double)}, and read back with
+ * {@link #getLong(int)} and {@link #getDouble(int)} without boxing. They are only boxed when read as objects
+ * <p>
+ * A payload {@link #defer(FieldReader) deferring} to a {@link frisbee.messaging.FieldReader reader} decodes a field the first time it is read by ordinal,
+ * until {@link #complete(int[])} decodes the fields still needed and detaches the reader. Reading it as a map decodes every field first
+ * <p>
+ * Payloads leased from their schema while {@link frisbee.messaging.MessagePool pooling} is on are reference counted like messages,
+ * releasing the last reference clears the payload, releases the slot payloads it holds as values and returns it to the schema
+ * <p>
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public final class SlotPayload extends AbstractMap<String, Object> {
+
+    /**
+     * Marks a field holding a long in the primitive slots
+     */
+    private static final Object LONG_VALUE = new Object();
+
+    /**
+     * Marks a field holding a double in the primitive slots
+     */
+    private static final Object DOUBLE_VALUE = new Object();
+
+    /**
+     * The schema the payload is bound to
+     */
+    private final PayloadSchema schema;
+
+    /**
+     * The field values, by ordinal
+     */
+    private final Object[] values;
+
+    /**
+     * The primitive field values, by ordinal, doubles as their raw bits, null until the first primitive is set
+     */
+    private long[] primitives;
+
+    /**
+     * The reader decoding the fields not read yet, null once the payload is complete
+     */
+    private FieldReader reader;
+
+    /**
+     * For every ordinal, whether the field was taken from the reader or set, allocated with the first reader
+     */
+    private boolean[] read;
+
+    /**
+     * The number of non null values
+     */
+    private int count;
+
+    /**
+     * The fields whose keys are not part of the schema, null until the first one is put
+     */
+    private Map<String, Object> overflow;
+
+    /**
+     * Updates the reference count
+     */
+    private static final AtomicIntegerFieldUpdater<SlotPayload> REFERENCES = AtomicIntegerFieldUpdater.newUpdater(SlotPayload.class, "references");
+
+    /**
+     * The number of holders of a leased payload
+     */
+    private volatile int references;
+
+    /**
+     * Whether the payload was leased from its schema, payloads created otherwise are not reference counted
+     */
+    private boolean pooled;
+
+    /**
+     * Whether the payload checks for use after release, it is then never returned to its schema
+     */
+    private boolean debug;
+
+    /**
+     * Whether the payload was released in debug mode, it then rejects any use
+     */
+    private boolean released;
+
+    /**
+     * The position of the payload in the order its connection received it, -1 when not ordered
+     */
+    private long receivedOrder = -1;
+
+    /**
+     * Run once the last reference to a leased payload is released, null when none
+     */
+    private Runnable releaseHook;
+
+    /**
+     * Creates an empty payload
+     *
+     * @param schema the schema the payload is bound to
+     */
+    public SlotPayload(PayloadSchema schema) {
+        this.schema = schema;
+        this.values = new Object[schema.size()];
+    }
+
+    /**
+     * Returns the schema the payload is bound to
+     *
+     * @return the payload schema
+     */
+    public PayloadSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Marks a payload leased from its schema, holding one reference for the caller
+     *
+     * @param debug whether the payload checks for use after release
+     */
+    void lease(boolean debug) {
+        this.pooled = true;
+        this.debug = debug;
+        this.released = false;
+        this.references = 1;
+        this.receivedOrder = -1;
+        this.releaseHook = null;
+    }
+
+    /**
+     * Returns the position of the payload in the order its connection received it
+     * <p>
+     * Connections receiving payloads on several threads set it, so the order can be restored downstream
+     *
+     * @return the received order key, -1 when the connection does not set it
+     */
+    public long getReceivedOrder() {
+        return receivedOrder;
+    }
+
+    /**
+     * Sets the position of the payload in the order its connection received it
+     *
+     * @param receivedOrder the received order key, increasing in reception order
+     */
+    public void setReceivedOrder(long receivedOrder) {
+        this.receivedOrder = receivedOrder;
+    }
+
+    /**
+     * Tells whether the payload was leased from its schema, only leased payloads know when their last holder is done with them
+     *
+     * @return true while pooling is on
+     */
+    public boolean isLeased() {
+        return pooled;
+    }
+
+    /**
+     * Sets an action run once the last reference to this leased payload is released, after the payload is cleared
+     * <p>
+     * Connections recycle the buffer read by the payload {@link #defer(FieldReader) reader} this way
+     *
+     * @param releaseHook the action
+     * @throws IllegalStateException when the payload was not leased
+     */
+    public void onRelease(Runnable releaseHook) {
+        if (!this.pooled)
+            throw new IllegalStateException("Payload not leased");
+        this.releaseHook = releaseHook;
+    }
+
+    /**
+     * Adds a reference to a leased payload
+     *
+     * @return this payload
+     * @throws IllegalStateException when the payload was already released
+     */
+    public SlotPayload retain() {
+        if (!this.pooled)
+            return this;
+
+        int previous;
+        do {
+            previous = this.references;
+            if (previous <= 0)
+                throw new IllegalStateException("Payload used after release");
+        } while (!REFERENCES.compareAndSet(this, previous, previous + 1));
+
+        return this;
+    }
+
+    /**
+     * Drops a reference to a leased payload, the last one clears the payload, runs its {@link #onRelease(Runnable) release hook}
+     * and returns it to its schema unless in debug mode
+     *
+     * @throws IllegalStateException when the payload was already released
+     */
+    public void release() {
+        if (!this.pooled)
+            return;
+
+        int remaining = REFERENCES.decrementAndGet(this);
+        if (remaining > 0)
+            return;
+        if (remaining < 0)
+            throw new IllegalStateException("Payload used after release");
+
+        for (int i = 0; i < this.values.length; i++) {
+            Object value = this.values[i];
+            if (value instanceof SlotPayload)
+                ((SlotPayload) value).release();
+        }
+        this.clear();
+        Runnable releaseHook = this.releaseHook;
+        this.releaseHook = null;
+        if (releaseHook != null)
+            releaseHook.run();
+        if (this.debug)
+            this.released = true;
+        else
+            this.schema.recycle(this);
+    }
+
+    /**
+     * Throws when the payload was released in debug mode
+     */
+    private void checkLive() {
+        if (this.released)
+            throw new IllegalStateException("Payload used after release");
+    }
+
+    /**
+     * Defers the fields of the payload to a reader, decoding each of them the first time it is read by ordinal
+     *
+     * @param reader the reader of the received record
+     */
+    public void defer(FieldReader reader) {
+        this.checkLive();
+        if (this.read == null)
+            this.read = new boolean[this.values.length];
+        else
+            Arrays.fill(this.read, false);
+        this.reader = reader;
+    }
+
+    /**
+     * Checks if fields are still deferred to a reader
+     *
+     * @return true until the payload is complete
+     */
+    public boolean isDeferred() {
+        return this.reader != null;
+    }
+
+    /**
+     * Decodes the given fields when still deferred and detaches the reader, the other fields are never decoded
+     *
+     * @param ordinals the ordinals of the fields still needed, -1 entries are ignored
+     */
+    public void complete(int[] ordinals) {
+        if (this.reader == null)
+            return;
+        for (int ordinal : ordinals) {
+            if (ordinal >= 0)
+                this.fetch(ordinal);
+        }
+        this.reader = null;
+    }
+
+    /**
+     * Decodes every field still deferred and detaches the reader
+     */
+    private void completeAll() {
+        if (this.reader == null)
+            return;
+        for (int ordinal = 0; ordinal < this.values.length; ordinal++)
+            this.fetch(ordinal);
+        this.reader = null;
+    }
+
+    /**
+     * Takes a field from the reader the first time it is read, unless it was set
+     *
+     * @param ordinal the field ordinal in the schema
+     */
+    private void fetch(int ordinal) {
+        if (this.read[ordinal])
+            return;
+        this.read[ordinal] = true;
+        if (this.values[ordinal] == null) {
+            Object value = this.reader.get(ordinal);
+            if (value != null) {
+                this.values[ordinal] = value;
+                this.count++;
+            }
+        }
+    }
+
+    /**
+     * Returns the value of a field
+     *
+     * @param ordinal the field ordinal in the schema
+     * @return the value, null when the field is absent
+     */
+    public Object get(int ordinal) {
+        this.checkLive();
+        if (this.reader != null)
+            this.fetch(ordinal);
+        return this.box(ordinal, this.values[ordinal]);
+    }
+
+    /**
+     * Boxes a primitive field value
+     *
+     * @param ordinal the field ordinal
+     * @param value   the value slot content
+     * @return the value, boxed when kept as a primitive
+     */
+    private Object box(int ordinal, Object value) {
+        if (value == LONG_VALUE)
+            return this.primitives[ordinal];
+        if (value == DOUBLE_VALUE)
+            return Double.longBitsToDouble(this.primitives[ordinal]);
+        return value;
+    }
+
+    /**
+     * Checks if a field is present
+     *
+     * @param ordinal the field ordinal in the schema
+     * @return true when the field holds a value
+     */
+    public boolean has(int ordinal) {
+        this.checkLive();
+        if (this.values[ordinal] != null)
+            return true;
+        return this.reader != null && !this.read[ordinal] && this.reader.has(ordinal);
+    }
+
+    /**
+     * Checks if a field holds a primitive long
+     *
+     * @param ordinal the field ordinal in the schema
+     * @return true when set with {@link #setLong(int, long)}
+     */
+    public boolean isLong(int ordinal) {
+        return this.values[ordinal] == LONG_VALUE;
+    }
+
+    /**
+     * Checks if a field holds a primitive double
+     *
+     * @param ordinal the field ordinal in the schema
+     * @return true when set with {@link #setDouble(int, double)}
+     */
+    public boolean isDouble(int ordinal) {
+        return this.values[ordinal] == DOUBLE_VALUE;
+    }
+
+    /**
+     * Returns the value of a numeric field as a long
+     *
+     * @param ordinal the field ordinal in the schema
+     * @return the value, doubles being truncated
+     * @throws IllegalStateException when the field is absent or not a number
+     */
+    public long getLong(int ordinal) {
+        this.checkLive();
+        if (this.reader != null)
+            this.fetch(ordinal);
+        Object value = this.values[ordinal];
+        if (value == LONG_VALUE)
+            return this.primitives[ordinal];
+        if (value == DOUBLE_VALUE)
+            return (long) Double.longBitsToDouble(this.primitives[ordinal]);
+        if (value instanceof Number)
+            return ((Number) value).longValue();
+        throw new IllegalStateException("Field " + this.schema.key(ordinal) + " is not a number");
+    }
+
+    /**
+     * Returns the value of a numeric field as a double
+     *
+     * @param ordinal the field ordinal in the schema
+     * @return the value
+     * @throws IllegalStateException when the field is absent or not a number
+     */
+    public double getDouble(int ordinal) {
+        this.checkLive();
+        if (this.reader != null)
+            this.fetch(ordinal);
+        Object value = this.values[ordinal];
+        if (value == DOUBLE_VALUE)
+            return Double.longBitsToDouble(this.primitives[ordinal]);
+        if (value == LONG_VALUE)
+            return this.primitives[ordinal];
+        if (value instanceof Number)
+            return ((Number) value).doubleValue();
+        throw new IllegalStateException("Field " + this.schema.key(ordinal) + " is not a number");
+    }
+
+    /**
+     * Sets the value of a field to a primitive long
+     *
+     * @param ordinal the field ordinal in the schema
+     * @param value   the value
+     */
+    public void setLong(int ordinal, long value) {
+        this.setPrimitive(ordinal, LONG_VALUE, value);
+    }
+
+    /**
+     * Sets the value of a field to a primitive double
+     *
+     * @param ordinal the field ordinal in the schema
+     * @param value   the value
+     */
+    public void setDouble(int ordinal, double value) {
+        this.setPrimitive(ordinal, DOUBLE_VALUE, Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * Sets the value of a field to a primitive
+     *
+     * @param ordinal the field ordinal in the schema
+     * @param kind    the primitive kind marker
+     * @param bits    the value, doubles as their raw bits
+     */
+    private void setPrimitive(int ordinal, Object kind, long bits) {
+        this.checkLive();
+        if (this.reader != null)
+            this.read[ordinal] = true;
+        if (this.primitives == null)
+            this.primitives = new long[this.values.length];
+        if (this.values[ordinal] == null)
+            this.count++;
+        this.values[ordinal] = kind;
+        this.primitives[ordinal] = bits;
+    }
+
+    /**
+     * Sets the value of a field
+     *
+     * @param ordinal the field ordinal in the schema
+     * @param value   the value, null to remove the field
+     * @return the previous value, null when the field was absent
+     */
+    public Object set(int ordinal, Object value) {
+        this.checkLive();
+        if (this.reader != null)
+            this.read[ordinal] = true;
+        Object previous = this.box(ordinal, this.values[ordinal]);
+        this.values[ordinal] = value;
+        if (previous == null && value != null)
+            this.count++;
+        else if (previous != null && value == null)
+            this.count--;
+        return previous;
+    }
+
+    @Override
+    public Object get(Object key) {
+        this.checkLive();
+        this.completeAll();
+        int ordinal = this.schema.ordinal(key);
+        if (ordinal >= 0)
+            return this.box(ordinal, this.values[ordinal]);
+        return this.overflow == null ? null : this.overflow.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return this.get(key) != null;
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        int ordinal = this.schema.ordinal(key);
+        if (ordinal >= 0)
+            return this.set(ordinal, value);
+
+        if (value == null)
+            return this.overflow == null ? null : this.overflow.remove(key);
+
+        if (this.overflow == null)
+            this.overflow = new HashMap<>();
+        return this.overflow.put(key, value);
+    }
+
+    @Override
+    public Object remove(Object key) {
+        int ordinal = this.schema.ordinal(key);
+        if (ordinal >= 0)
+            return this.set(ordinal, null);
+        return this.overflow == null ? null : this.overflow.remove(key);
+    }
+
+    @Override
+    public int size() {
+        this.checkLive();
+        int deferred = 0;
+        for (int ordinal = 0; this.reader != null && ordinal < this.values.length; ordinal++) {
+            if (!this.read[ordinal] && this.values[ordinal] == null && this.reader.has(ordinal))
+                deferred++;
+        }
+        return this.count + deferred + (this.overflow == null ? 0 : this.overflow.size());
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(this.values, null);
+        this.reader = null;
+        this.count = 0;
+        this.overflow = null;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<Entry<String, Object>>() {
+
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                completeAll();
+                return new SlotIterator();
+            }
+
+            @Override
+            public int size() {
+                return SlotPayload.this.size();
+            }
+        };
+    }
+
+    /**
+     * Iterates over the present fields in ordinal order, followed by the overflow fields
+     */
+    private final class SlotIterator implements Iterator<Entry<String, Object>> {
+
+        /**
+         * The ordinal of the next present field, the schema size once the slots are exhausted
+         */
+        private int next = this.advance(0);
+
+        /**
+         * The ordinal of the last returned field, -1 when it was an overflow field or none was returned
+         */
+        private int last = -1;
+
+        /**
+         * Iterator over the overflow fields, created once the slots are exhausted
+         */
+        private Iterator<Entry<String, Object>> overflowIterator;
+
+        /**
+         * Returns the ordinal of the first present field from a given ordinal
+         *
+         * @param from the first ordinal to examine
+         * @return the ordinal, the schema size when none is present
+         */
+        private int advance(int from) {
+            while (from < values.length && values[from] == null)
+                from++;
+            return from;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (this.next < values.length)
+                return true;
+            if (this.overflowIterator == null)
+                this.overflowIterator = overflow == null ? null : overflow.entrySet().iterator();
+            return this.overflowIterator != null && this.overflowIterator.hasNext();
+        }
+
+        @Override
+        public Entry<String, Object> next() {
+            if (!this.hasNext())
+                throw new NoSuchElementException();
+
+            if (this.next < values.length) {
+                this.last = this.next;
+                this.next = this.advance(this.next + 1);
+                return new SimpleImmutableEntry<>(schema.key(this.last), box(this.last, values[this.last]));
+            }
+
+            this.last = -1;
+            return this.overflowIterator.next();
+        }
+
+        @Override
+        public void remove() {
+            if (this.last >= 0) {
+                set(this.last, null);
+                this.last = -1;
+            } else if (this.overflowIterator != null) {
+                this.overflowIterator.remove();
+            } else {
+                throw new IllegalStateException();
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package frisbee.messaging;
+
+import frisbee.tools.Tools;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The {@code TransactionIdGenerator} class generates the {@link frisbee.messaging.Message#getTransactionID() transaction IDs} of messages
+ * <p>
+ * An ID is generated as a number and rendered as fixed-width text, so it can be written into a fixed-width frame without allocation
+ * and only turned into a {@link java.lang.String} when asked for one. Generation is selected through the {@value #PROPERTY} system property:
+ * <ul>
+ * <li>{@code off}, the default, messages only get an ID when one of their outputs embeds it</li>
+ * <li>{@code on}, every message gets an ID from a {@link frisbee.messaging.BlockTransactionIdGenerator}</li>
+ * <li>the name of a class extending {@code TransactionIdGenerator} with a public no argument constructor, every message gets an ID from it</li>
+ * </ul>
+ * The generator must be set before the message definitions are compiled, fixed-width encoders reserve its width
+ * <p>
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public abstract class TransactionIdGenerator {
+
+    /**
+     * System property selecting the generation of transaction IDs
+     */
+    public static final String PROPERTY = "frisbee.transactionIds";
+
+    /**
+     * The generator of transaction IDs
+     */
+    private static volatile TransactionIdGenerator generator;
+
+    /**
+     * Whether every message gets a transaction ID
+     */
+    private static volatile boolean enabled;
+
+    static {
+        String value = System.getProperty(PROPERTY);
+        if (value == null || value.trim().isEmpty() || value.trim().equalsIgnoreCase("off")) {
+            generator = new BlockTransactionIdGenerator();
+        } else if (value.trim().equalsIgnoreCase("on")) {
+            generator = new BlockTransactionIdGenerator();
+            enabled = true;
+        } else {
+            try {
+                generator = (TransactionIdGenerator) Class.forName(value.trim()).getConstructor().newInstance();
+                enabled = true;
+            } catch (ReflectiveOperationException | ClassCastException e) {
+                throw new IllegalArgumentException("Unknown " + PROPERTY + " value " + value, e);
+            }
+        }
+    }
+
+    /**
+     * Returns the generator of transaction IDs
+     *
+     * @return the generator
+     */
+    public static TransactionIdGenerator getGenerator() {
+        return generator;
+    }
+
+    /**
+     * Sets the generator of transaction IDs
+     *
+     * @param generator the generator
+     * @param enabled   whether every message gets a transaction ID
+     */
+    public static void setGenerator(TransactionIdGenerator generator, boolean enabled) {
+        TransactionIdGenerator.generator = generator;
+        TransactionIdGenerator.enabled = enabled;
+    }
+
+    /**
+     * Tells whether every message gets a transaction ID
+     *
+     * @return true when generation is on
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Generates an ID, safe to call from several threads at once
+     *
+     * @return the ID, never negative
+     */
+    public abstract long next();
+
+    /**
+     * Returns the width of rendered IDs
+     *
+     * @return the number of bytes
+     */
+    public abstract int getWidth();
+
+    /**
+     * Renders an ID as ASCII text, with absolute puts that leave the buffer position unchanged
+     *
+     * @param id    the ID
+     * @param out   the buffer
+     * @param index the position of the first byte
+     */
+    public abstract void render(long id, ByteBuffer out, int index);
+
+    /**
+     * Renders an ID as a string
+     *
+     * @param id the ID
+     * @return the rendered ID
+     */
+    public String format(long id) {
+        byte[] text = new byte[this.getWidth()];
+        this.render(id, ByteBuffer.wrap(text), 0);
+        return new String(text, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Method returning a string representation
+     *
+     * @return string containing class name and member values
+     */
+    @Override
+    public String toString() {
+
+        return Tools.toString(this);
+    }
+}
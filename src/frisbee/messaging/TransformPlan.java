@@ -0,0 +1,258 @@
+package frisbee.messaging;
+
+import frisbee.tools.Tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * The {@code TransformPlan} class is the precompiled transformation of a {@link frisbee.messaging.MessageMapping message} towards all of its outputs
+ * <p>
+ * The plan groups the {@link frisbee.messaging.FieldOutputPlan field plans} by output connection, in order of appearance.
+ * Output payloads are {@link frisbee.messaging.SlotPayload slot payloads} whose schemas are fixed when the plan is compiled,
+ * and input payloads bound to the input schema of the plan are read by ordinal
+ * <p>
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public final class TransformPlan implements MessageTransformer {
+
+    /**
+     * The output connection IDs in order of appearance
+     */
+    private final String[] outputIDs;
+
+    /**
+     * For every output connection, the field plans in field order
+     */
+    private final FieldOutputPlan[][] outputFields;
+
+    /**
+     * The schema of the payload holding the field values of every output, keyed by output connection ID
+     */
+    private final PayloadSchema outputsSchema;
+
+    /**
+     * For every output connection, the schema of its field values
+     */
+    private final PayloadSchema[] outputSchemas;
+
+    /**
+     * For every output connection and field, the ordinal of the output key in the output schema
+     */
+    private final int[][] targetOrdinals;
+
+    /**
+     * The schema of the input payloads read by ordinal, null when input payloads are always read by key
+     */
+    private final PayloadSchema inputSchema;
+
+    /**
+     * For every output connection and field, the ordinal of the input key in the input schema, -1 when read by key
+     */
+    private final int[][] sourceOrdinals;
+
+    /**
+     * Compiles the transformation of a message mapping, reading input payloads by key
+     *
+     * @param messageMap the message mapping to compile
+     */
+    public TransformPlan(MessageMapping messageMap) {
+        this(messageMap, null);
+    }
+
+    /**
+     * Compiles the transformation of a message mapping
+     *
+     * @param messageMap  the message mapping to compile
+     * @param inputSchema the schema of the input payloads to read by ordinal, may be null
+     */
+    public TransformPlan(MessageMapping messageMap, PayloadSchema inputSchema) {
+
+        Map<String, List<FieldOutputPlan>> outputs = new LinkedHashMap<>();
+
+        List<MessageFieldConfig> fields = messageMap.getFields();
+        if (fields != null) {
+            for (MessageFieldConfig field : fields) {
+
+                LinkedHashMap<String, Map<String, Object>> outputArgs = field.getOutputArguments();
+                if (outputArgs == null)
+                    continue;
+
+                for (Entry<String, Map<String, Object>> output : outputArgs.entrySet()) {
+
+                    List<FieldOutputPlan> plans = outputs.get(output.getKey());
+                    if (plans == null) {
+                        plans = new ArrayList<>();
+                        outputs.put(output.getKey(), plans);
+                    }
+                    plans.add(new FieldOutputPlan(field, output.getValue()));
+                }
+            }
+        }
+
+        this.outputIDs = outputs.keySet().toArray(new String[outputs.size()]);
+        this.outputFields = new FieldOutputPlan[this.outputIDs.length][];
+        this.outputsSchema = new PayloadSchema(Arrays.asList(this.outputIDs));
+        this.outputSchemas = new PayloadSchema[this.outputIDs.length];
+        this.targetOrdinals = new int[this.outputIDs.length][];
+        this.inputSchema = inputSchema;
+        this.sourceOrdinals = new int[this.outputIDs.length][];
+
+        for (int i = 0; i < this.outputIDs.length; i++) {
+            List<FieldOutputPlan> plans = outputs.get(this.outputIDs[i]);
+            this.outputFields[i] = plans.toArray(new FieldOutputPlan[plans.size()]);
+
+            List<String> outputKeys = new ArrayList<>();
+            for (FieldOutputPlan plan : plans)
+                outputKeys.add(plan.getOutputKey());
+            this.outputSchemas[i] = new PayloadSchema(outputKeys);
+
+            this.targetOrdinals[i] = new int[plans.size()];
+            this.sourceOrdinals[i] = new int[plans.size()];
+            for (int f = 0; f < plans.size(); f++) {
+                FieldOutputPlan plan = plans.get(f);
+                this.targetOrdinals[i][f] = this.outputSchemas[i].ordinal(plan.getOutputKey());
+                this.sourceOrdinals[i][f] = inputSchema == null || plan.getInputKey() == null ? -1 : inputSchema.ordinal(plan.getInputKey());
+            }
+        }
+    }
+
+    /**
+     * Produces the output payloads of a message
+     * <p>
+     * Fields sharing the same output key are concatenated in the order that they appear
+     *
+     * @param inputPayload the payload received
+     * @return the field values of every output, by output connection ID
+     */
+    @Override
+    public Map<String, Object> apply(Map<String, Object> inputPayload) {
+
+        SlotPayload inputSlots = bound(inputPayload, this.inputSchema);
+        SlotPayload outputPayload = this.outputsSchema.newPayload();
+
+        for (int i = 0; i < this.outputIDs.length; i++) {
+
+            FieldOutputPlan[] plans = this.outputFields[i];
+            int[] sources = this.sourceOrdinals[i];
+            int[] targets = this.targetOrdinals[i];
+            SlotPayload fieldValues = this.outputSchemas[i].newPayload();
+
+            for (int f = 0; f < plans.length; f++) {
+
+                //fields sharing a key are concatenated as text
+                if (plans[f].isPrimitive() && !fieldValues.has(targets[f])) {
+                    plans[f].write(inputPayload, inputSlots, sources[f], fieldValues, targets[f]);
+                    continue;
+                }
+
+                Object value = inputSlots != null && sources[f] >= 0
+                        ? plans[f].transform(inputSlots.get(sources[f]))
+                        : plans[f].apply(inputPayload);
+                if (value == null)
+                    continue;
+
+                Object previous = fieldValues.set(targets[f], value);
+                if (previous != null)
+                    fieldValues.set(targets[f], previous.toString() + value.toString());
+            }
+
+            outputPayload.set(i, fieldValues);
+        }
+
+        return outputPayload;
+    }
+
+    /**
+     * Returns a payload as a slot payload when it is bound to a given schema
+     *
+     * @param payload the payload
+     * @param schema  the schema, may be null
+     * @return the slot payload, null when the payload must be read by key
+     */
+    static SlotPayload bound(Map<String, Object> payload, PayloadSchema schema) {
+        if (schema != null && payload instanceof SlotPayload && ((SlotPayload) payload).getSchema() == schema)
+            return (SlotPayload) payload;
+        return null;
+    }
+
+    /**
+     * Returns the output connection IDs in order of appearance
+     *
+     * @return the output connection IDs
+     */
+    public String[] getOutputIDs() {
+        return outputIDs.clone();
+    }
+
+    /**
+     * Returns the field plans of every output, in the order of {@link #getOutputIDs()}
+     *
+     * @return the field plans by output
+     */
+    FieldOutputPlan[][] getOutputFields() {
+        return outputFields;
+    }
+
+    /**
+     * Returns the schema of the payload holding the field values of every output
+     *
+     * @return the outputs schema, keyed by output connection ID
+     */
+    PayloadSchema getOutputsSchema() {
+        return outputsSchema;
+    }
+
+    /**
+     * Returns the schema of the field values of every output, in the order of {@link #getOutputIDs()}
+     *
+     * @return the output schemas
+     */
+    PayloadSchema[] getOutputSchemas() {
+        return outputSchemas;
+    }
+
+    /**
+     * Returns the ordinal of the output key of every field in the schema of its output
+     *
+     * @return the target ordinals by output and field
+     */
+    int[][] getTargetOrdinals() {
+        return targetOrdinals;
+    }
+
+    /**
+     * Returns the schema of the input payloads read by ordinal
+     *
+     * @return the input schema, null when input payloads are always read by key
+     */
+    public PayloadSchema getInputSchema() {
+        return inputSchema;
+    }
+
+    /**
+     * Returns the ordinal of the input key of every field in the input schema
+     *
+     * @return the source ordinals by output and field, -1 when read by key
+     */
+    int[][] getSourceOrdinals() {
+        return sourceOrdinals;
+    }
+
+    /**
+     * Method returning a string representation
+     *
+     * @return string containing class name and member values
+     */
+    @Override
+    public String toString() {
+
+        return Tools.toString(this);
+    }
+}
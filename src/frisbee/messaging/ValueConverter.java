@@ -0,0 +1,323 @@
+package frisbee.messaging;
+
+import frisbee.tools.Tools;
+
+/**
+ * The {@code ValueConverter} class converts field values to the {@link frisbee.configuration.Keywords#FLD_TYPE type} configured on a field output
+ * <p>
+ * Converters are precompiled from the configured type name, so converting a value costs neither a lookup of the type nor a comparison of class names.
+ * Integral types are held as {@code long} and decimal types as {@code double}; their converters write straight into the primitive slots of a
+ * {@link frisbee.messaging.SlotPayload} and parse text without boxing the result.
+ * <p>
+ * A value which cannot be converted leaves the field absent
+ * <p>
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public abstract class ValueConverter {
+
+    /**
+     * Converts values to their text
+     */
+    public static final ValueConverter STRING = new Text();
+
+    /**
+     * Converts values to {@code long}
+     */
+    public static final ValueConverter LONG = new Integral();
+
+    /**
+     * Converts values to {@code double}
+     */
+    public static final ValueConverter DOUBLE = new Decimal();
+
+    /**
+     * Converts values to {@code boolean}
+     */
+    public static final ValueConverter BOOLEAN = new Logical();
+
+    /**
+     * Returns the converter of a configured type
+     *
+     * @param type the type name, String, Integer, Long, Short, Byte, Double, Float or Boolean, case insensitive
+     * @return the converter, null when no type is configured
+     * @throws IllegalArgumentException when the type is not supported
+     */
+    public static ValueConverter forType(Object type) {
+
+        if (type == null)
+            return null;
+
+        switch (type.toString().trim().toLowerCase()) {
+            case "string":
+                return STRING;
+            case "integer":
+            case "int":
+            case "long":
+            case "short":
+            case "byte":
+                return LONG;
+            case "double":
+            case "float":
+                return DOUBLE;
+            case "boolean":
+                return BOOLEAN;
+            default:
+                throw new IllegalArgumentException("Unsupported field type " + type);
+        }
+    }
+
+    /**
+     * Converts a value
+     *
+     * @param value the value, may be null
+     * @return the converted value, null when the value is null or cannot be converted
+     */
+    public abstract Object convert(Object value);
+
+    /**
+     * Checks if the converter writes primitive slots
+     *
+     * @return true when values are written without boxing
+     */
+    boolean isPrimitive() {
+        return false;
+    }
+
+    /**
+     * Converts a value into a payload slot
+     *
+     * @param out     the payload written
+     * @param ordinal the ordinal of the slot
+     * @param value   the value, may be null
+     * @return false when the value is null or cannot be converted, the slot being left untouched
+     */
+    boolean write(SlotPayload out, int ordinal, Object value) {
+        Object converted = this.convert(value);
+        if (converted == null)
+            return false;
+        out.set(ordinal, converted);
+        return true;
+    }
+
+    /**
+     * Converts the value of a payload slot into another payload slot
+     *
+     * @param in     the payload read
+     * @param source the ordinal of the slot read
+     * @param out    the payload written
+     * @param target the ordinal of the slot written
+     * @return false when the value is absent or cannot be converted, the slot being left untouched
+     */
+    boolean copy(SlotPayload in, int source, SlotPayload out, int target) {
+        return this.write(out, target, in.get(source));
+    }
+
+    /**
+     * Parses an integral number from text, surrounding spaces and a leading sign are allowed
+     *
+     * @param text the text
+     * @return the number
+     * @throws NumberFormatException when the text is not an integral number
+     */
+    static long parseLong(CharSequence text) {
+
+        int start = 0;
+        int end = text.length();
+        while (start < end && text.charAt(start) == ' ')
+            start++;
+        while (end > start && text.charAt(end - 1) == ' ')
+            end--;
+
+        boolean negative = false;
+        if (start < end && (text.charAt(start) == '-' || text.charAt(start) == '+'))
+            negative = text.charAt(start++) == '-';
+
+        //up to 18 digits never overflow, longer numbers take the checked path
+        if (start == end || end - start > 18)
+            return Long.parseLong(text.subSequence(start - (negative ? 1 : 0), end).toString());
+
+        long result = 0;
+        for (int i = start; i < end; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9)
+                throw new NumberFormatException("For input string: \"" + text + "\"");
+            result = result * 10 + digit;
+        }
+        return negative ? -result : result;
+    }
+
+    /**
+     * Method returning a string representation
+     *
+     * @return string containing class name and member values
+     */
+    @Override
+    public String toString() {
+
+        return Tools.toString(this);
+    }
+
+    /**
+     * Converts values to their text
+     */
+    static final class Text extends ValueConverter {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Object convert(Object value) {
+            return value == null ? null : value.toString();
+        }
+    }
+
+    /**
+     * Converts values to {@code long}, decimal numbers being truncated
+     */
+    static final class Integral extends ValueConverter {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Object convert(Object value) {
+            if (value == null || value instanceof Long)
+                return value;
+            if (value instanceof Number)
+                return ((Number) value).longValue();
+            if (value instanceof CharSequence) {
+                try {
+                    return parseLong((CharSequence) value);
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        boolean isPrimitive() {
+            return true;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        boolean write(SlotPayload out, int ordinal, Object value) {
+            if (value instanceof Number) {
+                out.setLong(ordinal, ((Number) value).longValue());
+                return true;
+            }
+            if (value instanceof CharSequence) {
+                try {
+                    out.setLong(ordinal, parseLong((CharSequence) value));
+                    return true;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        boolean copy(SlotPayload in, int source, SlotPayload out, int target) {
+            if (in.isLong(source) || in.isDouble(source)) {
+                out.setLong(target, in.getLong(source));
+                return true;
+            }
+            return this.write(out, target, in.get(source));
+        }
+    }
+
+    /**
+     * Converts values to {@code double}
+     */
+    static final class Decimal extends ValueConverter {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Object convert(Object value) {
+            if (value == null || value instanceof Double)
+                return value;
+            if (value instanceof Number)
+                return ((Number) value).doubleValue();
+            if (value instanceof CharSequence) {
+                try {
+                    return Double.parseDouble(value.toString());
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        boolean isPrimitive() {
+            return true;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        boolean write(SlotPayload out, int ordinal, Object value) {
+            if (value instanceof Number) {
+                out.setDouble(ordinal, ((Number) value).doubleValue());
+                return true;
+            }
+            if (value instanceof CharSequence) {
+                try {
+                    out.setDouble(ordinal, Double.parseDouble(value.toString()));
+                    return true;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        boolean copy(SlotPayload in, int source, SlotPayload out, int target) {
+            if (in.isLong(source) || in.isDouble(source)) {
+                out.setDouble(target, in.getDouble(source));
+                return true;
+            }
+            return this.write(out, target, in.get(source));
+        }
+    }
+
+    /**
+     * Converts values to {@code boolean}, text being true when it reads true regardless of case and numbers when they are not zero
+     */
+    static final class Logical extends ValueConverter {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Object convert(Object value) {
+            if (value == null || value instanceof Boolean)
+                return value;
+            if (value instanceof Number)
+                return ((Number) value).doubleValue() != 0 ? Boolean.TRUE : Boolean.FALSE;
+            return Boolean.valueOf(value.toString().trim());
+        }
+    }
+}
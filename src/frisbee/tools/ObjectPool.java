@@ -0,0 +1,140 @@
+package frisbee.tools;
+
+import java.util.function.Supplier;
+
+/**
+ * The {@code ObjectPool} class is a bounded pool of reusable instances, striped to keep threads from contending on a single lock
+ * <p>
+ * Threads are spread over the stripes by ID. An instance may be released from another thread than the one that acquired it,
+ * it then joins the stripe of the releasing thread, and a thread whose stripe is empty takes an idle instance from the other stripes
+ * before creating a new one. Releasing to a full stripe drops the instance.
+ * <p>
+ *
+ * @param <T> the type of pooled instances
+ * @version 0.1
+ * @since 0.1
+ */
+public final class ObjectPool<T> {
+
+    /**
+     * Maximum number of idle instances kept by a stripe
+     */
+    private static final int STRIPE_CAPACITY = 64;
+
+    /**
+     * Creates the instances when the pool is empty
+     */
+    private final Supplier<T> factory;
+
+    /**
+     * The stripes, their number is a power of two
+     */
+    private final Stripe[] stripes;
+
+    /**
+     * Creates an empty pool
+     *
+     * @param factory creates the instances when the pool is empty
+     */
+    public ObjectPool(Supplier<T> factory) {
+
+        int stripeCount = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)) << 1;
+
+        this.factory = factory;
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++)
+            this.stripes[i] = new Stripe();
+    }
+
+    /**
+     * Returns the stripe of the calling thread
+     *
+     * @return the stripe
+     */
+    private Stripe stripe() {
+        return this.stripes[(int) Thread.currentThread().getId() & (this.stripes.length - 1)];
+    }
+
+    /**
+     * Takes an idle instance, creating one when none is idle
+     * <p>
+     * The stripe of the calling thread is tried first, then the other stripes in order, so instances released by other threads are reused
+     *
+     * @return the instance
+     */
+    public T acquire() {
+
+        int index = (int) Thread.currentThread().getId() & (this.stripes.length - 1);
+        for (int i = 0; i < this.stripes.length; i++) {
+            Stripe stripe = this.stripes[(index + i) & (this.stripes.length - 1)];
+            if (stripe.size == 0)
+                continue;
+
+            T item = stripe.poll();
+            if (item != null)
+                return item;
+        }
+
+        return this.factory.get();
+    }
+
+    /**
+     * Returns an instance to the pool, the caller must not use it anymore
+     *
+     * @param item the instance
+     */
+    public void release(T item) {
+
+        Stripe stripe = this.stripe();
+        synchronized (stripe) {
+            if (stripe.size < STRIPE_CAPACITY)
+                stripe.items[stripe.size++] = item;
+        }
+    }
+
+    /**
+     * Method returning a string representation
+     *
+     * @return string containing class name and member values
+     */
+    @Override
+    public String toString() {
+
+        return Tools.toString(this);
+    }
+
+    /**
+     * A stack of idle instances guarded by its own monitor
+     */
+    private static final class Stripe {
+
+        /**
+         * The idle instances
+         */
+        private final Object[] items = new Object[STRIPE_CAPACITY];
+
+        /**
+         * The number of idle instances, written under the monitor and read without it to skip empty stripes
+         */
+        private volatile int size;
+
+        /**
+         * Takes an idle instance of this stripe
+         *
+         * @param <T> the type of pooled instances
+         * @return the instance, null when the stripe is empty
+         */
+        @SuppressWarnings("unchecked")
+        private synchronized <T> T poll() {
+
+            if (this.size == 0)
+                return null;
+
+            int size = this.size - 1;
+            Object item = this.items[size];
+            this.items[size] = null;
+            this.size = size;
+            return (T) item;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package frisbee.tools;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code StringCache} class is a bounded, lock-free cache returning shared instances of short, frequently decoded strings
+ * <p>
+ * The cache is direct mapped: the bytes of a value select a single entry, which is replaced on a miss. Entries are immutable
+ * and published by a plain array store, so racing threads at worst decode the same value twice and never see a partial entry.
+ * Values longer than {@link #MAX_LENGTH} bytes bypass the cache without being counted.
+ * <p>
+ * Hits and misses are counted to tune the size of the cache, they show in its string representation.
+ * <p>
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public final class StringCache {
+
+    /**
+     * Number of entries of a cache configured without a size
+     */
+    public static final int DEFAULT_SIZE = 256;
+
+    /**
+     * Longest value cached, in bytes
+     */
+    public static final int MAX_LENGTH = 32;
+
+    /**
+     * The entries, their number is a power of two
+     */
+    private final Entry[] entries;
+
+    /**
+     * The character set of the decoded bytes
+     */
+    private final Charset charset;
+
+    /**
+     * Number of values found in the cache
+     */
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * Number of values decoded and cached
+     */
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates an empty cache
+     *
+     * @param size    the number of entries, rounded up to a power of two
+     * @param charset the character set of the decoded bytes
+     */
+    public StringCache(int size, Charset charset) {
+
+        this.entries = new Entry[Integer.highestOneBit(Math.max(1, size - 1)) << 1];
+        this.charset = charset;
+    }
+
+    /**
+     * Creates the cache configured on a field
+     *
+     * @param setting the configured value, true or a number of entries
+     * @param charset the character set of the decoded bytes
+     * @return the cache, null when not configured, false or not positive
+     */
+    public static StringCache fromConfiguration(Object setting, Charset charset) {
+
+        if (setting == null)
+            return null;
+
+        String text = setting.toString().trim();
+        if (text.equalsIgnoreCase("true"))
+            return new StringCache(DEFAULT_SIZE, charset);
+        if (text.equalsIgnoreCase("false"))
+            return null;
+
+        try {
+            int size = setting instanceof Number ? ((Number) setting).intValue() : Integer.parseInt(text);
+            return size > 0 ? new StringCache(size, charset) : null;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cache size " + setting);
+        }
+    }
+
+    /**
+     * Decodes bytes, returning the cached instance when the same bytes were decoded before
+     *
+     * @param buffer the buffer holding the bytes, read with absolute gets
+     * @param start  position of the first byte
+     * @param length number of bytes
+     * @return the decoded string
+     */
+    public String get(ByteBuffer buffer, int start, int length) {
+
+        if (length > MAX_LENGTH)
+            return decode(buffer, start, length, this.charset);
+
+        int hash = length;
+        for (int i = 0; i < length; i++)
+            hash = 31 * hash + buffer.get(start + i);
+        hash ^= hash >>> 16;
+
+        int index = hash & (this.entries.length - 1);
+        Entry entry = this.entries[index];
+        if (entry != null && entry.hash == hash && entry.matches(buffer, start, length)) {
+            this.hits.increment();
+            return entry.value;
+        }
+
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++)
+            bytes[i] = buffer.get(start + i);
+        String value = new String(bytes, this.charset);
+
+        this.entries[index] = new Entry(hash, bytes, value);
+        this.misses.increment();
+        return value;
+    }
+
+    /**
+     * Decodes bytes without caching
+     *
+     * @param buffer  the buffer holding the bytes, read with absolute gets
+     * @param start   position of the first byte
+     * @param length  number of bytes
+     * @param charset the character set of the bytes
+     * @return the decoded string
+     */
+    public static String decode(ByteBuffer buffer, int start, int length, Charset charset) {
+
+        if (buffer.hasArray())
+            return new String(buffer.array(), buffer.arrayOffset() + start, length, charset);
+
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++)
+            bytes[i] = buffer.get(start + i);
+        return new String(bytes, charset);
+    }
+
+    /**
+     * Returns the number of values found in the cache
+     *
+     * @return the number of hits
+     */
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    /**
+     * Returns the number of values decoded and cached
+     *
+     * @return the number of misses
+     */
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    /**
+     * Returns the share of cached lookups served from the cache
+     *
+     * @return the hit rate, between 0 and 1, 0 before the first lookup
+     */
+    public double getHitRate() {
+        long hits = this.getHits();
+        long total = hits + this.getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * Returns the number of entries
+     *
+     * @return the capacity of the cache
+     */
+    public int getSize() {
+        return this.entries.length;
+    }
+
+    /**
+     * Method returning a string representation
+     *
+     * @return string containing the size, hits, misses and hit rate
+     */
+    @Override
+    public String toString() {
+
+        return "StringCache[size=" + this.entries.length + ", hits=" + this.getHits() + ", misses=" + this.getMisses()
+                + ", hitRate=" + String.format("%.3f", this.getHitRate()) + "]";
+    }
+
+    /**
+     * A cached value with the bytes it was decoded from
+     */
+    private static final class Entry {
+
+        /**
+         * The hash of the bytes
+         */
+        final int hash;
+
+        /**
+         * The bytes
+         */
+        final byte[] bytes;
+
+        /**
+         * The decoded value
+         */
+        final String value;
+
+        /**
+         * Creates an entry
+         *
+         * @param hash  the hash of the bytes
+         * @param bytes the bytes
+         * @param value the decoded value
+         */
+        Entry(int hash, byte[] bytes, String value) {
+            this.hash = hash;
+            this.bytes = bytes;
+            this.value = value;
+        }
+
+        /**
+         * Compares the entry bytes with bytes of a buffer
+         *
+         * @param buffer the buffer
+         * @param start  position of the first byte
+         * @param length number of bytes
+         * @return true when the bytes are equal
+         */
+        boolean matches(ByteBuffer buffer, int start, int length) {
+            if (this.bytes.length != length)
+                return false;
+            for (int i = 0; i < length; i++) {
+                if (this.bytes[i] != buffer.get(start + i))
+                    return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package frisbee.tools;
+
+import frisbee.configuration.Keywords;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Kinds of threads a frisbee instance runs its connection listeners and output writers on
+ * <li>{@link #PLATFORM}</li>
+ * <li>{@link #VIRTUAL}</li>
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public enum ThreadMode {
+
+    /**
+     * One operating system thread per task
+     */
+    PLATFORM,
+
+    /**
+     * Virtual threads multiplexed over a few carrier threads, falls back to platform threads before Java 21
+     */
+    VIRTUAL;
+
+    /**
+     * Factory of virtual threads, null when the running JVM does not support them
+     * <p>
+     * Resolved reflectively so the sources still build for Java 8
+     */
+    private static final ThreadFactory VIRTUAL_THREAD_FACTORY = virtualThreadFactory();
+
+    /**
+     * Resolves the virtual thread factory of the running JVM
+     *
+     * @return the factory, null when virtual threads are not supported
+     */
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the thread mode matching a configuration value
+     *
+     * @param value the configured value, may be null
+     * @return the thread mode, {@link #PLATFORM} when not configured
+     */
+    public static ThreadMode fromConfiguration(Object value) {
+        if (value == null || value.toString().trim().isEmpty())
+            return PLATFORM;
+        if (value.toString().trim().equalsIgnoreCase(Keywords.THREADS_VIRTUAL))
+            return VIRTUAL;
+        if (value.toString().trim().equalsIgnoreCase(Keywords.THREADS_PLATFORM))
+            return PLATFORM;
+        throw new IllegalArgumentException("Unknown thread mode: " + value);
+    }
+
+    /**
+     * Tells whether the running JVM supports virtual threads
+     *
+     * @return true from Java 21
+     */
+    public static boolean isVirtualSupported() {
+        return VIRTUAL_THREAD_FACTORY != null;
+    }
+
+    /**
+     * Returns the thread mode actually used by this mode on the running JVM
+     *
+     * @return {@link #PLATFORM} when virtual threads are requested but not supported
+     */
+    public ThreadMode effective() {
+        return this == VIRTUAL && !isVirtualSupported() ? PLATFORM : this;
+    }
+
+    /**
+     * Creates an unstarted thread of this mode
+     * <p>
+     * Virtual threads are always daemon threads, whatever the mode the caller must keep the service alive on its own
+     *
+     * @param task the task run by the thread
+     * @param name the thread name
+     * @return the thread
+     */
+    public Thread newThread(Runnable task, String name) {
+
+        Thread thread;
+        if (this.effective() == VIRTUAL) {
+            thread = VIRTUAL_THREAD_FACTORY.newThread(task);
+        } else {
+            thread = new Thread(task);
+        }
+        thread.setName(name);
+        return thread;
+    }
+
+    /**
+     * Returns a factory of threads of this mode, used to back executors
+     *
+     * @param namePrefix the prefix of the thread names, followed by a sequence number
+     * @return the thread factory
+     */
+    public ThreadFactory newThreadFactory(String namePrefix) {
+
+        AtomicInteger sequence = new AtomicInteger();
+        return task -> this.newThread(task, namePrefix + sequence.getAndIncrement());
+    }
+}
@@ -0,0 +1,122 @@
+package frisbee.tests.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import frisbee.communications.MyConnection;
+import frisbee.configuration.Keywords;
+import frisbee.exceptions.LoggedException;
+import frisbee.messaging.Message;
+import frisbee.messaging.MessageDispatcher;
+import frisbee.messaging.MessageIOConfig;
+import frisbee.messaging.MessageMapping;
+import frisbee.tools.ThreadMode;
+
+/**
+ * Compares single and batched writes of a chatty asynchronous output appending small records to a file
+ * <p>
+ * Every {@code writeMessage} call costs one system call, every {@code writeMessageBatch} call a single gathering one.
+ * <p>
+ * Usage: {@code BatchWriteBenchmark [messages] [batch size] [linger millis]}
+ */
+public class BatchWriteBenchmark {
+
+	private static class FileConnection extends MyConnection {
+
+		private final FileChannel channel;
+		private volatile CountDownLatch written;
+
+		FileConnection(File file) throws IOException {
+			this.channel = new FileOutputStream(file).getChannel();
+		}
+
+		@Override
+		protected void writeMessage(Message message) throws LoggedException {
+			try {
+				channel.write(record(message));
+			} catch (IOException e) {
+				throw new LoggedException(e);
+			}
+			written.countDown();
+		}
+
+		@Override
+		protected void writeMessageBatch(List<Message> messages) throws LoggedException {
+			ByteBuffer[] records = new ByteBuffer[messages.size()];
+			for (int i = 0; i < records.length; i++)
+				records[i] = record(messages.get(i));
+			try {
+				long remaining = 0;
+				for (ByteBuffer record : records)
+					remaining += record.remaining();
+				while (remaining > 0)
+					remaining -= channel.write(records);
+			} catch (IOException e) {
+				throw new LoggedException(e);
+			}
+			for (int i = 0; i < records.length; i++)
+				written.countDown();
+		}
+
+		private static ByteBuffer record(Message message) {
+			return ByteBuffer.wrap((message.getInputPayload().get("n") + ";hello\n").getBytes(StandardCharsets.US_ASCII));
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int messageCount = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+		int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+		int linger = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+
+		File file = File.createTempFile("frisbee-batch", ".out");
+		file.deleteOnExit();
+		FileConnection connection = new FileConnection(file);
+
+		//warm up both paths before measuring
+		run(connection, 1, 0, messageCount / 10);
+		run(connection, batchSize, linger, messageCount / 10);
+
+		double single = run(connection, 1, 0, messageCount);
+		double batched = run(connection, batchSize, linger, messageCount);
+
+		System.out.printf("messages=%d batchSize=%d linger=%dms%n", messageCount, batchSize, linger);
+		System.out.printf("single:  %12.0f messages/s%n", single);
+		System.out.printf("batched: %12.0f messages/s%n", batched);
+		System.out.printf("speedup: %12.2fx%n", batched / single);
+	}
+
+	private static double run(FileConnection connection, int batchSize, int linger, int messageCount) throws InterruptedException {
+		Map<String, Object> arguments = new HashMap<>();
+		arguments.put(Keywords.OUTPUT_BATCH_SIZE, String.valueOf(batchSize));
+		arguments.put(Keywords.OUTPUT_LINGER, String.valueOf(linger));
+
+		MessageMapping mapping = new MessageMapping("bench");
+		mapping.setAsyncOutputs(Collections.singletonList(new MessageIOConfig("file", MessageIOConfig.Mode.ASYNC, arguments)));
+
+		MessageDispatcher dispatcher = new MessageDispatcher("bench", ThreadMode.PLATFORM, 4, id -> connection);
+		connection.written = new CountDownLatch(messageCount);
+
+		long start = System.nanoTime();
+		for (int n = 0; n < messageCount; n++) {
+			Map<String, Object> payload = new HashMap<>();
+			payload.put("n", n);
+			dispatcher.dispatch(new Message(null, null, null, mapping, 0L, 0L, payload, null));
+		}
+		connection.written.await();
+		double elapsed = (System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1);
+
+		dispatcher.shutdown(1000);
+		return messageCount / elapsed;
+	}
+
+}
@@ -0,0 +1,145 @@
+package frisbee.tests.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import frisbee.tools.ThreadMode;
+
+/**
+ * Compares the memory and context switch overhead of platform and virtual threads running many low traffic listeners
+ * <p>
+ * Every listener blocks on its own queue, as a connection waiting for input, and a driver thread feeds them round robin.
+ * Context switches are summed over {@code /proc/self/task/}, so they are only reported on Linux.
+ * Run each mode in its own JVM for the memory figures to be comparable.
+ * <p>
+ * Usage: {@code ThreadModeBenchmark [platform|virtual] [listeners] [seconds] [messages per second]}
+ */
+public class ThreadModeBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		ThreadMode mode = ThreadMode.fromConfiguration(args.length > 0 ? args[0] : "platform");
+		int listenerCount = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+		int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+		int rate = args.length > 3 ? Integer.parseInt(args[3]) : 20000;
+
+		if (mode != mode.effective())
+			System.out.println("virtual threads are not supported by this JVM, running platform threads");
+		mode = mode.effective();
+
+		long rssBefore = statusValue(new File("/proc/self/status"), "VmRSS:");
+		long heapBefore = usedHeap();
+
+		List<LinkedBlockingQueue<Long>> queues = new ArrayList<>(listenerCount);
+		List<Thread> listeners = new ArrayList<>(listenerCount);
+		CountDownLatch started = new CountDownLatch(listenerCount);
+		AtomicLong delivered = new AtomicLong();
+		AtomicLong latencyNanos = new AtomicLong();
+
+		long startNanos = System.nanoTime();
+		for (int i = 0; i < listenerCount; i++) {
+			LinkedBlockingQueue<Long> queue = new LinkedBlockingQueue<>();
+			queues.add(queue);
+			Thread listener = mode.newThread(() -> {
+				started.countDown();
+				try {
+					while (true) {
+						long sent = queue.take();
+						if (sent < 0)
+							return;
+						latencyNanos.addAndGet(System.nanoTime() - sent);
+						delivered.incrementAndGet();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}, "listener-" + i);
+			listeners.add(listener);
+			listener.start();
+		}
+		started.await();
+		long startupMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+		long rssStarted = statusValue(new File("/proc/self/status"), "VmRSS:");
+		long heapStarted = usedHeap();
+		long switchesBefore = contextSwitches();
+
+		//feed the listeners round robin at a fixed rate, every millisecond sends the messages due so far
+		long feedStart = System.nanoTime();
+		long deadline = feedStart + seconds * 1000000000L;
+		long sent = 0;
+		int target = 0;
+		long now;
+		while ((now = System.nanoTime()) < deadline) {
+			long due = (now - feedStart) * rate / 1000000000L;
+			for (; sent < due; sent++) {
+				queues.get(target).add(System.nanoTime());
+				target = (target + 1) % listenerCount;
+			}
+			TimeUnit.MILLISECONDS.sleep(1);
+		}
+
+		long switches = contextSwitches() - switchesBefore;
+
+		for (LinkedBlockingQueue<Long> queue : queues)
+			queue.add(-1L);
+		for (Thread listener : listeners)
+			listener.join();
+
+		System.out.printf("mode=%s listeners=%d seconds=%d rate=%d/s%n", mode, listenerCount, seconds, rate);
+		System.out.printf("startup:          %10d ms%n", startupMillis);
+		System.out.printf("rss per listener: %10.1f KiB%n", (rssStarted - rssBefore) / (double) listenerCount);
+		System.out.printf("heap per listener:%10.1f KiB%n", (heapStarted - heapBefore) / 1024.0 / listenerCount);
+		System.out.printf("delivered:        %10d messages%n", delivered.get());
+		System.out.printf("mean latency:     %10.1f us%n", latencyNanos.get() / 1000.0 / Math.max(1, delivered.get()));
+		if (switches >= 0)
+			System.out.printf("context switches: %10.2f per message%n", switches / (double) Math.max(1, delivered.get()));
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++)
+			System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/**
+	 * Sums the voluntary and involuntary context switches of every thread of the process, -1 when not available
+	 */
+	private static long contextSwitches() {
+		File[] tasks = new File("/proc/self/task").listFiles();
+		if (tasks == null)
+			return -1;
+
+		long total = 0;
+		for (File task : tasks) {
+			File status = new File(task, "status");
+			total += Math.max(0, statusValue(status, "voluntary_ctxt_switches:"));
+			total += Math.max(0, statusValue(status, "nonvoluntary_ctxt_switches:"));
+		}
+		return total;
+	}
+
+	/**
+	 * Reads a numeric value of a {@code /proc} status file, -1 when not available
+	 */
+	private static long statusValue(File status, String name) {
+		try {
+			for (String line : Files.readAllLines(status.toPath(), StandardCharsets.UTF_8)) {
+				if (line.startsWith(name))
+					return Long.parseLong(line.substring(name.length()).trim().split("\\s+")[0]);
+			}
+		} catch (IOException | RuntimeException e) {
+			//the thread ended or the file does not exist on this platform
+		}
+		return -1;
+	}
+
+}
@@ -0,0 +1,131 @@
+package frisbee.tests.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import frisbee.configuration.Keywords;
+import frisbee.messaging.ComposedTransformPlan;
+import frisbee.messaging.MessageFieldConfig;
+import frisbee.messaging.MessageMapping;
+import frisbee.messaging.MessageTransformer;
+import frisbee.messaging.PayloadSchema;
+import frisbee.messaging.SlotPayload;
+import frisbee.messaging.TransformPlan;
+
+/**
+ * Compares the interpreted and the composed transformation plans on wide message mappings
+ * <p>
+ * Fields mix headers, footers, lengths with padding, forced values and numeric types. Reports the time and the bytes allocated per message,
+ * on the running thread, for map payloads and for slot payloads bound to the input schema.
+ * <p>
+ * Usage: {@code TransformBenchmark [fields] [outputs] [seconds]}
+ */
+public class TransformBenchmark {
+
+	public static void main(String[] args) {
+		int fieldCount = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		int outputCount = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+		int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+		List<MessageFieldConfig> fields = new ArrayList<>();
+		Map<String, Object> payload = new HashMap<>();
+
+		for (int f = 0; f < fieldCount; f++) {
+			Map<String, Object> inputArgs = new HashMap<>();
+			inputArgs.put(Keywords.FIELD_KEY, "in" + f);
+			payload.put("in" + f, f % 5 == 1 ? Integer.toString(f) : "value" + f);
+
+			LinkedHashMap<String, Map<String, Object>> outputArgs = new LinkedHashMap<>();
+			for (int o = 0; o < outputCount; o++) {
+				Map<String, Object> outputField = new HashMap<>();
+				outputField.put(Keywords.FIELD_KEY, "out" + f);
+				if (f % 2 == 0)
+					outputField.put(Keywords.FLD_HEADER, "<");
+				if (f % 3 == 0)
+					outputField.put(Keywords.FLD_FOOTER, ">");
+				if (f % 4 == 0) {
+					outputField.put(Keywords.FLD_LENGTH, 12);
+					outputField.put(Keywords.FLD_L_PAD, "0");
+				}
+				if (f % 5 == 1)
+					outputField.put(Keywords.FLD_TYPE, "Integer");
+				if (f % 10 == 3)
+					outputField.put(Keywords.FORCEVALUE, "forced");
+				outputArgs.put("output" + o, outputField);
+			}
+
+			fields.add(new MessageFieldConfig("field" + f, "input", inputArgs, outputArgs));
+		}
+
+		MessageMapping mapping = new MessageMapping("wide");
+		mapping.setFields(fields);
+
+		PayloadSchema schema = PayloadSchema.forInput(Collections.singletonList(mapping));
+		SlotPayload slots = schema.newPayload();
+		slots.putAll(payload);
+
+		TransformPlan plan = new TransformPlan(mapping, schema);
+		ComposedTransformPlan composed = ComposedTransformPlan.compose(plan);
+		if (!plan.apply(slots).equals(composed.apply(slots)))
+			throw new IllegalStateException("The engines disagree");
+
+		//warm up before measuring
+		run(plan, payload, seconds);
+		run(plan, slots, seconds);
+		run(composed, payload, seconds);
+		run(composed, slots, seconds);
+
+		System.out.printf("fields=%d outputs=%d%n", fieldCount, outputCount);
+		double planMap = report("plan,     map input ", plan, payload, seconds);
+		double planSlots = report("plan,     slot input", plan, slots, seconds);
+		double composedMap = report("composed, map input ", composed, payload, seconds);
+		double composedSlots = report("composed, slot input", composed, slots, seconds);
+		System.out.printf("speedup: map input %.2fx, slot input %.2fx%n", planMap / composedMap, planSlots / composedSlots);
+	}
+
+	private static double report(String name, MessageTransformer transformer, Map<String, Object> payload, int seconds) {
+		double ns = run(transformer, payload, seconds);
+		System.out.printf("%s: %10.1f ns/message %10.0f bytes/message%n", name, ns, allocated(transformer, payload));
+		return ns;
+	}
+
+	private static double allocated(MessageTransformer transformer, Map<String, Object> payload) {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long id = Thread.currentThread().getId();
+		int sink = 0;
+
+		long before = threads.getThreadAllocatedBytes(id);
+		for (int i = 0; i < 10000; i++)
+			sink += transformer.apply(payload).size();
+		long after = threads.getThreadAllocatedBytes(id);
+
+		if (sink == 42)
+			System.out.println();
+
+		return (after - before) / 10000.0;
+	}
+
+	private static double run(MessageTransformer transformer, Map<String, Object> payload, int seconds) {
+		long deadline = System.nanoTime() + seconds * 1000000000L;
+		long start = System.nanoTime();
+		long messages = 0;
+		int sink = 0;
+
+		while (System.nanoTime() < deadline) {
+			for (int i = 0; i < 100; i++)
+				sink += transformer.apply(payload).size();
+			messages += 100;
+		}
+
+		if (sink == 42)
+			System.out.println();
+
+		return (System.nanoTime() - start) / (double) messages;
+	}
+
+}
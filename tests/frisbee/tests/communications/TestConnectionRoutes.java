@@ -0,0 +1,60 @@
+package frisbee.tests.communications;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+import org.junit.Test;
+
+import frisbee.Frisbee;
+import frisbee.communications.ConnectionRoutes;
+import frisbee.configuration.FrisbeeConfig;
+import frisbee.configuration.Keywords;
+import frisbee.messaging.CompiledMapping;
+import frisbee.messaging.MessageFieldConfig;
+import frisbee.messaging.MessageIOConfig;
+import frisbee.messaging.MessageMapping;
+
+public class TestConnectionRoutes {
+
+	private static MessageMapping mapping(String id, String key) {
+		Map<String, Object> inputArgs = new HashMap<>();
+		inputArgs.put(Keywords.FIELD_KEY, key);
+		MessageMapping mapping = new MessageMapping(id);
+		mapping.setInput(new MessageIOConfig("in", MessageIOConfig.Mode.ASYNC, new HashMap<String, Object>()));
+		mapping.setFields(new LinkedList<>(Arrays.asList(new MessageFieldConfig(key, "in", inputArgs, new LinkedHashMap<String, Map<String, Object>>()))));
+		mapping.setSyncOutputs(new LinkedList<MessageIOConfig>());
+		mapping.setAsyncOutputs(new LinkedList<MessageIOConfig>());
+		return mapping;
+	}
+
+	private static ConnectionRoutes routes(MessageMapping... mappings) {
+		FrisbeeConfig config = new FrisbeeConfig("f");
+		config.setMessageMappings(new LinkedList<>(Arrays.asList(mappings)));
+		return new ConnectionRoutes("in", Arrays.asList(new Frisbee(config)));
+	}
+
+	@Test
+	public void testCompiledStateStaysInSnapshot() {
+		MessageMapping shared = mapping("a", "k1");
+		ConnectionRoutes previous = routes(shared);
+		CompiledMapping compiled = previous.getCompiledMapping(shared);
+		assertSame(shared, compiled.getMessageMapping());
+		assertSame(previous.getInputSchema(), compiled.getTransformPlan().getInputSchema());
+
+		//routes compiled for a new configuration sharing the definition leave the previous routes unchanged
+		ConnectionRoutes next = routes(shared, mapping("b", "k2"));
+		assertNotSame(previous.getInputSchema(), next.getInputSchema());
+		assertSame(compiled, previous.getCompiledMapping(shared));
+		assertSame(previous.getInputSchema(), previous.getCompiledMapping(shared).getTransformPlan().getInputSchema());
+		assertSame(next.getInputSchema(), next.getCompiledMapping(shared).getTransformPlan().getInputSchema());
+
+		//the definition itself still reads by key
+		assertNull(shared.getTransformPlan().getInputSchema());
+	}
+
+}
@@ -0,0 +1,193 @@
+package frisbee.tests.communications;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import frisbee.Frisbee;
+import frisbee.communications.ConnectionRoutes;
+import frisbee.communications.DropFolderConnection;
+import frisbee.communications.DropFolderConnector;
+import frisbee.configuration.FrisbeeConfig;
+import frisbee.configuration.Keywords;
+import frisbee.messaging.MessageFieldConfig;
+import frisbee.messaging.MessageIOConfig;
+import frisbee.messaging.MessageMapping;
+
+public class TestDropFolderConnection {
+
+	private static class RecordingObserver implements Observer {
+
+		private final Set<Object> received = ConcurrentHashMap.newKeySet();
+
+		@Override
+		public void update(Observable o, Object arg) {
+			Object id = ((Map<?, ?>) arg).get("id");
+			if ("bad000".equals(id))
+				throw new IllegalArgumentException("Rejected record " + id);
+			received.add(id);
+		}
+	}
+
+	private static DropFolderConnection connection(DropFolderConnector connector, File directory) throws Exception {
+		Map<String, Object> inputArgs = new HashMap<>();
+		inputArgs.put(Keywords.INPUT_DELIM, "\n");
+		Map<String, Object> fieldArgs = new HashMap<>();
+		fieldArgs.put(Keywords.FIELD_KEY, "id");
+		fieldArgs.put(Keywords.FLD_LENGTH, 6);
+		MessageMapping mapping = new MessageMapping("m");
+		mapping.setInput(new MessageIOConfig("drop", MessageIOConfig.Mode.ASYNC, inputArgs));
+		mapping.setFields(new LinkedList<>(Arrays.asList(new MessageFieldConfig("f", "drop", fieldArgs, new LinkedHashMap<String, Map<String, Object>>()))));
+		mapping.setSyncOutputs(new LinkedList<MessageIOConfig>());
+		mapping.setAsyncOutputs(new LinkedList<MessageIOConfig>());
+
+		FrisbeeConfig config = new FrisbeeConfig("f");
+		config.setMessageMappings(new LinkedList<>(Arrays.asList(mapping)));
+
+		Map<String, Object> parameters = new HashMap<>();
+		parameters.put(Keywords.FILE_PATH, directory.getPath());
+		parameters.put(Keywords.DROP_GLOB, "*.dat");
+
+		DropFolderConnection connection = new DropFolderConnection();
+		connection.setConnectionID("drop");
+		connection.setParentConnector(connector);
+		connection.setConnectionParameters(parameters);
+		connection.setRoutes(new ConnectionRoutes("drop", Arrays.asList(new Frisbee(config))));
+		connector.addConnection(connection);
+		return connection;
+	}
+
+	private static void drop(File directory, String name, String content) throws Exception {
+		//written under a hidden name, then renamed into place
+		Path hidden = new File(directory, "." + name).toPath();
+		Files.write(hidden, content.getBytes(StandardCharsets.ISO_8859_1));
+		Files.move(hidden, new File(directory, name).toPath(), StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static void await(DropFolderConnection connection, long files) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 20000;
+		while (connection.getProcessedCount() + connection.getFailedCount() < files && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+	}
+
+	@Test
+	public void testBacklogAndDroppedFilesProcessedOnce() throws Exception {
+		File directory = Files.createTempDirectory("frisbee").toFile();
+		for (int i = 0; i < 200; i++)
+			drop(directory, String.format("backlog%03d.dat", i), String.format("%06d\n%06d\n", 2 * i, 2 * i + 1));
+		drop(directory, "ignored.txt", "999999\n");
+
+		//a file claimed by a stopped instance is returned to the directory
+		File processing = new File(directory, DropFolderConnection.DEFAULT_PROCESSING_DIRECTORY);
+		assertTrue(processing.mkdir());
+		Files.write(new File(processing, "leftover.dat").toPath(), "500000\n".getBytes(StandardCharsets.ISO_8859_1));
+
+		Map<String, Object> connectorParameters = new HashMap<>();
+		connectorParameters.put(Keywords.DROP_WORKERS, "3");
+		DropFolderConnector connector = new DropFolderConnector();
+		connector.setConnectorID("drop");
+		connector.setConnectorParameters(connectorParameters);
+		DropFolderConnection connection = connection(connector, directory);
+		RecordingObserver observer = new RecordingObserver();
+		connection.addObserver(observer);
+
+		connector.connect();
+		assertEquals(3, connector.getWorkerCount());
+		Thread listener = new Thread(connection);
+		listener.start();
+
+		for (int i = 0; i < 100; i++)
+			drop(directory, String.format("dropped%03d.dat", i), String.format("%06d\n", 1000 + i));
+		drop(directory, "rejected.dat", "bad000\n");
+		await(connection, 302);
+
+		assertEquals(301, connection.getProcessedCount());
+		assertEquals(1, connection.getFailedCount());
+		assertEquals(501, connection.getRecordCount());
+		assertEquals(501, observer.received.size());
+		assertTrue(observer.received.contains("500000"));
+		assertFalse(observer.received.contains("999999"));
+
+		assertEquals(301, new File(directory, DropFolderConnection.DEFAULT_DONE_DIRECTORY).list().length);
+		assertArrayEquals(new String[]{"rejected.dat"}, new File(directory, DropFolderConnection.DEFAULT_ERROR_DIRECTORY).list());
+		assertEquals(0, processing.list().length);
+		assertTrue(new File(directory, "ignored.txt").exists());
+
+		connector.disconnect();
+		listener.join(5000);
+		assertFalse(listener.isAlive());
+		assertEquals(0, connector.getWorkerCount());
+	}
+
+	@Test(timeout = 60000)
+	public void testFileDroppedAgainUnderItsNameWhileProcessed() throws Exception {
+		File directory = Files.createTempDirectory("frisbee").toFile();
+
+		Map<String, Object> connectorParameters = new HashMap<>();
+		connectorParameters.put(Keywords.DROP_WORKERS, "2");
+		DropFolderConnector connector = new DropFolderConnector();
+		connector.setConnectorID("drop");
+		connector.setConnectorParameters(connectorParameters);
+		DropFolderConnection connection = connection(connector, directory);
+
+		//the first file is held in the processing directory until the second one is processed
+		CountDownLatch second = new CountDownLatch(1);
+		Set<Object> received = ConcurrentHashMap.newKeySet();
+		connection.addObserver((o, arg) -> {
+			Object id = ((Map<?, ?>) arg).get("id");
+			received.add(id);
+			try {
+				if ("000001".equals(id))
+					assertTrue(second.await(20, TimeUnit.SECONDS));
+				else
+					second.countDown();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+
+		connector.connect();
+		Thread listener = new Thread(connection);
+		listener.start();
+
+		drop(directory, "same.dat", "000001\n");
+		File processing = new File(directory, DropFolderConnection.DEFAULT_PROCESSING_DIRECTORY);
+		long deadline = System.currentTimeMillis() + 20000;
+		while (!received.contains("000001") && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+		drop(directory, "same.dat", "000002\n");
+		await(connection, 2);
+
+		assertEquals(2, connection.getProcessedCount());
+		assertEquals(new HashSet<>(Arrays.asList("000001", "000002")), received);
+		assertEquals(0, processing.list().length);
+
+		Set<String> contents = new HashSet<>();
+		for (File done : new File(directory, DropFolderConnection.DEFAULT_DONE_DIRECTORY).listFiles())
+			contents.add(new String(Files.readAllBytes(done.toPath()), StandardCharsets.ISO_8859_1));
+		assertEquals(new HashSet<>(Arrays.asList("000001\n", "000002\n")), contents);
+		assertTrue(new File(directory, DropFolderConnection.DEFAULT_DONE_DIRECTORY + File.separator + "same.dat").exists());
+
+		connector.disconnect();
+		listener.join(5000);
+	}
+
+}
@@ -0,0 +1,170 @@
+package frisbee.tests.communications;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import frisbee.communications.FrameDecoder;
+import frisbee.configuration.Keywords;
+
+public class TestFrameDecoder {
+
+	private static List<String> decode(FrameDecoder decoder, boolean direct, ByteOrder order, String... chunks) {
+		List<String> frames = new ArrayList<>();
+		for (String chunk : chunks) {
+			byte[] bytes = chunk.getBytes(StandardCharsets.ISO_8859_1);
+			ByteBuffer buffer = (direct ? ByteBuffer.allocateDirect(bytes.length + 3) : ByteBuffer.allocate(bytes.length + 3)).order(order);
+			buffer.position(3);
+			buffer.put(bytes).flip().position(3);
+
+			decoder.feed(buffer, frame -> {
+				byte[] content = new byte[frame.remaining()];
+				frame.duplicate().get(content);
+				frames.add(new String(content, StandardCharsets.ISO_8859_1));
+			});
+			assertFalse(buffer.hasRemaining());
+		}
+		return frames;
+	}
+
+	private static List<String> decode(FrameDecoder decoder, String... chunks) {
+		return decode(decoder, false, ByteOrder.BIG_ENDIAN, chunks);
+	}
+
+	@Test
+	public void testStxEtxFramesSplitAndGrouped() {
+		Map<String, Object> inputArgs = new HashMap<>();
+		inputArgs.put(Keywords.INPUT_STX, "0x02");
+		inputArgs.put(Keywords.INPUT_ETX, "0x03");
+		FrameDecoder decoder = FrameDecoder.fromConfiguration(inputArgs, null);
+
+		List<String> frames = decode(decoder, "noise\u0002first\u0003\u0002sec", "ond\u0003junk\u0002", "", "third frame is long", "er\u0003\u0002\u0003");
+		assertEquals(3, frames.size());
+		assertEquals("first", frames.get(0));
+		assertEquals("second", frames.get(1));
+		assertEquals("third frame is longer", frames.get(2));
+	}
+
+	@Test
+	public void testFinishHandsOverUnterminatedFrame() {
+		FrameDecoder decoder = new FrameDecoder(null, "\r\n".getBytes(StandardCharsets.ISO_8859_1), 1024);
+		assertEquals(1, decode(decoder, "one\r\ntw", "o\r").size());
+
+		List<String> frames = new ArrayList<>();
+		decoder.finish(frame -> frames.add(StandardCharsets.ISO_8859_1.decode(frame).toString()));
+		assertEquals(1, frames.size());
+		assertEquals("two\r", frames.get(0));
+
+		//a new stream starts clean
+		assertEquals("next", decode(decoder, "next\r\n").get(0));
+	}
+
+	@Test
+	public void testMarkersSplitAcrossChunks() {
+		FrameDecoder decoder = new FrameDecoder(null, "\r\n".getBytes(StandardCharsets.ISO_8859_1), 1024);
+		assertEquals(3, decode(decoder, "one\r", "\ntwo\r\nthree\r", "x\r", "\n").size());
+
+		//a self overlapping marker split after its repeated byte
+		decoder = new FrameDecoder(null, "aab".getBytes(StandardCharsets.ISO_8859_1), 1024);
+		List<String> frames = decode(decoder, "xyzaa", "abqq", "aab");
+		assertEquals(2, frames.size());
+		assertEquals("xyza", frames.get(0));
+		assertEquals("qq", frames.get(1));
+	}
+
+	@Test
+	public void testMarkersFedOneByteAtATime() {
+		String stream = "junk<<<first>>>x<<<sec>>ond>>>><<<<third>>>";
+		String[] chunks = new String[stream.length()];
+		for (int i = 0; i < chunks.length; i++)
+			chunks[i] = stream.substring(i, i + 1);
+
+		FrameDecoder decoder = new FrameDecoder("<<<".getBytes(StandardCharsets.ISO_8859_1), ">>>".getBytes(StandardCharsets.ISO_8859_1), 1024);
+		List<String> frames = decode(decoder, chunks);
+		assertEquals(3, frames.size());
+		assertEquals("first", frames.get(0));
+		assertEquals("sec>>ond", frames.get(1));
+		assertEquals("<third", frames.get(2));
+
+		//a self overlapping marker
+		decoder = new FrameDecoder(null, "aab".getBytes(StandardCharsets.ISO_8859_1), 1024);
+		frames = decode(decoder, "x", "y", "a", "a", "a", "b", "q", "a", "a", "a", "a", "b");
+		assertEquals(2, frames.size());
+		assertEquals("xya", frames.get(0));
+		assertEquals("qaa", frames.get(1));
+	}
+
+	@Test
+	public void testMatchesNaiveSplit() {
+		Random random = new Random(7);
+		StringBuilder stream = new StringBuilder();
+		List<String> expected = new ArrayList<>();
+		for (int f = 0; f < 500; f++) {
+			StringBuilder frame = new StringBuilder();
+			int length = 1 + random.nextInt(40);
+			for (int i = 0; i < length; i++)
+				frame.append((char) ('a' + random.nextInt(4)));
+			expected.add(frame.toString());
+			stream.append(frame).append('|');
+		}
+
+		for (boolean direct : new boolean[] { false, true }) {
+			for (ByteOrder order : new ByteOrder[] { ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN }) {
+				List<String> chunks = new ArrayList<>();
+				for (int i = 0; i < stream.length();) {
+					int next = Math.min(stream.length(), i + random.nextInt(30));
+					chunks.add(stream.substring(i, next));
+					i = next;
+				}
+				FrameDecoder decoder = FrameDecoder.fromConfiguration(singleton(Keywords.INPUT_DELIM, "|"), null);
+				assertEquals(expected, decode(decoder, direct, order, chunks.toArray(new String[chunks.size()])));
+			}
+		}
+
+		//a marker longer than most chunks
+		String delimited = String.join("abcab", expected) + "abcab";
+		List<String> chunks = new ArrayList<>();
+		for (int i = 0; i < delimited.length();) {
+			int next = Math.min(delimited.length(), i + 1 + random.nextInt(3));
+			chunks.add(delimited.substring(i, next));
+			i = next;
+		}
+		List<String> naive = new ArrayList<>();
+		for (String frame : delimited.split("abcab"))
+			if (!frame.isEmpty())
+				naive.add(frame);
+		FrameDecoder decoder = new FrameDecoder(null, "abcab".getBytes(StandardCharsets.ISO_8859_1), 1024);
+		assertEquals(naive, decode(decoder, chunks.toArray(new String[chunks.size()])));
+	}
+
+	@Test
+	public void testFixedLengthAndOversizedFrames() {
+		FrameDecoder decoder = FrameDecoder.fromConfiguration(singleton(Keywords.MSG_LENGTH, "4"), null);
+		List<String> frames = decode(decoder, "abcdef", "gh", "ijklmn");
+		assertEquals(3, frames.size());
+		assertEquals("efgh", frames.get(1));
+		assertEquals("ijkl", frames.get(2));
+
+		decoder = new FrameDecoder(null, new byte[] { ';' }, 4);
+		frames = decode(decoder, "ok;too", "long;fine;toolong;");
+		assertEquals(2, frames.size());
+		assertEquals("fine", frames.get(1));
+		assertEquals(2, decoder.getDroppedFrames());
+	}
+
+	private static Map<String, Object> singleton(String key, Object value) {
+		Map<String, Object> map = new HashMap<>();
+		map.put(key, value);
+		return map;
+	}
+
+}
@@ -0,0 +1,97 @@
+package frisbee.tests.communications;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Observable;
+import java.util.Observer;
+
+import org.junit.Test;
+
+import frisbee.communications.IngressRing;
+import frisbee.communications.MyConnection;
+import frisbee.communications.WaitStrategy;
+import frisbee.configuration.Keywords;
+
+public class TestIngressRing {
+
+	private static class RecordingObserver implements Observer {
+
+		private final List<Object> received = Collections.synchronizedList(new ArrayList<Object>());
+
+		@Override
+		public void update(Observable o, Object arg) {
+			received.add(arg);
+		}
+	}
+
+	@Test
+	public void testCapacityIsRoundedToPowerOfTwo() {
+		MyConnection connection = new MyConnection();
+		connection.setConnectionID("c");
+
+		IngressRing ring = new IngressRing(connection, 100, 1, WaitStrategy.SLEEPING);
+		assertEquals(128, ring.getCapacity());
+		ring.halt(1000);
+	}
+
+	@Test
+	public void testSingleConsumerPreservesOrder() {
+		MyConnection connection = new MyConnection();
+		connection.setConnectionID("c");
+		RecordingObserver observer = new RecordingObserver();
+		connection.addObserver(observer);
+
+		// a small ring forces the producer to wrap around and wait on the consumer
+		IngressRing ring = new IngressRing(connection, 4, 1, WaitStrategy.BLOCKING);
+		for (int i = 0; i < 10000; i++)
+			assertTrue(ring.publish(i, 0));
+		ring.halt(10000);
+
+		assertEquals(10000, observer.received.size());
+		for (int i = 0; i < 10000; i++)
+			assertEquals(i, observer.received.get(i));
+	}
+
+	@Test
+	public void testSeveralConsumersDeliverEveryPayloadOnce() {
+		MyConnection connection = new MyConnection();
+		connection.setConnectionID("c");
+		RecordingObserver observer = new RecordingObserver();
+		connection.addObserver(observer);
+
+		IngressRing ring = new IngressRing(connection, 64, 4, WaitStrategy.YIELDING);
+		for (int i = 0; i < 10000; i++)
+			assertTrue(ring.publish(i, 0));
+		ring.halt(10000);
+
+		List<Object> received = new ArrayList<>(observer.received);
+		assertEquals(10000, received.size());
+		Collections.sort(received, (a, b) -> Integer.compare((Integer) a, (Integer) b));
+		for (int i = 0; i < 10000; i++)
+			assertEquals(i, received.get(i));
+	}
+
+	@Test
+	public void testIngressConfiguredFromConnectionParameters() {
+		MyConnection connection = new MyConnection();
+		connection.setConnectionID("c");
+
+		Map<String, Object> parameters = new HashMap<>();
+		parameters.put(Keywords.INGRESS_SIZE.toLowerCase(), "1000");
+		parameters.put(Keywords.INGRESS_WORKERS.toLowerCase(), "2");
+		connection.setConnectionParameters(parameters);
+
+		connection.startIngress();
+		assertNotNull(connection.getIngress());
+		assertEquals(1024, connection.getIngress().getCapacity());
+
+		connection.stopIngress(1000);
+		assertNull(connection.getIngress());
+	}
+
+}
@@ -0,0 +1,158 @@
+package frisbee.tests.communications;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+
+import frisbee.Frisbee;
+import frisbee.communications.ConnectionRoutes;
+import frisbee.communications.FileConnector;
+import frisbee.communications.MappedFileConnection;
+import frisbee.configuration.FrisbeeConfig;
+import frisbee.configuration.Keywords;
+import frisbee.messaging.MessageFieldConfig;
+import frisbee.messaging.MessageIOConfig;
+import frisbee.messaging.MessageMapping;
+import frisbee.messaging.SlotPayload;
+
+public class TestMappedFileConnection {
+
+	private static class RecordingObserver implements Observer {
+
+		private final Set<Object> received = ConcurrentHashMap.newKeySet();
+		private final Map<Long, Object> ordered = new ConcurrentHashMap<>();
+
+		@Override
+		public void update(Observable o, Object arg) {
+			Object id = ((Map<?, ?>) arg).get("id");
+			received.add(id);
+			ordered.put(((SlotPayload) arg).getReceivedOrder(), id);
+		}
+	}
+
+	private static MappedFileConnection scan(String content, Map<String, Object> inputArgs, RecordingObserver observer) throws Exception {
+		File file = File.createTempFile("frisbee", ".dat");
+		file.deleteOnExit();
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.ISO_8859_1));
+
+		Map<String, Object> fieldArgs = new HashMap<>();
+		fieldArgs.put(Keywords.FIELD_KEY, "id");
+		fieldArgs.put(Keywords.FLD_LENGTH, 6);
+		MessageMapping mapping = new MessageMapping("m");
+		mapping.setInput(new MessageIOConfig("file", MessageIOConfig.Mode.ASYNC, inputArgs));
+		mapping.setFields(new LinkedList<>(Arrays.asList(new MessageFieldConfig("f", "file", fieldArgs, new LinkedHashMap<String, Map<String, Object>>()))));
+		mapping.setSyncOutputs(new LinkedList<MessageIOConfig>());
+		mapping.setAsyncOutputs(new LinkedList<MessageIOConfig>());
+
+		FrisbeeConfig config = new FrisbeeConfig("f");
+		config.setMessageMappings(new LinkedList<>(Arrays.asList(mapping)));
+
+		Map<String, Object> parameters = new HashMap<>();
+		parameters.put(Keywords.FILE_PATH, file.getPath());
+		parameters.put(Keywords.FILE_SEGMENT_SIZE, "1000");
+		parameters.put(Keywords.FILE_PARALLELISM, "4");
+
+		FileConnector connector = new FileConnector();
+		MappedFileConnection connection = new MappedFileConnection();
+		connection.setConnectionID("file");
+		connection.setParentConnector(connector);
+		connection.setConnectionParameters(parameters);
+		connector.addConnection(connection);
+		connection.setRoutes(new ConnectionRoutes("file", Arrays.asList(new Frisbee(config))));
+		connection.addObserver(observer);
+
+		connection.run();
+		return connection;
+	}
+
+	private static void assertSegments(MappedFileConnection connection, long records, long bytes) {
+		List<MappedFileConnection.Segment> segments = connection.getSegments();
+		assertTrue(segments.size() > 1);
+
+		long offset = 0;
+		long total = 0;
+		for (int i = 0; i < segments.size(); i++) {
+			assertEquals(i, segments.get(i).getIndex());
+			assertEquals(offset, segments.get(i).getOffset());
+			offset += segments.get(i).getLength();
+			total += segments.get(i).getRecords();
+		}
+		assertEquals(bytes, offset);
+		assertEquals(records, total);
+		assertEquals(records, connection.getRecordCount());
+		assertEquals(bytes, connection.getByteCount());
+		assertTrue(connection.getRecordsPerSecond() > 0);
+	}
+
+	private static void assertFileOrderRestored(MappedFileConnection connection, RecordingObserver observer, int records) {
+		assertEquals(records, observer.ordered.size());
+
+		//sorted by received order, the records come back in file order, numbered from 0 in every segment
+		List<Long> keys = new ArrayList<>(observer.ordered.keySet());
+		Collections.sort(keys);
+		int segment = 0;
+		long sequence = 0;
+		for (int i = 0; i < keys.size(); i++) {
+			long key = keys.get(i);
+			assertEquals(String.format("%06d", i), observer.ordered.get(key));
+			if (MappedFileConnection.segmentIndex(key) != segment) {
+				assertEquals(connection.getSegments().get(segment).getRecords(), sequence);
+				segment = MappedFileConnection.segmentIndex(key);
+				sequence = 0;
+			}
+			assertEquals(sequence++, MappedFileConnection.recordSequence(key));
+		}
+		assertEquals(connection.getSegments().size() - 1, segment);
+	}
+
+	@Test
+	public void testDelimitedRecordsScannedInSegments() throws Exception {
+		StringBuilder content = new StringBuilder();
+		for (int i = 0; i < 10000; i++)
+			content.append(String.format("%06d", i)).append(i == 9999 ? "" : "\n");
+
+		Map<String, Object> inputArgs = new HashMap<>();
+		inputArgs.put(Keywords.INPUT_DELIM, "\n");
+		RecordingObserver observer = new RecordingObserver();
+		MappedFileConnection connection = scan(content.toString(), inputArgs, observer);
+
+		//the last record has no delimiter
+		assertEquals(10000, observer.received.size());
+		assertTrue(observer.received.contains("009999"));
+		assertSegments(connection, 10000, content.length());
+		assertFileOrderRestored(connection, observer, 10000);
+	}
+
+	@Test
+	public void testFixedLengthRecordsScannedInSegments() throws Exception {
+		StringBuilder content = new StringBuilder();
+		for (int i = 0; i < 5000; i++)
+			content.append(String.format("%06d", i));
+
+		RecordingObserver observer = new RecordingObserver();
+		MappedFileConnection connection = scan(content.toString(), new HashMap<String, Object>(), observer);
+
+		assertEquals(5000, observer.received.size());
+		for (MappedFileConnection.Segment segment : connection.getSegments())
+			assertEquals(0, segment.getOffset() % 6);
+		assertSegments(connection, 5000, content.length());
+		assertFileOrderRestored(connection, observer, 5000);
+	}
+
+}
@@ -0,0 +1,257 @@
+package frisbee.tests.communications;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import frisbee.communications.FileConnector;
+import frisbee.communications.MappedFileOutputConnection;
+import frisbee.configuration.Keywords;
+import frisbee.exceptions.LoggedException;
+import frisbee.messaging.Message;
+import frisbee.messaging.MessageBuilder;
+import frisbee.messaging.MessageFieldConfig;
+import frisbee.messaging.MessageIOConfig;
+import frisbee.messaging.MessageMapping;
+
+public class TestMappedFileOutputConnection {
+
+	private static MessageMapping mapping() {
+		Map<String, Object> inputArgs = new HashMap<>();
+		inputArgs.put(Keywords.FIELD_KEY, "id");
+		Map<String, Object> outputField = new HashMap<>();
+		outputField.put(Keywords.FLD_LENGTH, 7);
+		LinkedHashMap<String, Map<String, Object>> outputFields = new LinkedHashMap<>();
+		outputFields.put("out", outputField);
+
+		Map<String, Object> outputArgs = new HashMap<>();
+		outputArgs.put(Keywords.MSG_FOOTER, "\n");
+		MessageMapping mapping = new MessageMapping("m");
+		mapping.setFields(new LinkedList<>(Arrays.asList(new MessageFieldConfig("f", "in", inputArgs, outputFields))));
+		mapping.setSyncOutputs(new LinkedList<MessageIOConfig>());
+		mapping.setAsyncOutputs(new LinkedList<>(Arrays.asList(new MessageIOConfig("out", MessageIOConfig.Mode.ASYNC, outputArgs))));
+		return mapping;
+	}
+
+	private static MappedFileOutputConnection connection(File directory, Object... parameters) throws Exception {
+		return connection(new MappedFileOutputConnection(), directory, parameters);
+	}
+
+	private static MappedFileOutputConnection connection(MappedFileOutputConnection connection, File directory, Object... parameters)
+			throws Exception {
+		Map<String, Object> connectionParameters = new HashMap<>();
+		connectionParameters.put(Keywords.FILE_PATH, new File(directory, "out").getPath());
+		for (int i = 0; i < parameters.length; i += 2)
+			connectionParameters.put(parameters[i].toString(), parameters[i + 1]);
+
+		FileConnector connector = new FileConnector();
+		connection.setConnectionID("out");
+		connection.setParentConnector(connector);
+		connection.setConnectionParameters(connectionParameters);
+		connector.addConnection(connection);
+		return connection;
+	}
+
+	private static List<String> lines(File directory) throws Exception {
+		File[] files = directory.listFiles();
+		Arrays.sort(files);
+		List<String> lines = new ArrayList<>();
+		for (File file : files) {
+			String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.ISO_8859_1);
+			assertTrue(content.endsWith("\n"));
+			lines.addAll(Arrays.asList(content.split("\n")));
+		}
+		return lines;
+	}
+
+	@Test
+	public void testConcurrentWritersWithGroupCommit() throws Exception {
+		File directory = Files.createTempDirectory("frisbee").toFile();
+		MessageMapping mapping = mapping();
+		MappedFileOutputConnection connection = connection(directory, Keywords.FILE_ROLL_SIZE, "1000",
+				Keywords.FILE_DURABILITY, "group", Keywords.FILE_GROUP_SIZE, "8", Keywords.FILE_FORCE_INTERVAL, "5");
+
+		Thread[] writers = new Thread[4];
+		List<Exception> failures = new ArrayList<>();
+		for (int t = 0; t < writers.length; t++) {
+			int writer = t;
+			writers[t] = new Thread(() -> {
+				try {
+					for (int i = 0; i < 250; i++) {
+						Map<String, Object> payload = new HashMap<>();
+						payload.put("id", String.format("%d%06d", writer, i));
+						Message message = MessageBuilder.transform(mapping, payload, 0);
+						if (i % 2 == 0) {
+							connection.write(message);
+						} else {
+							connection.writeBatch(Arrays.asList(message));
+						}
+						message.release();
+					}
+				} catch (Exception e) {
+					synchronized (failures) {
+						failures.add(e);
+					}
+				}
+			});
+			writers[t].start();
+		}
+		for (Thread writer : writers)
+			writer.join();
+		assertTrue(failures.isEmpty());
+		assertEquals(1000, connection.getAppendedCount());
+		assertEquals(1000, connection.getCommittedCount());
+		connection.close();
+
+		//no frame is torn or lost, and every segment is truncated to whole frames
+		List<String> lines = lines(directory);
+		assertEquals(1000, lines.size());
+		assertEquals(1000, new HashSet<>(lines).size());
+		for (File file : directory.listFiles()) {
+			assertTrue(file.length() <= 1000);
+			assertEquals(0, file.length() % 8);
+		}
+		assertTrue(directory.listFiles().length > 1);
+	}
+
+	@Test(timeout = 60000)
+	public void testLoneGroupCommitWriterForcesAtOnce() throws Exception {
+		File directory = Files.createTempDirectory("frisbee").toFile();
+		MessageMapping mapping = mapping();
+		MappedFileOutputConnection connection = connection(directory,
+				Keywords.FILE_DURABILITY, "group", Keywords.FILE_GROUP_SIZE, "64", Keywords.FILE_FORCE_INTERVAL, "1000");
+
+		//a writer waiting alone does not wait for a group to gather
+		long start = System.nanoTime();
+		for (int i = 0; i < 20; i++) {
+			Map<String, Object> payload = new HashMap<>();
+			payload.put("id", "a" + i);
+			Message message = MessageBuilder.transform(mapping, payload, 0);
+			connection.write(message);
+			message.release();
+			assertEquals(i + 1, connection.getCommittedCount());
+		}
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000);
+		connection.close();
+		assertEquals(20, lines(directory).size());
+	}
+
+	@Test
+	public void testRollingGroupCommitForcesEveryWrittenFrame() throws Exception {
+		File directory = Files.createTempDirectory("frisbee").toFile();
+		MessageMapping mapping = mapping();
+		Map<Integer, Integer> forced = new ConcurrentHashMap<>();
+		MappedFileOutputConnection connection = connection(new MappedFileOutputConnection() {
+			@Override
+			protected void forced(int segmentIndex, int length) {
+				forced.merge(segmentIndex, length, Math::max);
+			}
+		}, directory, Keywords.FILE_ROLL_SIZE, "48", Keywords.FILE_DURABILITY, "group", Keywords.FILE_GROUP_SIZE, "2",
+				Keywords.FILE_FORCE_INTERVAL, "1000");
+
+		//the order in which the writes return, and the forced lengths seen then
+		AtomicInteger order = new AtomicInteger();
+		Map<String, Integer> returned = new ConcurrentHashMap<>();
+		Map<String, Map<Integer, Integer>> seen = new ConcurrentHashMap<>();
+		Thread[] writers = new Thread[8];
+		List<Exception> failures = new ArrayList<>();
+		for (int t = 0; t < writers.length; t++) {
+			int writer = t;
+			writers[t] = new Thread(() -> {
+				try {
+					for (int i = 0; i < 125; i++) {
+						Map<String, Object> payload = new HashMap<>();
+						String id = String.format("%d%06d", writer, i);
+						payload.put("id", id);
+						Message message = MessageBuilder.transform(mapping, payload, 0);
+						connection.write(message);
+						message.release();
+						returned.put(id, order.incrementAndGet());
+						seen.put(id, new HashMap<>(forced));
+					}
+				} catch (Exception e) {
+					synchronized (failures) {
+						failures.add(e);
+					}
+				}
+			});
+			writers[t].start();
+		}
+		for (Thread writer : writers)
+			writer.join();
+		assertTrue(failures.isEmpty());
+		assertEquals(1000, connection.getCommittedCount());
+		connection.close();
+
+		//frames are copied out of order, so once a write returns, the bytes forced in its segment cover at least
+		//every frame of the segment whose write returned before
+		int frames = 0;
+		for (File file : directory.listFiles()) {
+			int segmentIndex = Integer.parseInt(file.getName().substring(file.getName().lastIndexOf('.') + 1));
+			String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.ISO_8859_1);
+			List<String> ids = new ArrayList<>();
+			for (int end = 8; end <= content.length(); end += 8)
+				ids.add(content.substring(end - 8, end - 1));
+			ids.sort((a, b) -> returned.get(a) - returned.get(b));
+			for (int i = 0; i < ids.size(); i++, frames++) {
+				Integer length = seen.get(ids.get(i)).get(segmentIndex);
+				assertNotNull(ids.get(i), length);
+				assertTrue(ids.get(i), length >= (i + 1) * 8);
+			}
+		}
+		assertEquals(1000, frames);
+		assertTrue(directory.listFiles().length > 10);
+	}
+
+	@Test
+	public void testReopenedConnectionStartsNextSegment() throws Exception {
+		File directory = Files.createTempDirectory("frisbee").toFile();
+		MessageMapping mapping = mapping();
+		MappedFileOutputConnection connection = connection(directory, Keywords.FILE_DURABILITY, "periodic", Keywords.FILE_FORCE_INTERVAL, "10");
+
+		List<Message> batch = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			Map<String, Object> payload = new HashMap<>();
+			payload.put("id", "a" + i);
+			batch.add(MessageBuilder.transform(mapping, payload, 0));
+		}
+		connection.writeBatch(batch);
+		assertEquals(0, connection.getSegmentIndex());
+		connection.reset();
+		assertEquals(1, connection.getSegmentIndex());
+		connection.write(batch.get(0));
+		connection.close();
+
+		//closed on purpose, so not opened again by a late write
+		try {
+			connection.write(batch.get(1));
+			fail();
+		} catch (LoggedException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+		for (Message message : batch)
+			message.release();
+
+		Set<String> names = new HashSet<>(Arrays.asList(directory.list()));
+		assertEquals(new HashSet<>(Arrays.asList("out.000000", "out.000001")), names);
+		assertEquals(Arrays.asList("     a0", "     a1", "     a2", "     a0"), lines(directory));
+		assertEquals(-1, connection.getSegmentIndex());
+	}
+
+}
@@ -0,0 +1,306 @@
+package frisbee.tests.communications;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.Set;
+
+import org.junit.Test;
+
+import frisbee.Frisbee;
+import frisbee.communications.Connection;
+import frisbee.communications.ConnectionRoutes;
+import frisbee.communications.TcpConnection;
+import frisbee.communications.TcpConnector;
+import frisbee.configuration.FrisbeeConfig;
+import frisbee.configuration.Keywords;
+import frisbee.messaging.Message;
+import frisbee.messaging.MessageBuilder;
+import frisbee.messaging.MessageDispatcher;
+import frisbee.messaging.MessageFieldConfig;
+import frisbee.messaging.MessageIOConfig;
+import frisbee.messaging.MessageMapping;
+import frisbee.tools.ThreadMode;
+
+public class TestTcpConnection {
+
+	private static class RecordingObserver implements Observer {
+
+		private final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+
+		@Override
+		public void update(Observable o, Object arg) {
+			Map<?, ?> payload = (Map<?, ?>) arg;
+			received.add(payload.get("type") + ":" + payload.get("name"));
+		}
+	}
+
+	private static MessageFieldConfig field(String id, String key, int length, String... outputs) {
+		Map<String, Object> inputArgs = new HashMap<>();
+		inputArgs.put(Keywords.FIELD_KEY, key);
+		inputArgs.put(Keywords.FLD_LENGTH, length);
+		Map<String, Object> outputField = new HashMap<>();
+		outputField.put(Keywords.FLD_LENGTH, length);
+		LinkedHashMap<String, Map<String, Object>> outputFields = new LinkedHashMap<>();
+		for (String output : outputs)
+			outputFields.put(output, outputField);
+		return new MessageFieldConfig(id, "srv", inputArgs, outputFields);
+	}
+
+	private static TcpConnection connection(TcpConnector connector, String id, Object... parameters) throws Exception {
+		Map<String, Object> connectionParameters = new HashMap<>();
+		for (int i = 0; i < parameters.length; i += 2)
+			connectionParameters.put(parameters[i].toString(), parameters[i + 1]);
+
+		TcpConnection connection = new TcpConnection();
+		connection.setConnectionID(id);
+		connection.setParentConnector(connector);
+		connection.setConnectionParameters(connectionParameters);
+		connector.addConnection(connection);
+		return connection;
+	}
+
+	private static void await(RecordingObserver observer, int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (observer.received.size() < count && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+	}
+
+	@Test
+	public void testFramesExchangedThroughSelectorLoops() throws Exception {
+		MessageMapping mapping = new MessageMapping("m");
+		mapping.setInput(new MessageIOConfig("srv", MessageIOConfig.Mode.ASYNC, new HashMap<String, Object>()));
+		mapping.setFields(new LinkedList<>(Arrays.asList(field("t", "type", 2, "cli"), field("n", "name", 6, "cli"))));
+		mapping.setSyncOutputs(new LinkedList<MessageIOConfig>());
+		mapping.setAsyncOutputs(new LinkedList<>(Arrays.asList(new MessageIOConfig("cli", MessageIOConfig.Mode.ASYNC, new HashMap<String, Object>()))));
+
+		FrisbeeConfig config = new FrisbeeConfig("f");
+		config.setMessageMappings(new LinkedList<>(Arrays.asList(mapping)));
+		List<Frisbee> frisbees = Arrays.asList(new Frisbee(config));
+
+		Map<String, Object> connectorParameters = new HashMap<>();
+		connectorParameters.put(Keywords.TCP_SELECTORS, "2");
+		TcpConnector connector = new TcpConnector();
+		connector.setConnectorID("tcp");
+		connector.setConnectorParameters(connectorParameters);
+
+		TcpConnection server = connection(connector, "srv", Keywords.TCP_HOST, "127.0.0.1", Keywords.TCP_PORT, "0");
+		server.setRoutes(new ConnectionRoutes("srv", frisbees));
+		RecordingObserver observer = new RecordingObserver();
+		server.addObserver(observer);
+		server.run();
+		assertEquals(2, connector.getSelectorCount());
+		assertTrue(server.getLocalPort() > 0);
+
+		TcpConnection client = connection(connector, "cli", Keywords.TCP_HOST, "127.0.0.1",
+				Keywords.TCP_PORT, server.getLocalPort(), Keywords.TCP_ROLE, Keywords.TCP_ROLE_CLIENT);
+		client.setRoutes(new ConnectionRoutes("cli", frisbees));
+		client.open();
+
+		//written before the connection completes, queued until it does
+		Map<String, Object> payload = new HashMap<>();
+		payload.put("type", "01");
+		payload.put("name", "first");
+		Message first = MessageBuilder.transform(mapping, payload, 0);
+		client.write(first);
+		first.release();
+
+		List<Message> batch = new ArrayList<>();
+		for (int i = 0; i < 500; i++) {
+			payload.put("type", String.format("%02d", i % 100));
+			payload.put("name", "n" + i);
+			batch.add(MessageBuilder.transform(mapping, payload, 0));
+		}
+		client.writeBatch(batch);
+		for (Message message : batch)
+			message.release();
+
+		await(observer, 501);
+		assertEquals(1, server.getPeerCount());
+		assertEquals(501, observer.received.size());
+		assertEquals("01: first", observer.received.get(0));
+		assertEquals("99:  n499", observer.received.get(500));
+
+		connector.disconnect();
+		assertEquals(0, connector.getSelectorCount());
+		assertEquals(0, server.getPeerCount());
+	}
+
+	@Test(timeout = 60000)
+	public void testClientsOfOneServerPublishToItsIngressRing() throws Exception {
+		MessageMapping mapping = new MessageMapping("m");
+		mapping.setInput(new MessageIOConfig("srv", MessageIOConfig.Mode.ASYNC, new HashMap<String, Object>()));
+		String[] clientIDs = { "cli0", "cli1", "cli2", "cli3" };
+		List<MessageIOConfig> outputs = new LinkedList<>();
+		for (String clientID : clientIDs)
+			outputs.add(new MessageIOConfig(clientID, MessageIOConfig.Mode.ASYNC, new HashMap<String, Object>()));
+		mapping.setFields(new LinkedList<>(Arrays.asList(field("t", "type", 2, clientIDs), field("n", "name", 6, clientIDs))));
+		mapping.setSyncOutputs(new LinkedList<MessageIOConfig>());
+		mapping.setAsyncOutputs(outputs);
+
+		FrisbeeConfig config = new FrisbeeConfig("f");
+		config.setMessageMappings(new LinkedList<>(Arrays.asList(mapping)));
+		List<Frisbee> frisbees = Arrays.asList(new Frisbee(config));
+
+		Map<String, Object> connectorParameters = new HashMap<>();
+		connectorParameters.put(Keywords.TCP_SELECTORS, "4");
+		TcpConnector connector = new TcpConnector();
+		connector.setConnectorID("tcp");
+		connector.setConnectorParameters(connectorParameters);
+
+		TcpConnection server = connection(connector, "srv", Keywords.TCP_HOST, "127.0.0.1", Keywords.TCP_PORT, "0",
+				Keywords.INGRESS_SIZE, "64", Keywords.INGRESS_WORKERS, "2");
+		server.setRoutes(new ConnectionRoutes("srv", frisbees));
+		RecordingObserver observer = new RecordingObserver();
+		server.addObserver(observer);
+		server.startIngress();
+		server.run();
+
+		//every client writes on its own thread through a small queue, so writers also wait for the loops
+		List<TcpConnection> clients = new ArrayList<>();
+		List<Thread> writers = new ArrayList<>();
+		for (int c = 0; c < clientIDs.length; c++) {
+			TcpConnection client = connection(connector, clientIDs[c], Keywords.TCP_HOST, "127.0.0.1",
+					Keywords.TCP_PORT, server.getLocalPort(), Keywords.TCP_ROLE, Keywords.TCP_ROLE_CLIENT, Keywords.TCP_SEND_QUEUE, "2");
+			client.setRoutes(new ConnectionRoutes(clientIDs[c], frisbees));
+			client.open();
+			clients.add(client);
+
+			String type = String.format("%02d", c);
+			writers.add(new Thread(() -> {
+				Map<String, Object> payload = new HashMap<>();
+				payload.put("type", type);
+				for (int i = 0; i < 500; i++) {
+					payload.put("name", "n" + i);
+					Message message = MessageBuilder.transform(mapping, payload, 0);
+					try {
+						client.write(message);
+					} catch (Exception e) {
+						throw new IllegalStateException(e);
+					} finally {
+						message.release();
+					}
+				}
+			}));
+		}
+		for (Thread writer : writers)
+			writer.start();
+		for (Thread writer : writers)
+			writer.join();
+
+		await(observer, 2000);
+		server.stopIngress(1000);
+		assertEquals(4, server.getPeerCount());
+		assertEquals(2000, observer.received.size());
+
+		Set<String> expected = new HashSet<>();
+		for (int c = 0; c < 4; c++)
+			for (int i = 0; i < 500; i++)
+				expected.add(String.format("%02d:%6s", c, "n" + i));
+		assertEquals(expected, new HashSet<>(observer.received));
+
+		connector.disconnect();
+	}
+
+	@Test(timeout = 120000)
+	@SuppressWarnings("unchecked")
+	public void testBackpressuredInputDoesNotHoldTheLoopOfItsOutput() throws Exception {
+		Map<String, Object> outputArgs = new HashMap<>();
+		outputArgs.put(Keywords.OUTPUT_HIGH_WATERMARK, "64");
+		MessageMapping mapping = new MessageMapping("m");
+		mapping.setInput(new MessageIOConfig("srv", MessageIOConfig.Mode.ASYNC, new HashMap<String, Object>()));
+		mapping.setFields(new LinkedList<>(Arrays.asList(field("t", "type", 2, "cli"), field("n", "name", 198, "cli"))));
+		mapping.setSyncOutputs(new LinkedList<MessageIOConfig>());
+		mapping.setAsyncOutputs(new LinkedList<>(Arrays.asList(new MessageIOConfig("cli", MessageIOConfig.Mode.ASYNC, outputArgs))));
+
+		FrisbeeConfig config = new FrisbeeConfig("f");
+		config.setMessageMappings(new LinkedList<>(Arrays.asList(mapping)));
+		List<Frisbee> frisbees = Arrays.asList(new Frisbee(config));
+
+		//the input and the output share the single loop of the connector
+		Map<String, Object> connectorParameters = new HashMap<>();
+		connectorParameters.put(Keywords.TCP_SELECTORS, "1");
+		TcpConnector connector = new TcpConnector();
+		connector.setConnectorID("tcp");
+		connector.setConnectorParameters(connectorParameters);
+
+		TcpConnection server = connection(connector, "srv", Keywords.TCP_HOST, "127.0.0.1", Keywords.TCP_PORT, "0");
+		server.setRoutes(new ConnectionRoutes("srv", frisbees));
+		server.run();
+
+		ServerSocket sink = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+		TcpConnection client = connection(connector, "cli", Keywords.TCP_HOST, "127.0.0.1",
+				Keywords.TCP_PORT, sink.getLocalPort(), Keywords.TCP_ROLE, Keywords.TCP_ROLE_CLIENT, Keywords.TCP_SEND_QUEUE, "2");
+		client.setRoutes(new ConnectionRoutes("cli", frisbees));
+		client.open();
+		Socket sinkSocket = sink.accept();
+		sinkSocket.setSoTimeout(5000);
+
+		Map<String, Connection> connections = new HashMap<>();
+		connections.put("srv", server);
+		connections.put("cli", client);
+		MessageDispatcher dispatcher = new MessageDispatcher("test", ThreadMode.PLATFORM, 2, connections::get);
+		server.addObserver((o, arg) -> dispatcher.dispatch(MessageBuilder.transform(mapping, new HashMap<>((Map<String, Object>) arg), 0)));
+
+		int frames = 50000;
+		int frameLength = 200;
+		Thread feeder = new Thread(() -> {
+			try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort())) {
+				OutputStream out = socket.getOutputStream();
+				for (int i = 0; i < frames; i++) {
+					byte[] text = String.format("%02d%198s", i % 100, "n" + i).getBytes(StandardCharsets.ISO_8859_1);
+					out.write(text);
+				}
+				out.flush();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		});
+		feeder.setDaemon(true);
+		feeder.start();
+
+		//the sink reads nothing until the output backlog pushed back on the input
+		long deadline = System.currentTimeMillis() + 30000;
+		while (!server.isBackpressured() && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+		assertTrue(server.isBackpressured());
+
+		long received = 0;
+		InputStream in = sinkSocket.getInputStream();
+		byte[] buffer = new byte[4096];
+		try {
+			int read;
+			while (received < (long) frames * frameLength && (read = in.read(buffer)) > 0)
+				received += read;
+		} catch (SocketTimeoutException e) {
+			//fails below
+		}
+		assertEquals((long) frames * frameLength, received);
+		assertTrue(server.getBackpressureMillis() > 0);
+
+		feeder.join(10000);
+		dispatcher.shutdown(1000);
+		connector.disconnect();
+		sinkSocket.close();
+		sink.close();
+	}
+
+}
@@ -0,0 +1,209 @@
+package frisbee.tests.communications;
+
+import static org.junit.Assert.*;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.Set;
+
+import org.junit.Test;
+
+import frisbee.Frisbee;
+import frisbee.communications.ConnectionRoutes;
+import frisbee.communications.UdpConnection;
+import frisbee.communications.UdpConnector;
+import frisbee.configuration.FrisbeeConfig;
+import frisbee.configuration.Keywords;
+import frisbee.messaging.Message;
+import frisbee.messaging.MessageBuilder;
+import frisbee.messaging.MessageFieldConfig;
+import frisbee.messaging.MessageIOConfig;
+import frisbee.messaging.MessageMapping;
+import frisbee.messaging.MessagePool;
+
+public class TestUdpConnection {
+
+	private static class RecordingObserver implements Observer {
+
+		private final List<Object> received = Collections.synchronizedList(new ArrayList<Object>());
+
+		@Override
+		public void update(Observable o, Object arg) {
+			received.add(((Map<?, ?>) arg).get("id"));
+		}
+	}
+
+	private static MessageMapping mapping() {
+		Map<String, Object> inputArgs = new HashMap<>();
+		inputArgs.put(Keywords.INPUT_DELIM, "\n");
+		Map<String, Object> fieldArgs = new HashMap<>();
+		fieldArgs.put(Keywords.FIELD_KEY, "id");
+		fieldArgs.put(Keywords.FLD_LENGTH, 6);
+		Map<String, Object> outputField = new HashMap<>();
+		outputField.put(Keywords.FLD_LENGTH, 6);
+		LinkedHashMap<String, Map<String, Object>> outputFields = new LinkedHashMap<>();
+		outputFields.put("tx", outputField);
+		Map<String, Object> outputArgs = new HashMap<>();
+		outputArgs.put(Keywords.MSG_FOOTER, "\n");
+
+		MessageMapping mapping = new MessageMapping("m");
+		mapping.setInput(new MessageIOConfig("rx", MessageIOConfig.Mode.ASYNC, inputArgs));
+		mapping.setFields(new LinkedList<>(Arrays.asList(new MessageFieldConfig("f", "rx", fieldArgs, outputFields))));
+		mapping.setSyncOutputs(new LinkedList<MessageIOConfig>());
+		mapping.setAsyncOutputs(new LinkedList<>(Arrays.asList(new MessageIOConfig("tx", MessageIOConfig.Mode.ASYNC, outputArgs))));
+		return mapping;
+	}
+
+	private static UdpConnection connection(UdpConnector connector, String id, List<Frisbee> frisbees, Object... parameters) throws Exception {
+		Map<String, Object> connectionParameters = new HashMap<>();
+		for (int i = 0; i < parameters.length; i += 2)
+			connectionParameters.put(parameters[i].toString(), parameters[i + 1]);
+
+		UdpConnection connection = new UdpConnection();
+		connection.setConnectionID(id);
+		connection.setParentConnector(connector);
+		connection.setConnectionParameters(connectionParameters);
+		connection.setRoutes(new ConnectionRoutes(id, frisbees));
+		connector.addConnection(connection);
+		return connection;
+	}
+
+	private static List<Message> batch(MessageMapping mapping, int from, int count) {
+		List<Message> batch = new ArrayList<>();
+		for (int i = from; i < from + count; i++) {
+			Map<String, Object> payload = new HashMap<>();
+			payload.put("id", String.format("%06d", i));
+			batch.add(MessageBuilder.transform(mapping, payload, 0));
+		}
+		return batch;
+	}
+
+	private static void await(RecordingObserver observer, int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (observer.received.size() < count && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+	}
+
+	@Test
+	public void testBatchPackedIntoDatagramsAndDropsCounted() throws Exception {
+		MessageMapping mapping = mapping();
+		FrisbeeConfig config = new FrisbeeConfig("f");
+		config.setMessageMappings(new LinkedList<>(Arrays.asList(mapping)));
+		List<Frisbee> frisbees = Arrays.asList(new Frisbee(config));
+
+		UdpConnector connector = new UdpConnector();
+		UdpConnection receiver = connection(connector, "rx", frisbees, Keywords.UDP_HOST, "127.0.0.1", Keywords.UDP_PORT, "0",
+				Keywords.UDP_DATAGRAM_SIZE, "512", Keywords.UDP_RECEIVE_BUFFER, "1048576");
+		RecordingObserver observer = new RecordingObserver();
+		receiver.addObserver(observer);
+		receiver.open();
+		Thread listener = new Thread(receiver);
+		listener.start();
+		assertTrue(receiver.getLocalPort() > 0);
+
+		UdpConnection sender = connection(connector, "tx", frisbees, Keywords.UDP_REMOTE_HOST, "127.0.0.1",
+				Keywords.UDP_REMOTE_PORT, receiver.getLocalPort(), Keywords.UDP_DATAGRAM_SIZE, "512");
+		assertEquals(-1, sender.getLocalPort());
+
+		//73 frames of 7 bytes fit in a datagram, 300 frames take 5 datagrams
+		List<Message> messages = batch(mapping, 0, 300);
+		sender.writeBatch(messages);
+		for (Message message : messages)
+			message.release();
+		await(observer, 300);
+		assertEquals(300, observer.received.size());
+		assertEquals("000000", observer.received.get(0));
+		assertEquals("000299", observer.received.get(299));
+		assertEquals(5, receiver.getReceivedCount());
+
+		//dropped rather than waited for while paused
+		receiver.pause();
+		messages = batch(mapping, 300, 10);
+		sender.writeBatch(messages);
+		for (Message message : messages)
+			message.release();
+		long deadline = System.currentTimeMillis() + 10000;
+		while (receiver.getOverrunDrops() < 1 && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+		assertEquals(1, receiver.getOverrunDrops());
+		receiver.resume();
+
+		try (DatagramChannel raw = DatagramChannel.open()) {
+			raw.send(ByteBuffer.allocate(600), new InetSocketAddress("127.0.0.1", receiver.getLocalPort()));
+		}
+		deadline = System.currentTimeMillis() + 10000;
+		while (receiver.getTruncatedDrops() < 1 && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+		assertEquals(1, receiver.getTruncatedDrops());
+		assertEquals(300, observer.received.size());
+		assertEquals(0, sender.getSendDrops());
+
+		connector.disconnect();
+		listener.join(5000);
+		assertFalse(listener.isAlive());
+	}
+
+	@Test
+	public void testFramesPublishedToIngressRingUsePooledCopies() throws Exception {
+		MessagePool.setMode(MessagePool.Mode.ON);
+		try {
+			MessageMapping mapping = mapping();
+			FrisbeeConfig config = new FrisbeeConfig("f");
+			config.setMessageMappings(new LinkedList<>(Arrays.asList(mapping)));
+			List<Frisbee> frisbees = Arrays.asList(new Frisbee(config));
+
+			UdpConnector connector = new UdpConnector();
+			UdpConnection receiver = connection(connector, "rx", frisbees, Keywords.UDP_HOST, "127.0.0.1", Keywords.UDP_PORT, "0",
+					Keywords.UDP_DATAGRAM_SIZE, "512", Keywords.UDP_RECEIVE_BUFFER, "4194304", Keywords.INGRESS_SIZE, "64",
+					Keywords.INGRESS_WORKERS, "2");
+			RecordingObserver observer = new RecordingObserver();
+			receiver.addObserver(observer);
+			receiver.open();
+			receiver.startIngress();
+			Thread listener = new Thread(receiver);
+			listener.start();
+
+			UdpConnection sender = connection(connector, "tx", frisbees, Keywords.UDP_REMOTE_HOST, "127.0.0.1",
+					Keywords.UDP_REMOTE_PORT, receiver.getLocalPort(), Keywords.UDP_DATAGRAM_SIZE, "512");
+
+			//sent in small batches so the socket buffer never overflows
+			for (int from = 0; from < 2920; from += 292) {
+				List<Message> messages = batch(mapping, from, 292);
+				sender.writeBatch(messages);
+				for (Message message : messages)
+					message.release();
+				await(observer, from + 292);
+			}
+			assertEquals(2920, observer.received.size());
+
+			//the copies are recycled, and never overwritten while their payload is in use
+			Set<Object> ids = new HashSet<>(observer.received);
+			assertEquals(2920, ids.size());
+			for (int i = 0; i < 2920; i++)
+				assertTrue(ids.contains(String.format("%06d", i)));
+			//about the ring size plus the frames being dispatched
+			assertTrue(receiver.getFrameCopiesCreated() > 0);
+			assertTrue(receiver.getFrameCopiesCreated() <= 128);
+
+			connector.disconnect();
+			receiver.stopIngress(5000);
+			listener.join(5000);
+			assertFalse(listener.isAlive());
+		} finally {
+			MessagePool.setMode(MessagePool.Mode.OFF);
+		}
+	}
+
+}
@@ -0,0 +1,132 @@
+package frisbee.tests.messaging;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+import org.junit.Test;
+
+import frisbee.configuration.Keywords;
+import frisbee.messaging.CompiledMapping;
+import frisbee.messaging.ComposedTransformPlan;
+import frisbee.messaging.MessageFieldConfig;
+import frisbee.messaging.MessageIOConfig;
+import frisbee.messaging.MessageMapping;
+import frisbee.messaging.PayloadSchema;
+import frisbee.messaging.SlotPayload;
+import frisbee.messaging.TransformPlan;
+
+public class TestComposedTransformPlan {
+
+	private static MessageFieldConfig field(String id, String inputKey, String outputID, Object... outputKeyValues) {
+		Map<String, Object> inputArgs = new HashMap<>();
+		inputArgs.put(Keywords.FIELD_KEY, inputKey);
+		inputArgs.put(Keywords.FLD_DATEFORMAT, "yyyyMMdd");
+
+		Map<String, Object> outputField = new HashMap<>();
+		for (int i = 0; i < outputKeyValues.length; i += 2)
+			outputField.put((String) outputKeyValues[i], outputKeyValues[i + 1]);
+
+		LinkedHashMap<String, Map<String, Object>> outputArgs = new LinkedHashMap<>();
+		outputArgs.put(outputID, outputField);
+		return new MessageFieldConfig(id, "in", inputArgs, outputArgs);
+	}
+
+	private static MessageMapping mapping(String engine, MessageFieldConfig... fields) {
+		Map<String, Object> inputArgs = new HashMap<>();
+		if (engine != null)
+			inputArgs.put(Keywords.TRANSFORM_ENGINE, engine);
+
+		MessageMapping mapping = new MessageMapping("m");
+		mapping.setInput(new MessageIOConfig("in", MessageIOConfig.Mode.ASYNC, inputArgs));
+		mapping.setFields(new LinkedList<>(Arrays.asList(fields)));
+		return mapping;
+	}
+
+	private static void assertSameOutputs(Map<String, Object> expected, Map<String, Object> actual) {
+		assertEquals(expected, actual);
+		for (String outputID : expected.keySet()) {
+			SlotPayload expectedFields = (SlotPayload) expected.get(outputID);
+			SlotPayload actualFields = (SlotPayload) actual.get(outputID);
+			for (int ordinal = 0; ordinal < expectedFields.getSchema().size(); ordinal++) {
+				assertEquals(expectedFields.isLong(ordinal), actualFields.isLong(ordinal));
+				assertEquals(expectedFields.isDouble(ordinal), actualFields.isDouble(ordinal));
+			}
+		}
+	}
+
+	@Test
+	public void testComposedPlanMatchesInterpretedPlan() {
+		MessageMapping mapping = mapping(Keywords.TRANSFORM_ENGINE_COMPOSED,
+				field("copy", "k1", "out1"),
+				field("fit", "k2", "out1", Keywords.FLD_LENGTH, 6, Keywords.FLD_L_PAD, "0"),
+				field("cut", "k3", "out1", Keywords.FLD_LENGTH, 3, Keywords.FLD_TRUNK, Keywords.FLD_TRUNK_LEFT, Keywords.FLD_HEADER, "<"),
+				field("both", "k2", "out1", Keywords.FLD_LENGTH, 7, Keywords.FLD_L_PAD, "-", Keywords.FLD_R_PAD, "+", Keywords.FLD_FOOTER, ">"),
+				field("affix", "k4", "out1", Keywords.FLD_HEADER, "#", Keywords.FLD_FOOTER, "!"),
+				field("forced", "k1", "out2", "forceouputvalue", "F", Keywords.FLD_LENGTH, 4, Keywords.FLD_R_PAD, "."),
+				field("forcedLong", "k1", "out2", "forceouputvalue", "12", Keywords.FLD_TYPE, "Integer"),
+				field("long", "k5", "out2", Keywords.FLD_TYPE, "Integer"),
+				field("typedText", "k5", "out2", Keywords.FLD_TYPE, "Integer", Keywords.FLD_LENGTH, 5),
+				field("string", "k4", "out2", Keywords.FLD_TYPE, "String", Keywords.FLD_HEADER, "$"),
+				field("date", "k6", "out2", Keywords.FLD_DATEFORMAT, "dd/MM/yyyy", Keywords.FLD_LENGTH, 12),
+				field("missing", "absent", "out2", Keywords.FLD_LENGTH, 4));
+
+		PayloadSchema schema = PayloadSchema.forInput(Arrays.asList(mapping));
+		CompiledMapping compiled = mapping.compile(schema);
+		assertTrue(compiled.getTransformer() instanceof ComposedTransformPlan);
+
+		Map<String, Object> payload = new HashMap<>();
+		payload.put("k1", "one");
+		payload.put("k2", "ab");
+		payload.put("k3", "abcdef");
+		payload.put("k4", 4);
+		payload.put("k5", " 0042 ");
+		payload.put("k6", "20260102");
+		SlotPayload slots = schema.newPayload();
+		slots.putAll(payload);
+
+		Map<String, Object> expected = compiled.getTransformPlan().apply(payload);
+		assertSameOutputs(expected, compiled.getTransformer().apply(payload));
+		assertSameOutputs(expected, compiled.getTransformer().apply(slots));
+
+		SlotPayload out1 = (SlotPayload) expected.get("out1");
+		SlotPayload out2 = (SlotPayload) expected.get("out2");
+		assertEquals("0000ab", out1.get("fit"));
+		assertEquals("<def", out1.get("cut"));
+		assertEquals("---ab++>", out1.get("both"));
+		assertEquals("F...", out2.get("forced"));
+		assertEquals(12L, out2.getLong(out2.getSchema().ordinal("forcedLong")));
+		assertEquals("  02/01/2026", out2.get("date"));
+		assertFalse(out2.containsKey("missing"));
+	}
+
+	@Test
+	public void testSharedOutputKeysKeepInterpretedPlan() {
+		MessageMapping mapping = mapping(Keywords.TRANSFORM_ENGINE_COMPOSED,
+				field("a", "k1", "out", Keywords.FIELD_KEY, "x"),
+				field("b", "k2", "out", Keywords.FIELD_KEY, "x"));
+
+		assertNull(ComposedTransformPlan.compose(mapping.getTransformPlan()));
+		assertTrue(mapping.getCompiled().getTransformer() instanceof TransformPlan);
+	}
+
+	@Test
+	public void testEngineSelectedByInput() {
+		MessageFieldConfig field = field("a", "k1", "out");
+
+		assertTrue(mapping(null, field).getCompiled().getTransformer() instanceof TransformPlan);
+		assertTrue(mapping(Keywords.TRANSFORM_ENGINE_PLAN, field).getCompiled().getTransformer() instanceof TransformPlan);
+		assertTrue(mapping(Keywords.TRANSFORM_ENGINE_COMPOSED, field).getCompiled().getTransformer() instanceof ComposedTransformPlan);
+		try {
+			mapping("generated", field).getCompiled();
+			fail();
+		} catch (IllegalArgumentException e) {
+			//expected
+		}
+	}
+
+}
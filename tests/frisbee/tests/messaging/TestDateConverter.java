@@ -0,0 +1,66 @@
+package frisbee.tests.messaging;
+
+import static org.junit.Assert.*;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.Random;
+
+import org.junit.Test;
+
+import frisbee.messaging.DateConverter;
+
+public class TestDateConverter {
+
+	@Test
+	public void testFixedWidthFormats() {
+		DateConverter converter = new DateConverter("yyyyMMddHHmmss", "yyyy-MM-dd'T'HH:mm:ss.SSS 'o''clock'");
+		assertEquals("2024-02-29T23:59:07.000 o'clock", converter.convert("20240229235907"));
+
+		//not a date, wrong length or letters
+		assertNull(converter.convert("20230229235907"));
+		assertNull(converter.convert("2024022923590"));
+		assertNull(converter.convert("2024022923590x"));
+		assertNull(converter.convert("20241329235907"));
+
+		//missing parts default to the start of the epoch
+		assertEquals("00:00", new DateConverter("yyyyMMdd", "HH:mm").convert("20240101"));
+		assertEquals("1970/01/01", new DateConverter("HHmm", "yyyy/MM/dd").convert("1405"));
+	}
+
+	@Test
+	public void testMatchesDateTimeFormatter() {
+		Random random = new Random(3);
+		DateTimeFormatter compact = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+		DateTimeFormatter named = DateTimeFormatter.ofPattern("dd MMM yyyy HH:mm:ss");
+
+		DateConverter fast = new DateConverter("yyyyMMddHHmmss", "dd.MM.yyyy HH:mm:ss");
+		DateConverter toText = new DateConverter("yyyyMMddHHmmss", "dd MMM yyyy HH:mm:ss");
+		DateConverter fromText = new DateConverter("dd MMM yyyy HH:mm:ss", "yyyyMMddHHmmss");
+
+		for (int i = 0; i < 1000; i++) {
+			LocalDateTime date = LocalDateTime.of(1900, 1, 1, 0, 0).plusSeconds((long) (random.nextDouble() * 5e9));
+			String input = compact.format(date);
+
+			assertEquals(DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm:ss").format(date), fast.convert(input));
+			assertEquals(named.format(date), toText.convert(input));
+			assertEquals(input, fromText.convert(named.format(date)));
+		}
+	}
+
+	@Test
+	public void testDatesAndNumbers() {
+		DateConverter converter = new DateConverter(null, "yyyy-MM-dd HH:mm");
+		long millis = LocalDateTime.of(2020, 5, 17, 8, 30).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+
+		assertEquals("2020-05-17 08:30", converter.convert(millis));
+		assertEquals("2020-05-17 08:30", converter.convert(new Date(millis)));
+		assertEquals("2020-05-17 08:30", converter.convert(LocalDateTime.of(2020, 5, 17, 8, 30, 59)));
+
+		//text without an input format is left unchanged
+		assertEquals("whenever", converter.convert("whenever"));
+	}
+
+}
@@ -0,0 +1,131 @@
+package frisbee.tests.messaging;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import frisbee.configuration.Keywords;
+import frisbee.messaging.FixedWidthEncoder;
+import frisbee.messaging.MessageFieldConfig;
+import frisbee.messaging.MessageIOConfig;
+import frisbee.messaging.MessageMapping;
+
+public class TestFixedWidthEncoder {
+
+	private static MessageFieldConfig field(String id, String inputKey, Object... outputKeyValues) {
+		Map<String, Object> inputArgs = new HashMap<>();
+		inputArgs.put(Keywords.FIELD_KEY, inputKey);
+
+		Map<String, Object> outputField = new HashMap<>();
+		for (int i = 0; i < outputKeyValues.length; i += 2)
+			outputField.put((String) outputKeyValues[i], outputKeyValues[i + 1]);
+
+		LinkedHashMap<String, Map<String, Object>> outputArgs = new LinkedHashMap<>();
+		outputArgs.put("out", outputField);
+		return new MessageFieldConfig(id, "in", inputArgs, outputArgs);
+	}
+
+	private static MessageMapping mapping(Map<String, Object> outputArgs, MessageFieldConfig... fields) {
+		MessageMapping mapping = new MessageMapping("m");
+		mapping.setFields(new LinkedList<>(Arrays.asList(fields)));
+		mapping.setSyncOutputs(new LinkedList<MessageIOConfig>());
+		List<MessageIOConfig> outputs = new LinkedList<>();
+		outputs.add(new MessageIOConfig("out", MessageIOConfig.Mode.ASYNC, outputArgs));
+		mapping.setAsyncOutputs(outputs);
+		return mapping;
+	}
+
+	private static String encode(FixedWidthEncoder encoder, Map<String, Object> payload) {
+		ByteBuffer out = ByteBuffer.allocate(64);
+		out.put((byte) '#');
+		int written = encoder.encode(payload, out);
+		assertEquals(encoder.getFrameLength(), written);
+		assertEquals(1 + written, out.position());
+		return new String(out.array(), 1, written, StandardCharsets.ISO_8859_1);
+	}
+
+	@Test
+	public void testFieldsPaddedAndTruncated() {
+		MessageMapping mapping = mapping(null,
+				field("a", "k1", Keywords.FLD_LENGTH, 5),
+				field("b", "k2", Keywords.FLD_LENGTH, "4", Keywords.FLD_R_PAD, "."),
+				field("c", "k3", Keywords.FLD_LENGTH, 5, Keywords.FLD_L_PAD, "<", Keywords.FLD_R_PAD, ">"),
+				field("d", "k4", Keywords.FLD_LENGTH, 3, Keywords.FLD_TRUNK, Keywords.FLD_TRUNK_LEFT, Keywords.FLD_HEADER, "[", Keywords.FLD_FOOTER, "]"),
+				field("e", "k5", Keywords.FLD_LENGTH, 2, Keywords.FLD_L_PAD, "0"),
+				field("f", "k6", Keywords.FLD_LENGTH, 2, Keywords.FLD_L_PAD, ""));
+
+		Map<String, Object> payload = new HashMap<>();
+		payload.put("k1", "ab");
+		payload.put("k2", "abcdef");
+		payload.put("k3", "x");
+		payload.put("k4", "12345");
+		payload.put("k5", 7);
+
+		FixedWidthEncoder encoder = mapping.getEncoder("out");
+		String frame = encode(encoder, payload);
+		assertEquals("   ababcd<<x>>[345]07  ", frame);
+
+		//the map payload of the output holds the same fitted values
+		Map<?, ?> fields = (Map<?, ?>) mapping.getTransformPlan().apply(payload).get("out");
+		assertEquals("   ab", fields.get("a"));
+		assertEquals("abcd", fields.get("b"));
+		assertEquals("<<x>>", fields.get("c"));
+		assertEquals("[345]", fields.get("d"));
+		assertEquals("07", fields.get("e"));
+	}
+
+	@Test
+	public void testMessageLengthHeaderAndFooter() {
+		Map<String, Object> outputArgs = new HashMap<>();
+		outputArgs.put(Keywords.MSG_LENGTH, 6);
+		outputArgs.put(Keywords.MSG_R_PAD, "*");
+		outputArgs.put(Keywords.MSG_HEADER, "<");
+		outputArgs.put(Keywords.MSG_FOOTER, ">");
+
+		Map<String, Object> payload = new HashMap<>();
+		payload.put("k1", "ab");
+		payload.put("k2", -42L);
+
+		assertEquals("<ab-42*>", encode(mapping(outputArgs,
+				field("a", "k1", Keywords.FLD_LENGTH, 2),
+				field("b", "k2", Keywords.FLD_LENGTH, 3)).getEncoder("out"), payload));
+
+		outputArgs.put(Keywords.MSG_LENGTH, 4);
+		outputArgs.put(Keywords.MSG_TRUNK, Keywords.MSG_TRUNK_LEFT);
+		assertEquals("<b-42>", encode(mapping(outputArgs,
+				field("a", "k1", Keywords.FLD_LENGTH, 2),
+				field("b", "k2", Keywords.FLD_LENGTH, 3)).getEncoder("out"), payload));
+
+		//an output field without length has no encoder
+		assertNull(mapping(outputArgs, field("a", "k1")).getEncoder("out"));
+	}
+
+	@Test
+	public void testFieldsSharingAnOutputKeyAreConcatenated() {
+		MessageMapping mapping = mapping(null,
+				field("a", "k1", Keywords.FIELD_KEY, "x", Keywords.FLD_LENGTH, 3),
+				field("b", "k2", Keywords.FIELD_KEY, "y", Keywords.FLD_LENGTH, 2),
+				field("c", "k3", Keywords.FIELD_KEY, "x", Keywords.FLD_LENGTH, 2, Keywords.FLD_HEADER, "-"));
+
+		Map<String, Object> payload = new HashMap<>();
+		payload.put("k1", "ab");
+		payload.put("k2", "zz");
+		payload.put("k3", "cd");
+
+		//the frame holds the output values in order, the shared key holding both of its fields
+		Map<?, ?> fields = (Map<?, ?>) mapping.getTransformPlan().apply(payload).get("out");
+		assertEquals(" ab-cd", fields.get("x"));
+		assertEquals("zz", fields.get("y"));
+		assertEquals(" ab-cdzz", encode(mapping.getEncoder("out"), payload));
+	}
+
+}
@@ -0,0 +1,141 @@
+package frisbee.tests.messaging;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import frisbee.configuration.Keywords;
+import frisbee.messaging.FrameLayout;
+import frisbee.messaging.FramePayload;
+import frisbee.messaging.MessageFieldConfig;
+import frisbee.messaging.MessageIOConfig;
+import frisbee.messaging.MessageIdentifier;
+import frisbee.messaging.MessageMapping;
+import frisbee.messaging.PayloadSchema;
+
+public class TestFramePayload {
+
+	private static MessageMapping mapping(String id, Object... keyLengthValues) {
+		List<MessageFieldConfig> fields = new LinkedList<>();
+		for (int i = 0; i < keyLengthValues.length; i += 3) {
+			Map<String, Object> fieldArgs = new HashMap<>();
+			fieldArgs.put(Keywords.FIELD_KEY, keyLengthValues[i]);
+			fieldArgs.put(Keywords.FLD_LENGTH, keyLengthValues[i + 1]);
+			if (keyLengthValues[i + 2] != null)
+				fieldArgs.put(Keywords.MATCHONVALUE, keyLengthValues[i + 2]);
+			fields.add(new MessageFieldConfig(id + i, "in", fieldArgs, new LinkedHashMap<String, Map<String, Object>>()));
+		}
+
+		Map<String, Object> inputArgs = new HashMap<>();
+		inputArgs.put(Keywords.MATCHSTYLE, Keywords.MATCHSTYLE_UNDER);
+
+		MessageMapping mapping = new MessageMapping(id);
+		mapping.setInput(new MessageIOConfig("in", MessageIOConfig.Mode.ASYNC, inputArgs));
+		mapping.setFields(fields);
+		return mapping;
+	}
+
+	private static ByteBuffer frame(String text, boolean direct) {
+		byte[] bytes = text.getBytes(StandardCharsets.ISO_8859_1);
+		ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(bytes.length) : ByteBuffer.allocate(bytes.length);
+		buffer.put(bytes).flip();
+		return buffer;
+	}
+
+	@Test
+	public void testFieldsDecodedFromSlices() {
+		List<MessageMapping> mappings = new LinkedList<>();
+		mappings.add(mapping("A", "type", 2, null, "name", "6", null, "amount", 4, null));
+
+		PayloadSchema schema = PayloadSchema.forInput(mappings);
+		FrameLayout layout = FrameLayout.forInput(mappings, schema);
+
+		for (boolean direct : new boolean[] { false, true }) {
+			FramePayload payload = layout.wrap(frame("01ALICE 0042", direct));
+			assertEquals("ALICE", payload.get("name"));
+			assertEquals("0042", payload.get("amount"));
+			assertEquals(3, payload.size());
+
+			//a short frame cuts its last field short
+			payload = layout.wrap(frame("02BOB", direct));
+			assertEquals("BOB", payload.get("name"));
+			assertFalse(payload.containsKey("amount"));
+			assertEquals(2, payload.size());
+		}
+
+		//fields do not depend on the position of the frame in the buffer
+		ByteBuffer buffer = frame("xx03CAROL 0001", false);
+		buffer.position(2);
+		Map<String, Object> expected = new HashMap<>();
+		expected.put("type", "03");
+		expected.put("name", "CAROL");
+		expected.put("amount", "0001");
+		assertEquals(expected, layout.wrap(buffer));
+	}
+
+	@Test
+	public void testIdentifiedOnBytes() {
+		List<MessageMapping> mappings = new LinkedList<>();
+		mappings.add(mapping("A", "type", 3, "A", "body", 4, null));
+		mappings.add(mapping("B", "type", 3, "BB", "body", 4, null));
+
+		PayloadSchema schema = PayloadSchema.forInput(mappings);
+		FrameLayout layout = FrameLayout.forInput(mappings, schema);
+		MessageIdentifier identifier = new MessageIdentifier(mappings, schema, layout);
+
+		assertSame(mappings.get(0), identifier.identify(layout.wrap(frame("A  data", true))));
+		assertSame(mappings.get(1), identifier.identify(layout.wrap(frame("BB data", false))));
+		assertSame(mappings.get(1), identifier.identify(layout.wrap(frame("BB", false))));
+		assertNull(identifier.identify(layout.wrap(frame("BBBdata", false))));
+		assertNull(identifier.identify(layout.wrap(frame("C  data", false))));
+	}
+
+	@Test
+	public void testMatchesTrimsPaddingLikeDecoding() {
+		List<MessageMapping> mappings = new LinkedList<>();
+		mappings.add(mapping("A", "type", 4, null, "body", 4, null));
+
+		PayloadSchema schema = PayloadSchema.forInput(mappings);
+		FrameLayout layout = FrameLayout.forInput(mappings, schema);
+		int type = schema.ordinal("type");
+
+		FramePayload payload = layout.wrap(frame("AB  data", false));
+		assertEquals("AB", payload.get("type"));
+		assertTrue(payload.matches(type, "AB".getBytes(StandardCharsets.ISO_8859_1)));
+		//an expected value ending with padding never equals the decoded value
+		assertFalse(payload.matches(type, "AB ".getBytes(StandardCharsets.ISO_8859_1)));
+		assertFalse(payload.matches(type, "A".getBytes(StandardCharsets.ISO_8859_1)));
+
+		payload = layout.wrap(frame("    data", false));
+		assertEquals("", payload.get("type"));
+		assertTrue(payload.matches(type, new byte[0]));
+		assertFalse(payload.matches(type, " ".getBytes(StandardCharsets.ISO_8859_1)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMultiByteCharsetRejected() {
+		List<MessageMapping> mappings = new LinkedList<>();
+		mappings.add(mapping("A", "type", 4, null));
+		mappings.get(0).getInput().getArguments().put(Keywords.INPUT_CHARSET, "UTF-16");
+
+		FrameLayout.forInput(mappings, PayloadSchema.forInput(mappings));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testConflictingLayoutsRejected() {
+		List<MessageMapping> mappings = new LinkedList<>();
+		mappings.add(mapping("A", "type", 2, null, "body", 4, null));
+		mappings.add(mapping("B", "type", 3, null, "body", 4, null));
+
+		FrameLayout.forInput(mappings, PayloadSchema.forInput(mappings));
+	}
+
+}
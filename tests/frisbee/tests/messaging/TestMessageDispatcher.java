@@ -0,0 +1,328 @@
+package frisbee.tests.messaging;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import frisbee.communications.Connection;
+import frisbee.communications.MyConnection;
+import frisbee.configuration.Keywords;
+import frisbee.exceptions.LoggedException;
+import frisbee.messaging.Message;
+import frisbee.messaging.MessageDispatcher;
+import frisbee.messaging.MessageIOConfig;
+import frisbee.messaging.MessageMapping;
+import frisbee.tools.ThreadMode;
+
+public class TestMessageDispatcher {
+
+	private static class RecordingConnection extends MyConnection {
+
+		private final List<String> log;
+		private final long delayMillis;
+		private final CountDownLatch written;
+		private final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+
+		RecordingConnection(String id, List<String> log, long delayMillis, CountDownLatch written) {
+			this.setConnectionID(id);
+			this.log = log;
+			this.delayMillis = delayMillis;
+			this.written = written;
+		}
+
+		@Override
+		protected void writeMessageBatch(List<Message> messages) throws LoggedException {
+			batchSizes.add(messages.size());
+			super.writeMessageBatch(messages);
+		}
+
+		@Override
+		protected void writeMessage(Message message) {
+			try {
+				Thread.sleep(delayMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			log.add(getConnectionID() + ":" + message.getInputPayload().get("n"));
+			written.countDown();
+		}
+	}
+
+	private static Message message(MessageMapping mapping, int n) {
+		Map<String, Object> payload = new HashMap<>();
+		payload.put("n", n);
+		return new Message(null, null, null, mapping, 0L, 0L, payload, null);
+	}
+
+	@Test
+	public void testSyncOutputsAreWrittenInOrder() throws InterruptedException {
+		List<String> log = Collections.synchronizedList(new ArrayList<String>());
+		CountDownLatch written = new CountDownLatch(2000);
+		Map<String, Connection> connections = new HashMap<>();
+		connections.put("s1", new RecordingConnection("s1", log, 0, written));
+		connections.put("s2", new RecordingConnection("s2", log, 0, written));
+
+		MessageMapping mapping = new MessageMapping("m");
+		mapping.setSyncOutputs(Arrays.asList(
+				new MessageIOConfig("s1", MessageIOConfig.Mode.SYNC, null),
+				new MessageIOConfig("s2", MessageIOConfig.Mode.SYNC, null)));
+
+		MessageDispatcher dispatcher = new MessageDispatcher("test", ThreadMode.PLATFORM, 4, connections::get);
+		for (int n = 0; n < 1000; n++)
+			dispatcher.dispatch(message(mapping, n));
+
+		assertTrue(written.await(10, TimeUnit.SECONDS));
+		dispatcher.shutdown(1000);
+
+		for (int n = 0; n < 1000; n++) {
+			assertEquals("s1:" + n, log.get(n * 2));
+			assertEquals("s2:" + n, log.get(n * 2 + 1));
+		}
+	}
+
+	@Test
+	public void testAsyncOutputLatenciesDoNotAddUp() throws InterruptedException {
+		List<String> log = Collections.synchronizedList(new ArrayList<String>());
+		CountDownLatch written = new CountDownLatch(4);
+		Map<String, Connection> connections = new HashMap<>();
+		List<MessageIOConfig> outputs = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			connections.put("a" + i, new RecordingConnection("a" + i, log, 300, written));
+			outputs.add(new MessageIOConfig("a" + i, MessageIOConfig.Mode.ASYNC, null));
+		}
+
+		MessageMapping mapping = new MessageMapping("m");
+		mapping.setAsyncOutputs(outputs);
+
+		MessageDispatcher dispatcher = new MessageDispatcher("test", ThreadMode.PLATFORM, 4, connections::get);
+		long start = System.nanoTime();
+		dispatcher.dispatch(message(mapping, 0));
+
+		assertTrue(written.await(10, TimeUnit.SECONDS));
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+		dispatcher.shutdown(1000);
+	}
+
+	@Test
+	public void testAsyncOutputWritesBatches() throws InterruptedException {
+		List<String> log = Collections.synchronizedList(new ArrayList<String>());
+		CountDownLatch written = new CountDownLatch(25);
+		RecordingConnection connection = new RecordingConnection("b", log, 0, written);
+
+		Map<String, Object> arguments = new HashMap<>();
+		arguments.put(Keywords.OUTPUT_BATCH_SIZE.toLowerCase(), "10");
+		arguments.put(Keywords.OUTPUT_LINGER.toLowerCase(), "50");
+
+		MessageMapping mapping = new MessageMapping("m");
+		mapping.setAsyncOutputs(Collections.singletonList(new MessageIOConfig("b", MessageIOConfig.Mode.ASYNC, arguments)));
+
+		MessageDispatcher dispatcher = new MessageDispatcher("test", ThreadMode.PLATFORM, 2, id -> connection);
+		for (int n = 0; n < 25; n++)
+			dispatcher.dispatch(message(mapping, n));
+
+		//the last five messages only go out once the linger time elapsed
+		assertTrue(written.await(10, TimeUnit.SECONDS));
+		dispatcher.shutdown(1000);
+
+		for (int n = 0; n < 25; n++)
+			assertEquals("b:" + n, log.get(n));
+		for (int size : connection.batchSizes)
+			assertTrue(size <= 10);
+		assertTrue(connection.batchSizes.size() < 25);
+	}
+
+	@Test
+	public void testLingeringBatchAfterShutdownIsNotRejected() throws InterruptedException {
+		List<String> log = Collections.synchronizedList(new ArrayList<String>());
+		RecordingConnection connection = new RecordingConnection("b", log, 0, new CountDownLatch(1));
+
+		Map<String, Object> arguments = new HashMap<>();
+		arguments.put(Keywords.OUTPUT_BATCH_SIZE.toLowerCase(), "10");
+		arguments.put(Keywords.OUTPUT_LINGER.toLowerCase(), "50");
+
+		MessageMapping mapping = new MessageMapping("m");
+		mapping.setAsyncOutputs(Collections.singletonList(new MessageIOConfig("b", MessageIOConfig.Mode.ASYNC, arguments)));
+
+		//the linger timer is shut down, the batch is flushed to the workers instead of being scheduled
+		MessageDispatcher dispatcher = new MessageDispatcher("test", ThreadMode.PLATFORM, 2, id -> connection);
+		dispatcher.shutdown(1000);
+		dispatcher.dispatch(message(mapping, 0));
+	}
+
+	@Test
+	public void testBacklogPausesAndResumesInput() throws InterruptedException {
+		List<String> log = Collections.synchronizedList(new ArrayList<String>());
+		CountDownLatch written = new CountDownLatch(40);
+		MyConnection input = new MyConnection();
+		input.setConnectionID("in");
+		Map<String, Connection> connections = new HashMap<>();
+		connections.put("in", input);
+		connections.put("slow", new RecordingConnection("slow", log, 5, written));
+
+		Map<String, Object> arguments = new HashMap<>();
+		arguments.put(Keywords.OUTPUT_HIGH_WATERMARK.toLowerCase(), "20");
+		arguments.put(Keywords.OUTPUT_LOW_WATERMARK.toLowerCase(), "5");
+
+		MessageMapping mapping = new MessageMapping("m");
+		mapping.setInput(new MessageIOConfig("in", MessageIOConfig.Mode.ASYNC, null));
+		mapping.setAsyncOutputs(Collections.singletonList(new MessageIOConfig("slow", MessageIOConfig.Mode.ASYNC, arguments)));
+
+		MessageDispatcher dispatcher = new MessageDispatcher("test", ThreadMode.PLATFORM, 1, connections::get);
+		for (int n = 0; n < 40; n++)
+			dispatcher.dispatch(message(mapping, n));
+
+		assertTrue(input.isBackpressured());
+		assertEquals(Connection.ConnectionState.PAUSED, input.getConnectionState());
+		assertTrue(dispatcher.getQueueDepths().get("slow") >= 20);
+
+		assertTrue(written.await(10, TimeUnit.SECONDS));
+		dispatcher.shutdown(1000);
+
+		assertFalse(input.isBackpressured());
+		assertEquals(Connection.ConnectionState.CLOSED, input.getConnectionState());
+		assertEquals(0, (int) dispatcher.getQueueDepths().get("slow"));
+		assertTrue(input.getBackpressureMillis() > 0);
+	}
+
+	@Test
+	public void testBacklogRacesNeverLeaveInputPaused() throws InterruptedException {
+		for (int round = 0; round < 5; round++) {
+			List<String> log = Collections.synchronizedList(new ArrayList<String>());
+			CountDownLatch written = new CountDownLatch(2000);
+			//a slow input widens the window between a transition and its call to the connection,
+			//holds must alternate between applied and released
+			AtomicInteger holds = new AtomicInteger();
+			AtomicInteger unbalanced = new AtomicInteger();
+			AtomicBoolean paused = new AtomicBoolean();
+			MyConnection input = new MyConnection() {
+				@Override
+				public void pause() {
+					paused.set(true);
+				}
+
+				@Override
+				public void resume() {
+					paused.set(false);
+				}
+
+				@Override
+				public void applyBackpressure() {
+					try {
+						Thread.sleep(1);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					if (holds.getAndIncrement() != 0)
+						unbalanced.incrementAndGet();
+					super.applyBackpressure();
+				}
+
+				@Override
+				public void releaseBackpressure() {
+					if (holds.getAndDecrement() != 1)
+						unbalanced.incrementAndGet();
+					super.releaseBackpressure();
+				}
+			};
+			input.setConnectionID("in");
+			Map<String, Connection> connections = new HashMap<>();
+			connections.put("in", input);
+			connections.put("out", new RecordingConnection("out", log, 0, written));
+
+			Map<String, Object> arguments = new HashMap<>();
+			arguments.put(Keywords.OUTPUT_HIGH_WATERMARK.toLowerCase(), "2");
+			arguments.put(Keywords.OUTPUT_LOW_WATERMARK.toLowerCase(), "1");
+
+			MessageMapping mapping = new MessageMapping("m");
+			mapping.setInput(new MessageIOConfig("in", MessageIOConfig.Mode.ASYNC, null));
+			mapping.setAsyncOutputs(Collections.singletonList(new MessageIOConfig("out", MessageIOConfig.Mode.ASYNC, arguments)));
+
+			MessageDispatcher dispatcher = new MessageDispatcher("test", ThreadMode.PLATFORM, 4, connections::get);
+			List<Thread> producers = new ArrayList<>();
+			for (int t = 0; t < 4; t++) {
+				//producers wait while the input is paused, as a listener does, so the backlog keeps crossing the watermarks
+				Thread producer = new Thread(() -> {
+					long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+					for (int n = 0; n < 500; n++) {
+						while (input.isBackpressured() && System.nanoTime() < deadline)
+							Thread.yield();
+						dispatcher.dispatch(message(mapping, n));
+					}
+				});
+				producers.add(producer);
+				producer.start();
+			}
+			for (Thread producer : producers)
+				producer.join();
+
+			assertTrue(written.await(10, TimeUnit.SECONDS));
+			dispatcher.shutdown(1000);
+
+			assertEquals(0, (int) dispatcher.getQueueDepths().get("out"));
+			assertEquals(0, unbalanced.get());
+			assertEquals(0, holds.get());
+			assertFalse(input.isBackpressured());
+			assertFalse(paused.get());
+		}
+	}
+
+	@Test
+	public void testBackpressureIsCounted() {
+		MyConnection input = new MyConnection();
+		input.applyBackpressure();
+		input.applyBackpressure();
+		input.releaseBackpressure();
+		assertTrue(input.isBackpressured());
+		input.releaseBackpressure();
+		assertFalse(input.isBackpressured());
+		input.releaseBackpressure();
+		assertFalse(input.isBackpressured());
+	}
+
+	@Test(timeout = 60000)
+	public void testBackpressurePausesOutsideItsLock() throws InterruptedException {
+		//a connection pausing its listener waits for it, the listener reading the backpressure state meanwhile
+		AtomicInteger blocked = new AtomicInteger();
+		MyConnection input = new MyConnection() {
+			@Override
+			public void pause() {
+				this.awaitListener();
+			}
+
+			@Override
+			public void resume() {
+				this.awaitListener();
+			}
+
+			private void awaitListener() {
+				Thread listener = new Thread(this::getBackpressureMillis);
+				listener.start();
+				try {
+					listener.join(2000);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				if (listener.isAlive())
+					blocked.incrementAndGet();
+			}
+		};
+
+		input.applyBackpressure();
+		assertTrue(input.isBackpressured());
+		input.releaseBackpressure();
+		assertFalse(input.isBackpressured());
+		assertEquals(0, blocked.get());
+	}
+
+}
@@ -0,0 +1,289 @@
+package frisbee.tests.messaging;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import frisbee.configuration.Keywords;
+import frisbee.messaging.FieldReader;
+import frisbee.messaging.MessageBuilder;
+import frisbee.messaging.MessageFieldConfig;
+import frisbee.messaging.MessageIOConfig;
+import frisbee.messaging.MessageIdentifier;
+import frisbee.messaging.MessageMapping;
+import frisbee.messaging.PayloadSchema;
+import frisbee.messaging.SlotPayload;
+
+public class TestMessageIdentifier {
+
+	private static MessageMapping mapping(String id, String matchStyle, Object... keyValues) {
+		Map<String, Object> inputArgs = new HashMap<>();
+		inputArgs.put(Keywords.MATCHSTYLE, matchStyle);
+
+		List<MessageFieldConfig> fields = new LinkedList<>();
+		for (int i = 0; i < keyValues.length; i += 2) {
+			Map<String, Object> fieldArgs = new HashMap<>();
+			fieldArgs.put(Keywords.FIELD_KEY, keyValues[i]);
+			if (keyValues[i + 1] != null)
+				fieldArgs.put(Keywords.MATCHONVALUE, keyValues[i + 1]);
+			fields.add(new MessageFieldConfig(id + i, "in", fieldArgs, new LinkedHashMap<String, Map<String, Object>>()));
+		}
+
+		MessageMapping mapping = new MessageMapping(id);
+		mapping.setInput(new MessageIOConfig("in", MessageIOConfig.Mode.ASYNC, inputArgs));
+		mapping.setFields(fields);
+		return mapping;
+	}
+
+	@Test
+	public void testIdentifiesSingleDiscriminator() {
+		List<MessageMapping> mappings = new LinkedList<>();
+		mappings.add(mapping("A", Keywords.MATCHSTYLE_EXACT, "type", "A", "body", null));
+		mappings.add(mapping("B", Keywords.MATCHSTYLE_EXACT, "type", "B", "body", null));
+
+		MessageIdentifier identifier = new MessageIdentifier(mappings);
+
+		Map<String, Object> payload = new HashMap<>();
+		payload.put("type", "B");
+		payload.put("body", "hello");
+
+		assertSame(mappings.get(1), identifier.identify(payload));
+
+		payload.put("type", "C");
+		assertNull(identifier.identify(payload));
+	}
+
+	@Test
+	public void testTieGoesToFirstDeclaredMapping() {
+		List<MessageMapping> mappings = new LinkedList<>();
+		mappings.add(mapping("A", Keywords.MATCHSTYLE_ANY, "type", "X", "sub", null));
+		mappings.add(mapping("B", Keywords.MATCHSTYLE_ANY, "type", "X"));
+
+		Map<String, Object> payload = new HashMap<>();
+		payload.put("type", "X");
+
+		assertSame(mappings.get(0), new MessageIdentifier(mappings).identify(payload));
+	}
+
+	@Test
+	public void testPayloadWithoutDiscriminatorsIsNotIdentified() {
+		List<MessageMapping> mappings = new LinkedList<>();
+		mappings.add(mapping("A", Keywords.MATCHSTYLE_ANY, "type", "X", "sub", null));
+		mappings.add(mapping("B", Keywords.MATCHSTYLE_UNDER, "type", "Y"));
+
+		Map<String, Object> payload = new HashMap<>();
+		payload.put("foo", "bar");
+
+		assertNull(MessageBuilder.identify(mappings, payload));
+		assertNull(new MessageIdentifier(mappings).identify(payload));
+		assertNull(new MessageIdentifier(mappings).identify(new HashMap<String, Object>()));
+	}
+
+	/**
+	 * The scoring of the original scan, which ignored match styles, with the best match evaluated once all the fields of a
+	 * definition are compared
+	 */
+	private static MessageMapping legacyIdentify(List<MessageMapping> messageMappings, Map<String, Object> inputPayload) {
+		MessageMapping result = null;
+		int highestMatchCount = 0;
+
+		for (MessageMapping messageMap : messageMappings) {
+			int msgMatchCount = 0;
+			boolean skipToNextMessage = false;
+
+			for (MessageFieldConfig field : messageMap.getFields()) {
+				Object matchOnValue = field.getInputArguments().get(Keywords.MATCHONVALUE);
+				if (matchOnValue == null)
+					continue;
+
+				Object payloadValue = inputPayload.get(field.getInputArguments().get(Keywords.FIELD_KEY).toString());
+				if (payloadValue == null)
+					continue;
+				if (!payloadValue.equals(matchOnValue)) {
+					skipToNextMessage = true;
+					break;
+				}
+				msgMatchCount++;
+			}
+
+			if (!skipToNextMessage && msgMatchCount > highestMatchCount) {
+				highestMatchCount = msgMatchCount;
+				result = messageMap;
+			}
+		}
+		return result;
+	}
+
+	@Test
+	public void testMatchesLegacyScoring() {
+		Random random = new Random(42);
+		String[] keys = {"k0", "k1", "k2", "k3", "k4"};
+		String[] styles = {Keywords.MATCHSTYLE_OVER, Keywords.MATCHSTYLE_ANY};
+
+		for (int round = 0; round < 50; round++) {
+			List<MessageMapping> mappings = new LinkedList<>();
+			for (int m = 0; m < 30; m++) {
+				int fieldCount = 1 + random.nextInt(4);
+				Object[] keyValues = new Object[fieldCount * 2];
+				for (int f = 0; f < fieldCount; f++) {
+					keyValues[f * 2] = keys[random.nextInt(keys.length)];
+					keyValues[f * 2 + 1] = random.nextInt(4) == 0 ? null : "v" + random.nextInt(3);
+				}
+				mappings.add(mapping("M" + m, styles[random.nextInt(styles.length)], keyValues));
+			}
+
+			MessageIdentifier identifier = new MessageIdentifier(mappings);
+
+			//payloads hold every key, so the over and any shapes always hold and only the scoring decides
+			for (int p = 0; p < 200; p++) {
+				Map<String, Object> payload = new HashMap<>();
+				for (String key : keys)
+					payload.put(key, "v" + random.nextInt(3));
+				if (random.nextInt(10) == 0)
+					payload.put("extra", "x");
+
+				MessageMapping expected = legacyIdentify(mappings, payload);
+				assertSame(expected, MessageBuilder.identify(mappings, payload));
+				assertSame(expected, identifier.identify(payload));
+			}
+		}
+	}
+
+	@Test
+	public void testMatchStyles() {
+		Map<String, Object> full = new HashMap<>();
+		full.put("type", "T");
+		full.put("a", "1");
+		full.put("b", "2");
+
+		Map<String, Object> missingLast = new HashMap<>(full);
+		missingLast.remove("b");
+
+		Map<String, Object> missingFirst = new HashMap<>(full);
+		missingFirst.remove("a");
+
+		Map<String, Object> extra = new HashMap<>(full);
+		extra.put("c", "3");
+
+		String[] styles = {Keywords.MATCHSTYLE_EXACT, Keywords.MATCHSTYLE_UNDER, Keywords.MATCHSTYLE_OVER, Keywords.MATCHSTYLE_ANY};
+		boolean[][] expected = {
+				// full, missingLast, missingFirst, extra
+				{true, false, false, false},
+				{true, true, false, false},
+				{true, false, false, true},
+				{true, true, false, true},
+		};
+
+		for (int s = 0; s < styles.length; s++) {
+			List<MessageMapping> mappings = new LinkedList<>();
+			mappings.add(mapping(styles[s], styles[s], "type", "T", "a", null, "b", null));
+			MessageIdentifier identifier = new MessageIdentifier(mappings);
+
+			Map<?, ?>[] payloads = {full, missingLast, missingFirst, extra};
+			for (int p = 0; p < payloads.length; p++) {
+				@SuppressWarnings("unchecked")
+				Map<String, Object> payload = (Map<String, Object>) payloads[p];
+				assertEquals(styles[s] + " payload " + p, expected[s][p], identifier.identify(payload) != null);
+				assertSame(MessageBuilder.identify(mappings, payload), identifier.identify(payload));
+			}
+		}
+	}
+
+	@Test
+	public void testMatchesReferenceScan() {
+		Random random = new Random(42);
+		String[] keys = {"k0", "k1", "k2", "k3", "k4"};
+		String[] styles = {Keywords.MATCHSTYLE_EXACT, Keywords.MATCHSTYLE_UNDER, Keywords.MATCHSTYLE_OVER, Keywords.MATCHSTYLE_ANY};
+
+		for (int round = 0; round < 50; round++) {
+			List<MessageMapping> mappings = new LinkedList<>();
+			for (int m = 0; m < 30; m++) {
+				int fieldCount = 1 + random.nextInt(4);
+				Object[] keyValues = new Object[fieldCount * 2];
+				for (int f = 0; f < fieldCount; f++) {
+					keyValues[f * 2] = keys[random.nextInt(keys.length)];
+					keyValues[f * 2 + 1] = random.nextInt(4) == 0 ? null : "v" + random.nextInt(3);
+				}
+				mappings.add(mapping("M" + m, styles[random.nextInt(styles.length)], keyValues));
+			}
+
+			MessageIdentifier identifier = new MessageIdentifier(mappings);
+			PayloadSchema schema = PayloadSchema.forInput(mappings);
+			MessageIdentifier slotIdentifier = new MessageIdentifier(mappings, schema);
+
+			for (int p = 0; p < 200; p++) {
+				Map<String, Object> payload = new HashMap<>();
+				for (String key : keys) {
+					if (random.nextBoolean())
+						payload.put(key, "v" + random.nextInt(3));
+				}
+				if (random.nextInt(10) == 0)
+					payload.put("extra", "x");
+
+				SlotPayload slots = schema.newPayload();
+				slots.putAll(payload);
+
+				MessageMapping expected = MessageBuilder.identify(mappings, payload);
+				assertSame(expected, identifier.identify(payload));
+				assertSame(expected, slotIdentifier.identify(slots));
+			}
+		}
+	}
+
+	@Test
+	public void testDeferredFieldsDecodedInTwoPhases() {
+		List<MessageMapping> mappings = new LinkedList<>();
+		mappings.add(mapping("A", Keywords.MATCHSTYLE_EXACT, "type", "A", "a1", null, "a2", null));
+		mappings.add(mapping("B", Keywords.MATCHSTYLE_OVER, "type", "B", "b1", null));
+
+		PayloadSchema schema = PayloadSchema.forInput(mappings);
+		MessageIdentifier identifier = new MessageIdentifier(mappings, schema);
+
+		final Map<String, Object> record = new HashMap<>();
+		record.put("type", "B");
+		record.put("a1", "x");
+		record.put("b1", "y");
+		final List<String> decoded = new ArrayList<>();
+		FieldReader reader = new FieldReader() {
+
+			@Override
+			public boolean has(int ordinal) {
+				return record.containsKey(schema.key(ordinal));
+			}
+
+			@Override
+			public Object get(int ordinal) {
+				decoded.add(schema.key(ordinal));
+				return record.get(schema.key(ordinal));
+			}
+		};
+
+		SlotPayload payload = schema.newPayload();
+		payload.defer(reader);
+		assertSame(mappings.get(1), identifier.identify(payload));
+		assertEquals(Arrays.asList("type", "b1"), decoded);
+		assertFalse(payload.isDeferred());
+		assertEquals(2, payload.size());
+
+		//unidentified payloads only decode their discriminators
+		record.put("type", "C");
+		decoded.clear();
+		payload = schema.newPayload();
+		payload.defer(reader);
+		assertNull(identifier.identify(payload));
+		assertEquals(Arrays.asList("type"), decoded);
+		assertEquals(3, payload.size());
+		assertEquals("x", payload.get("a1"));
+		assertFalse(payload.isDeferred());
+	}
+
+}
@@ -0,0 +1,88 @@
+package frisbee.tests.messaging;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Test;
+
+import frisbee.messaging.Message;
+import frisbee.messaging.MessagePool;
+import frisbee.messaging.PayloadSchema;
+import frisbee.messaging.SlotPayload;
+
+public class TestMessagePool {
+
+	@After
+	public void resetMode() {
+		MessagePool.setMode(MessagePool.Mode.OFF);
+	}
+
+	@Test
+	public void testRecycledAfterLastRelease() {
+		MessagePool.setMode(MessagePool.Mode.ON);
+
+		PayloadSchema schema = new PayloadSchema(Arrays.asList("a", "b"));
+		SlotPayload input = schema.newPayload();
+		input.put("a", "1");
+
+		Message message = MessagePool.acquire("tx", null, null, null, 1L, 0L, input, null);
+		//the listener drops its reference, the message still holds one
+		input.release();
+		assertEquals("1", input.get("a"));
+
+		message.retain();
+		message.release();
+		assertEquals(1, message.getReferenceCount());
+		assertEquals("tx", message.getTransactionID());
+
+		message.release();
+		assertEquals(0, message.getReferenceCount());
+		assertTrue(input.isEmpty());
+
+		//released instances are handed out again on this thread
+		assertSame(input, schema.newPayload());
+		assertSame(message, MessagePool.acquire(null, null, null, null, 2L, 0L, null, null));
+	}
+
+	@Test
+	public void testUseAfterReleaseDetected() {
+		MessagePool.setMode(MessagePool.Mode.DEBUG);
+
+		SlotPayload input = new PayloadSchema(Arrays.asList("a")).newPayload();
+		Message message = MessagePool.acquire(null, null, null, null, 1L, 0L, input, null);
+		input.release();
+		message.release();
+
+		try {
+			message.getInputPayload();
+			fail("use after release not detected");
+		} catch (IllegalStateException e) {
+			assertNotNull(e.getCause());
+		}
+
+		try {
+			input.get("a");
+			fail("payload use after release not detected");
+		} catch (IllegalStateException e) {
+		}
+
+		try {
+			message.release();
+			fail("double release not detected");
+		} catch (IllegalStateException e) {
+		}
+	}
+
+	@Test
+	public void testNotCountedWhenOff() {
+		Message message = MessagePool.acquire(null, null, null, null, 1L, 0L, null, null);
+		message.release();
+		message.release();
+
+		assertEquals(0, message.getReferenceCount());
+		assertEquals(1L, message.getReceivedTimestamp());
+	}
+
+}
@@ -0,0 +1,86 @@
+package frisbee.tests.messaging;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.junit.Test;
+
+import frisbee.messaging.PayloadSchema;
+import frisbee.messaging.SlotPayload;
+
+public class TestSlotPayload {
+
+	@Test
+	public void testBehavesAsMap() {
+		PayloadSchema schema = new PayloadSchema(Arrays.asList("a", "b", "c", "a"));
+		assertEquals(3, schema.size());
+		assertEquals(-1, schema.ordinal("z"));
+
+		SlotPayload payload = schema.newPayload();
+		payload.put("b", 2);
+		payload.put("z", 26);
+		payload.set(schema.ordinal("a"), 1);
+
+		Map<String, Object> expected = new HashMap<>();
+		expected.put("a", 1);
+		expected.put("b", 2);
+		expected.put("z", 26);
+
+		assertEquals(expected, payload);
+		assertEquals(expected.hashCode(), payload.hashCode());
+		assertEquals(3, payload.size());
+		assertEquals(1, payload.get(0));
+		assertTrue(payload.containsKey("z"));
+		assertFalse(payload.containsKey("c"));
+
+		payload.put("b", null);
+		assertEquals(2, payload.size());
+		assertFalse(payload.containsKey("b"));
+	}
+
+	@Test
+	public void testIteratorRemove() {
+		SlotPayload payload = new PayloadSchema(Arrays.asList("a", "b")).newPayload();
+		payload.put("a", 1);
+		payload.put("b", 2);
+		payload.put("x", 3);
+
+		Iterator<Map.Entry<String, Object>> entries = payload.entrySet().iterator();
+		assertEquals("a", entries.next().getKey());
+		entries.remove();
+		assertEquals("b", entries.next().getKey());
+		assertEquals("x", entries.next().getKey());
+		entries.remove();
+		assertFalse(entries.hasNext());
+
+		assertEquals(1, payload.size());
+		assertEquals(2, payload.get("b"));
+	}
+
+	@Test
+	public void testPrimitiveSlots() {
+		SlotPayload payload = new PayloadSchema(Arrays.asList("a", "b", "c")).newPayload();
+		payload.setLong(0, 42L);
+		payload.setDouble(1, 2.5);
+
+		assertTrue(payload.isLong(0));
+		assertTrue(payload.isDouble(1));
+		assertFalse(payload.has(2));
+		assertEquals(42L, payload.getLong(0));
+		assertEquals(2.5, payload.getDouble(1), 0);
+		assertEquals(2L, payload.getLong(1));
+		assertEquals(2, payload.size());
+
+		//boxed only when read as objects
+		assertEquals(42L, payload.get("a"));
+		assertEquals(2.5, payload.get(1));
+		assertEquals(42L, payload.set(0, "x"));
+		assertFalse(payload.isLong(0));
+		assertEquals(2, payload.size());
+	}
+
+}
@@ -0,0 +1,90 @@
+package frisbee.tests.messaging;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+
+import frisbee.configuration.Keywords;
+import frisbee.messaging.BlockTransactionIdGenerator;
+import frisbee.messaging.Message;
+import frisbee.messaging.MessageBuilder;
+import frisbee.messaging.MessageFieldConfig;
+import frisbee.messaging.MessageIOConfig;
+import frisbee.messaging.MessageMapping;
+import frisbee.messaging.TransactionIdGenerator;
+
+public class TestTransactionIdGenerator {
+
+	@Test
+	public void testUniqueAcrossThreads() throws InterruptedException {
+		final BlockTransactionIdGenerator generator = new BlockTransactionIdGenerator(7, 0x123456789abL);
+		final Set<Long> ids = ConcurrentHashMap.newKeySet();
+		final Set<Thread> unordered = ConcurrentHashMap.newKeySet();
+
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread(() -> {
+				long previous = -1;
+				for (int i = 0; i < 5000; i++) {
+					long id = generator.next();
+					if (id <= previous)
+						unordered.add(Thread.currentThread());
+					previous = id;
+					ids.add(id);
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+
+		assertTrue(unordered.isEmpty());
+		assertEquals(20000, ids.size());
+		assertEquals("0007123456789ab00000000002a", generator.format(42));
+		assertEquals(BlockTransactionIdGenerator.WIDTH, generator.format(Long.MAX_VALUE).length());
+	}
+
+	@Test
+	public void testEmbeddedInFixedWidthOutput() {
+		Map<String, Object> inputArgs = new HashMap<>();
+		inputArgs.put(Keywords.FIELD_KEY, "k");
+		Map<String, Object> outputField = new HashMap<>();
+		outputField.put(Keywords.FLD_LENGTH, 3);
+		LinkedHashMap<String, Map<String, Object>> outputFields = new LinkedHashMap<>();
+		outputFields.put("out", outputField);
+
+		Map<String, Object> outputArgs = new HashMap<>();
+		outputArgs.put(Keywords.MSG_HEADER, "<");
+		outputArgs.put(Keywords.MSG_TRANSACTION_ID, "true");
+		List<MessageIOConfig> outputs = new LinkedList<>();
+		outputs.add(new MessageIOConfig("out", MessageIOConfig.Mode.ASYNC, outputArgs));
+
+		MessageMapping mapping = new MessageMapping("m");
+		mapping.setFields(new LinkedList<>(Arrays.asList(new MessageFieldConfig("f", "in", inputArgs, outputFields))));
+		mapping.setSyncOutputs(new LinkedList<MessageIOConfig>());
+		mapping.setAsyncOutputs(outputs);
+
+		Map<String, Object> payload = new HashMap<>();
+		payload.put("k", "abc");
+		Message message = MessageBuilder.transform(mapping, payload, 0);
+		assertTrue(message.getTransactionNumber() >= 0);
+
+		int width = TransactionIdGenerator.getGenerator().getWidth();
+		ByteBuffer out = ByteBuffer.allocate(64);
+		assertEquals(1 + width + 3, message.encode("out", out));
+		String frame = new String(out.array(), 0, out.position(), StandardCharsets.ISO_8859_1);
+		assertEquals("<" + message.getTransactionID() + "abc", frame);
+	}
+
+}
@@ -0,0 +1,128 @@
+package frisbee.tests.messaging;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import frisbee.configuration.Keywords;
+import frisbee.messaging.MessageFieldConfig;
+import frisbee.messaging.MessageMapping;
+import frisbee.messaging.PayloadSchema;
+import frisbee.messaging.SlotPayload;
+import frisbee.messaging.TransformPlan;
+
+public class TestTransformPlan {
+
+	private static MessageFieldConfig field(String id, String inputKey, String outputID, Object... outputKeyValues) {
+		Map<String, Object> inputArgs = new HashMap<>();
+		inputArgs.put(Keywords.FIELD_KEY, inputKey);
+
+		Map<String, Object> outputField = new HashMap<>();
+		for (int i = 0; i < outputKeyValues.length; i += 2)
+			outputField.put((String) outputKeyValues[i], outputKeyValues[i + 1]);
+
+		LinkedHashMap<String, Map<String, Object>> outputArgs = new LinkedHashMap<>();
+		outputArgs.put(outputID, outputField);
+		return new MessageFieldConfig(id, "in", inputArgs, outputArgs);
+	}
+
+	@Test
+	public void testAffixesForcedValuesAndSharedKeys() {
+		List<MessageFieldConfig> fields = new LinkedList<>();
+		fields.add(field("a", "k1", "out1", Keywords.FIELD_KEY, 1, Keywords.FLD_HEADER, "[", Keywords.FLD_FOOTER, "]"));
+		fields.add(field("b", "k2", "out1", Keywords.FIELD_KEY, 1));
+		fields.add(field("c", "k3", "out2", "forceouputvalue", "FORCED"));
+		fields.add(field("d", "missing", "out2", Keywords.FLD_FOOTER, "!"));
+		fields.add(field("e", "k4", "out2", Keywords.FLD_HEADER, "#"));
+
+		MessageMapping mapping = new MessageMapping("m");
+		mapping.setFields(fields);
+
+		Map<String, Object> payload = new HashMap<>();
+		payload.put("k1", "one");
+		payload.put("k2", "two");
+		payload.put("k4", 4);
+
+		Map<String, Object> result = new TransformPlan(mapping).apply(payload);
+
+		assertEquals("[one]two", ((Map<?, ?>) result.get("out1")).get("1"));
+		assertEquals("FORCED", ((Map<?, ?>) result.get("out2")).get("c"));
+		assertEquals("#4", ((Map<?, ?>) result.get("out2")).get("e"));
+		assertFalse(((Map<?, ?>) result.get("out2")).containsKey("d"));
+	}
+
+	@Test
+	public void testSlotInputMatchesMapInput() {
+		List<MessageFieldConfig> fields = new LinkedList<>();
+		fields.add(field("a", "k1", "out1", Keywords.FLD_HEADER, "<"));
+		fields.add(field("b", "k2", "out1", Keywords.FIELD_KEY, "a"));
+		fields.add(field("c", "k3", "out2"));
+
+		MessageMapping mapping = new MessageMapping("m");
+		mapping.setFields(fields);
+
+		List<MessageMapping> mappings = new LinkedList<>();
+		mappings.add(mapping);
+		PayloadSchema schema = PayloadSchema.forInput(mappings);
+
+		Map<String, Object> payload = new HashMap<>();
+		payload.put("k1", "one");
+		payload.put("k3", "three");
+		SlotPayload slots = schema.newPayload();
+		slots.putAll(payload);
+
+		TransformPlan interpreted = new TransformPlan(mapping, schema);
+		Map<String, Object> expected = new TransformPlan(mapping).apply(payload);
+
+		assertEquals(expected, interpreted.apply(slots));
+		assertEquals(expected, interpreted.apply(payload));
+	}
+
+	@Test
+	public void testTypedFields() {
+		List<MessageFieldConfig> fields = new LinkedList<>();
+		fields.add(field("a", "k1", "out", Keywords.FLD_TYPE, "Integer"));
+		fields.add(field("b", "k2", "out", Keywords.FLD_TYPE, "double"));
+		fields.add(field("c", "k3", "out", Keywords.FLD_TYPE, "Boolean"));
+		fields.add(field("d", "k1", "out", Keywords.FLD_TYPE, "Integer", Keywords.FLD_HEADER, "#"));
+		fields.add(field("e", "k4", "out", Keywords.FLD_TYPE, "Integer"));
+		fields.add(field("f", "k2", "out", Keywords.FLD_TYPE, "String"));
+
+		MessageMapping mapping = new MessageMapping("m");
+		mapping.setFields(fields);
+
+		List<MessageMapping> mappings = new LinkedList<>();
+		mappings.add(mapping);
+		PayloadSchema schema = PayloadSchema.forInput(mappings);
+
+		Map<String, Object> payload = new HashMap<>();
+		payload.put("k1", " -0042 ");
+		payload.put("k2", 1.5f);
+		payload.put("k3", "TRUE");
+		payload.put("k4", "4x");
+		SlotPayload slots = schema.newPayload();
+		slots.putAll(payload);
+
+		TransformPlan interpreted = new TransformPlan(mapping, schema);
+		Map<String, Object> expected = interpreted.apply(payload);
+		SlotPayload out = (SlotPayload) expected.get("out");
+
+		assertTrue(out.isLong(0));
+		assertEquals(-42L, out.getLong(0));
+		assertEquals(1.5, out.getDouble(1), 0);
+		assertEquals(Boolean.TRUE, out.get("c"));
+		assertEquals("#-42", out.get("d"));
+		assertFalse(out.containsKey("e"));
+		assertEquals("1.5", out.get("f"));
+
+		assertEquals(expected, interpreted.apply(slots));
+		assertEquals(expected, interpreted.apply(payload));
+	}
+
+}
@@ -0,0 +1,51 @@
+package frisbee.tests.tools;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import frisbee.tools.ObjectPool;
+
+public class TestObjectPool {
+
+	@Test
+	public void testReleasedInstanceIsReused() {
+		AtomicInteger created = new AtomicInteger();
+		ObjectPool<Object> pool = new ObjectPool<>(() -> {
+			created.incrementAndGet();
+			return new Object();
+		});
+
+		Object first = pool.acquire();
+		pool.release(first);
+		assertSame(first, pool.acquire());
+		assertEquals(1, created.get());
+	}
+
+	@Test
+	public void testInstanceReleasedByAnotherThreadIsReused() throws InterruptedException {
+		AtomicInteger created = new AtomicInteger();
+		ObjectPool<Object> pool = new ObjectPool<>(() -> {
+			created.incrementAndGet();
+			return new Object();
+		});
+
+		//every round releases on a new thread, so the instance lands on various stripes
+		Object acquired = pool.acquire();
+		for (int round = 0; round < 100; round++) {
+			AtomicReference<Throwable> failure = new AtomicReference<>();
+			Thread releaser = new Thread(() -> pool.release(acquired));
+			releaser.setUncaughtExceptionHandler((t, e) -> failure.set(e));
+			releaser.start();
+			releaser.join();
+			assertNull(failure.get());
+
+			assertSame(acquired, pool.acquire());
+		}
+		assertEquals(1, created.get());
+	}
+
+}
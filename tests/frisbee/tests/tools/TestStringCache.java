@@ -0,0 +1,63 @@
+package frisbee.tests.tools;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import frisbee.tools.StringCache;
+
+public class TestStringCache {
+
+	private static ByteBuffer buffer(String text, boolean direct) {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(bytes.length) : ByteBuffer.allocate(bytes.length);
+		buffer.put(bytes).flip();
+		return buffer;
+	}
+
+	@Test
+	public void testRepeatedValuesShared() {
+		StringCache cache = StringCache.fromConfiguration("true", StandardCharsets.UTF_8);
+		assertEquals(StringCache.DEFAULT_SIZE, cache.getSize());
+
+		ByteBuffer first = buffer("xxEURxxUSD", false);
+		ByteBuffer second = buffer("EUR-\u20ac", true);
+
+		String eur = cache.get(first, 2, 3);
+		assertEquals("EUR", eur);
+		assertSame(eur, cache.get(second, 0, 3));
+		assertEquals("USD", cache.get(first, 7, 3));
+		assertEquals("\u20ac", cache.get(second, 4, 3));
+		assertEquals(1, cache.getHits());
+		assertEquals(3, cache.getMisses());
+		assertEquals(0.25, cache.getHitRate(), 1e-9);
+	}
+
+	@Test
+	public void testBoundsAndSettings() {
+		StringCache cache = new StringCache(3, StandardCharsets.ISO_8859_1);
+		assertEquals(4, cache.getSize());
+
+		//long values bypass the cache
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i <= StringCache.MAX_LENGTH; i++)
+			text.append('a');
+		ByteBuffer buffer = buffer(text.toString(), false);
+		assertNotSame(cache.get(buffer, 0, buffer.limit()), cache.get(buffer, 0, buffer.limit()));
+		assertEquals(0, cache.getHits() + cache.getMisses());
+
+		//a colliding value replaces the entry and is still decoded right
+		for (int i = 0; i < 100; i++) {
+			String value = Integer.toString(i);
+			assertEquals(value, cache.get(buffer(value, false), 0, value.length()));
+		}
+
+		assertNull(StringCache.fromConfiguration(null, StandardCharsets.ISO_8859_1));
+		assertNull(StringCache.fromConfiguration("false", StandardCharsets.ISO_8859_1));
+		assertEquals(64, StringCache.fromConfiguration(" 64 ", StandardCharsets.ISO_8859_1).getSize());
+	}
+
+}
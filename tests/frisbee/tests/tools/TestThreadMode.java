@@ -0,0 +1,38 @@
+package frisbee.tests.tools;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import frisbee.tools.ThreadMode;
+
+public class TestThreadMode {
+
+	@Test
+	public void testFromConfiguration() {
+		assertEquals(ThreadMode.PLATFORM, ThreadMode.fromConfiguration(null));
+		assertEquals(ThreadMode.PLATFORM, ThreadMode.fromConfiguration(" Platform "));
+		assertEquals(ThreadMode.VIRTUAL, ThreadMode.fromConfiguration("virtual"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownMode() {
+		ThreadMode.fromConfiguration("green");
+	}
+
+	@Test
+	public void testVirtualFallsBackWhenUnsupported() throws InterruptedException {
+		assertEquals(ThreadMode.isVirtualSupported() ? ThreadMode.VIRTUAL : ThreadMode.PLATFORM, ThreadMode.VIRTUAL.effective());
+
+		AtomicBoolean ran = new AtomicBoolean();
+		Thread thread = ThreadMode.VIRTUAL.newThread(() -> ran.set(true), "listener");
+		assertEquals("listener", thread.getName());
+
+		thread.start();
+		thread.join();
+		assertTrue(ran.get());
+	}
+
+}